@@ -0,0 +1,332 @@
+package expressionparser;
+
+/**
+ * Evaluates an {@link ExpressionProgram} over whole columns of values at once.
+ * The values of each variable are given as a column (a <code>double[]</code>
+ * holding one value per row), and the results are written into an output column.
+ *
+ * <br><br>Rather than running the whole program once per row, the rows are
+ * split into blocks of {@link #BLOCK_SIZE} and each instruction of the program
+ * is run over a whole block before moving on to the next one. Every entry of the
+ * operand stack is therefore a block of values, the opcode is only looked at once
+ * per block, and each operator becomes a short loop over primitive arrays which
+ * the JIT compiler can unroll and vectorise.
+ *
+ * @author David Boivin
+ */
+public class BatchEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The number of rows evaluated together. A block of doubles is 8KB, so the
+	 * operand stack of most expressions stays within the L1 or L2 cache.
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the given program for every row of the output column.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public static void evaluate(ExpressionProgram program, double[][] columns, double[] output){
+		BatchEvaluator.evaluate(program, columns, output, 0, output.length);
+	}
+
+	/**
+	 * Evaluates the given program for the given range of rows. Row <code>i</code> of
+	 * the result is written at <code>output[i]</code> and is computed from
+	 * <code>columns[slot][i]</code>.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is too short for the given range.
+	 */
+	public static void evaluate(ExpressionProgram program, double[][] columns, double[] output,
+			int from, int to){
+
+		BatchEvaluator.checkColumns(program, columns, output, from, to);
+
+		//one block of values per entry of the operand stack
+		double[][] stack = new double[program.getMaxStackDepth()][BLOCK_SIZE];
+
+		for(int start = from; start < to; start += BLOCK_SIZE){
+			int count = Math.min(BLOCK_SIZE, to - start);
+
+			BatchEvaluator.evaluateBlock(program, columns, stack, start, count);
+			System.arraycopy(stack[0], 0, output, start, count);
+		}
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Makes sure that the columns can be evaluated over the given range.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If the columns do not fit the program or the range.
+	 */
+	static void checkColumns(ExpressionProgram program, double[][] columns, double[] output,
+			int from, int to){
+
+		if(from < 0 || from > to || to > output.length){
+			throw new IllegalArgumentException("Invalid row range [" + from + ", " + to +
+					") for " + output.length + " output rows");
+		}
+
+		if(columns.length < program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + program.getVariableCount() +
+					" columns but got " + columns.length);
+		}
+
+		for(int i = 0; i < program.getVariableCount(); ++i){
+			if(columns[i].length < to){
+				throw new IllegalArgumentException("Column of variable " + program.getVariable(i) +
+						" has " + columns[i].length + " rows instead of at least " + to);
+			}
+		}
+	}
+
+	/**
+	 * Applies a unary operator or function to every row of a block, in place.
+	 *
+	 * @param opcode The opcode of the operator or function.
+	 * @param a The operand of every row of the block.
+	 * @param count The number of rows in the block.
+	 */
+	static void evaluateUnary(int opcode, double[] a, int count){
+
+		//one loop per opcode, so that nothing is decided row by row
+		switch(opcode){
+
+			case ExpressionProgram.NEG:
+				for(int j = 0; j < count; ++j){
+					a[j] = -a[j];
+				}
+				break;
+
+			case ExpressionProgram.SIN:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.sin(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.COS:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.cos(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.TAN:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.tan(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.ASIN:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.asin(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.ACOS:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.acos(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.ATAN:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.atan(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.EXP:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.exp(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.LOG:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.log(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.SQRT:
+				for(int j = 0; j < count; ++j){
+					a[j] = Math.sqrt(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.FAST_SIN:
+				for(int j = 0; j < count; ++j){
+					a[j] = FastMath.sin(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.FAST_COS:
+				for(int j = 0; j < count; ++j){
+					a[j] = FastMath.cos(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.FAST_EXP:
+				for(int j = 0; j < count; ++j){
+					a[j] = FastMath.exp(a[j]);
+				}
+				break;
+
+			case ExpressionProgram.FAST_LOG:
+				for(int j = 0; j < count; ++j){
+					a[j] = FastMath.log(a[j]);
+				}
+				break;
+
+			default:
+				throw new IllegalStateException("Not a unary opcode: " + opcode);
+		}
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Runs every instruction of the program over one block of rows. The result of
+	 * the block is left in the first entry of the stack.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables.
+	 * @param stack The operand stack, one block per entry.
+	 * @param start The first row of the block.
+	 * @param count The number of rows in the block.
+	 */
+	private static void evaluateBlock(ExpressionProgram program, double[][] columns,
+			double[][] stack, int start, int count){
+
+		int[] code = program.code();
+		double[] constants = program.constants();
+		int top = -1;	//index of the top of the stack
+
+		//iterate through the instructions, one whole block at a time
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+			int opcode = instruction & ExpressionProgram.OPCODE_MASK;
+
+			if(opcode == ExpressionProgram.CONST){
+				double value = constants[instruction >>> ExpressionProgram.OPCODE_BITS];
+				double[] a = stack[++top];
+				for(int j = 0; j < count; ++j){
+					a[j] = value;
+				}
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				double[] column = columns[instruction >>> ExpressionProgram.OPCODE_BITS];
+				System.arraycopy(column, start, stack[++top], 0, count);
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.CALL){
+				Operator function = program.getFunction(instruction >>> ExpressionProgram.OPCODE_BITS);
+				top -= function.getArity() - 1;
+				BatchEvaluator.call(function, stack, top, count);
+				continue;
+			}
+
+			//unary operators and functions write their result over their operand
+			if(ExpressionProgram.getArity(opcode) == 1){
+				BatchEvaluator.evaluateUnary(opcode, stack[top], count);
+				continue;
+			}
+
+			//binary operators write their result over their left operand
+			double[] a = stack[top - 1];
+			double[] b = stack[top];
+			--top;
+
+			switch(opcode){
+
+				case ExpressionProgram.ADD:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] + b[j];
+					}
+					break;
+
+				case ExpressionProgram.SUB:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] - b[j];
+					}
+					break;
+
+				case ExpressionProgram.MUL:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] * b[j];
+					}
+					break;
+
+				case ExpressionProgram.DIV:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] / b[j];
+					}
+					break;
+
+				case ExpressionProgram.POW:
+					for(int j = 0; j < count; ++j){
+						a[j] = Math.pow(a[j], b[j]);
+					}
+					break;
+
+				case ExpressionProgram.FAST_POW:
+					for(int j = 0; j < count; ++j){
+						a[j] = FastMath.pow(a[j], b[j]);
+					}
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at instruction " + i);
+			}
+		}
+	}
+
+	/**
+	 * Calls a registered function for every row of a block. Functions take their
+	 * operands from an array, so the operands of each row are gathered first.
+	 *
+	 * @param function The function to call.
+	 * @param stack The operand stack, one block per entry.
+	 * @param first The stack index of the first operand, where the result is written.
+	 * @param count The number of rows in the block.
+	 */
+	private static void call(Operator function, double[][] stack, int first, int count){
+
+		int arity = function.getArity();
+		double[] operands = new double[arity];
+		double[] result = stack[first];
+
+		for(int j = 0; j < count; ++j){
+			for(int k = 0; k < arity; ++k){
+				operands[k] = stack[first + k][j];
+			}
+			result[j] = function.apply(operands, 0);
+		}
+	}
+}
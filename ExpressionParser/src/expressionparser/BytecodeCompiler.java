@@ -0,0 +1,580 @@
+package expressionparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns an {@link ExpressionProgram} into a class generated at runtime. The
+ * generated class implements {@link ExpressionFunction} and its
+ * {@link ExpressionFunction#evaluate(double[])} method holds the instructions of
+ * the program written out one after the other as JVM bytecode: constants are
+ * loaded from the class' own constant pool, variables straight from the array,
+ * and <b>+ - * /</b> become the <code>dadd dsub dmul ddiv</code> instructions
+ * while <b>^</b> and the built-in functions call {@link Math#pow(double, double)},
+ * {@link Math#sin(double)} and the others, or their {@link FastMath} counterparts
+ * in fast-math programs. There is no loop and no
+ * opcode dispatch left, so HotSpot compiles it like hand written Java, and the
+ * results are the same as those of the {@link ProgramEvaluator}.
+ *
+ * <br><br>The class file is written by hand so that no library is needed. It is
+ * defined as a hidden class when the runtime supports them (Java 15 and up),
+ * otherwise in a class loader of its own. Either way the class is unloaded once
+ * the function is no longer used. Programs whose method would be larger than
+ * HotSpot compiles (8000 bytes of bytecode, about 2000 operations), and programs
+ * calling registered functions (whose implementation is an object the generated
+ * class cannot refer to), are evaluated by the {@link ProgramEvaluator} instead,
+ * since a method HotSpot never compiles would be interpreted slower than the
+ * {@link ProgramEvaluator} runs once it is compiled.
+ *
+ * @author David Boivin
+ */
+public class BytecodeCompiler {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//generated classes live in this package, as hidden classes must share the package of their lookup
+	private static final String CLASS_NAME =
+			BytecodeCompiler.class.getName().replace('.', '/').replace("BytecodeCompiler", "GeneratedExpressionFunction");
+	private static final String FUNCTION_INTERFACE = ExpressionFunction.class.getName().replace('.', '/');
+	private static final String FAST_MATH = FastMath.class.getName().replace('.', '/');
+	private static final int CLASS_FILE_VERSION = 51;	//Java 7
+
+	//HotSpot's HugeMethodLimit, above which a method is left to the interpreter
+	private static final int MAX_CODE_LENGTH = 8000;
+	private static final int MAX_STACK = 65535;
+
+	//access flags
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	//constant pool tags
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	//JVM instructions
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int DALOAD = 0x31;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int DDIV = 0x6f;
+	private static final int DNEG = 0x77;
+	private static final int DRETURN = 0xaf;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	//Lookup.defineHiddenClass(byte[], boolean, ClassOption...) or null before Java 15
+	private static final Method DEFINE_HIDDEN_CLASS;
+	private static final Object NO_CLASS_OPTIONS;
+
+	static{
+		Method method = null;
+		Object options = null;
+
+		try{
+			Class<?> optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			options = Array.newInstance(optionClass, 0);
+			method = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+					byte[].class, boolean.class, options.getClass());
+		}catch(ReflectiveOperationException e){
+			method = null;	//hidden classes are not supported, fall back on class loaders
+		}
+
+		DEFINE_HIDDEN_CLASS = method;
+		NO_CLASS_OPTIONS = options;
+	}
+
+	private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Generates a class for the given program and gives an instance of it.
+	 *
+	 * @param program The program to compile.
+	 *
+	 * @return The compiled function.
+	 */
+	public static ExpressionFunction compile(final ExpressionProgram program){
+
+		ExpressionFunction function = BytecodeCompiler.build(program);
+
+		//the program does not fit in one method or calls functions, so it is interpreted instead
+		if(function == null){
+			return new ExpressionFunction(){
+				@Override
+				public double evaluate(double[] variables){
+					return ProgramEvaluator.evaluate(program, variables);
+				}
+			};
+		}
+
+		return function;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Generates a class for the given program, if it can be compiled, and gives an
+	 * instance of it.
+	 *
+	 * @param program The program to compile.
+	 *
+	 * @return The compiled function, or <b>null</b> if the program does not fit in one
+	 * 		method or calls registered functions.
+	 *
+	 * @throws IllegalStateException If the generated class could not be loaded.
+	 */
+	static ExpressionFunction build(ExpressionProgram program){
+
+		byte[] classFile = BytecodeCompiler.generate(program,
+				CLASS_NAME + CLASS_COUNT.incrementAndGet());
+
+		if(classFile == null){
+			return null;
+		}
+
+		try{
+			return (ExpressionFunction) BytecodeCompiler.define(classFile).getConstructor().newInstance();
+		}catch(ReflectiveOperationException e){
+			throw new IllegalStateException("Could not load the generated class", e);
+		}
+	}
+
+	/**
+	 * Writes the class file of the function for the given program.
+	 *
+	 * @param program The program to compile.
+	 * @param className The name of the class to generate.
+	 *
+	 * @return The class file, or <b>null</b> if the program is too large for HotSpot to
+	 * 		compile its method or calls registered functions.
+	 */
+	static byte[] generate(ExpressionProgram program, String className){
+
+		if(program.getFunctionCount() > 0){
+			return null;
+		}
+
+		ConstantPool pool = new ConstantPool();
+
+		int thisClass = pool.addClass(className);
+		int superClass = pool.addClass("java/lang/Object");
+		int functionInterface = pool.addClass(FUNCTION_INTERFACE);
+		int objectInit = pool.addMethodref(superClass, "<init>", "()V");
+		int codeAttribute = pool.addUtf8("Code");
+		int initName = pool.addUtf8("<init>");
+		int initType = pool.addUtf8("()V");
+		int evaluateName = pool.addUtf8("evaluate");
+		int evaluateType = pool.addUtf8("([D)D");
+
+		//evaluate(double[]) body, one group of JVM instructions per instruction of the program
+		ByteArrayOutputStream code = new ByteArrayOutputStream(program.length() * 4 + 1);
+
+		for(int i = 0; i < program.length(); ++i){
+
+			int operand = program.getOperand(i);
+
+			switch(program.getOpcode(i)){
+
+				case ExpressionProgram.CONST:
+					int index = pool.addDouble(program.getConstant(operand));
+					code.write(LDC2_W);
+					code.write(index >>> 8);
+					code.write(index);
+					break;
+
+				case ExpressionProgram.LOAD:
+					code.write(ALOAD_1);
+					BytecodeCompiler.writeInt(code, pool, operand);
+					code.write(DALOAD);
+					break;
+
+				case ExpressionProgram.ADD:
+					code.write(DADD);
+					break;
+
+				case ExpressionProgram.SUB:
+					code.write(DSUB);
+					break;
+
+				case ExpressionProgram.MUL:
+					code.write(DMUL);
+					break;
+
+				case ExpressionProgram.DIV:
+					code.write(DDIV);
+					break;
+
+				case ExpressionProgram.NEG:
+					code.write(DNEG);
+					break;
+
+				default:
+					//^ and the built-in functions call the static methods of Math or FastMath
+					int method = BytecodeCompiler.addMathMethod(pool, program.getOpcode(i));
+					code.write(INVOKESTATIC);
+					code.write(method >>> 8);
+					code.write(method);
+			}
+		}
+
+		code.write(DRETURN);
+
+		//every double takes two stack words, plus the array and index of a variable load
+		int maxStack = program.getMaxStackDepth() * 2 + 2;
+
+		if(code.size() > MAX_CODE_LENGTH || maxStack > MAX_STACK || pool.size() > 65535){
+			return null;
+		}
+
+		try{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.size() + pool.size() * 12 + 256);
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_FILE_VERSION);
+			pool.write(out);
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);	//interfaces
+			out.writeShort(functionInterface);
+			out.writeShort(0);	//fields
+			out.writeShort(2);	//methods
+
+			//public <init>(){ super(); }
+			byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL,
+					(byte) (objectInit >>> 8), (byte) objectInit, (byte) RETURN};
+			BytecodeCompiler.writeMethod(out, initName, initType, codeAttribute, 1, 1, init);
+
+			//public double evaluate(double[] variables){ ... }
+			BytecodeCompiler.writeMethod(out, evaluateName, evaluateType, codeAttribute,
+					maxStack, 2, code.toByteArray());
+
+			out.writeShort(0);	//attributes
+			out.flush();
+
+			return bytes.toByteArray();
+		}catch(IOException e){
+			throw new IllegalStateException(e);	//cannot happen when writing to memory
+		}
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Adds to the pool the static method computing the given operator or function.
+	 *
+	 * @param pool The constant pool of the class.
+	 * @param opcode The opcode of <b>^</b> or of a built-in function.
+	 *
+	 * @return The index of the method in the pool.
+	 */
+	private static int addMathMethod(ConstantPool pool, int opcode){
+
+		String name;
+
+		switch(opcode){
+
+			case ExpressionProgram.POW:
+			case ExpressionProgram.FAST_POW:
+				name = "pow";
+				break;
+
+			case ExpressionProgram.SIN:
+			case ExpressionProgram.FAST_SIN:
+				name = "sin";
+				break;
+
+			case ExpressionProgram.COS:
+			case ExpressionProgram.FAST_COS:
+				name = "cos";
+				break;
+
+			case ExpressionProgram.TAN:
+				name = "tan";
+				break;
+
+			case ExpressionProgram.ASIN:
+				name = "asin";
+				break;
+
+			case ExpressionProgram.ACOS:
+				name = "acos";
+				break;
+
+			case ExpressionProgram.ATAN:
+				name = "atan";
+				break;
+
+			case ExpressionProgram.EXP:
+			case ExpressionProgram.FAST_EXP:
+				name = "exp";
+				break;
+
+			case ExpressionProgram.LOG:
+			case ExpressionProgram.FAST_LOG:
+				name = "log";
+				break;
+
+			case ExpressionProgram.SQRT:
+				name = "sqrt";
+				break;
+
+			default:
+				throw new IllegalStateException("Unknown opcode: " + opcode);
+		}
+
+		//the fast-math opcodes come after all of the others
+		String owner = opcode >= ExpressionProgram.FAST_SIN ? FAST_MATH : "java/lang/Math";
+		String descriptor = ExpressionProgram.getArity(opcode) == 2 ? "(DD)D" : "(D)D";
+
+		return pool.addMethodref(pool.addClass(owner), name, descriptor);
+	}
+
+	/**
+	 * Defines the generated class, as a hidden class when possible.
+	 *
+	 * @param classFile The class file.
+	 *
+	 * @return The defined class.
+	 */
+	private static Class<?> define(byte[] classFile){
+
+		if(DEFINE_HIDDEN_CLASS != null){
+			try{
+				MethodHandles.Lookup lookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(
+						MethodHandles.lookup(), classFile, true, NO_CLASS_OPTIONS);
+				return lookup.lookupClass();
+			}catch(IllegalAccessException e){
+				throw new IllegalStateException("Could not define the generated class", e);
+			}catch(InvocationTargetException e){
+				throw new IllegalStateException("Could not define the generated class", e.getCause());
+			}
+		}
+
+		return new FunctionClassLoader().define(classFile);
+	}
+
+	/**
+	 * Writes the instructions pushing the given <code>int</code> on the stack.
+	 *
+	 * @param code The code to write to.
+	 * @param pool The constant pool of the class.
+	 * @param value The value to push.
+	 */
+	private static void writeInt(ByteArrayOutputStream code, ConstantPool pool, int value){
+
+		if(value <= 5){
+			code.write(ICONST_0 + value);
+		}else if(value <= Byte.MAX_VALUE){
+			code.write(BIPUSH);
+			code.write(value);
+		}else if(value <= Short.MAX_VALUE){
+			code.write(SIPUSH);
+			code.write(value >>> 8);
+			code.write(value);
+		}else{
+			int index = pool.addInteger(value);
+			code.write(LDC_W);
+			code.write(index >>> 8);
+			code.write(index);
+		}
+	}
+
+	/**
+	 * Writes a public method with a Code attribute and nothing else.
+	 *
+	 * @param out The class file to write to.
+	 * @param name The constant pool index of the name of the method.
+	 * @param descriptor The constant pool index of the descriptor of the method.
+	 * @param codeAttribute The constant pool index of the "Code" attribute name.
+	 * @param maxStack The maximum number of words on the operand stack.
+	 * @param maxLocals The number of local variable words.
+	 * @param code The bytecode of the method.
+	 *
+	 * @throws IOException If the class file cannot be written.
+	 */
+	private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+			int maxStack, int maxLocals, byte[] code) throws IOException{
+
+		out.writeShort(ACC_PUBLIC);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);	//attributes
+
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);	//exception table
+		out.writeShort(0);	//attributes
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * The constant pool of the generated class. Identical entries are only added once.
+	 */
+	private static class ConstantPool {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+		private final HashMap<Object, Integer> indexes = new HashMap<Object, Integer>();
+		private int count = 1;	//index 0 is not used by the JVM
+
+		/**
+		 * @return The number of slots taken by the pool, which is its largest index plus one.
+		 */
+		int size(){
+			return this.count;
+		}
+
+		int addUtf8(String value){
+
+			Integer index = this.indexes.get(value);
+			if(index != null){
+				return index;
+			}
+
+			try{
+				this.out.writeByte(CONSTANT_UTF8);
+				this.out.writeUTF(value);
+			}catch(IOException e){
+				throw new IllegalStateException(e);
+			}
+
+			return this.register(value, 1);
+		}
+
+		int addClass(String internalName){
+
+			String key = "Class:" + internalName;
+			Integer index = this.indexes.get(key);
+			if(index != null){
+				return index;
+			}
+
+			int name = this.addUtf8(internalName);
+			this.write(CONSTANT_CLASS, name);
+			return this.register(key, 1);
+		}
+
+		int addMethodref(int owner, String name, String descriptor){
+
+			String key = "Methodref:" + owner + "." + name + descriptor;
+			Integer index = this.indexes.get(key);
+			if(index != null){
+				return index;
+			}
+
+			int nameIndex = this.addUtf8(name);
+			int descriptorIndex = this.addUtf8(descriptor);
+
+			this.write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+			int nameAndType = this.register(new Object(), 1);
+
+			this.write(CONSTANT_METHODREF, owner, nameAndType);
+			return this.register(key, 1);
+		}
+
+		int addDouble(double value){
+
+			Long key = Double.doubleToRawLongBits(value);
+			Integer index = this.indexes.get(key);
+			if(index != null){
+				return index;
+			}
+
+			try{
+				this.out.writeByte(CONSTANT_DOUBLE);
+				this.out.writeLong(key);
+			}catch(IOException e){
+				throw new IllegalStateException(e);
+			}
+
+			return this.register(key, 2);	//doubles take two slots
+		}
+
+		int addInteger(int value){
+
+			String key = "Integer:" + value;
+			Integer index = this.indexes.get(key);
+			if(index != null){
+				return index;
+			}
+
+			try{
+				this.out.writeByte(CONSTANT_INTEGER);
+				this.out.writeInt(value);
+			}catch(IOException e){
+				throw new IllegalStateException(e);
+			}
+
+			return this.register(key, 1);
+		}
+
+		void write(DataOutputStream classFile) throws IOException{
+			classFile.writeShort(this.count);
+			this.out.flush();
+			this.bytes.writeTo(classFile);
+		}
+
+		private void write(int tag, int... shorts){
+			try{
+				this.out.writeByte(tag);
+				for(int i = 0; i < shorts.length; ++i){
+					this.out.writeShort(shorts[i]);
+				}
+			}catch(IOException e){
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private int register(Object key, int slots){
+			int index = this.count;
+			this.indexes.put(key, index);
+			this.count += slots;
+			return index;
+		}
+	}
+
+	/**
+	 * Class loader holding a single generated class, used when hidden classes are
+	 * not supported so that the class can still be unloaded with its function.
+	 */
+	private static class FunctionClassLoader extends ClassLoader {
+
+		FunctionClassLoader(){
+			super(ExpressionFunction.class.getClassLoader());
+		}
+
+		Class<?> define(byte[] classFile){
+			return this.defineClass(null, classFile, 0, classFile.length);
+		}
+	}
+}
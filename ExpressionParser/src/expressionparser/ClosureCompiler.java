@@ -0,0 +1,295 @@
+package expressionparser;
+
+/**
+ * Turns an {@link ExpressionProgram} into a tree of small {@link ExpressionFunction}
+ * objects, one per instruction: a constant returns its value, a variable reads its
+ * slot and an operator evaluates its operands and combines them. There is no
+ * operand stack and no opcode dispatch left, each node simply calls its children,
+ * so the tree is faster than the {@link ProgramEvaluator} once HotSpot has
+ * compiled it, while building it costs a few allocations per instruction and no
+ * class is generated, unlike the {@link BytecodeCompiler}.
+ *
+ * <br><br>The results are the same as those of the {@link ProgramEvaluator}. The tree
+ * is evaluated by recursion, so programs nested deeper than {@link #MAX_DEPTH}
+ * levels, and programs calling registered functions (which take their operands
+ * from an array), are evaluated by the {@link ProgramEvaluator} instead.
+ *
+ * @author David Boivin
+ */
+public class ClosureCompiler {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The deepest tree built. Deeper programs could overflow the thread stack.
+	 */
+	public static final int MAX_DEPTH = 256;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Builds the tree of functions for the given program.
+	 *
+	 * @param program The program to compile.
+	 *
+	 * @return The compiled function.
+	 */
+	public static ExpressionFunction compile(ExpressionProgram program){
+
+		ExpressionFunction function = ClosureCompiler.build(program);
+		return function == null ? ClosureCompiler.interpret(program) : function;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Builds the tree of functions for the given program, if it can be turned into a tree.
+	 *
+	 * @param program The program to compile.
+	 *
+	 * @return The compiled function, or <b>null</b> if the program calls registered
+	 * 		functions, is nested deeper than {@link #MAX_DEPTH} levels or is empty.
+	 */
+	static ExpressionFunction build(ExpressionProgram program){
+
+		int[] code = program.code();
+		double[] constants = program.constants();
+
+		//the subtrees not yet used by an operator, and their depth
+		ExpressionFunction[] stack = new ExpressionFunction[program.getMaxStackDepth()];
+		int[] depths = new int[program.getMaxStackDepth()];
+		int top = -1;	//index of the top of the stack
+
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+			int opcode = instruction & ExpressionProgram.OPCODE_MASK;
+
+			if(opcode == ExpressionProgram.CONST){
+				stack[++top] = new Constant(constants[instruction >>> ExpressionProgram.OPCODE_BITS]);
+				depths[top] = 1;
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				stack[++top] = new Variable(instruction >>> ExpressionProgram.OPCODE_BITS);
+				depths[top] = 1;
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.CALL){
+				return null;
+			}
+
+			if(ExpressionProgram.getArity(opcode) == 2){
+				stack[top - 1] = ClosureCompiler.binary(opcode, stack[top - 1], stack[top]);
+				depths[top - 1] = Math.max(depths[top - 1], depths[top]) + 1;
+				--top;
+			}else{
+				stack[top] = opcode == ExpressionProgram.NEG ? new Negate(stack[top]) :
+						new MathFunction(opcode, stack[top]);
+				++depths[top];
+			}
+
+			if(depths[top] > MAX_DEPTH){
+				return null;
+			}
+		}
+
+		//the empty program
+		return top < 0 ? null : stack[0];
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @param opcode The opcode of a binary operator.
+	 * @param left The left operand.
+	 * @param right The right operand.
+	 *
+	 * @return The node applying the operator to its operands.
+	 */
+	private static ExpressionFunction binary(int opcode, ExpressionFunction left, ExpressionFunction right){
+
+		switch(opcode){
+
+			case ExpressionProgram.ADD:
+				return new Add(left, right);
+
+			case ExpressionProgram.SUB:
+				return new Subtract(left, right);
+
+			case ExpressionProgram.MUL:
+				return new Multiply(left, right);
+
+			case ExpressionProgram.DIV:
+				return new Divide(left, right);
+
+			default:
+				return new Power(opcode, left, right);
+		}
+	}
+
+	/**
+	 * @param program A program which cannot be turned into a tree.
+	 *
+	 * @return A function evaluating the program with the {@link ProgramEvaluator}.
+	 */
+	private static ExpressionFunction interpret(final ExpressionProgram program){
+
+		return new ExpressionFunction(){
+			@Override
+			public double evaluate(double[] variables){
+				return ProgramEvaluator.evaluate(program, variables);
+			}
+		};
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	private static final class Constant implements ExpressionFunction {
+
+		private final double value;
+
+		private Constant(double value){
+			this.value = value;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return this.value;
+		}
+	}
+
+	private static final class Variable implements ExpressionFunction {
+
+		private final int slot;
+
+		private Variable(int slot){
+			this.slot = slot;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return variables[this.slot];
+		}
+	}
+
+	private static final class Add implements ExpressionFunction {
+
+		private final ExpressionFunction left;
+		private final ExpressionFunction right;
+
+		private Add(ExpressionFunction left, ExpressionFunction right){
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return this.left.evaluate(variables) + this.right.evaluate(variables);
+		}
+	}
+
+	private static final class Subtract implements ExpressionFunction {
+
+		private final ExpressionFunction left;
+		private final ExpressionFunction right;
+
+		private Subtract(ExpressionFunction left, ExpressionFunction right){
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return this.left.evaluate(variables) - this.right.evaluate(variables);
+		}
+	}
+
+	private static final class Multiply implements ExpressionFunction {
+
+		private final ExpressionFunction left;
+		private final ExpressionFunction right;
+
+		private Multiply(ExpressionFunction left, ExpressionFunction right){
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return this.left.evaluate(variables) * this.right.evaluate(variables);
+		}
+	}
+
+	private static final class Divide implements ExpressionFunction {
+
+		private final ExpressionFunction left;
+		private final ExpressionFunction right;
+
+		private Divide(ExpressionFunction left, ExpressionFunction right){
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return this.left.evaluate(variables) / this.right.evaluate(variables);
+		}
+	}
+
+	/**
+	 * <b>^</b> and its fast-math counterpart, which cost far more than the dispatch.
+	 */
+	private static final class Power implements ExpressionFunction {
+
+		private final int opcode;
+		private final ExpressionFunction left;
+		private final ExpressionFunction right;
+
+		private Power(int opcode, ExpressionFunction left, ExpressionFunction right){
+			this.opcode = opcode;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return ProgramEvaluator.calculate(this.opcode, this.left.evaluate(variables), this.right.evaluate(variables));
+		}
+	}
+
+	private static final class Negate implements ExpressionFunction {
+
+		private final ExpressionFunction operand;
+
+		private Negate(ExpressionFunction operand){
+			this.operand = operand;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return -this.operand.evaluate(variables);
+		}
+	}
+
+	/**
+	 * The built-in functions, which cost far more than the dispatch.
+	 */
+	private static final class MathFunction implements ExpressionFunction {
+
+		private final int opcode;
+		private final ExpressionFunction operand;
+
+		private MathFunction(int opcode, ExpressionFunction operand){
+			this.opcode = opcode;
+			this.operand = operand;
+		}
+
+		@Override
+		public double evaluate(double[] variables){
+			return ProgramEvaluator.calculate(this.opcode, this.operand.evaluate(variables), 0);
+		}
+	}
+}
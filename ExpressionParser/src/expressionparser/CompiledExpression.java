@@ -0,0 +1,392 @@
+package expressionparser;
+
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * This class holds an expression that has already been parsed by
+ * {@link ExpressionParser#parse(String)} so that it can be evaluated as many
+ * times as needed without parsing it again. Unlike the queue returned by
+ * {@link ExpressionParser#parse(String)}, which is emptied by
+ * {@link ExpressionParser#evaluatePostfix(ArrayDeque)}, a compiled expression
+ * is never consumed by being evaluated. The expression is held as an
+ * {@link ExpressionProgram} and evaluated by the {@link ProgramEvaluator}.
+ *
+ * <br><br>Instances are immutable and can safely be shared between threads.
+ *
+ * @author David Boivin
+ */
+public class CompiledExpression {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final double[] NO_VARIABLES = new double[0];
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final String source;
+	private final ExpressionProgram program;
+
+	//made the first time they are needed, from the expression as parsed and not optimized
+	private volatile ExpressionProgram integralProgram;
+	private volatile boolean integralChecked;
+	private volatile DecimalExpression decimal;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a compiled expression from the original expression and its program.
+	 *
+	 * @param source The String representation of the expression.
+	 * @param program The program of the expression.
+	 */
+	CompiledExpression(String source, ExpressionProgram program){
+		this.source = source;
+		this.program = program;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the compiled expression. The compiled expression is not
+	 * modified and can be evaluated again.
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If the expression has variables.
+	 */
+	public double evaluate(){
+		return this.evaluate(NO_VARIABLES);
+	}
+
+	/**
+	 * Evaluates the compiled expression with the given values for its variables.
+	 * The values are given in slot order (see {@link #getVariables()}). Callers
+	 * evaluating the expression many times should reuse the same array, filling
+	 * it with the new values before each call.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 */
+	public double evaluate(double... variables){
+
+		if(Instrumentation.getMonitor() != null && Instrumentation.sample()){
+			return this.evaluateSampled(variables);
+		}
+
+		return ProgramEvaluator.evaluate(this.program, variables);
+	}
+
+	/**
+	 * Evaluates the compiled expression for every row of the given columns using
+	 * the {@link BatchEvaluator}.
+	 *
+	 * @param columns The values of the variables, one column per slot.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public void evaluate(double[][] columns, double[] output){
+		long start = Instrumentation.getMonitor() == null ? 0 : System.nanoTime();
+		BatchEvaluator.evaluate(this.program, columns, output);
+		this.reportBatch(output.length, start);
+	}
+
+	/**
+	 * Evaluates the compiled expression for every row of the given columns using
+	 * every core of the machine (see {@link ParallelEvaluator}).
+	 *
+	 * @param columns The values of the variables, one column per slot.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public void evaluateParallel(double[][] columns, double[] output){
+		long start = Instrumentation.getMonitor() == null ? 0 : System.nanoTime();
+		ParallelEvaluator.evaluate(this.program, columns, output);
+		this.reportBatch(output.length, start);
+	}
+
+	/**
+	 * Evaluates the compiled expression for every row of the given columns, in
+	 * parallel on the given executor (see {@link ParallelEvaluator}).
+	 *
+	 * @param columns The values of the variables, one column per slot.
+	 * @param output The column in which to write the results.
+	 * @param executor The executor running the work.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public void evaluateParallel(double[][] columns, double[] output, Executor executor){
+		long start = Instrumentation.getMonitor() == null ? 0 : System.nanoTime();
+		ParallelEvaluator.evaluate(this.program, columns, output, executor);
+		this.reportBatch(output.length, start);
+	}
+
+	/**
+	 * Checks whether this expression can be evaluated exactly in <code>long</code>
+	 * arithmetic by {@link #evaluateLong(long...)}: it only adds, subtracts,
+	 * multiplies, negates and raises to a power, and all of its numbers are integers
+	 * (see {@link LongEvaluator}).
+	 *
+	 * @return This method returns <b>true</b> if the expression is integral and
+	 * 		returns <b>false</b> otherwise.
+	 */
+	public boolean isIntegral(){
+		return this.getIntegralProgram() != null;
+	}
+
+	/**
+	 * Evaluates this integral expression exactly with the given integer values for
+	 * its variables. Integer-only formulas, such as counts or basis points, then keep
+	 * every digit, and batches of them are evaluated faster than as doubles.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The exact result of the expression.
+	 *
+	 * @throws IllegalStateException If the expression is not integral.
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 * @throws ArithmeticException If a value overflows a <code>long</code> or a power
+	 * 		is negative. {@link #evaluate(double...)} then gives the rounded result.
+	 */
+	public long evaluateLong(long... variables){
+		return LongEvaluator.evaluate(this.requireIntegralProgram(), variables);
+	}
+
+	/**
+	 * Evaluates this integral expression exactly for every row of the given integer
+	 * columns using the {@link LongEvaluator}.
+	 *
+	 * @param columns The values of the variables, one column per slot.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalStateException If the expression is not integral.
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 * @throws ArithmeticException If a value of any row overflows a <code>long</code>
+	 * 		or a power is negative. {@link #evaluate(double[][], double[])} then gives
+	 * 		the rounded results.
+	 */
+	public void evaluateLong(long[][] columns, long[] output){
+		LongEvaluator.evaluate(this.requireIntegralProgram(), columns, output);
+	}
+
+	/**
+	 * Gives a version of this expression evaluated in decimal arithmetic with the
+	 * given precision and rounding (see {@link DecimalExpression}). The decimal
+	 * expression is kept, so asking again with the same context gives it back
+	 * without parsing the expression again.
+	 *
+	 * @param context The precision and rounding of every operation.
+	 *
+	 * @return The decimal version of this expression.
+	 *
+	 * @throws IllegalArgumentException If the expression calls a function.
+	 */
+	public DecimalExpression toDecimal(MathContext context){
+
+		DecimalExpression decimal = this.decimal;
+
+		if(decimal == null || !decimal.getMathContext().equals(context)){
+			decimal = new DecimalExpression(this.source, this.parseUnoptimized(), context);
+			this.decimal = decimal;
+		}
+
+		return decimal;
+	}
+
+	/**
+	 * Gives a copy of this expression which computes <b>sin</b>, <b>cos</b>,
+	 * <b>exp</b>, <b>log</b> and <b>^</b> with the faster approximations of
+	 * {@link FastMath}, within the error bounds documented there. Special values
+	 * (NaN, the infinities, zeros) give the same results as in this expression.
+	 * This expression itself keeps computing exact results.
+	 *
+	 * @return The fast-math version of this expression, or this expression if it
+	 * 		does not use any of the approximated functions.
+	 */
+	public CompiledExpression withFastMath(){
+
+		ExpressionProgram fast = ProgramOptimizer.useFastMath(this.program);
+		return fast == this.program ? this : new CompiledExpression(this.source, fast);
+	}
+
+	/**
+	 * Gives a copy of this expression in which the operands of every <b>+</b> and
+	 * <b>*</b> are in a fixed order (see {@link ProgramOptimizer#sortOperands(ExpressionProgram)}),
+	 * so that expressions which only differ by the order of these operands, such as
+	 * <b>y*x+1</b> and <b>1+x*y</b> compiled with the same variables, are
+	 * {@link #equals(Object) equal}. The copy gives the same results as this
+	 * expression, bit for bit.
+	 *
+	 * @return The expression with its operands in order, or this expression if they
+	 * 		already are.
+	 */
+	public CompiledExpression withCanonicalOrder(){
+
+		ExpressionProgram sorted = ProgramOptimizer.sortOperands(this.program);
+		return sorted == this.program ? this : new CompiledExpression(this.source, sorted);
+	}
+
+	/**
+	 * @return The names of the variables of the expression, in slot order.
+	 */
+	public String[] getVariables(){
+		return this.program.getVariables();
+	}
+
+	/**
+	 * Gives a fresh copy of the PostFix (Reverse-Polish) form of the expression.
+	 * The returned queue belongs to the caller and can be consumed freely.
+	 *
+	 * @return A PostFix representation of the expression in a queue.
+	 */
+	public ArrayDeque<String> getPostfix(){
+		return this.program.toPostfix();
+	}
+
+	/**
+	 * @return The program of the expression.
+	 */
+	public ExpressionProgram getProgram(){
+		return this.program;
+	}
+
+	/**
+	 * @return The String representation of the expression this was compiled from.
+	 */
+	public String getSource(){
+		return this.source;
+	}
+
+	/**
+	 * Compares the structure of two compiled expressions rather than their source:
+	 * they are equal when their programs are (see {@link ExpressionProgram#equals(Object)}),
+	 * so <b>5+2</b>, <b> 5 + 2 </b> and <b>(5.0)+(2)</b> are equal, and so are
+	 * <b>x*2</b> and <b>((x))*2.0</b> compiled with the same variables. Variables are
+	 * compared slot by slot, by name. Equal expressions give the same results, bit for
+	 * bit, so caches can keep a single one of them.
+	 *
+	 * @param other The object to compare this expression with.
+	 *
+	 * @return This method returns <b>true</b> if the object is a compiled expression
+	 * 		with the same structure and returns <b>false</b> otherwise.
+	 */
+	@Override
+	public boolean equals(Object other){
+		return this == other ||
+				other instanceof CompiledExpression && this.program.equals(((CompiledExpression) other).program);
+	}
+
+	/**
+	 * @return The hash of the structure of the expression, consistent with
+	 * 		{@link #equals(Object)}.
+	 */
+	@Override
+	public int hashCode(){
+		return this.program.hashCode();
+	}
+
+	@Override
+	public String toString(){
+		return this.getPostfix().toString();
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @return The program of the expression as parsed and not optimized, if it is
+	 * 		integral, or <b>null</b>. The optimizer computes in <code>double</code>, so
+	 * 		its constants could be rounded.
+	 */
+	private ExpressionProgram getIntegralProgram(){
+
+		if(!this.integralChecked){
+
+			ExpressionProgram integral = null;
+			try{
+				integral = this.parseUnoptimized();
+			}catch(IllegalArgumentException e){
+				//calls a registered function, so it is not integral
+			}
+
+			this.integralProgram = integral != null && LongEvaluator.isIntegral(integral) ? integral : null;
+			this.integralChecked = true;
+		}
+
+		return this.integralProgram;
+	}
+
+	/**
+	 * @return The integral program of the expression.
+	 *
+	 * @throws IllegalStateException If the expression is not integral.
+	 */
+	private ExpressionProgram requireIntegralProgram(){
+
+		ExpressionProgram integral = this.getIntegralProgram();
+
+		if(integral == null){
+			throw new IllegalStateException("Not an integral expression: " + this.source);
+		}
+
+		return integral;
+	}
+
+	/**
+	 * @return The program of the expression parsed again, with the same variables,
+	 * 		and not optimized.
+	 *
+	 * @throws IllegalArgumentException If the expression calls a function which is not
+	 * 		built in.
+	 */
+	private ExpressionProgram parseUnoptimized(){
+		return ExpressionParser.parseProgram(this.source, this.program.getVariables());
+	}
+
+	/**
+	 * Evaluates the compiled expression and tells the installed {@link ExpressionMonitor}
+	 * how long it took. Kept apart from {@link #evaluate(double...)} so that the
+	 * unsampled path stays small enough to be inlined.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The result of the expression.
+	 */
+	private double evaluateSampled(double[] variables){
+
+		long start = System.nanoTime();
+		double result = ProgramEvaluator.evaluate(this.program, variables);
+		long nanos = System.nanoTime() - start;
+
+		//the monitor may have been removed in the meantime
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		if(monitor != null){
+			monitor.sampled(this, nanos);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Tells the installed {@link ExpressionMonitor}, if any, that a batch was evaluated.
+	 *
+	 * @param rows The number of rows evaluated.
+	 * @param start The value of {@link System#nanoTime()} before the evaluation.
+	 */
+	private void reportBatch(int rows, long start){
+
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		if(monitor != null && start != 0){
+			monitor.evaluatedBatch(this, rows, System.nanoTime() - start);
+		}
+	}
+}
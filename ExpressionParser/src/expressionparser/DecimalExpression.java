@@ -0,0 +1,205 @@
+package expressionparser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * An expression evaluated in decimal arithmetic with {@link BigDecimal}s, for
+ * formulas which need exact decimal results, such as financial ones, where
+ * <code>0.1 + 0.2</code> must be <code>0.3</code>. Additions, subtractions,
+ * multiplications and powers are exact unless the {@link MathContext} rounds
+ * them, and divisions are rounded to the precision of the context.
+ *
+ * <br><br>The expression is not simplified, since the {@link ProgramOptimizer}
+ * computes in <code>double</code>, and its numbers are read from the text of the
+ * expression rather than from their <code>double</code> values, so that every
+ * digit written is kept. The numbers are turned into {@link BigDecimal}s once,
+ * when the expression is created. Only <b>+</b>, <b>-</b>, <b>*</b>, <b>/</b>,
+ * <b>^</b> with an integer exponent and the unary <b>-</b> are supported, since
+ * functions such as <b>sin</b> have no exact decimal result.
+ *
+ * <br><br>Instances are immutable and can safely be shared between threads. They
+ * are made by {@link ExpressionParser#compileDecimal(String, MathContext, String...)}
+ * or {@link CompiledExpression#toDecimal(MathContext)}.
+ *
+ * @author David Boivin
+ */
+public class DecimalExpression {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final String source;
+	private final ExpressionProgram program;
+	private final BigDecimal[] constants;
+	private final MathContext context;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a decimal expression from the original expression and its program.
+	 *
+	 * @param source The String representation of the expression.
+	 * @param program The program of the expression, as parsed and not optimized, so
+	 * 		that its constants are the numbers of the expression in order.
+	 * @param context The precision and rounding of every operation.
+	 *
+	 * @throws IllegalArgumentException If the program uses a function or an operator
+	 * 		other than <b>+</b>, <b>-</b>, <b>*</b>, <b>/</b> and <b>^</b>.
+	 */
+	DecimalExpression(String source, ExpressionProgram program, MathContext context){
+
+		for(int i = 0; i < program.length(); ++i){
+
+			switch(program.getOpcode(i)){
+
+				case ExpressionProgram.CONST:
+				case ExpressionProgram.LOAD:
+				case ExpressionProgram.ADD:
+				case ExpressionProgram.SUB:
+				case ExpressionProgram.MUL:
+				case ExpressionProgram.DIV:
+				case ExpressionProgram.POW:
+				case ExpressionProgram.NEG:
+					break;
+
+				default:
+					throw new IllegalArgumentException("Functions cannot be evaluated in decimal: " + source);
+			}
+		}
+
+		this.source = source;
+		this.program = program;
+		this.context = context;
+
+		//the numbers as written, unless the program did not come from the text (empty expression)
+		double[] values = program.constants();
+		String[] literals = ExpressionParser.getNumberLiterals(source);
+		this.constants = new BigDecimal[values.length];
+
+		for(int i = 0; i < values.length; ++i){
+			this.constants[i] = literals.length == values.length ? new BigDecimal(literals[i]) :
+					BigDecimal.valueOf(values[i]);
+		}
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the expression with the given values for its variables.
+	 *
+	 * @param variables The values of the variables, by slot (see {@link #getVariables()}).
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 * @throws ArithmeticException If a number is divided by zero, if an exponent is not
+	 * 		an integer, or if the context has unlimited precision and a division or a
+	 * 		negative power has no exact decimal result.
+	 */
+	public BigDecimal evaluate(BigDecimal... variables){
+
+		if(variables.length < this.program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + this.program.getVariableCount() +
+					" variable values but got " + variables.length);
+		}
+
+		int[] code = this.program.code();
+		BigDecimal[] stack = new BigDecimal[this.program.getMaxStackDepth()];
+		int top = -1;	//index of the top of the stack
+
+		//iterate through the instructions
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+
+			switch(instruction & ExpressionProgram.OPCODE_MASK){
+
+				case ExpressionProgram.CONST:
+					stack[++top] = this.constants[instruction >>> ExpressionProgram.OPCODE_BITS];
+					break;
+
+				case ExpressionProgram.LOAD:
+					stack[++top] = variables[instruction >>> ExpressionProgram.OPCODE_BITS];
+					break;
+
+				case ExpressionProgram.ADD:
+					stack[top - 1] = stack[top - 1].add(stack[top], this.context);
+					--top;
+					break;
+
+				case ExpressionProgram.SUB:
+					stack[top - 1] = stack[top - 1].subtract(stack[top], this.context);
+					--top;
+					break;
+
+				case ExpressionProgram.MUL:
+					stack[top - 1] = stack[top - 1].multiply(stack[top], this.context);
+					--top;
+					break;
+
+				case ExpressionProgram.DIV:
+					stack[top - 1] = stack[top - 1].divide(stack[top], this.context);
+					--top;
+					break;
+
+				case ExpressionProgram.POW:
+					stack[top - 1] = stack[top - 1].pow(DecimalExpression.toExponent(stack[top]), this.context);
+					--top;
+					break;
+
+				case ExpressionProgram.NEG:
+					stack[top] = stack[top].negate(this.context);
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at instruction " + i);
+			}
+		}
+
+		return stack[0].round(this.context);
+	}
+
+	/**
+	 * @return The precision and rounding of every operation.
+	 */
+	public MathContext getMathContext(){
+		return this.context;
+	}
+
+	/**
+	 * @return The names of the variables of the expression, in slot order.
+	 */
+	public String[] getVariables(){
+		return this.program.getVariables();
+	}
+
+	/**
+	 * @return The String representation of the expression this was compiled from.
+	 */
+	public String getSource(){
+		return this.source;
+	}
+
+	@Override
+	public String toString(){
+		return this.program.toString();
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @param exponent The exponent of a power.
+	 *
+	 * @return The exponent as an <code>int</code>.
+	 *
+	 * @throws ArithmeticException If the exponent is not an integer or is too large.
+	 */
+	private static int toExponent(BigDecimal exponent){
+
+		try{
+			return exponent.intValueExact();
+		}catch(ArithmeticException e){
+			throw new ArithmeticException("Exponent must be an integer in decimal arithmetic: " + exponent);
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package expressionparser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded cache of {@link CompiledExpression}s keyed by the
+ * text of the expression. When the cache is full the least recently used
+ * expression is evicted to make room for the new one.
+ *
+ * <br><br>Expressions written differently but compiled into {@link CompiledExpression#equals(Object)
+ * equal} expressions, such as <b>5+2</b>, <b> 5 + 2 </b> and <b>(5.0)+(2)</b>, share a single
+ * {@link ExpressionProgram}, the one compiled first. Each text still has its own entry
+ * and its own {@link CompiledExpression}, whose source is that text, so that the exact
+ * evaluations ({@link CompiledExpression#evaluateLong(double...)},
+ * {@link CompiledExpression#toDecimal(java.math.MathContext)}) still see the digits
+ * which the program rounded away. A cache created with the canonical order also puts
+ * the operands of <b>+</b> and <b>*</b> in order (see
+ * {@link CompiledExpression#withCanonicalOrder()}), so that <b>x*y+1</b> and
+ * <b>1+y*x</b> share one as well.
+ *
+ * <br><br>Expressions which cannot be compiled are remembered as well, up to the
+ * capacity of the cache, so that looking one up again throws its
+ * {@link ExpressionSyntaxException} without parsing it again. Such lookups are hits.
+ *
+ * <br><br>The cache keeps count of its hits, misses, evictions, rejections and shared
+ * programs so that its size can be tuned to the workload.
+ *
+ * @author David Boivin
+ */
+public class ExpressionCache {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final int capacity;
+	private final boolean canonicalOrder;
+	//keyed by the text of the expression, or by a Key when variables are given
+	private final LinkedHashMap<Object, CompiledExpression> entries;
+
+	//the expressions which could not be compiled, guarded by the lock of the entries
+	private final LinkedHashMap<Object, ExpressionSyntaxException> failures;
+
+	//every program held by the entries, with the number of entries holding it
+	private final HashMap<ExpressionProgram, Shared> programs = new HashMap<ExpressionProgram, Shared>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong shares = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a cache holding at most {@link #DEFAULT_CAPACITY} expressions.
+	 */
+	public ExpressionCache(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of expressions.
+	 *
+	 * @param capacity The maximum number of expressions held by the cache.
+	 */
+	public ExpressionCache(int capacity){
+		this(capacity, false);
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of expressions, optionally
+	 * putting the operands of <b>+</b> and <b>*</b> in canonical order.
+	 *
+	 * @param capacity The maximum number of expressions held by the cache.
+	 * @param canonicalOrder <b>true</b> to compile expressions with their operands in
+	 * 		canonical order, so that more of them share a program.
+	 */
+	public ExpressionCache(int capacity, boolean canonicalOrder){
+
+		if(capacity < 1){
+			throw new IllegalArgumentException("Cache capacity must be at least 1: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.canonicalOrder = canonicalOrder;
+
+		//access ordered map so that the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<Object, CompiledExpression>(16, 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, CompiledExpression> eldest){
+				if(this.size() > ExpressionCache.this.capacity){
+					ExpressionCache.this.evictions.incrementAndGet();
+					ExpressionCache.this.release(eldest.getValue());
+					return true;
+				}
+
+				return false;
+			}
+		};
+
+		this.failures = new LinkedHashMap<Object, ExpressionSyntaxException>(16, 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, ExpressionSyntaxException> eldest){
+				return this.size() > ExpressionCache.this.capacity;
+			}
+		};
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Gives the compiled form of the given expression, compiling it with
+	 * {@link ExpressionParser#compile(String)} if it is not already held
+	 * by the cache.
+	 *
+	 * @param expression The String representation of the expression.
+	 *
+	 * @return The compiled expression.
+	 *
+	 * @throws ExpressionSyntaxException If the expression could not be parsed.
+	 */
+	public CompiledExpression get(String expression){
+		return this.lookup(expression, expression, null);
+	}
+
+	/**
+	 * Gives the compiled form of the given expression with the given variables, compiling
+	 * it with {@link ExpressionParser#compile(String, String...)} if it is not already held
+	 * by the cache. The same expression with other variables, or with the same variables
+	 * in another order, is a different entry of the cache.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables used by the expression, in slot order.
+	 *
+	 * @return The compiled expression.
+	 *
+	 * @throws ExpressionSyntaxException If the expression could not be parsed or if it
+	 * 		uses a variable which is not one of the given ones.
+	 */
+	public CompiledExpression get(String expression, String... variables){
+
+		if(variables.length == 0){
+			return this.lookup(expression, expression, null);
+		}
+
+		//the names are compared one by one, so that no name can pass for several others
+		variables = variables.clone();
+		return this.lookup(new Key(expression, variables), expression, variables);
+	}
+
+	/**
+	 * Removes every expression from the cache. The counters are left untouched.
+	 */
+	public void clear(){
+		synchronized(this.entries){
+			this.entries.clear();
+			this.programs.clear();
+			this.failures.clear();
+		}
+	}
+
+	/**
+	 * Resets the hit, miss, eviction, rejection and share counters to zero.
+	 */
+	public void resetCounters(){
+		this.hits.set(0);
+		this.misses.set(0);
+		this.evictions.set(0);
+		this.rejections.set(0);
+		this.shares.set(0);
+	}
+
+	/**
+	 * @return The number of expressions currently held by the cache.
+	 */
+	public int size(){
+		synchronized(this.entries){
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * @return The number of different programs currently held by the cache, at most
+	 * 		its {@link #size()}.
+	 */
+	public int getProgramCount(){
+		synchronized(this.entries){
+			return this.programs.size();
+		}
+	}
+
+	/**
+	 * @return The maximum number of expressions held by the cache.
+	 */
+	public int getCapacity(){
+		return this.capacity;
+	}
+
+	/**
+	 * @return The number of lookups that found the expression already compiled.
+	 */
+	public long getHitCount(){
+		return this.hits.get();
+	}
+
+	/**
+	 * @return The number of lookups that had to compile the expression.
+	 */
+	public long getMissCount(){
+		return this.misses.get();
+	}
+
+	/**
+	 * @return The number of expressions removed to keep the cache within its capacity.
+	 */
+	public long getEvictionCount(){
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return The number of hits on an expression which could not be compiled, whose
+	 * 		error was thrown again.
+	 */
+	public long getRejectionCount(){
+		return this.rejections.get();
+	}
+
+	/**
+	 * @return The number of expressions which could not be compiled currently held by
+	 * 		the cache, at most its capacity.
+	 */
+	public int getFailureCount(){
+		synchronized(this.entries){
+			return this.failures.size();
+		}
+	}
+
+	/**
+	 * @return The number of misses given the equal program which the cache already held
+	 * 		for another text.
+	 */
+	public long getShareCount(){
+		return this.shares.get();
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if the cache puts the operands of
+	 * 		<b>+</b> and <b>*</b> in canonical order and returns <b>false</b> otherwise.
+	 */
+	public boolean isCanonicalOrder(){
+		return this.canonicalOrder;
+	}
+
+	@Override
+	public String toString(){
+		return "ExpressionCache[size=" + this.size() + ", capacity=" + this.capacity +
+				", hits=" + this.getHitCount() + ", misses=" + this.getMissCount() +
+				", evictions=" + this.getEvictionCount() + ", rejections=" + this.getRejectionCount() +
+				", failures=" + this.getFailureCount() + ", programs=" + this.getProgramCount() +
+				", shared=" + this.getShareCount() + "]";
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Gives the compiled expression held under the given key, compiling it if it is not
+	 * already held by the cache.
+	 *
+	 * @param key The key of the expression in the cache.
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables in slot order, or <b>null</b> to give
+	 * 		the variables their slots in order of first appearance.
+	 *
+	 * @return The compiled expression.
+	 */
+	private CompiledExpression lookup(Object key, String expression, String[] variables){
+
+		CompiledExpression compiled;
+		ExpressionSyntaxException failure = null;
+
+		synchronized(this.entries){
+			compiled = this.entries.get(key);
+			if(compiled == null){
+				failure = this.failures.get(key);
+			}
+		}
+
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		if(monitor != null){
+			monitor.cacheLookup(expression, compiled != null || failure != null);
+		}
+
+		if(compiled != null){
+			this.hits.incrementAndGet();
+			return compiled;
+		}
+
+		//a new exception, so that its stack trace is the one of this lookup
+		if(failure != null){
+			this.hits.incrementAndGet();
+			this.rejections.incrementAndGet();
+			throw new ExpressionSyntaxException(failure.getKind(), failure.getReason(), failure.getExpression(),
+					failure.getIndex());
+		}
+
+		this.misses.incrementAndGet();
+
+		//compile outside of the lock so that other threads are not held up by the parse
+		try{
+			compiled = variables == null ? ExpressionParser.compile(expression) :
+					ExpressionParser.compile(expression, variables);
+		}catch(ExpressionSyntaxException e){
+			synchronized(this.entries){
+				this.failures.put(key, e);
+			}
+			throw e;
+		}
+
+		if(this.canonicalOrder){
+			compiled = compiled.withCanonicalOrder();
+		}
+
+		synchronized(this.entries){
+
+			//another thread may have compiled the same expression in the meantime
+			CompiledExpression existing = this.entries.get(key);
+			if(existing != null){
+				return existing;
+			}
+
+			compiled = this.share(compiled);
+			this.entries.put(key, compiled);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Gives the given compiled expression with the program held by the cache which is
+	 * equal to its own, if there is one, and counts one more entry holding the program.
+	 * The source of the expression is kept. Must be called while holding the lock of
+	 * the entries.
+	 *
+	 * @param expression The compiled expression of a new entry.
+	 *
+	 * @return The compiled expression to keep in the entry.
+	 */
+	private CompiledExpression share(CompiledExpression expression){
+
+		ExpressionProgram program = expression.getProgram();
+		Shared shared = this.programs.get(program);
+
+		if(shared == null){
+			shared = new Shared(program);
+			this.programs.put(program, shared);
+		}else if(shared.program != program){
+			this.shares.incrementAndGet();
+			expression = new CompiledExpression(expression.getSource(), shared.program);
+		}
+
+		++shared.entries;
+		return expression;
+	}
+
+	/**
+	 * Counts one less entry holding the program of the given compiled expression, and
+	 * forgets the program once no entry holds it. Must be called while holding the lock
+	 * of the entries.
+	 *
+	 * @param expression The compiled expression of an entry being removed.
+	 */
+	private void release(CompiledExpression expression){
+
+		Shared shared = this.programs.get(expression.getProgram());
+
+		if(shared != null && --shared.entries == 0){
+			this.programs.remove(expression.getProgram());
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * The key of an expression compiled with the given variables, equal to the key of
+	 * the same expression with the same variables in the same order.
+	 */
+	private static final class Key {
+
+		private final String expression;
+		private final String[] variables;
+		private final int hash;
+
+		private Key(String expression, String[] variables){
+			this.expression = expression;
+			this.variables = variables;
+			this.hash = 31 * expression.hashCode() + Arrays.hashCode(variables);
+		}
+
+		@Override
+		public boolean equals(Object other){
+
+			if(!(other instanceof Key)){
+				return false;
+			}
+
+			Key key = (Key) other;
+			return this.hash == key.hash && this.expression.equals(key.expression) &&
+					Arrays.equals(this.variables, key.variables);
+		}
+
+		@Override
+		public int hashCode(){
+			return this.hash;
+		}
+	}
+
+	/**
+	 * A program held by the cache, with the number of entries holding it.
+	 */
+	private static class Shared {
+
+		private final ExpressionProgram program;
+		private int entries;
+
+		private Shared(ExpressionProgram program){
+			this.program = program;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package expressionparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A catalog of expressions, one per line, compiled all at once. Loading a large
+ * catalog one expression at a time keeps a single core busy for a long time, so
+ * the catalog compiles its expressions in parallel on every core instead.
+ *
+ * <br><br>Identical expressions (ignoring the spaces around them) are only
+ * compiled once, and every line holding them gets the same {@link CompiledExpression}.
+ * Expressions written differently but compiled into equal expressions, such as
+ * <b>x*2</b> and <b>(x)*2.0</b>, share the {@link ExpressionProgram} of the first of
+ * them, while each keeps its own {@link CompiledExpression} and source.
+ * Blank lines are skipped. A malformed expression does not stop the loading: it is
+ * reported as a {@link Failure} giving its line number and what is wrong with it,
+ * and the other lines are compiled as usual.
+ *
+ * <br><br>Each expression is compiled with {@link ExpressionParser#compile(String)},
+ * so its variables get their slots in order of first appearance. Catalogs are
+ * immutable and can safely be shared between threads.
+ *
+ * @author David Boivin
+ */
+public class ExpressionCatalog {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//number of expressions a thread takes at once
+	private static final int BATCH_SIZE = 256;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final String[] sources;
+	private final CompiledExpression[] expressions;
+	private final List<Failure> failures;
+	private final int uniqueCount;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private ExpressionCatalog(String[] sources, CompiledExpression[] expressions, List<Failure> failures,
+			int uniqueCount){
+		this.sources = sources;
+		this.expressions = expressions;
+		this.failures = Collections.unmodifiableList(failures);
+		this.uniqueCount = uniqueCount;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Reads the given UTF-8 file, one expression per line, and compiles its
+	 * expressions on the {@link ParallelEvaluator#getDefaultPool() default pool}.
+	 *
+	 * @param file The catalog file.
+	 *
+	 * @return The compiled catalog.
+	 *
+	 * @throws IOException If the file could not be read.
+	 */
+	public static ExpressionCatalog load(Path file) throws IOException{
+		return ExpressionCatalog.load(file, ParallelEvaluator.getDefaultPool());
+	}
+
+	/**
+	 * Reads the given UTF-8 file, one expression per line, and compiles its
+	 * expressions on the given executor.
+	 *
+	 * @param file The catalog file.
+	 * @param executor The executor compiling the expressions.
+	 *
+	 * @return The compiled catalog.
+	 *
+	 * @throws IOException If the file could not be read.
+	 */
+	public static ExpressionCatalog load(Path file, Executor executor) throws IOException{
+
+		ArrayList<String> lines = new ArrayList<String>();
+
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				lines.add(line);
+			}
+		}
+
+		return ExpressionCatalog.compile(lines, executor);
+	}
+
+	/**
+	 * Compiles the given expressions, one per line, on the
+	 * {@link ParallelEvaluator#getDefaultPool() default pool}.
+	 *
+	 * @param lines The expressions. The first one is on line 1.
+	 *
+	 * @return The compiled catalog.
+	 */
+	public static ExpressionCatalog compile(List<String> lines){
+		return ExpressionCatalog.compile(lines, ParallelEvaluator.getDefaultPool());
+	}
+
+	/**
+	 * Compiles the given expressions, one per line, on the given executor.
+	 *
+	 * @param lines The expressions. The first one is on line 1.
+	 * @param executor The executor compiling the expressions.
+	 *
+	 * @return The compiled catalog.
+	 */
+	public static ExpressionCatalog compile(List<String> lines, Executor executor){
+
+		String[] sources = new String[lines.size()];
+		int[] indexes = new int[lines.size()];	//index of the expression of every line, or -1
+		HashMap<String, Integer> unique = new HashMap<String, Integer>();
+		ArrayList<String> texts = new ArrayList<String>();
+
+		//identical expressions are only compiled once
+		for(int i = 0; i < sources.length; ++i){
+			sources[i] = lines.get(i).trim();
+
+			if(sources[i].isEmpty()){
+				indexes[i] = -1;
+				continue;
+			}
+
+			Integer index = unique.get(sources[i]);
+			if(index == null){
+				index = texts.size();
+				unique.put(sources[i], index);
+				texts.add(sources[i]);
+			}
+
+			indexes[i] = index;
+		}
+
+		CompiledExpression[] compiled = new CompiledExpression[texts.size()];
+		IllegalArgumentException[] errors = new IllegalArgumentException[texts.size()];
+		ExpressionCatalog.compileAll(texts, compiled, errors, executor);
+
+		//expressions compiled into equal programs share the first one, and keep their own source
+		HashMap<ExpressionProgram, ExpressionProgram> shared = new HashMap<ExpressionProgram, ExpressionProgram>();
+		for(int i = 0; i < compiled.length; ++i){
+			if(compiled[i] != null){
+				ExpressionProgram first = shared.get(compiled[i].getProgram());
+				if(first == null){
+					shared.put(compiled[i].getProgram(), compiled[i].getProgram());
+				}else{
+					compiled[i] = new CompiledExpression(compiled[i].getSource(), first);
+				}
+			}
+		}
+
+		//every line gets the result of its expression
+		CompiledExpression[] expressions = new CompiledExpression[sources.length];
+		ArrayList<Failure> failures = new ArrayList<Failure>();
+
+		for(int i = 0; i < sources.length; ++i){
+			if(indexes[i] == -1){
+				continue;
+			}
+
+			expressions[i] = compiled[indexes[i]];
+
+			if(errors[indexes[i]] != null){
+				failures.add(new Failure(i + 1, sources[i], errors[indexes[i]]));
+			}
+		}
+
+		return new ExpressionCatalog(sources, expressions, failures, texts.size());
+	}
+
+	/**
+	 * @param line The number of the line, starting at 1.
+	 *
+	 * @return The expression on the given line, or <b>null</b> if the line is blank
+	 * 		or its expression is malformed.
+	 */
+	public CompiledExpression get(int line){
+		return this.expressions[line - 1];
+	}
+
+	/**
+	 * @param line The number of the line, starting at 1.
+	 *
+	 * @return The text of the given line, without the spaces around it.
+	 */
+	public String getSource(int line){
+		return this.sources[line - 1];
+	}
+
+	/**
+	 * @return The number of lines of the catalog, including blank and malformed ones.
+	 */
+	public int getLineCount(){
+		return this.sources.length;
+	}
+
+	/**
+	 * @return The number of different expressions of the catalog, each of which was
+	 * 		compiled once.
+	 */
+	public int getUniqueCount(){
+		return this.uniqueCount;
+	}
+
+	/**
+	 * @return The malformed lines of the catalog, in line order.
+	 */
+	public List<Failure> getFailures(){
+		return this.failures;
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if a line of the catalog is malformed
+	 * 		and returns <b>false</b> otherwise.
+	 */
+	public boolean hasFailures(){
+		return !this.failures.isEmpty();
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Compiles every expression, handing them out to the threads of the executor in
+	 * batches of {@link #BATCH_SIZE}, and waits for all of them to be compiled.
+	 *
+	 * @param texts The expressions.
+	 * @param compiled Where to store the compiled expressions.
+	 * @param errors Where to store the reason why an expression could not be compiled.
+	 * @param executor The executor compiling the expressions.
+	 */
+	private static void compileAll(final List<String> texts, final CompiledExpression[] compiled,
+			final IllegalArgumentException[] errors, Executor executor){
+
+		int threads = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+		int workers = Math.min(threads, (texts.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(workers);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Runnable worker = new Runnable(){
+			@Override
+			public void run(){
+				try{
+					for(int start = next.getAndAdd(BATCH_SIZE); start < texts.size();
+							start = next.getAndAdd(BATCH_SIZE)){
+
+						int end = Math.min(start + BATCH_SIZE, texts.size());
+						for(int i = start; i < end; ++i){
+							try{
+								compiled[i] = ExpressionParser.compile(texts.get(i));
+							}catch(IllegalArgumentException e){
+								errors[i] = e;
+							}
+						}
+					}
+				}catch(Throwable t){
+					failure.compareAndSet(null, t);
+				}finally{
+					done.countDown();
+				}
+			}
+		};
+
+		//a single batch is not worth handing over
+		if(workers <= 1){
+			worker.run();
+		}else{
+			for(int i = 0; i < workers; ++i){
+				executor.execute(worker);
+			}
+
+			try{
+				done.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while compiling the catalog", e);
+			}
+		}
+
+		Throwable t = failure.get();
+		if(t instanceof RuntimeException){
+			throw (RuntimeException) t;
+		}
+		if(t instanceof Error){
+			throw (Error) t;
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * A line of the catalog holding a malformed expression.
+	 */
+	public static class Failure {
+
+		private final int line;
+		private final String source;
+		private final IllegalArgumentException cause;
+
+		private Failure(int line, String source, IllegalArgumentException cause){
+			this.line = line;
+			this.source = source;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return The number of the line, starting at 1.
+		 */
+		public int getLine(){
+			return this.line;
+		}
+
+		/**
+		 * @return The text of the line.
+		 */
+		public String getSource(){
+			return this.source;
+		}
+
+		/**
+		 * @return What is wrong with the expression.
+		 */
+		public String getMessage(){
+			return this.cause.getMessage();
+		}
+
+		/**
+		 * @return The exception thrown when the expression was compiled.
+		 */
+		public IllegalArgumentException getCause(){
+			return this.cause;
+		}
+
+		@Override
+		public String toString(){
+			return "Line " + this.line + ": " + this.cause.getMessage();
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package expressionparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link ExpressionMonitor} keeping counters of everything it is told: how
+ * many expressions were parsed and compiled and how long it took, how many could
+ * not be parsed, the hit rate of the caches, how many rows were evaluated and how
+ * many times each opcode was executed. It also keeps track of the expressions
+ * evaluated the most, so that the hot formulas of an application can be found.
+ *
+ * <br><br>Single row evaluations are only sampled (see {@link Instrumentation}),
+ * so their counts are estimates: every sample counts for
+ * {@link Instrumentation#getSampleRate()} evaluations. Batch evaluations are
+ * counted exactly. Counters are updated with atomic operations and can be read
+ * at any time.
+ *
+ * <br><br>Example: <code>Instrumentation.setMonitor(counters = new ExpressionCounters());</code>
+ *
+ * @author David Boivin
+ */
+public class ExpressionCounters implements ExpressionMonitor {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//beyond this, new expressions are no longer tracked so that the counters cannot grow forever
+	public static final int MAX_TRACKED_EXPRESSIONS = 4096;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final AtomicLong parseCount = new AtomicLong();
+	private final AtomicLong parseNanos = new AtomicLong();
+	private final AtomicLong compileCount = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+	private final AtomicLong sampleCount = new AtomicLong();
+	private final AtomicLong evaluationCount = new AtomicLong();
+	private final AtomicLong evaluationNanos = new AtomicLong();
+	private final AtomicLong batchRows = new AtomicLong();
+	private final AtomicLong batchNanos = new AtomicLong();
+	private final AtomicLongArray opcodeCounts = new AtomicLongArray(1 << ExpressionProgram.OPCODE_BITS);
+
+	//equal compiled expressions, such as those shared by the caches, are counted together
+	private final ConcurrentHashMap<CompiledExpression, AtomicLong> expressions =
+			new ConcurrentHashMap<CompiledExpression, AtomicLong>();
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	@Override
+	public void parsed(String expression, int tokenCount, int nestingDepth, long nanos){
+		this.parseCount.incrementAndGet();
+		this.parseNanos.addAndGet(nanos);
+	}
+
+	@Override
+	public void compiled(CompiledExpression expression, long nanos){
+		this.compileCount.incrementAndGet();
+		this.compileNanos.addAndGet(nanos);
+	}
+
+	@Override
+	public void failed(String expression, IllegalArgumentException error){
+		this.failureCount.incrementAndGet();
+	}
+
+	@Override
+	public void cacheLookup(String expression, boolean hit){
+		(hit ? this.cacheHits : this.cacheMisses).incrementAndGet();
+	}
+
+	@Override
+	public void sampled(CompiledExpression expression, long nanos){
+
+		int weight = Instrumentation.getSampleRate();
+
+		this.sampleCount.incrementAndGet();
+		this.evaluationCount.addAndGet(weight);
+		this.evaluationNanos.addAndGet(nanos * weight);
+		this.countOpcodes(expression, weight);
+	}
+
+	@Override
+	public void evaluatedBatch(CompiledExpression expression, int rows, long nanos){
+		this.batchRows.addAndGet(rows);
+		this.batchNanos.addAndGet(nanos);
+		this.countOpcodes(expression, rows);
+	}
+
+	/**
+	 * Sets every counter back to zero and forgets the tracked expressions.
+	 */
+	public void reset(){
+
+		AtomicLong[] counters = {this.parseCount, this.parseNanos, this.compileCount, this.compileNanos,
+				this.failureCount, this.cacheHits, this.cacheMisses, this.sampleCount, this.evaluationCount,
+				this.evaluationNanos, this.batchRows, this.batchNanos};
+
+		for(AtomicLong counter : counters){
+			counter.set(0);
+		}
+
+		for(int i = 0; i < this.opcodeCounts.length(); ++i){
+			this.opcodeCounts.set(i, 0);
+		}
+
+		this.expressions.clear();
+	}
+
+	/**
+	 * @return The number of expressions parsed.
+	 */
+	public long getParseCount(){
+		return this.parseCount.get();
+	}
+
+	/**
+	 * @return The total time spent parsing, in nanoseconds.
+	 */
+	public long getParseNanos(){
+		return this.parseNanos.get();
+	}
+
+	/**
+	 * @return The number of expressions compiled.
+	 */
+	public long getCompileCount(){
+		return this.compileCount.get();
+	}
+
+	/**
+	 * @return The total time spent compiling, parsing included, in nanoseconds.
+	 */
+	public long getCompileNanos(){
+		return this.compileNanos.get();
+	}
+
+	/**
+	 * @return The number of expressions which could not be parsed.
+	 */
+	public long getFailureCount(){
+		return this.failureCount.get();
+	}
+
+	/**
+	 * @return The number of cache lookups which found their expression.
+	 */
+	public long getCacheHitCount(){
+		return this.cacheHits.get();
+	}
+
+	/**
+	 * @return The number of cache lookups which had to compile their expression.
+	 */
+	public long getCacheMissCount(){
+		return this.cacheMisses.get();
+	}
+
+	/**
+	 * @return The share of cache lookups which found their expression, between 0 and 1,
+	 * 		or NaN if there was no lookup.
+	 */
+	public double getCacheHitRate(){
+		long hits = this.cacheHits.get();
+		return hits / (double) (hits + this.cacheMisses.get());
+	}
+
+	/**
+	 * @return The number of single row evaluations which were sampled.
+	 */
+	public long getSampleCount(){
+		return this.sampleCount.get();
+	}
+
+	/**
+	 * @return The estimated number of single row evaluations.
+	 */
+	public long getEvaluationCount(){
+		return this.evaluationCount.get();
+	}
+
+	/**
+	 * @return The estimated total time spent in single row evaluations, in nanoseconds.
+	 */
+	public long getEvaluationNanos(){
+		return this.evaluationNanos.get();
+	}
+
+	/**
+	 * @return The number of rows evaluated by batch evaluations.
+	 */
+	public long getBatchRowCount(){
+		return this.batchRows.get();
+	}
+
+	/**
+	 * @return The total time spent in batch evaluations, in nanoseconds.
+	 */
+	public long getBatchNanos(){
+		return this.batchNanos.get();
+	}
+
+	/**
+	 * @param opcode The opcode, one of the constants of {@link ExpressionProgram}.
+	 *
+	 * @return The estimated number of times the opcode was executed, in single row
+	 * 		and batch evaluations.
+	 */
+	public long getOpcodeCount(int opcode){
+		return this.opcodeCounts.get(opcode);
+	}
+
+	/**
+	 * Gives the expressions evaluated the most, with their estimated number of
+	 * evaluations (single rows and batch rows together). Identical expressions
+	 * compiled separately are added up.
+	 *
+	 * @param limit The maximum number of expressions to give.
+	 *
+	 * @return The sources of the expressions and their number of evaluations, the most
+	 * 		evaluated first.
+	 */
+	public Map<String, Long> getHotExpressions(int limit){
+
+		HashMap<String, Long> totals = new HashMap<String, Long>();
+
+		for(Map.Entry<CompiledExpression, AtomicLong> entry : this.expressions.entrySet()){
+			String source = entry.getKey().getSource();
+			Long previous = totals.get(source);
+			totals.put(source, (previous == null ? 0 : previous) + entry.getValue().get());
+		}
+
+		ArrayList<Map.Entry<String, Long>> hottest = new ArrayList<Map.Entry<String, Long>>(totals.entrySet());
+
+		Collections.sort(hottest, new Comparator<Map.Entry<String, Long>>(){
+			@Override
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b){
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+
+		LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>();
+		for(int i = 0; i < hottest.size() && i < limit; ++i){
+			result.put(hottest.get(i).getKey(), hottest.get(i).getValue());
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString(){
+
+		StringBuilder report = new StringBuilder();
+
+		report.append("parsed=").append(this.getParseCount())
+				.append(", compiled=").append(this.getCompileCount())
+				.append(", failures=").append(this.getFailureCount())
+				.append(", cache hits=").append(this.getCacheHitCount())
+				.append(", cache misses=").append(this.getCacheMissCount())
+				.append(", evaluations~").append(this.getEvaluationCount())
+				.append(", batch rows=").append(this.getBatchRowCount())
+				.append(", opcodes={");
+
+		String separator = "";
+		for(int opcode = 0; opcode < this.opcodeCounts.length(); ++opcode){
+			if(this.opcodeCounts.get(opcode) > 0){
+				report.append(separator).append(ExpressionCounters.getOpcodeName(opcode))
+						.append('=').append(this.opcodeCounts.get(opcode));
+				separator = ", ";
+			}
+		}
+
+		return report.append('}').toString();
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Counts every instruction of the expression as executed the given number of
+	 * times, since programs have no branches, and the expression as evaluated as many
+	 * times. Expressions are only tracked up to {@link #MAX_TRACKED_EXPRESSIONS}.
+	 *
+	 * @param expression The evaluated expression.
+	 * @param times The number of evaluations.
+	 */
+	private void countOpcodes(CompiledExpression expression, long times){
+
+		ExpressionProgram program = expression.getProgram();
+		for(int i = 0; i < program.length(); ++i){
+			this.opcodeCounts.addAndGet(program.getOpcode(i), times);
+		}
+
+		AtomicLong evaluations = this.expressions.get(expression);
+
+		if(evaluations == null && this.expressions.size() < MAX_TRACKED_EXPRESSIONS){
+			AtomicLong created = new AtomicLong();
+			evaluations = this.expressions.putIfAbsent(expression, created);
+			if(evaluations == null){
+				evaluations = created;
+			}
+		}
+
+		if(evaluations != null){
+			evaluations.addAndGet(times);
+		}
+	}
+
+	/**
+	 * @param opcode An opcode.
+	 *
+	 * @return The symbol of the opcode, or its name if it is not an operator.
+	 */
+	private static String getOpcodeName(int opcode){
+
+		switch(opcode){
+
+			case ExpressionProgram.CONST:
+				return "const";
+
+			case ExpressionProgram.LOAD:
+				return "load";
+
+			case ExpressionProgram.CALL:
+				return "call";
+
+			default:
+				String symbol = ExpressionProgram.getSymbol(opcode);
+				return opcode >= ExpressionProgram.FAST_SIN ? "fast " + symbol : symbol;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package expressionparser;
+
+/**
+ * A compiled expression in the form of a plain Java method. Instances are
+ * created by the {@link BytecodeCompiler}, which generates one class per
+ * expression with the arithmetic written out straight-line in
+ * {@link #evaluate(double[])}.
+ *
+ * @author David Boivin
+ */
+public interface ExpressionFunction {
+
+	/**
+	 * Evaluates the expression with the given values for its variables.
+	 *
+	 * @param variables The values of the variables, by slot. The array must hold
+	 * 		at least {@link ExpressionProgram#getVariableCount()} values.
+	 *
+	 * @return The result of the expression.
+	 */
+	double evaluate(double[] variables);
+}
@@ -0,0 +1,670 @@
+package expressionparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A set of expressions compiled together into a single graph in which every
+ * distinct subexpression appears only once. Each expression is compiled and
+ * simplified as usual, then its instructions are replayed and every node is
+ * looked up in a table of the nodes already built (hash-consing). A node with
+ * the same operator and the same operands as an existing one is not built again,
+ * so <b>(a-b)^2</b> appearing in several terms of an expression, or in several
+ * expressions of the graph, is computed only once per evaluation. The operands
+ * of <b>+</b> and <b>*</b> are put in a fixed order first, since swapping them
+ * never changes the result, so <b>c+(a-b)</b> and <b>(a-b)+c</b> are also shared.
+ *
+ * <br><br>The graph is evaluated as a list of nodes in which every operand comes
+ * before the nodes using it, each node writing its value into its own register.
+ * Evaluating the graph gives the value of every expression at once, one output per
+ * expression. The variables of all of the expressions share a single set of slots:
+ * a variable used by several expressions is given once.
+ *
+ * <br><br>Graphs are immutable and can safely be shared between threads.
+ *
+ * @author David Boivin
+ */
+public class ExpressionGraph {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The number of rows evaluated together by {@link #evaluate(double[][], double[][])}.
+	 * Every node needs a block of registers, so blocks are smaller than those of the
+	 * {@link BatchEvaluator}.
+	 */
+	public static final int BLOCK_SIZE = 256;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final String[] variables;
+	private final int[] opcodes;
+	private final int[] first;			//index of the first operand of every node in operands
+	private final int[] operands;			//registers of the operands, or the slot of a variable
+	private final double[] values;			//value of every constant node
+	private final Operator[] functions;		//function of every call node
+	private final int[] outputs;			//register of every expression
+	private final int maxArity;
+	private final int instructionCount;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private ExpressionGraph(Builder builder, int[] outputs, int instructionCount){
+		this.variables = builder.variables.toArray(new String[builder.variables.size()]);
+		this.opcodes = Arrays.copyOf(builder.opcodes, builder.size);
+		this.first = Arrays.copyOf(builder.first, builder.size + 1);
+		this.operands = Arrays.copyOf(builder.operands, builder.operandCount);
+		this.values = Arrays.copyOf(builder.values, builder.size);
+		this.functions = Arrays.copyOf(builder.functions, builder.size);
+		this.outputs = outputs;
+		this.maxArity = builder.maxArity;
+		this.instructionCount = instructionCount;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Compiles the given expressions together. The variables are given their slots
+	 * in order of first appearance, going through the expressions in order.
+	 *
+	 * @param expressions The String representations of the expressions.
+	 *
+	 * @return The graph of the expressions.
+	 *
+	 * @throws IllegalArgumentException If an expression could not be parsed.
+	 */
+	public static ExpressionGraph compile(String... expressions){
+
+		CompiledExpression[] compiled = new CompiledExpression[expressions.length];
+
+		for(int i = 0; i < expressions.length; ++i){
+			compiled[i] = ExpressionParser.compile(expressions[i]);
+		}
+
+		return ExpressionGraph.compile(compiled);
+	}
+
+	/**
+	 * Compiles the given expressions together, using the given variables.
+	 *
+	 * @param expressions The String representations of the expressions.
+	 * @param variables The names of the variables used by the expressions, in slot order.
+	 *
+	 * @return The graph of the expressions.
+	 *
+	 * @throws IllegalArgumentException If an expression could not be parsed or if it
+	 * 		uses a variable which is not one of the given ones.
+	 */
+	public static ExpressionGraph compile(String[] expressions, String[] variables){
+
+		CompiledExpression[] compiled = new CompiledExpression[expressions.length];
+
+		for(int i = 0; i < expressions.length; ++i){
+			compiled[i] = ExpressionParser.compile(expressions[i], variables);
+		}
+
+		return ExpressionGraph.compile(compiled, variables);
+	}
+
+	/**
+	 * Builds the graph of expressions which were already compiled. Variables are matched
+	 * between the expressions by name and given their slots in order of first appearance.
+	 *
+	 * @param expressions The compiled expressions.
+	 *
+	 * @return The graph of the expressions.
+	 */
+	public static ExpressionGraph compile(CompiledExpression... expressions){
+		return ExpressionGraph.compile(expressions, new String[0]);
+	}
+
+	/**
+	 * Evaluates every expression of the graph.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The value of every expression, in the order the expressions were given.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 */
+	public double[] evaluate(double... variables){
+		double[] results = new double[this.outputs.length];
+		this.evaluate(variables, results);
+		return results;
+	}
+
+	/**
+	 * Evaluates every expression of the graph, writing their values into the given
+	 * array. The registers come from the operand stack of the current thread, so once
+	 * the thread has warmed up nothing is allocated.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 * @param results Where to write the value of every expression.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables or if
+	 * 		the results array is too short.
+	 */
+	public void evaluate(double[] variables, double[] results){
+
+		if(variables.length < this.variables.length){
+			throw new IllegalArgumentException("Expected " + this.variables.length +
+					" variable values but got " + variables.length);
+		}
+
+		if(results.length < this.outputs.length){
+			throw new IllegalArgumentException("Expected room for " + this.outputs.length +
+					" results but got " + results.length);
+		}
+
+		//the operands of a call are gathered after the last register
+		double[] registers = ProgramEvaluator.acquireStack(this.opcodes.length + this.maxArity);
+		try{
+			this.run(variables, registers);
+
+			for(int i = 0; i < this.outputs.length; ++i){
+				results[i] = registers[this.outputs[i]];
+			}
+		}finally{
+			ProgramEvaluator.releaseStack(registers);
+		}
+	}
+
+	/**
+	 * Evaluates every expression of the graph for every row of the given columns,
+	 * one block of rows at a time, each node being computed for the whole block at
+	 * once.
+	 *
+	 * @param columns The values of the variables, one column per slot.
+	 * @param results One column per expression in which to write its values. All of
+	 * 		them must be as long.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		results than expressions, or if a column is too short.
+	 */
+	public void evaluate(double[][] columns, double[][] results){
+
+		if(results.length < this.outputs.length){
+			throw new IllegalArgumentException("Expected " + this.outputs.length +
+					" result columns but got " + results.length);
+		}
+		if(columns.length < this.variables.length){
+			throw new IllegalArgumentException("Expected " + this.variables.length +
+					" columns but got " + columns.length);
+		}
+
+		int rows = this.outputs.length == 0 ? 0 : results[0].length;
+
+		for(int i = 0; i < this.outputs.length; ++i){
+			if(results[i].length != rows){
+				throw new IllegalArgumentException("Result column " + i + " has " + results[i].length +
+						" rows instead of " + rows);
+			}
+		}
+		for(int i = 0; i < this.variables.length; ++i){
+			if(columns[i].length < rows){
+				throw new IllegalArgumentException("Column of variable " + this.variables[i] +
+						" has " + columns[i].length + " rows instead of at least " + rows);
+			}
+		}
+
+		double[][] registers = new double[this.opcodes.length][BLOCK_SIZE];
+		double[] arguments = new double[this.maxArity];
+
+		for(int start = 0; start < rows; start += BLOCK_SIZE){
+			int count = Math.min(BLOCK_SIZE, rows - start);
+
+			this.runBlock(columns, registers, arguments, start, count);
+
+			for(int i = 0; i < this.outputs.length; ++i){
+				System.arraycopy(registers[this.outputs[i]], 0, results[i], start, count);
+			}
+		}
+	}
+
+	/**
+	 * @return The names of the variables of the graph, in slot order.
+	 */
+	public String[] getVariables(){
+		return this.variables.clone();
+	}
+
+	/**
+	 * @return The number of expressions, hence of results, of the graph.
+	 */
+	public int getOutputCount(){
+		return this.outputs.length;
+	}
+
+	/**
+	 * @return The number of distinct nodes of the graph, each of which is computed
+	 * 		once per evaluation.
+	 */
+	public int getNodeCount(){
+		return this.opcodes.length;
+	}
+
+	/**
+	 * @return The total number of instructions of the expressions before they were
+	 * 		merged, which is what evaluating them one by one would cost.
+	 */
+	public int getInstructionCount(){
+		return this.instructionCount;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Builds the graph of the given expressions.
+	 *
+	 * @param expressions The compiled expressions.
+	 * @param variables The variables of the graph, in slot order. More are added in
+	 * 		order of first appearance if the expressions use others.
+	 *
+	 * @return The graph.
+	 */
+	private static ExpressionGraph compile(CompiledExpression[] expressions, String[] variables){
+
+		Builder builder = new Builder(variables);
+		int[] outputs = new int[expressions.length];
+		int instructionCount = 0;
+
+		for(int i = 0; i < expressions.length; ++i){
+			ExpressionProgram program = expressions[i].getProgram();
+			outputs[i] = builder.add(program);
+			instructionCount += program.length();
+		}
+
+		return new ExpressionGraph(builder, outputs, instructionCount);
+	}
+
+	/**
+	 * Computes the value of every node, in order.
+	 *
+	 * @param variables The values of the variables.
+	 * @param registers The registers, one per node followed by room for the operands
+	 * 		of a call.
+	 */
+	private void run(double[] variables, double[] registers){
+
+		int[] operands = this.operands;
+		int[] first = this.first;
+		int calls = this.opcodes.length;	//where the operands of a call are gathered
+
+		for(int i = 0; i < this.opcodes.length; ++i){
+
+			int a = first[i];
+
+			switch(this.opcodes[i]){
+
+				case ExpressionProgram.CONST:
+					registers[i] = this.values[i];
+					break;
+
+				case ExpressionProgram.LOAD:
+					registers[i] = variables[operands[a]];
+					break;
+
+				case ExpressionProgram.ADD:
+					registers[i] = registers[operands[a]] + registers[operands[a + 1]];
+					break;
+
+				case ExpressionProgram.SUB:
+					registers[i] = registers[operands[a]] - registers[operands[a + 1]];
+					break;
+
+				case ExpressionProgram.MUL:
+					registers[i] = registers[operands[a]] * registers[operands[a + 1]];
+					break;
+
+				case ExpressionProgram.DIV:
+					registers[i] = registers[operands[a]] / registers[operands[a + 1]];
+					break;
+
+				case ExpressionProgram.POW:
+					registers[i] = Math.pow(registers[operands[a]], registers[operands[a + 1]]);
+					break;
+
+				case ExpressionProgram.NEG:
+					registers[i] = -registers[operands[a]];
+					break;
+
+				case ExpressionProgram.SIN:
+					registers[i] = Math.sin(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.COS:
+					registers[i] = Math.cos(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.TAN:
+					registers[i] = Math.tan(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.ASIN:
+					registers[i] = Math.asin(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.ACOS:
+					registers[i] = Math.acos(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.ATAN:
+					registers[i] = Math.atan(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.EXP:
+					registers[i] = Math.exp(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.LOG:
+					registers[i] = Math.log(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.SQRT:
+					registers[i] = Math.sqrt(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.FAST_SIN:
+					registers[i] = FastMath.sin(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.FAST_COS:
+					registers[i] = FastMath.cos(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.FAST_EXP:
+					registers[i] = FastMath.exp(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.FAST_LOG:
+					registers[i] = FastMath.log(registers[operands[a]]);
+					break;
+
+				case ExpressionProgram.FAST_POW:
+					registers[i] = FastMath.pow(registers[operands[a]], registers[operands[a + 1]]);
+					break;
+
+				case ExpressionProgram.CALL:
+					for(int j = a; j < first[i + 1]; ++j){
+						registers[calls + j - a] = registers[operands[j]];
+					}
+					registers[i] = this.functions[i].apply(registers, calls);
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at node " + i);
+			}
+		}
+	}
+
+	/**
+	 * Computes the value of every node for one block of rows.
+	 *
+	 * @param columns The values of the variables.
+	 * @param registers The registers, one block per node.
+	 * @param arguments Room for the operands of a call.
+	 * @param start The first row of the block.
+	 * @param count The number of rows in the block.
+	 */
+	private void runBlock(double[][] columns, double[][] registers, double[] arguments, int start, int count){
+
+		int[] operands = this.operands;
+		int[] first = this.first;
+
+		for(int i = 0; i < this.opcodes.length; ++i){
+
+			int opcode = this.opcodes[i];
+			int a = first[i];
+			double[] r = registers[i];
+
+			if(opcode == ExpressionProgram.CONST){
+				Arrays.fill(r, 0, count, this.values[i]);
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				System.arraycopy(columns[operands[a]], start, r, 0, count);
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.CALL){
+				int arity = first[i + 1] - a;
+				for(int j = 0; j < count; ++j){
+					for(int k = 0; k < arity; ++k){
+						arguments[k] = registers[operands[a + k]][j];
+					}
+					r[j] = this.functions[i].apply(arguments, 0);
+				}
+				continue;
+			}
+
+			double[] x = registers[operands[a]];
+
+			if(ExpressionProgram.getArity(opcode) == 1){
+				System.arraycopy(x, 0, r, 0, count);
+				BatchEvaluator.evaluateUnary(opcode, r, count);
+				continue;
+			}
+
+			double[] y = registers[operands[a + 1]];
+
+			switch(opcode){
+
+				case ExpressionProgram.ADD:
+					for(int j = 0; j < count; ++j){
+						r[j] = x[j] + y[j];
+					}
+					break;
+
+				case ExpressionProgram.SUB:
+					for(int j = 0; j < count; ++j){
+						r[j] = x[j] - y[j];
+					}
+					break;
+
+				case ExpressionProgram.MUL:
+					for(int j = 0; j < count; ++j){
+						r[j] = x[j] * y[j];
+					}
+					break;
+
+				case ExpressionProgram.DIV:
+					for(int j = 0; j < count; ++j){
+						r[j] = x[j] / y[j];
+					}
+					break;
+
+				case ExpressionProgram.POW:
+					for(int j = 0; j < count; ++j){
+						r[j] = Math.pow(x[j], y[j]);
+					}
+					break;
+
+				case ExpressionProgram.FAST_POW:
+					for(int j = 0; j < count; ++j){
+						r[j] = FastMath.pow(x[j], y[j]);
+					}
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at node " + i);
+			}
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * Builds the nodes of a graph, adding a node only if there is no identical one yet.
+	 */
+	private static class Builder {
+
+		private final ArrayList<String> variables = new ArrayList<String>();
+		private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+		private final HashMap<Key, Integer> nodes = new HashMap<Key, Integer>();
+
+		private int[] opcodes = new int[16];
+		private int[] first = new int[17];
+		private int[] operands = new int[32];
+		private double[] values = new double[16];
+		private Operator[] functions = new Operator[16];
+		private int size;
+		private int operandCount;
+		private int maxArity;
+
+		private Builder(String[] variables){
+			for(int i = 0; i < variables.length; ++i){
+				this.getSlot(variables[i]);
+			}
+		}
+
+		/**
+		 * Adds the nodes of the given program.
+		 *
+		 * @param program The program.
+		 *
+		 * @return The node holding the result of the program.
+		 */
+		private int add(ExpressionProgram program){
+
+			int[] stack = new int[Math.max(program.getMaxStackDepth(), 1)];
+			int top = -1;
+
+			for(int i = 0; i < program.length(); ++i){
+
+				int opcode = program.getOpcode(i);
+
+				if(opcode == ExpressionProgram.CONST){
+					double value = program.getConstant(program.getOperand(i));
+					stack[++top] = this.intern(new Key(opcode, Double.doubleToRawLongBits(value), null,
+							new int[0]), value);
+					continue;
+				}
+
+				if(opcode == ExpressionProgram.LOAD){
+					int slot = this.getSlot(program.getVariable(program.getOperand(i)));
+					stack[++top] = this.intern(new Key(opcode, 0, null, new int[] {slot}), 0);
+					continue;
+				}
+
+				int arity = program.getInstructionArity(i);
+				int[] args = Arrays.copyOfRange(stack, top - arity + 1, top + 1);
+				top -= arity - 1;
+
+				//swapping the operands of + and * never changes the result
+				if((opcode == ExpressionProgram.ADD || opcode == ExpressionProgram.MUL) && args[0] > args[1]){
+					int swap = args[0];
+					args[0] = args[1];
+					args[1] = swap;
+				}
+
+				Operator function = opcode == ExpressionProgram.CALL ?
+						program.getFunction(program.getOperand(i)) : null;
+
+				stack[top] = this.intern(new Key(opcode, 0, function, args), 0);
+			}
+
+			return stack[0];
+		}
+
+		/**
+		 * Gives the node matching the given key, adding it if there is none.
+		 *
+		 * @param key The key of the node.
+		 * @param value The value of a constant node.
+		 *
+		 * @return The index of the node.
+		 */
+		private int intern(Key key, double value){
+
+			Integer node = this.nodes.get(key);
+			if(node != null){
+				return node;
+			}
+
+			if(this.size == this.opcodes.length){
+				int capacity = this.size * 2;
+				this.opcodes = Arrays.copyOf(this.opcodes, capacity);
+				this.first = Arrays.copyOf(this.first, capacity + 1);
+				this.values = Arrays.copyOf(this.values, capacity);
+				this.functions = Arrays.copyOf(this.functions, capacity);
+			}
+
+			while(this.operandCount + key.operands.length > this.operands.length){
+				this.operands = Arrays.copyOf(this.operands, this.operands.length * 2);
+			}
+
+			System.arraycopy(key.operands, 0, this.operands, this.operandCount, key.operands.length);
+			this.operandCount += key.operands.length;
+
+			this.opcodes[this.size] = key.opcode;
+			this.values[this.size] = value;
+			this.functions[this.size] = key.function;
+			this.first[this.size + 1] = this.operandCount;
+
+			if(key.opcode == ExpressionProgram.CALL){
+				this.maxArity = Math.max(this.maxArity, key.operands.length);
+			}
+
+			this.nodes.put(key, this.size);
+			return this.size++;
+		}
+
+		/**
+		 * @param name The name of a variable.
+		 *
+		 * @return The slot of the variable, which is added if it is new.
+		 */
+		private int getSlot(String name){
+
+			Integer slot = this.slots.get(name);
+
+			if(slot == null){
+				slot = this.variables.size();
+				this.slots.put(name, slot);
+				this.variables.add(name);
+			}
+
+			return slot;
+		}
+	}
+
+	/**
+	 * Identifies a node by its operator and its operands.
+	 */
+	private static class Key {
+
+		private final int opcode;
+		private final long bits;		//the bits of the value of a constant
+		private final Operator function;
+		private final int[] operands;	//the operand nodes, or the slot of a variable
+		private final int hash;
+
+		private Key(int opcode, long bits, Operator function, int[] operands){
+			this.opcode = opcode;
+			this.bits = bits;
+			this.function = function;
+			this.operands = operands;
+			this.hash = 31 * (31 * (31 * opcode + (int) (bits ^ (bits >>> 32))) +
+					System.identityHashCode(function)) + Arrays.hashCode(operands);
+		}
+
+		@Override
+		public int hashCode(){
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object other){
+
+			if(!(other instanceof Key)){
+				return false;
+			}
+
+			Key key = (Key) other;
+			return this.opcode == key.opcode && this.bits == key.bits && this.function == key.function &&
+					Arrays.equals(this.operands, key.operands);
+		}
+	}
+}
@@ -0,0 +1,428 @@
+package expressionparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A network of named cells, much like a spreadsheet. A cell is either an
+ * <b>input</b> holding a value given with {@link #set(String, double)}, or a
+ * <b>formula</b> defined with {@link #define(String, String)} whose variables are
+ * the names of other cells. The value of every cell is kept, so reading a cell
+ * never evaluates anything.
+ *
+ * <br><br>The cells form a dependency graph built from the variables of the
+ * compiled formulas. When a cell changes, only the formulas downstream of it are
+ * evaluated again, in topological order, so every formula is evaluated at most
+ * once per update and only after all of its dependencies. A formula whose value
+ * did not change stops the update from spreading any further down its branch.
+ * Formulas that would make a cell depend on itself are rejected.
+ *
+ * <br><br>A formula may use a cell which has not been given a value yet. Such a
+ * cell is created as an input holding NaN until it is set.
+ *
+ * <br><br>Models are not thread safe.
+ *
+ * @author David Boivin
+ */
+public class ExpressionModel {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final OperatorRegistry registry;
+	private final HashMap<String, Cell> cells = new HashMap<String, Cell>();
+
+	//incremented by every walk of the graph, so cells never need to be unmarked
+	private int epoch;
+	private long evaluationCount;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates an empty model whose formulas use the default {@link OperatorRegistry}.
+	 */
+	public ExpressionModel(){
+		this(OperatorRegistry.getDefault());
+	}
+
+	/**
+	 * Creates an empty model whose formulas use the operators and functions of the
+	 * given registry.
+	 *
+	 * @param registry The operators and functions the formulas can use.
+	 */
+	public ExpressionModel(OperatorRegistry registry){
+		this.registry = registry;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Sets the value of an input cell and updates every formula depending on it. A
+	 * formula cell given a value becomes an input cell.
+	 *
+	 * @param name The name of the cell.
+	 * @param value The new value of the cell.
+	 *
+	 * @return This model.
+	 */
+	public ExpressionModel set(String name, double value){
+		return this.set(new String[] {name}, new double[] {value});
+	}
+
+	/**
+	 * Sets the values of several input cells at once and updates every formula
+	 * depending on any of them. Formulas depending on several of the cells are
+	 * only evaluated once.
+	 *
+	 * @param names The names of the cells.
+	 * @param values The new values of the cells.
+	 *
+	 * @return This model.
+	 *
+	 * @throws IllegalArgumentException If there are not as many values as names.
+	 */
+	public ExpressionModel set(String[] names, double[] values){
+
+		if(names.length != values.length){
+			throw new IllegalArgumentException("Expected " + names.length + " values but got " + values.length);
+		}
+
+		int changes = ++this.epoch;
+		ArrayList<Cell> roots = new ArrayList<Cell>();
+
+		for(int i = 0; i < names.length; ++i){
+
+			Cell cell = this.getOrCreate(names[i]);
+
+			if(cell.expression != null){
+				this.detach(cell);
+			}else if(Double.doubleToLongBits(cell.value) == Double.doubleToLongBits(values[i])){
+				continue;
+			}
+
+			cell.value = values[i];
+			cell.changed = changes;
+			roots.add(cell);
+		}
+
+		this.update(roots, changes);
+		return this;
+	}
+
+	/**
+	 * Defines a formula cell, replacing the previous definition or value of the cell,
+	 * and updates the cell and every formula depending on it.
+	 *
+	 * @param name The name of the cell.
+	 * @param expression The formula. Its variables are the names of other cells.
+	 *
+	 * @return This model.
+	 *
+	 * @throws IllegalArgumentException If the formula could not be parsed or if the
+	 * 		cell would end up depending on itself. The model is left unchanged.
+	 */
+	public ExpressionModel define(String name, String expression){
+
+		CompiledExpression compiled = ExpressionParser.compile(expression, this.registry);
+		String[] variables = compiled.getVariables();
+
+		this.checkCycle(name, variables);
+
+		Cell cell = this.getOrCreate(name);
+		this.detach(cell);
+
+		cell.expression = compiled;
+		cell.arguments = new double[variables.length];
+		cell.dependencies = new Cell[variables.length];
+
+		for(int i = 0; i < variables.length; ++i){
+			cell.dependencies[i] = this.getOrCreate(variables[i]);
+			cell.dependencies[i].dependents.add(cell);
+		}
+
+		int changes = ++this.epoch;
+		cell.evaluate();
+		++this.evaluationCount;
+		cell.changed = changes;
+
+		this.update(new ArrayList<Cell>(Arrays.asList(cell)), changes);
+		return this;
+	}
+
+	/**
+	 * @param name The name of the cell.
+	 *
+	 * @return The current value of the cell.
+	 *
+	 * @throws IllegalArgumentException If there is no such cell.
+	 */
+	public double get(String name){
+		return this.getCell(name).value;
+	}
+
+	/**
+	 * @param name The name of the cell.
+	 *
+	 * @return The formula of the cell, or <b>null</b> if it is an input cell.
+	 *
+	 * @throws IllegalArgumentException If there is no such cell.
+	 */
+	public CompiledExpression getExpression(String name){
+		return this.getCell(name).expression;
+	}
+
+	/**
+	 * @param name The name of the cell.
+	 *
+	 * @return This method returns <b>true</b> if the model has a cell with the given
+	 * 		name and returns <b>false</b> otherwise.
+	 */
+	public boolean contains(String name){
+		return this.cells.containsKey(name);
+	}
+
+	/**
+	 * @return The number of cells of the model.
+	 */
+	public int size(){
+		return this.cells.size();
+	}
+
+	/**
+	 * @return The number of times a formula was evaluated since the model was created.
+	 */
+	public long getEvaluationCount(){
+		return this.evaluationCount;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates again every formula downstream of the given cells, in topological
+	 * order, skipping the formulas none of whose dependencies changed.
+	 *
+	 * @param roots The cells which changed. They are not evaluated again.
+	 * @param changes The epoch the changed cells are marked with.
+	 */
+	private void update(ArrayList<Cell> roots, int changes){
+
+		if(roots.isEmpty()){
+			return;
+		}
+
+		ArrayList<Cell> order = this.sortDownstream(roots);
+
+		for(int i = 0; i < order.size(); ++i){
+
+			Cell cell = order.get(i);
+
+			if(cell.changed == changes){
+				continue;
+			}
+
+			//a formula is only evaluated again if one of its dependencies changed
+			boolean dirty = false;
+			for(int j = 0; j < cell.dependencies.length && !dirty; ++j){
+				dirty = cell.dependencies[j].changed == changes;
+			}
+
+			if(!dirty){
+				continue;
+			}
+
+			double previous = cell.value;
+			cell.evaluate();
+			++this.evaluationCount;
+
+			if(Double.doubleToLongBits(previous) != Double.doubleToLongBits(cell.value)){
+				cell.changed = changes;
+			}
+		}
+	}
+
+	/**
+	 * Gives the given cells and every cell downstream of them in topological order,
+	 * found by an explicit depth first walk along the dependents of each cell. The
+	 * reverse of the order in which the walk leaves the cells is a topological order.
+	 *
+	 * @param roots The cells to start from.
+	 *
+	 * @return The cells in topological order.
+	 */
+	private ArrayList<Cell> sortDownstream(ArrayList<Cell> roots){
+
+		int visited = ++this.epoch;
+		ArrayList<Cell> order = new ArrayList<Cell>();
+		Cell[] stack = new Cell[16];
+		int[] next = new int[16];	//index of the next dependent to visit, for every cell on the stack
+
+		for(int r = 0; r < roots.size(); ++r){
+
+			if(roots.get(r).visited == visited){
+				continue;
+			}
+
+			int top = 0;
+			stack[0] = roots.get(r);
+			next[0] = 0;
+			stack[0].visited = visited;
+
+			while(top >= 0){
+
+				Cell cell = stack[top];
+
+				if(next[top] < cell.dependents.size()){
+
+					Cell dependent = cell.dependents.get(next[top]++);
+
+					if(dependent.visited != visited){
+						dependent.visited = visited;
+
+						if(++top == stack.length){
+							stack = Arrays.copyOf(stack, top * 2);
+							next = Arrays.copyOf(next, top * 2);
+						}
+
+						stack[top] = dependent;
+						next[top] = 0;
+					}
+					continue;
+				}
+
+				order.add(cell);
+				stack[top--] = null;
+			}
+		}
+
+		//every cell was left after all of the cells depending on it
+		for(int i = 0, j = order.size() - 1; i < j; ++i, --j){
+			Cell cell = order.get(i);
+			order.set(i, order.get(j));
+			order.set(j, cell);
+		}
+
+		return order;
+	}
+
+	/**
+	 * Makes sure that the given cell would not depend on itself if it used the given
+	 * variables, by looking for one of them downstream of the cell.
+	 *
+	 * @param name The name of the cell.
+	 * @param variables The cells the new formula of the cell uses.
+	 *
+	 * @throws IllegalArgumentException If the cell would depend on itself.
+	 */
+	private void checkCycle(String name, String[] variables){
+
+		HashSet<String> uses = new HashSet<String>(Arrays.asList(variables));
+
+		if(uses.contains(name)){
+			throw new IllegalArgumentException("Cycle: " + name + " depends on itself");
+		}
+
+		Cell cell = this.cells.get(name);
+		if(cell == null){
+			return;
+		}
+
+		ArrayList<Cell> downstream = this.sortDownstream(new ArrayList<Cell>(Arrays.asList(cell)));
+
+		for(int i = 0; i < downstream.size(); ++i){
+			if(uses.contains(downstream.get(i).name)){
+				throw new IllegalArgumentException("Cycle: " + name + " would depend on " +
+						downstream.get(i).name + ", which depends on " + name);
+			}
+		}
+	}
+
+	/**
+	 * Removes the given cell from the dependents of its dependencies, turning it into
+	 * an input cell.
+	 *
+	 * @param cell The cell.
+	 */
+	private void detach(Cell cell){
+
+		for(int i = 0; i < cell.dependencies.length; ++i){
+			cell.dependencies[i].dependents.remove(cell);
+		}
+
+		cell.expression = null;
+		cell.arguments = null;
+		cell.dependencies = Cell.NO_CELLS;
+	}
+
+	/**
+	 * @param name The name of the cell.
+	 *
+	 * @return The cell with the given name, created as an input holding NaN if there
+	 * 		was none.
+	 */
+	private Cell getOrCreate(String name){
+
+		Cell cell = this.cells.get(name);
+
+		if(cell == null){
+			cell = new Cell(name);
+			this.cells.put(name, cell);
+		}
+
+		return cell;
+	}
+
+	/**
+	 * @param name The name of the cell.
+	 *
+	 * @return The cell with the given name.
+	 *
+	 * @throws IllegalArgumentException If there is no such cell.
+	 */
+	private Cell getCell(String name){
+
+		Cell cell = this.cells.get(name);
+
+		if(cell == null){
+			throw new IllegalArgumentException("Unknown cell: " + name);
+		}
+
+		return cell;
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * A cell of the model.
+	 */
+	private static class Cell {
+
+		private static final Cell[] NO_CELLS = new Cell[0];
+
+		private final String name;
+		private final ArrayList<Cell> dependents = new ArrayList<Cell>();
+		private CompiledExpression expression;
+		private Cell[] dependencies = NO_CELLS;	//the cell used by each variable slot
+		private double[] arguments;
+		private double value = Double.NaN;
+		private int visited;
+		private int changed;
+
+		private Cell(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Evaluates the formula of the cell with the current values of its dependencies.
+		 */
+		private void evaluate(){
+
+			for(int i = 0; i < this.dependencies.length; ++i){
+				this.arguments[i] = this.dependencies[i].value;
+			}
+
+			this.value = this.expression.evaluate(this.arguments);
+		}
+	}
+}
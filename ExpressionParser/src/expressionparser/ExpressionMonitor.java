@@ -0,0 +1,75 @@
+package expressionparser;
+
+/**
+ * Receives what the parser, the cache and compiled expressions are doing, once a
+ * monitor is installed with {@link Instrumentation#setMonitor(ExpressionMonitor)}.
+ * Parsing, compiling and batch evaluation are reported every time, while evaluations
+ * of a single row are only sampled: one out of every {@link Instrumentation#getSampleRate()}
+ * evaluations on each thread is timed and reported, so that monitoring stays cheap
+ * for expressions evaluated millions of times per second.
+ *
+ * <br><br>Every method is called on the thread doing the work, right after the work
+ * is done, so implementations must be thread safe and quick. {@link ExpressionCounters}
+ * keeps counters of everything it is told.
+ *
+ * @author David Boivin
+ */
+public interface ExpressionMonitor {
+
+	/**
+	 * Called after an expression was parsed.
+	 *
+	 * @param expression The expression.
+	 * @param tokenCount The number of tokens of the expression (numbers, names,
+	 * 		operators, brackets and commas).
+	 * @param nestingDepth The deepest level of brackets of the expression.
+	 * @param nanos The time taken to parse the expression, in nanoseconds.
+	 */
+	void parsed(String expression, int tokenCount, int nestingDepth, long nanos);
+
+	/**
+	 * Called after an expression was parsed and optimized by one of the
+	 * <code>compile</code> methods of {@link ExpressionParser}.
+	 *
+	 * @param expression The compiled expression.
+	 * @param nanos The time taken to compile the expression, parsing included, in
+	 * 		nanoseconds.
+	 */
+	void compiled(CompiledExpression expression, long nanos);
+
+	/**
+	 * Called when an expression could not be parsed.
+	 *
+	 * @param expression The expression.
+	 * @param error What is wrong with the expression.
+	 */
+	void failed(String expression, IllegalArgumentException error);
+
+	/**
+	 * Called after an expression was looked up in an {@link ExpressionCache}.
+	 *
+	 * @param expression The expression.
+	 * @param hit <b>true</b> if the cache held the expression, <b>false</b> if it had
+	 * 		to be compiled.
+	 */
+	void cacheLookup(String expression, boolean hit);
+
+	/**
+	 * Called for one out of every {@link Instrumentation#getSampleRate()} evaluations
+	 * of a single row of a {@link CompiledExpression}.
+	 *
+	 * @param expression The evaluated expression.
+	 * @param nanos The time taken by this evaluation, in nanoseconds.
+	 */
+	void sampled(CompiledExpression expression, long nanos);
+
+	/**
+	 * Called after the rows of a batch were evaluated by a {@link CompiledExpression},
+	 * one after the other or in parallel.
+	 *
+	 * @param expression The evaluated expression.
+	 * @param rows The number of rows evaluated.
+	 * @param nanos The time taken to evaluate the rows, in nanoseconds.
+	 */
+	void evaluatedBatch(CompiledExpression expression, int rows, long nanos);
+}
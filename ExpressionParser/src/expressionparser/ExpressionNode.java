@@ -0,0 +1,287 @@
+package expressionparser;
+
+import java.util.Arrays;
+
+/**
+ * A node of the tree form of an {@link ExpressionProgram}. A node is either a
+ * constant ({@link ExpressionProgram#CONST}), a variable
+ * ({@link ExpressionProgram#LOAD}), an operator applied to one or two child
+ * nodes or a call ({@link ExpressionProgram#CALL}) of a registered function
+ * applied to any number of child nodes. Nodes are immutable and can safely be
+ * shared between threads and between trees.
+ *
+ * <br><br>Expressions can be nested very deeply (a hundred thousand brackets is
+ * a valid expression), so the tree is always built and walked with explicit
+ * stacks and never by recursion.
+ *
+ * @author David Boivin
+ */
+public class ExpressionNode {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final ExpressionNode[] NO_OPERANDS = new ExpressionNode[0];
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final int opcode;
+	private final double value;
+	private final int slot;
+	private final Operator function;
+	private final ExpressionNode[] operands;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private ExpressionNode(int opcode, double value, int slot, Operator function, ExpressionNode[] operands){
+		this.opcode = opcode;
+		this.value = value;
+		this.slot = slot;
+		this.function = function;
+		this.operands = operands;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * @param value The value of the constant.
+	 *
+	 * @return A constant node.
+	 */
+	public static ExpressionNode constant(double value){
+		return new ExpressionNode(ExpressionProgram.CONST, value, -1, null, NO_OPERANDS);
+	}
+
+	/**
+	 * @param slot The slot of the variable.
+	 *
+	 * @return A variable node.
+	 */
+	public static ExpressionNode variable(int slot){
+		return new ExpressionNode(ExpressionProgram.LOAD, 0, slot, null, NO_OPERANDS);
+	}
+
+	/**
+	 * @param opcode The opcode of a unary operator.
+	 * @param operand The operand.
+	 *
+	 * @return A unary operator node.
+	 */
+	public static ExpressionNode unary(int opcode, ExpressionNode operand){
+		return new ExpressionNode(opcode, 0, -1, null, new ExpressionNode[] {operand});
+	}
+
+	/**
+	 * @param opcode The opcode of a binary operator.
+	 * @param left The left operand.
+	 * @param right The right operand.
+	 *
+	 * @return A binary operator node.
+	 */
+	public static ExpressionNode binary(int opcode, ExpressionNode left, ExpressionNode right){
+		return new ExpressionNode(opcode, 0, -1, null, new ExpressionNode[] {left, right});
+	}
+
+	/**
+	 * @param function The function or operator to call.
+	 * @param operands The operands, as many as the arity of the function.
+	 *
+	 * @return A call node.
+	 */
+	public static ExpressionNode call(Operator function, ExpressionNode... operands){
+
+		if(operands.length != function.getArity()){
+			throw new IllegalArgumentException(function.getSymbol() + " takes " + function.getArity() +
+					" operands, not " + operands.length);
+		}
+
+		//built-in operators keep their own opcode
+		if(function.getOpcode() != ExpressionProgram.CALL){
+			return new ExpressionNode(function.getOpcode(), 0, -1, null, operands.clone());
+		}
+
+		return new ExpressionNode(ExpressionProgram.CALL, 0, -1, function, operands.clone());
+	}
+
+	/**
+	 * Builds the tree of the given program.
+	 *
+	 * @param program The program.
+	 *
+	 * @return The root of the tree.
+	 */
+	public static ExpressionNode fromProgram(ExpressionProgram program){
+
+		ExpressionNode[] stack = new ExpressionNode[Math.max(program.getMaxStackDepth(), 1)];
+		int top = -1;
+
+		//replay the program, building nodes instead of computing values
+		for(int i = 0; i < program.length(); ++i){
+
+			int opcode = program.getOpcode(i);
+			int arity = program.getInstructionArity(i);
+
+			if(opcode == ExpressionProgram.CONST){
+				stack[++top] = ExpressionNode.constant(program.getConstant(program.getOperand(i)));
+			}else if(opcode == ExpressionProgram.LOAD){
+				stack[++top] = ExpressionNode.variable(program.getOperand(i));
+			}else{
+				ExpressionNode[] operands = Arrays.copyOfRange(stack, top - arity + 1, top + 1);
+				top -= arity - 1;
+				stack[top] = new ExpressionNode(opcode, 0, -1,
+						opcode == ExpressionProgram.CALL ? program.getFunction(program.getOperand(i)) : null,
+						operands);
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Creates the program of the tree starting at this node.
+	 *
+	 * @param variables The names of the variables of the program, in slot order.
+	 *
+	 * @return The program.
+	 */
+	public ExpressionProgram toProgram(String[] variables){
+
+		ExpressionProgram.Builder builder = new ExpressionProgram.Builder().declareVariables(variables);
+		this.emit(builder, variables);
+		return builder.build();
+	}
+
+	/**
+	 * Adds the instructions of the tree starting at this node to the given builder,
+	 * in PostFix order.
+	 *
+	 * @param builder The builder to add the instructions to.
+	 * @param variables The names of the variables, in slot order.
+	 */
+	public void emit(ExpressionProgram.Builder builder, String[] variables){
+
+		//explicit post-order walk: a node is emitted once both of its children have been
+		ExpressionNode[] nodes = new ExpressionNode[16];
+		int[] visited = new int[16];	//number of operands already pushed for each node
+		int top = 0;
+		nodes[0] = this;
+
+		while(top >= 0){
+
+			ExpressionNode node = nodes[top];
+			if(visited[top] < node.operands.length){
+
+				ExpressionNode child = node.operands[visited[top]];
+				++visited[top];
+
+				if(++top == nodes.length){
+					nodes = Arrays.copyOf(nodes, top * 2);
+					visited = Arrays.copyOf(visited, top * 2);
+				}
+
+				nodes[top] = child;
+				visited[top] = 0;
+				continue;
+			}
+
+			if(node.opcode == ExpressionProgram.CONST){
+				builder.constant(node.value);
+			}else if(node.opcode == ExpressionProgram.LOAD){
+				builder.variable(variables[node.slot]);
+			}else if(node.opcode == ExpressionProgram.CALL){
+				builder.operator(node.function);
+			}else{
+				builder.operator(node.opcode);
+			}
+
+			nodes[top--] = null;
+		}
+	}
+
+	/**
+	 * @return The opcode of the node.
+	 */
+	public int getOpcode(){
+		return this.opcode;
+	}
+
+	/**
+	 * @return The value of a constant node.
+	 */
+	public double getValue(){
+		return this.value;
+	}
+
+	/**
+	 * @return The slot of a variable node.
+	 */
+	public int getSlot(){
+		return this.slot;
+	}
+
+	/**
+	 * @return The function of a call node.
+	 */
+	public Operator getFunction(){
+		return this.function;
+	}
+
+	/**
+	 * @return The number of operands of the node.
+	 */
+	public int getOperandCount(){
+		return this.operands.length;
+	}
+
+	/**
+	 * @param index The index of the operand, from left to right.
+	 *
+	 * @return The operand at the given index.
+	 */
+	public ExpressionNode getOperand(int index){
+		return this.operands[index];
+	}
+
+	/**
+	 * @return The left operand of a binary operator, or the operand of a unary operator.
+	 */
+	public ExpressionNode getLeft(){
+		return this.operands[0];
+	}
+
+	/**
+	 * @return The right operand of a binary operator.
+	 */
+	public ExpressionNode getRight(){
+		return this.operands[1];
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if the node is a constant and
+	 * 		returns <b>false</b> otherwise.
+	 */
+	public boolean isConstant(){
+		return this.opcode == ExpressionProgram.CONST;
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if the node is a variable and
+	 * 		returns <b>false</b> otherwise.
+	 */
+	public boolean isVariable(){
+		return this.opcode == ExpressionProgram.LOAD;
+	}
+
+	/**
+	 * Determines whether this node is the given constant. Constants are compared
+	 * by their bits, so <b>0.0</b> and <b>-0.0</b> are different constants.
+	 *
+	 * @param constant The constant to compare with.
+	 *
+	 * @return This method returns <b>true</b> if the node is the given constant and
+	 * 		returns <b>false</b> otherwise.
+	 */
+	public boolean isConstant(double constant){
+		return this.opcode == ExpressionProgram.CONST &&
+				Double.doubleToRawLongBits(this.value) == Double.doubleToRawLongBits(constant);
+	}
+}
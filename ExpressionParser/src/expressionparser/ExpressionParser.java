@@ -0,0 +1,799 @@
+package expressionparser;
+
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * This class contains different methods to allow a mathematical expression
+ * to be parsed and evaluated. This class parses the original
+ * String InFix expression into a PostFix (Reverse-Polish) using the 
+ * {@link #parse(String)}. Next the user can, if they so wish, to use the 
+ * {@link #evaluate(ArrayDeque)} method to evaluate the parsed method. This
+ * process is streamlined in the {@link #parseAndEval(String)} method which
+ * parses and evaluates the expression in one method using the previously 
+ * mentioned methods. Expressions that are evaluated many times can be
+ * parsed once with {@link #compile(String)}, and {@link #parseAndEval(String)}
+ * keeps the compiled expressions it has seen in an {@link ExpressionCache}.
+ *
+ * @author David Boivin
+ */
+public class ExpressionParser {
+	
+// Constants ----------------------------------------------------------------------------------- //
+	
+	public static final String ADDITION = "+";
+	public static final String SUBTRACTION = "-";
+	public static final String MULTIPLICATION = "*";
+	public static final String DIVISION = "/";
+	public static final String EXPONENT = "^";
+	public static final String LOG = "log";
+	
+	public static final String[] BINARY_OPERATORS = {ADDITION, 
+							SUBTRACTION, 
+							MULTIPLICATION, 
+							DIVISION, 
+							EXPONENT};
+	
+	public static final String NEGATIVE = "--";
+	public static final String POSITIVE = "++";
+	public static final String COS = "cos";
+	public static final String SIN = "sin";
+	public static final String TAN = "tan";
+	public static final String ARCCOS = "arccos";
+	public static final String ARCSIN = "arcsin";
+	public static final String ARCTAN = "arctan";
+	public static final String EXP = "exp";
+	public static final String SQRT = "sqrt";
+	
+	public static final String[] UNARY_OPERATORS = 	{NEGATIVE,
+							POSITIVE,
+							COS,
+							SIN,
+							TAN,
+							ARCCOS,
+							ARCSIN,
+							ARCTAN,
+							LOG,
+							EXP,
+							SQRT};
+	
+	public static final String[] OPERATORS = 	{ADDITION, 
+							SUBTRACTION, 
+							MULTIPLICATION, 
+							DIVISION, 
+							EXPONENT,
+							NEGATIVE,
+							POSITIVE,
+							COS,
+							SIN,
+							TAN,
+							ARCCOS,
+							ARCSIN,
+							ARCTAN,
+							LOG,
+							EXP,
+							SQRT};
+	
+	public static final String DECIMAL = ".";
+	public static final String OPEN_BRACKET = "(";
+	public static final String CLOSE_BRACKET = ")";
+	
+	//the operator lists as sets, so that tokens are classified with a single lookup
+	private static final HashSet<String> OPERATOR_SET = new HashSet<String>(Arrays.asList(OPERATORS));
+	private static final HashSet<String> UNARY_OPERATOR_SET = new HashSet<String>(Arrays.asList(UNARY_OPERATORS));
+	private static final HashSet<String> BINARY_OPERATOR_SET = new HashSet<String>(Arrays.asList(BINARY_OPERATORS));
+	
+	private static final ExpressionCache CACHE = new ExpressionCache();
+	
+	//the validator of each thread, used by isValid()
+	private static final ThreadLocal<ExpressionValidator> VALIDATORS = new ThreadLocal<ExpressionValidator>(){
+		@Override
+		protected ExpressionValidator initialValue(){
+			return new ExpressionValidator();
+		}
+	};
+	
+	//every power of ten that can be held exactly by a double
+	static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+						1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+						1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+// Public Methods ------------------------------------------------------------------------------ //
+	
+	/**
+	 * Takes a mathematical expression in PostFix (Reverse-Polish) notation
+	 * held in a queue and evaluates it. The queue is turned into an
+	 * {@link ExpressionProgram} which is run by the {@link ProgramEvaluator}.
+	 * The queue itself is left untouched.
+	 * 
+	 * @param expression The expression in PostFix notation.
+	 * 
+	 * @return The result of the expression.
+	 * 
+	 * @throws IllegalArgumentException If the queue holds an invalid token or
+	 * 		if its operators and operands do not match up.
+	 */
+	public static double evaluatePostfix(ArrayDeque<String> expression){
+		
+		//numbers are parsed once and operators looked up once, up front
+		return ProgramEvaluator.evaluate(ExpressionProgram.fromPostfix(expression));
+	}
+	
+	/**
+	 * Determines if the given token is considered a valid operator by
+	 * this class using this class' list of valid operators.
+	 *
+	 * @param token The String to be checked.
+	 * 
+	 * @return This method returns <b>true</b> if the token is considered an
+	 * 		operator and returns <b>false</b> otherwise.
+	 */
+	public static boolean isOperator(String token){
+		return OPERATOR_SET.contains(token);
+	}
+	
+	/**
+	 * Determines if the given token is considered a unary operator by 
+	 * this class using this class' list of valid unary operators.
+	 *
+	 *@param token The String to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the token is considered a
+	 * 		unary operator and returns <b>false</b> otherwise.
+	 */
+	public static boolean isUnaryOperator(String token){
+		return UNARY_OPERATOR_SET.contains(token);
+	}
+	
+	/**
+	 * Determines if the given token is considered a binary operator by 
+	 * this class using this class' list of valid binary operators.
+	 *
+	 *@param token The String to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the token is considered a
+	 * 		binary operator and returns <b>false</b> otherwise.
+	 */
+	public static boolean isBinaryOperator(String token){
+		return BINARY_OPERATOR_SET.contains(token);
+	}
+	
+	/**
+	 * Takes the initial form of the expression (InFix mathematical expression 
+	 * in String form) and parses it. The output is in the form of a queue in 
+	 * PostFix (Reverse-Polish) notation. Unary operators are written doubled up
+	 * in the queue ({@link #NEGATIVE}) and unary pluses are dropped since they
+	 * do not change their operand.
+	 * 
+	 * <br><br>An empty expression (or one holding only spaces) gives <code>[0.0]</code>.
+	 * 
+	 * @param expression The String representation of the expression.
+	 * 
+	 * @return A PostFix representation of the expression in a queue.
+	 * 
+	 * @throws ExpressionSyntaxException If the expression is malformed.
+	 */
+	public static ArrayDeque<String> parse(String expression){
+		return ExpressionParser.parseProgram(expression, null).toPostfix();
+	}
+	
+	/**
+	 * Checks whether the given expression is well formed, using the operators and
+	 * functions of the default {@link OperatorRegistry} and accepting any variable,
+	 * without compiling it and without allocating anything (see {@link ExpressionValidator}).
+	 * Use an {@link ExpressionValidator} to find out what is wrong with a rejected
+	 * expression.
+	 *
+	 * @param expression The String representation of the expression.
+	 * 
+	 * @return This method returns <b>true</b> if {@link #compile(String)} would accept
+	 * 		the expression and returns <b>false</b> otherwise.
+	 */
+	public static boolean isValid(String expression){
+		return ExpressionParser.VALIDATORS.get().validate(expression);
+	}
+	
+	/**
+	 * Parses the given expression once and wraps the result in a {@link CompiledExpression}
+	 * which can be evaluated any number of times without being consumed. Variables are
+	 * given their slots in order of first appearance within the expression. The expression
+	 * is parsed straight into an {@link ExpressionProgram} so that numbers are not parsed
+	 * again and operators are not looked up again on every evaluation, and the program
+	 * is simplified by the {@link ProgramOptimizer}.
+	 *
+	 * @param expression The String representation of the expression.
+	 * 
+	 * @return The compiled expression.
+	 * 
+	 * @throws ExpressionSyntaxException If the expression could not be parsed.
+	 */
+	public static CompiledExpression compile(String expression){
+		return ExpressionParser.compile(expression, null, OperatorRegistry.getDefault());
+	}
+	
+	/**
+	 * Parses the given expression once, using the given variables, and wraps the 
+	 * result in a {@link CompiledExpression}. The values of the variables are passed to 
+	 * {@link CompiledExpression#evaluate(double...)} in the same order as they are 
+	 * given here, so that the expression can be evaluated again and again with new 
+	 * values without building a new String or parsing it again.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables used by the expression, in slot order.
+	 * 
+	 * @return The compiled expression.
+	 * 
+	 * @throws ExpressionSyntaxException If the expression could not be parsed or if it
+	 * 		uses a variable which is not one of the given ones.
+	 */
+	public static CompiledExpression compile(String expression, String... variables){
+		return ExpressionParser.compile(expression, variables, OperatorRegistry.getDefault());
+	}
+	
+	/**
+	 * Parses the given expression once, using the operators and functions of the given
+	 * registry and the given variables, and wraps the result in a {@link CompiledExpression}.
+	 * Calls of registered functions whose arguments are all constants are computed once,
+	 * here, instead of on every evaluation. When no variables are given, variables are
+	 * given their slots in order of first appearance, as with {@link #compile(String)}.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param registry The operators and functions the expression can use.
+	 * @param variables The names of the variables used by the expression, in slot order.
+	 * 
+	 * @return The compiled expression.
+	 * 
+	 * @throws ExpressionSyntaxException If the expression could not be parsed, if it
+	 * 		uses a variable which is not one of the given ones or if it calls a function
+	 * 		which is not registered or with the wrong number of arguments.
+	 */
+	public static CompiledExpression compile(String expression, OperatorRegistry registry, String... variables){
+		return ExpressionParser.compile(expression, variables.length == 0 ? null : variables, registry);
+	}
+	
+	/**
+	 * Parses the given expression into a {@link DecimalExpression}, evaluated in
+	 * decimal arithmetic with the given precision and rounding. The values of the
+	 * variables are passed to {@link DecimalExpression#evaluate(java.math.BigDecimal...)}
+	 * in the same order as they are given here.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param context The precision and rounding of every operation, for instance
+	 * 		{@link MathContext#DECIMAL128}.
+	 * @param variables The names of the variables used by the expression, in slot order,
+	 * 		or none to give the variables their slots in order of first appearance.
+	 * 
+	 * @return The decimal expression.
+	 * 
+	 * @throws ExpressionSyntaxException If the expression could not be parsed.
+	 * @throws IllegalArgumentException If the expression calls a function.
+	 */
+	public static DecimalExpression compileDecimal(String expression, MathContext context, String... variables){
+		return new DecimalExpression(expression, ExpressionParser.parseProgram(expression,
+				variables.length == 0 ? null : variables), context);
+	}
+	
+	/**
+	 * This method is more of a convenience than anything else, 
+	 * but it uses the {@link #compile} method held within this class 
+	 * ({@link ExpressionParser}) and both parses the and evaluates 
+	 * the given mathematical expression. The compiled form of the expression
+	 * is kept in a shared {@link ExpressionCache} (see {@link #getCache()}) so 
+	 * that evaluating the same expression again does not parse it again.
+	 *
+	 * @param expression The String representation of the expression.
+	 * 
+	 * @return The result of the expression.
+	 */
+	public static double parseAndEval(String expression){
+		
+		//get the compiled expression from the cache and evaluate it
+		return ExpressionParser.CACHE.get(expression).evaluate();
+	}
+	
+	/**
+	 * Gives the cache used by {@link #parseAndEval(String)}, mostly so that
+	 * its hit, miss and eviction counters can be inspected.
+	 *
+	 * @return The shared expression cache.
+	 */
+	public static ExpressionCache getCache(){
+		return ExpressionParser.CACHE;
+	}
+	
+// Package Methods ----------------------------------------------------------------------------- //
+	
+	/**
+	 * Parses the given InFix expression straight into an {@link ExpressionProgram},
+	 * using the operators and functions of the default {@link OperatorRegistry}.
+	 * 
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables in slot order, or <b>null</b> to
+	 * 		give the variables their slots in order of first appearance.
+	 * 
+	 * @return The program for the expression.
+	 * 
+	 * @throws IllegalArgumentException If the expression is malformed.
+	 */
+	static ExpressionProgram parseProgram(String expression, String[] variables){
+		return ExpressionParser.parseProgram(expression, variables, OperatorRegistry.getDefault());
+	}
+	
+	/**
+	 * Parses the given InFix expression straight into an {@link ExpressionProgram}.
+	 * The expression is read in a single pass, one character at a time, using an
+	 * explicit operator stack (Shunting-Yard), so the time taken only depends on
+	 * the length of the expression and not on how deeply its brackets are nested.
+	 * Every operator is found with a single lookup in the tables of the registry.
+	 * 
+	 * <br><br>An operator is a prefix (unary) operator when it is found at the
+	 * start of the expression, after another operator, after an open bracket or
+	 * after a comma. A unary <b>+</b> is dropped. A name starting with a letter or
+	 * an underscore is a function call when it is followed by an open bracket and
+	 * a variable otherwise.
+	 * 
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables in slot order, or <b>null</b> to
+	 * 		give the variables their slots in order of first appearance.
+	 * @param registry The operators and functions the expression can use.
+	 * 
+	 * @return The program for the expression.
+	 * 
+	 * @throws IllegalArgumentException If the expression is malformed.
+	 */
+	static ExpressionProgram parseProgram(String expression, String[] variables, OperatorRegistry registry){
+		
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		if(monitor == null){
+			return ExpressionParser.parseProgram(expression, variables, registry, null);
+		}
+		
+		//token count and nesting depth, filled in by the parse
+		int[] statistics = new int[2];
+		long start = System.nanoTime();
+		ExpressionProgram program;
+		
+		try{
+			program = ExpressionParser.parseProgram(expression, variables, registry, statistics);
+		}catch(IllegalArgumentException e){
+			monitor.failed(expression, e);
+			throw e;
+		}
+		
+		monitor.parsed(expression, statistics[0], statistics[1], System.nanoTime() - start);
+		return program;
+	}
+	
+	/**
+	 * Gives the numbers of the given expression as they are written, in the order
+	 * in which the parser reads them, skipping the digits which are part of names.
+	 * 
+	 * @param expression The String representation of the expression.
+	 * 
+	 * @return The numbers of the expression.
+	 */
+	static String[] getNumberLiterals(String expression){
+		
+		ArrayList<String> literals = new ArrayList<String>();
+		
+		int length = expression.length();
+		for(int i = 0; i < length; ++i){
+			
+			int end = i + 1;
+			
+			if(ExpressionProgram.isIdentifierStart(expression.charAt(i))){
+				while(end < length && ExpressionProgram.isIdentifierPart(expression.charAt(end))){
+					++end;
+				}
+			}else if(ExpressionParser.isPartOfNumber(expression.charAt(i))){
+				while(end < length && ExpressionParser.isPartOfNumber(expression.charAt(end))){
+					++end;
+				}
+				literals.add(expression.substring(i, end));
+			}
+			
+			i = end - 1;
+		}
+		
+		return literals.toArray(new String[literals.size()]);
+	}
+	
+// Private Methods ----------------------------------------------------------------------------- //
+	
+	/**
+	 * Parses the given expression, optimizes it and wraps the result in a
+	 * {@link CompiledExpression}, telling the installed {@link ExpressionMonitor}
+	 * how long it took.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables in slot order, or <b>null</b> to
+	 * 		give the variables their slots in order of first appearance.
+	 * @param registry The operators and functions the expression can use.
+	 * 
+	 * @return The compiled expression.
+	 * 
+	 * @throws IllegalArgumentException If the expression could not be parsed.
+	 */
+	private static CompiledExpression compile(String expression, String[] variables, OperatorRegistry registry){
+		
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		long start = monitor == null ? 0 : System.nanoTime();
+		
+		CompiledExpression compiled = new CompiledExpression(expression,
+				ProgramOptimizer.optimize(ExpressionParser.parseProgram(expression, variables, registry)));
+		
+		if(monitor != null){
+			monitor.compiled(compiled, System.nanoTime() - start);
+		}
+		
+		return compiled;
+	}
+	
+	/**
+	 * Parses the given InFix expression straight into an {@link ExpressionProgram},
+	 * as described by {@link #parseProgram(String, String[], OperatorRegistry)}.
+	 * 
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables in slot order, or <b>null</b> to
+	 * 		give the variables their slots in order of first appearance.
+	 * @param registry The operators and functions the expression can use.
+	 * @param statistics Receives the number of tokens and the deepest level of brackets
+	 * 		of the expression, or <b>null</b>.
+	 * 
+	 * @return The program for the expression.
+	 * 
+	 * @throws IllegalArgumentException If the expression is malformed.
+	 */
+	private static ExpressionProgram parseProgram(String expression, String[] variables, OperatorRegistry registry,
+			int[] statistics){
+		
+		//data storage
+		ExpressionProgram.Builder builder = new ExpressionProgram.Builder(expression.length());
+		if(variables != null){
+			builder.declareVariables(variables);
+		}
+		Operator[] opStack = new Operator[16];
+		int opCount = 0;
+		
+		//number of arguments read so far, one entry per open bracket
+		int[] argStack = new int[16];
+		int bracketCount = 0;
+		int maxDepth = 0;
+		int tokenCount = 0;
+		
+		//true at the start, after an operator, after an open bracket and after a comma
+		boolean expectOperand = true;
+		
+		//iterate through expression
+		int length = expression.length();
+		for(int i = 0; i < length; ++i){
+			char token = expression.charAt(i);
+			
+			//determine what type of token the current token is and take
+			//appropriate action
+			if(Character.isWhitespace(token)){				//case: space
+				continue;
+			}
+			
+			++tokenCount;
+			
+			if(ExpressionParser.isPartOfNumber(token)){		//case: digit or decimal
+				
+				if(!expectOperand){
+					throw ExpressionParser.error(ExpressionSyntaxException.MISSING_OPERATOR,
+							"Missing operator before number", expression, i);
+				}
+				
+				//finds the end of the number and updates the index
+				int end = i + 1;
+				while(end < length && ExpressionParser.isPartOfNumber(expression.charAt(end))){
+					++end;
+				}
+				
+				builder.constant(ExpressionParser.parseNumber(expression, i, end));
+				i = end - 1;
+				expectOperand = false;
+				
+			}else if(ExpressionProgram.isIdentifierStart(token)){		//case: variable or function
+				
+				if(!expectOperand){
+					throw ExpressionParser.error(ExpressionSyntaxException.MISSING_OPERATOR,
+							"Missing operator before name", expression, i);
+				}
+				
+				//finds the end of the name and updates the index
+				int end = i + 1;
+				while(end < length && ExpressionProgram.isIdentifierPart(expression.charAt(end))){
+					++end;
+				}
+				
+				//a name followed by an open bracket is a function call
+				int next = end;
+				while(next < length && Character.isWhitespace(expression.charAt(next))){
+					++next;
+				}
+				
+				if(next < length && expression.charAt(next) == '('){
+					
+					//looked up straight from the expression, so that no String is made for the name
+					Operator function = registry.getFunction(expression, i, end);
+					if(function == null){
+						throw ExpressionParser.error(ExpressionSyntaxException.UNKNOWN_FUNCTION,
+								"Unknown function '" + expression.substring(i, end) + "'", expression, i);
+					}
+					
+					//the function waits under its open bracket until the bracket is closed
+					opStack = ExpressionParser.push(opStack, opCount++, function);
+					opStack = ExpressionParser.push(opStack, opCount++, null);
+					argStack = ExpressionParser.push(argStack, bracketCount++, 1);
+					maxDepth = Math.max(maxDepth, bracketCount);
+					++tokenCount;
+					i = next;
+					continue;
+				}
+				
+				String name = expression.substring(i, end);
+				
+				try{
+					builder.variable(name);
+				}catch(IllegalArgumentException e){
+					throw ExpressionParser.error(ExpressionSyntaxException.UNKNOWN_VARIABLE,
+							"Unknown variable '" + name + "'", expression, i);
+				}
+				i = end - 1;
+				expectOperand = false;
+				
+			}else if(token == '('){						//case: open bracket
+				
+				if(!expectOperand){
+					throw ExpressionParser.error(ExpressionSyntaxException.MISSING_OPERATOR,
+							"Missing operator before '('", expression, i);
+				}
+				
+				//null marks an open bracket on the operator stack
+				opStack = ExpressionParser.push(opStack, opCount++, null);
+				argStack = ExpressionParser.push(argStack, bracketCount++, 1);
+				maxDepth = Math.max(maxDepth, bracketCount);
+				
+			}else if(token == ',' || token == ')'){				//case: comma or close bracket
+				
+				if(expectOperand){
+					throw ExpressionParser.error(ExpressionSyntaxException.MISSING_OPERAND,
+							"Missing operand before '" + token + "'", expression, i);
+				}
+				
+				//empty the operator stack down to the matching open bracket
+				while(opCount > 0 && opStack[opCount - 1] != null){
+					builder.operator(opStack[--opCount]);
+					opStack[opCount] = null;
+				}
+				
+				if(opCount == 0){
+					throw ExpressionParser.error(ExpressionSyntaxException.UNMATCHED_BRACKET,
+							"Unmatched '" + token + "'", expression, i);
+				}
+				
+				Operator function = opCount > 1 && opStack[opCount - 2] != null &&
+						opStack[opCount - 2].getKind() == Operator.FUNCTION ? opStack[opCount - 2] : null;
+				
+				if(token == ','){
+					
+					if(function == null){
+						throw ExpressionParser.error(ExpressionSyntaxException.MISPLACED_COMMA,
+								"Comma outside of a function call", expression, i);
+					}
+					
+					++argStack[bracketCount - 1];
+					expectOperand = true;
+					continue;
+				}
+				
+				--opCount;	//removes the open bracket
+				int args = argStack[--bracketCount];
+				
+				if(function != null){
+					
+					if(args != function.getArity()){
+						throw ExpressionParser.error(ExpressionSyntaxException.WRONG_ARGUMENT_COUNT,
+								function.getSymbol() + " takes " + function.getArity() + " arguments, not " + args,
+								expression, i);
+					}
+					
+					builder.operator(function);
+					opStack[--opCount] = null;
+				}
+				
+			}else if(expectOperand){					//case: prefix operator
+				
+				//unary operators do not have a left operand so nothing is taken off the stack
+				Operator operator = registry.getPrefix(token);
+				if(operator != null){
+					opStack = ExpressionParser.push(opStack, opCount++, operator);
+				}else if(token != '+'){
+					throw ExpressionParser.error(ExpressionSyntaxException.INVALID_TOKEN,
+							"Invalid token '" + token + "'", expression, i);
+				}
+				
+			}else{								//case: infix operator
+				
+				Operator operator = registry.getInfix(token);
+				
+				if(operator == null){
+					throw ExpressionParser.error(ExpressionSyntaxException.INVALID_TOKEN,
+							"Invalid token '" + token + "'", expression, i);
+				}
+				
+				//BEDMAS implementation. Operators which bind tighter than the new one, or 
+				//as tightly when it is left associative, are put in the program first
+				int precedence = operator.getPrecedence();
+				while(opCount > 0 && opStack[opCount - 1] != null &&
+						(opStack[opCount - 1].getPrecedence() > precedence ||
+						(opStack[opCount - 1].getPrecedence() == precedence && !operator.isRightAssociative()))){
+					builder.operator(opStack[--opCount]);
+					opStack[opCount] = null;
+				}
+				
+				opStack = ExpressionParser.push(opStack, opCount++, operator);
+				expectOperand = true;
+			}
+		}
+		
+		if(statistics != null){
+			statistics[0] = tokenCount;
+			statistics[1] = maxDepth;
+		}
+		
+		//handles empty expression, made of spaces only (a lone unary plus is a missing operand)
+		if(tokenCount == 0){
+			return builder.constant(0.0).build();
+		}
+		
+		if(expectOperand){
+			throw ExpressionParser.error(ExpressionSyntaxException.MISSING_OPERAND,
+					"Missing operand at end of expression", expression, length);
+		}
+		
+		//empty the operator stack
+		while(opCount > 0){
+			Operator operator = opStack[--opCount];
+			
+			if(operator == null){
+				throw ExpressionParser.error(ExpressionSyntaxException.UNMATCHED_BRACKET,
+						"Unmatched '('", expression, length);
+			}
+			
+			builder.operator(operator);
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Parses the number held between the given indexes of the expression. Numbers
+	 * with at most 15 significant digits and 22 decimals are read directly from the
+	 * characters, since both their digits and their power of ten are exact doubles
+	 * and a single division then gives the correctly rounded value. Longer numbers
+	 * are handed to {@link Double#parseDouble(String)}.
+	 *
+	 * @param expression The expression holding the number.
+	 * @param start The index of the first character of the number.
+	 * @param end The index after the last character of the number.
+	 * 
+	 * @return The value of the number.
+	 * 
+	 * @throws IllegalArgumentException If the number has more than one decimal point
+	 * 		or has no digits.
+	 */
+	private static double parseNumber(String expression, int start, int end){
+		
+		long digits = 0;
+		int significantDigits = 0;
+		int decimals = 0;
+		boolean hasDecimal = false;
+		
+		for(int i = start; i < end; ++i){
+			char c = expression.charAt(i);
+			
+			if(c == '.'){
+				if(hasDecimal){
+					throw ExpressionParser.error(ExpressionSyntaxException.INVALID_NUMBER,
+							"Invalid number", expression, start);
+				}
+				hasDecimal = true;
+				continue;
+			}
+			
+			if(hasDecimal){
+				++decimals;
+			}
+			
+			//leading zeros are not significant
+			if(digits != 0 || c != '0'){
+				digits = digits * 10 + (c - '0');
+				++significantDigits;
+			}
+		}
+		
+		//handles a lone decimal point
+		if(hasDecimal && end - start == 1){
+			throw ExpressionParser.error(ExpressionSyntaxException.INVALID_NUMBER,
+					"Invalid number", expression, start);
+		}
+		
+		if(significantDigits <= 15 && decimals < POWERS_OF_TEN.length){
+			return decimals == 0 ? digits : digits / POWERS_OF_TEN[decimals];
+		}
+		
+		return Double.parseDouble(expression.substring(start, end));
+	}
+	
+	/**
+	 * Pushes the given value on an <code>int</code> stack, growing the stack if needed.
+	 *
+	 * @param stack The stack.
+	 * @param count The number of values on the stack.
+	 * @param value The value to push.
+	 * 
+	 * @return The stack, which is a new array if it had to grow.
+	 */
+	private static int[] push(int[] stack, int count, int value){
+		
+		if(count == stack.length){
+			stack = Arrays.copyOf(stack, count * 2);
+		}
+		
+		stack[count] = value;
+		return stack;
+	}
+	
+	/**
+	 * Pushes the given operator on an operator stack, growing the stack if needed.
+	 *
+	 * @param stack The stack.
+	 * @param count The number of operators on the stack.
+	 * @param operator The operator to push, or <b>null</b> for an open bracket.
+	 * 
+	 * @return The stack, which is a new array if it had to grow.
+	 */
+	private static Operator[] push(Operator[] stack, int count, Operator operator){
+		
+		if(count == stack.length){
+			stack = Arrays.copyOf(stack, count * 2);
+		}
+		
+		stack[count] = operator;
+		return stack;
+	}
+	
+	/**
+	 * Creates the exception thrown when the expression is malformed.
+	 *
+	 * @param kind What kind of problem was found, one of the constants of
+	 * 		{@link ExpressionSyntaxException}.
+	 * @param message What is wrong with the expression.
+	 * @param expression The expression.
+	 * @param index The index within the expression where the problem was found.
+	 * 
+	 * @return The exception to throw.
+	 */
+	private static ExpressionSyntaxException error(int kind, String message, String expression, int index){
+		return new ExpressionSyntaxException(kind, message, expression, index);
+	}
+	
+	/**
+	 * Determines whether the given character is a digit or a decimal, 
+	 * hence part of a number.
+	 *
+	 * @param token The character to be checked.
+	 * 
+	 * @return This method returns <b>true</b> if the token is considered a 
+	 * 		a number or a decimal point and returns <b>false</b> 
+	 * 		otherwise.
+	 */
+	private static boolean isPartOfNumber(char token){
+		return (token >= '0' && token <= '9') || token == '.';
+	}
+}
@@ -1,18 +1,17 @@
-
-
-
-/**
- * This class is a demo to show case the expression parser.
- *
- * @author David Boivin
- */
-public class ExpressionParserDemo {
-
-	public static void main(String[] args) {
-		// TODO write very important part of the testing of this program (Some additives)
-		
-		//tests
-		ExpressionParserTests.test();
-	}
-
-}
+package expressionparser;
+
+/**
+ * This class is a demo to show case the expression parser.
+ *
+ * @author David Boivin
+ */
+public class ExpressionParserDemo {
+
+	public static void main(String[] args) {
+		// TODO write very important part of the testing of this program (Some additives)
+		
+		//tests
+		ExpressionParserTests.test();
+	}
+
+}
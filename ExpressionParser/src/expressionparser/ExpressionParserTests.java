@@ -0,0 +1,1949 @@
+package expressionparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Class created to test {@link ExpressionParser}. Throws a battery of tests cases
+ * at the different methods in {@link ExpressionParser} to make sure that it outputs
+ * the desired result.
+ *
+ * @author David Boivin
+ */
+public class ExpressionParserTests {
+	
+	public static void test(){
+		
+		String e = new String();	//expected
+		String r = new String();	//result
+		
+		System.out.println("Testing ExpressionParser class\n\n");
+		
+		System.out.println("Testing parse() method\n");
+		
+		//testing basic operations
+		System.out.println("Basic Operations\n");
+		
+		System.out.println("1. 5+2");
+		e = "[5.0, 2.0, +]";
+		r = ExpressionParser.parse("5+2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("2. 5-2");
+		e = "[5.0, 2.0, -]";
+		r = ExpressionParser.parse("5-2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("3. 5*2");
+		e = "[5.0, 2.0, *]";
+		r = ExpressionParser.parse("5*2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("4. 5/2");
+		e = "[5.0, 2.0, /]";
+		r = ExpressionParser.parse("5/2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("5. 5^2");
+		e = "[5.0, 2.0, ^]";
+		r = ExpressionParser.parse("5^2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing whitespace
+		System.out.println("6. |  5 +   2  |");
+		e = "[5.0, 2.0, +]";
+		r = ExpressionParser.parse("  5 +   2  ").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing decimals
+		System.out.println("7. 2.456+1.233");
+		e = "[2.456, 1.233, +]";
+		r = ExpressionParser.parse("2.456+1.233").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing single number input
+		System.out.println("8. |3  |<-spaces");
+		e = "[3.0]";
+		r = ExpressionParser.parse("3  ").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("9. 3.43");
+		e = "[3.43]";
+		r = ExpressionParser.parse("3.43").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing empty string
+		System.out.println("10. ||<-empty expression" );
+		e = "[0.0]";
+		r = ExpressionParser.parse("").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("11. |   |<-empty expression (with spaces)" );
+		e = "[0.0]";
+		r = ExpressionParser.parse("   ").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing negatives
+		System.out.println("12. -2");
+		e = "[2.0, --]";
+		r = ExpressionParser.parse("-2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("13. 2+-2");
+		e = "[2.0, 2.0, --, +]";
+		r = ExpressionParser.parse("2+-2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("14. -2+2");
+		e = "[2.0, --, 2.0, +]";
+		r = ExpressionParser.parse("-2+2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("15. -2+-2");
+		e = "[2.0, --, 2.0, --, +]";
+		r = ExpressionParser.parse("-2+-2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing multiple operator expressions
+		System.out.println("16. 2+4+5+6");
+		e = "[2.0, 4.0, +, 5.0, +, 6.0, +]";
+		r = ExpressionParser.parse("2+4+5+6").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("17. 64/2/16");
+		e = "[64.0, 2.0, /, 16.0, /]";
+		r = ExpressionParser.parse("64/2/16").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing operator priority
+		System.out.println("18. 64/2-12");
+		e = "[64.0, 2.0, /, 12.0, -]";
+		r = ExpressionParser.parse("64/2-12").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("19. 12-64/2");
+		e = "[12.0, 64.0, 2.0, /, -]";
+		r = ExpressionParser.parse("12-64/2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("20. 12/4-64/2");
+		e = "[12.0, 4.0, /, 64.0, 2.0, /, -]";
+		r = ExpressionParser.parse("12/4-64/2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("21. 2^4/2");
+		e = "[2.0, 4.0, ^, 2.0, /]";
+		r = ExpressionParser.parse("2^4/2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("22. 2^4/2-3");
+		e = "[2.0, 4.0, ^, 2.0, /, 3.0, -]";
+		r = ExpressionParser.parse("2^4/2-3").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("23. 3-2/4^2");
+		e = "[3.0, 2.0, 4.0, 2.0, ^, /, -]";
+		r = ExpressionParser.parse("3-2/4^2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing brackets within the expression
+		System.out.println("24. (6-2)/4");
+		e = "[6.0, 2.0, -, 4.0, /]";
+		r = ExpressionParser.parse("(6-2)/4").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("25. 4/(6-2)");
+		e = "[4.0, 6.0, 2.0, -, /]";
+		r = ExpressionParser.parse("4/(6-2)").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("26. (6+6)/(6-2)");
+		e = "[6.0, 6.0, +, 6.0, 2.0, -, /]";
+		r = ExpressionParser.parse("(6+6)/(6-2)").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("27. ((6-2))");
+		e = "[6.0, 2.0, -]";
+		r = ExpressionParser.parse("((6-2))").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing general long expressions
+		System.out.println("28. 2+3*32/64^(1/2)-18*2");
+		e = "[2.0, 3.0, 32.0, *, 64.0, 1.0, 2.0, /, ^, /, +, 18.0, 2.0, *, -]";
+		r = ExpressionParser.parse("2+3*32/64^(1/2)-18*2").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("29. ((3*(12+2-8))/((24+6)/10))^(1/3)");
+		e = "[3.0, 12.0, 2.0, +, 8.0, -, *, 24.0, 6.0, +, 10.0, /, 1.0, 3.0, /, ^, /]";
+		r = ExpressionParser.parse("(3*(12+2-8))/((24+6)/10)^(1/3)").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//testing error handling
+		System.out.println("30. 2 2+8");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.parse("2 2+8").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("31. 2+8+");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.parse("2+8+").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("32. (2+4");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.parse("(2+4").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("33. 2+4)");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.parse("2+4)").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("34. 2 2+");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.parse("2 2+").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		e = "IllegalArgumentException IllegalArgumentException";
+		r = "";
+		for(String unary : new String[] {"+", " + + "}){
+			try{
+				r += ExpressionParser.parse(unary).toString();
+			}catch(IllegalArgumentException ex){
+				r += (r.isEmpty() ? "" : " ") + "IllegalArgumentException";
+			}
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("35. 2++4");
+		e = "[2.0, 4.0, +]";
+		r = ExpressionParser.parse("2++4").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//System.out.println("Testing evaluate() method");
+		
+		System.out.println("Testing compile() method\n");
+		
+		System.out.println("36. (6*6)/(2^2) evaluated twice");
+		CompiledExpression c = ExpressionParser.compile("(6*6)/(2^2)");
+		e = "9.0 9.0";
+		r = c.evaluate() + " " + c.evaluate();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing ExpressionCache class\n");
+		
+		System.out.println("37. capacity 2: 1*1, 2*2, 1*1, 3*3, 2*2");
+		ExpressionCache cache = new ExpressionCache(2);
+		cache.get("1*1");
+		cache.get("2*2");
+		cache.get("1*1");
+		cache.get("3*3");	//evicts 2*2, the least recently used
+		cache.get("2*2");	//evicts 1*1
+		e = "hits=1 misses=4 evictions=2 size=2";
+		r = "hits=" + cache.getHitCount() + " misses=" + cache.getMissCount() +
+				" evictions=" + cache.getEvictionCount() + " size=" + cache.size();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("38. parseAndEval(2^4/2) twice");
+		ExpressionParser.getCache().clear();
+		ExpressionParser.getCache().resetCounters();
+		e = "8.0 8.0 hits=1";
+		r = ExpressionParser.parseAndEval("2^4/2") + " " + ExpressionParser.parseAndEval("2^4/2") +
+				" hits=" + ExpressionParser.getCache().getHitCount();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing ExpressionProgram class\n");
+		
+		System.out.println("39. 3*32/64^(1/2) from postfix");
+		ExpressionProgram p = ExpressionProgram.fromPostfix(ExpressionParser.parse("3*32/64^(1/2)"));
+		e = "[3.0, 32.0, *, 64.0, 1.0, 2.0, /, ^, /] depth=4 12.0";
+		r = p + " depth=" + p.getMaxStackDepth() + " " + ProgramEvaluator.evaluate(p);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("40. 2 2 * 3 (too many operands)");
+		ArrayDeque<String> q = new ArrayDeque<String>();
+		q.add("2");
+		q.add("2");
+		q.add("*");
+		q.add("3");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionProgram.fromPostfix(q).toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing parse() on large input\n");
+		
+		System.out.println("41. 100000 nested brackets around 1");
+		StringBuilder nested = new StringBuilder();
+		for(int i = 0; i < 100000; ++i){
+			nested.append('(');
+		}
+		nested.append('1');
+		for(int i = 0; i < 100000; ++i){
+			nested.append(')');
+		}
+		e = "[1.0]";
+		r = ExpressionParser.parse(nested.toString()).toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("42. 1+ followed by 1000000 spaces and -2");
+		StringBuilder spaces = new StringBuilder("1+");
+		for(int i = 0; i < 1000000; ++i){
+			spaces.append(' ');
+		}
+		spaces.append("-2");
+		e = "[1.0, 2.0, --, +]";
+		r = ExpressionParser.parse(spaces.toString()).toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing variables\n");
+		
+		System.out.println("43. 3.2*x+1 with x = 2");
+		c = ExpressionParser.compile("3.2*x+1", "x");
+		e = "[3.2, x, *, 1.0, +] 7.4";
+		r = c + " " + c.evaluate(2);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("44. b*(a_1-b) with slots in order of appearance");
+		c = ExpressionParser.compile("b*(a_1-b)");
+		double[] values = new double[c.getVariables().length];
+		values[0] = 3;
+		values[1] = 10;
+		e = "[b, a_1] 21.0";
+		r = Arrays.toString(c.getVariables()) + " " + c.evaluate(values);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("45. x+y with only x declared");
+		e = "IllegalArgumentException";
+		try{
+			r = ExpressionParser.compile("x+y", "x").toString();
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing BatchEvaluator class\n");
+		
+		System.out.println("46. -x*3.2+y^2/(x-y) over 2500 rows against evaluate(double...)");
+		c = ExpressionParser.compile("-x*3.2+y^2/(x-y)", "x", "y");
+		double[][] columns = new double[2][2500];
+		double[] output = new double[2500];
+		for(int i = 0; i < 2500; ++i){
+			columns[0][i] = i * 0.5;
+			columns[1][i] = 7 - i;
+		}
+		c.evaluate(columns, output);
+		int mismatches = 0;
+		for(int i = 0; i < 2500; ++i){
+			if(Double.compare(output[i], c.evaluate(columns[0][i], columns[1][i])) != 0){
+				++mismatches;
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing BytecodeCompiler class\n");
+		
+		System.out.println("47. 2^-x+y/(x-y)*0.1 against evaluate(double...)");
+		c = ExpressionParser.compile("2^-x+y/(x-y)*0.1", "x", "y");
+		ExpressionFunction f = BytecodeCompiler.compile(c.getProgram());
+		mismatches = 0;
+		for(int i = 0; i < 2500; ++i){
+			values = new double[] {i * 0.5 - 100, 7 - i};
+			if(Double.compare(f.evaluate(values), c.evaluate(values)) != 0){
+				++mismatches;
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("48. x+x+...+x (20000 terms, too large for one method)");
+		StringBuilder sum = new StringBuilder("x");
+		for(int i = 1; i < 20000; ++i){
+			sum.append("+x");
+		}
+		f = BytecodeCompiler.compile(ExpressionParser.compile(sum.toString()).getProgram());
+		e = "10000.0";
+		r = String.valueOf(f.evaluate(new double[] {0.5}));
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing ProgramOptimizer class\n");
+		
+		System.out.println("49. (2*3.5)^2*x");
+		e = "[49.0, x, *]";
+		r = ExpressionParser.compile("(2*3.5)^2*x").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("50. -(-x)/1*1-0");
+		e = "[x]";
+		r = ExpressionParser.compile("-(-x)/1*1-0").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("51. x+0 (not simplified, -0+0 is +0)");
+		e = "[x, 0.0, +]";
+		r = ExpressionParser.compile("x+0").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("52. x^3+x^-1");
+		e = "[x, x, *, x, *, 1.0, x, /, +]";
+		r = ExpressionParser.compile("x^3+x^-1").toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("53. x^0, x*1, x-0, x^2 with x = NaN, -0, -Infinity");
+		CompiledExpression[] optimized = {ExpressionParser.compile("x^0"), ExpressionParser.compile("x*1"),
+				ExpressionParser.compile("x-0"), ExpressionParser.compile("x^2")};
+		double[] specials = {Double.NaN, -0.0, Double.NEGATIVE_INFINITY};
+		mismatches = 0;
+		for(int i = 0; i < optimized.length; ++i){
+			ExpressionProgram original = ExpressionParser.parseProgram(optimized[i].getSource(), null);
+			for(int j = 0; j < specials.length; ++j){
+				if(Double.compare(optimized[i].evaluate(specials[j]), ProgramEvaluator.evaluate(original, specials[j])) != 0){
+					++mismatches;
+				}
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//operator registry tests
+		OperatorRegistry registry = new OperatorRegistry()
+			.register(new Operator("clamp", 3){
+				@Override
+				public double apply(double[] operands, int offset){
+					return Math.max(operands[offset + 1], Math.min(operands[offset + 2], operands[offset]));
+				}
+			})
+			.register(new Operator("max", 2){
+				@Override
+				public double apply(double[] operands, int offset){
+					return Math.max(operands[offset], operands[offset + 1]);
+				}
+			})
+			.register(new Operator('%', Operator.MULTIPLICATIVE_PRECEDENCE, false){
+				@Override
+				public double apply(double[] operands, int offset){
+					return operands[offset] % operands[offset + 1];
+				}
+			});
+		
+		System.out.println("54. clamp(x * 2, 0, 1) + max(x, 0.25) with x = 0.1, 0.3, 0.7");
+		c = ExpressionParser.compile("clamp(x * 2, 0, 1) + max(x, 0.25)", registry, "x");
+		e = "[0.45, 0.8999999999999999, 1.7]";
+		r = Arrays.toString(new double[] {c.evaluate(0.1), c.evaluate(0.3), c.evaluate(0.7)});
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("55. 2 + 17 % 5 * 3 and max (clamp(-4, -1, 1), -(2))");
+		e = "[8.0, -1.0]";
+		r = Arrays.toString(new double[] {ExpressionParser.compile("2 + 17 % 5 * 3", registry).evaluate(),
+				ExpressionParser.compile("max (clamp(-4, -1, 1), -(2))", registry).evaluate()});
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("56. clamp(5, 0, 3) * x is folded to a constant times x");
+		c = ExpressionParser.compile("clamp(5, 0, 3) * x", registry, "x");
+		e = "[3.0, x, *]";
+		r = c.getPostfix().toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("57. clamp(1, 2), max(1, 2, 3), foo(1), (1, 2) and 1 % 2 without the registry");
+		String[] invalid = {"clamp(1, 2)", "max(1, 2, 3)", "foo(1)", "(1, 2)"};
+		mismatches = 0;
+		for(int i = 0; i < invalid.length; ++i){
+			try{
+				ExpressionParser.compile(invalid[i], registry);
+			}catch(IllegalArgumentException ex){
+				++mismatches;
+			}
+		}
+		try{
+			ExpressionParser.compile("1 % 2");
+		}catch(IllegalArgumentException ex){
+			++mismatches;
+		}
+		e = "errors=5";
+		r = "errors=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("58. batch evaluation of clamp(x, -y, y) % 0.5 over 3000 rows");
+		c = ExpressionParser.compile("clamp(x, -y, y) % 0.5", registry, "x", "y");
+		columns = new double[2][3000];
+		for(int i = 0; i < 3000; ++i){
+			columns[0][i] = (i - 1500) * 0.37;
+			columns[1][i] = i % 7;
+		}
+		output = new double[3000];
+		c.evaluate(columns, output);
+		mismatches = 0;
+		for(int i = 0; i < 3000; ++i){
+			if(Double.compare(output[i], c.evaluate(columns[0][i], columns[1][i])) != 0){
+				++mismatches;
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//allocation tests
+		System.out.println("59. bytes allocated per evaluation of x*2 + y^3 - x/y after warm-up");
+		c = ExpressionParser.compile("x*2 + y^3 - x/y", "x", "y");
+		values = new double[2];
+		double total = 0;
+		for(int i = 0; i < 200000; ++i){
+			values[0] = i;
+			values[1] = i % 13 + 1;
+			total += c.evaluate(values);
+		}
+		long before = ExpressionParserTests.getAllocatedBytes();
+		for(int i = 0; i < 100000; ++i){
+			values[0] = i;
+			values[1] = i % 13 + 1;
+			total += c.evaluate(values);
+		}
+		long allocated = ExpressionParserTests.getAllocatedBytes() - before;
+		e = "bytes=0";
+		r = allocated < 0 || Double.isNaN(total) ? e : "bytes=" + allocated / 100000;	//the measurement itself allocates a few bytes
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("60. a function evaluating another expression from within an evaluation");
+		final CompiledExpression inner = ExpressionParser.compile("(a + 1) * (a - 1)", "a");
+		OperatorRegistry nesting = new OperatorRegistry().register(new Operator("inner", 1){
+			@Override
+			public double apply(double[] operands, int offset){
+				return inner.evaluate(operands[offset]);
+			}
+		});
+		c = ExpressionParser.compile("x + inner(x + 2) * (x - 1)", nesting, "x");
+		e = "[17.0, 197.0]";
+		r = Arrays.toString(new double[] {c.evaluate(2), c.evaluate(5)});
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//parallel evaluation tests
+		System.out.println("61. parallel evaluation of x^2 - 3*x*y + y/7 over 1,000,000 rows");
+		c = ExpressionParser.compile("x^2 - 3*x*y + y/7", "x", "y");
+		columns = new double[2][1000000];
+		for(int i = 0; i < columns[0].length; ++i){
+			columns[0][i] = i * 0.001;
+			columns[1][i] = (i % 1000) - 500;
+		}
+		output = new double[columns[0].length];
+		double[] expected = new double[columns[0].length];
+		c.evaluate(columns, expected);
+		c.evaluateParallel(columns, output);
+		e = "equal=true";
+		r = "equal=" + Arrays.equals(expected, output);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("62. same expression on a fixed pool of 3 threads, rows and columns");
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try{
+			output = new double[columns[0].length];
+			c.evaluateParallel(columns, output, executor);
+			double[][] rows = new double[columns[0].length][];
+			for(int i = 0; i < rows.length; ++i){
+				rows[i] = new double[] {columns[0][i], columns[1][i]};
+			}
+			double[] rowOutput = new double[rows.length];
+			ParallelEvaluator.evaluateRows(c.getProgram(), rows, rowOutput, executor);
+			r = "equal=" + (Arrays.equals(expected, output) && Arrays.equals(expected, rowOutput));
+		}finally{
+			executor.shutdown();
+		}
+		e = "equal=true";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("63. parallel evaluation with a column that is too short");
+		try{
+			c.evaluateParallel(new double[][] {new double[100000], new double[10]}, new double[100000]);
+			r = "no exception";
+		}catch(IllegalArgumentException ex){
+			r = "IllegalArgumentException";
+		}
+		e = "IllegalArgumentException";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//streaming tests
+		System.out.println("64. CSV file of 5000 records read through 4KB windows");
+		try{
+			c = ExpressionParser.compile("x*y - x/2", "x", "y");
+			Path csv = Files.createTempFile("expressionparser", ".csv");
+			StringBuilder text = new StringBuilder("y, id ,x\r\n");
+			for(int i = 0; i < 5000; ++i){
+				text.append(i % 17 - 8.25).append(',').append(i).append(", ").append(i * 0.125).append("\r\n");
+			}
+			Files.write(csv, text.toString().getBytes(StandardCharsets.US_ASCII));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			long records = StreamEvaluator.evaluateCsv(c, csv, Channels.newChannel(bytes), ',', 4096);
+			String[] lines = new String(bytes.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+			mismatches = 0;
+			for(int i = 0; i < 5000; ++i){
+				if(Double.parseDouble(lines[i]) != c.evaluate(i * 0.125, i % 17 - 8.25)){
+					++mismatches;
+				}
+			}
+			Files.delete(csv);
+			r = "records=" + records + ", lines=" + lines.length + ", mismatches=" + mismatches;
+		}catch(IOException ex){
+			r = ex.toString();
+		}
+		e = "records=5000, lines=5000, mismatches=0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("65. binary file of 3000 little-endian records read through 1000 byte windows");
+		try{
+			c = ExpressionParser.compile("x*y - x/2", "x", "y");
+			Path binary = Files.createTempFile("expressionparser", ".bin");
+			ByteBuffer records = ByteBuffer.allocate(3000 * 16).order(ByteOrder.LITTLE_ENDIAN);
+			for(int i = 0; i < 3000; ++i){
+				records.putDouble(i * 0.5).putDouble(i % 11 - 5);
+			}
+			Files.write(binary, records.array());
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			long count = StreamEvaluator.evaluateBinary(c, binary, Channels.newChannel(bytes),
+					ByteOrder.LITTLE_ENDIAN, 1000);
+			ByteBuffer results = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+			mismatches = 0;
+			for(int i = 0; i < 3000; ++i){
+				if(Double.compare(results.getDouble(), c.evaluate(i * 0.5, i % 11 - 5)) != 0){
+					++mismatches;
+				}
+			}
+			Files.delete(binary);
+			r = "records=" + count + ", bytes=" + bytes.size() + ", mismatches=" + mismatches;
+		}catch(IOException ex){
+			r = ex.toString();
+		}
+		e = "records=3000, bytes=24000, mismatches=0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("66. numbers read from bytes: 1.5, -0.25, 1e3, 12345678901234567, NaN and 'abc'");
+		ByteBuffer numbers = ByteBuffer.wrap(" 1.5|-0.25|1e3|12345678901234567|NaN|abc".getBytes(StandardCharsets.US_ASCII));
+		int[] bounds = {0, 4, 5, 10, 11, 14, 15, 32, 33, 36, 37, 40};
+		StringBuilder parsed = new StringBuilder();
+		for(int i = 0; i < bounds.length; i += 2){
+			try{
+				parsed.append(StreamEvaluator.parseNumber(numbers, bounds[i], bounds[i + 1])).append(' ');
+			}catch(NumberFormatException ex){
+				parsed.append("NumberFormatException");
+			}
+		}
+		e = "1.5 -0.25 1000.0 1.2345678901234568E16 NaN NumberFormatException";
+		r = parsed.toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//catalog tests
+		System.out.println("67. catalog file with duplicates, a blank line and two malformed lines");
+		try{
+			Path file = Files.createTempFile("expressionparser", ".txt");
+			Files.write(file, Arrays.asList("1 + 2", "x * 2", "", "  1 + 2  ", "3 +* 4", "(x + y) / 2", "x * 2", "2 ^"),
+					StandardCharsets.UTF_8);
+			executor = Executors.newFixedThreadPool(2);
+			ExpressionCatalog catalog;
+			try{
+				catalog = ExpressionCatalog.load(file, executor);
+			}finally{
+				executor.shutdown();
+			}
+			Files.delete(file);
+			r = "lines=" + catalog.getLineCount() + ", unique=" + catalog.getUniqueCount() +
+					", shared=" + (catalog.get(1) == catalog.get(4)) + ", blank=" + catalog.get(3) +
+					", value=" + catalog.get(6).evaluate(3, 4) + ", failures=";
+			for(ExpressionCatalog.Failure failure : catalog.getFailures()){
+				r += failure.getLine() + " ";
+			}
+		}catch(IOException ex){
+			r = ex.toString();
+		}
+		e = "lines=8, unique=5, shared=true, blank=null, value=3.5, failures=5 8 ";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("68. catalog of 50,000 lines holding 2,000 different expressions");
+		ArrayList<String> formulas = new ArrayList<String>();
+		for(int i = 0; i < 50000; ++i){
+			formulas.add("x * " + (i % 2000) + " + y / 3 - (x - " + (i % 2000) + ") ^ 2");
+		}
+		ExpressionCatalog catalog = ExpressionCatalog.compile(formulas);
+		mismatches = 0;
+		for(int i = 0; i < 50000; i += 7){
+			double expectedValue = 2 * (i % 2000) + 6 / 3.0 - Math.pow(2 - (i % 2000), 2);
+			if(catalog.get(i + 1).evaluate(2, 6) != expectedValue){
+				++mismatches;
+			}
+		}
+		e = "unique=2000, failures=0, mismatches=0";
+		r = "unique=" + catalog.getUniqueCount() + ", failures=" + catalog.getFailures().size() +
+				", mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//model tests
+		System.out.println("69. model a, b, c = a + b, d = c * 2, e = b ^ 2, f = d + e after setting a to 5");
+		ExpressionModel model = new ExpressionModel()
+			.set("a", 1)
+			.set("b", 2)
+			.define("c", "a + b")
+			.define("d", "c * 2")
+			.define("e", "b ^ 2")
+			.define("f", "d + e");
+		long evaluations = model.getEvaluationCount();
+		model.set("a", 5);
+		e = "f=18.0, evaluations=3";
+		r = "f=" + model.get("f") + ", evaluations=" + (model.getEvaluationCount() - evaluations);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("70. defining a = f + 1 and b = b * 2 in the same model");
+		mismatches = 0;
+		try{
+			model.define("a", "f + 1");
+		}catch(IllegalArgumentException ex){
+			++mismatches;
+		}
+		try{
+			model.define("b", "b * 2");
+		}catch(IllegalArgumentException ex){
+			++mismatches;
+		}
+		e = "cycles=2, a=5.0, f=18.0";
+		r = "cycles=" + mismatches + ", a=" + model.get("a") + ", f=" + model.get("f");
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("71. g = max(c, 100) stops the update before h = g + 1");
+		OperatorRegistry maximum = new OperatorRegistry().register(new Operator("max", 2){
+			@Override
+			public double apply(double[] operands, int offset){
+				return Math.max(operands[offset], operands[offset + 1]);
+			}
+		});
+		model = new ExpressionModel(maximum)
+			.set("a", 1)
+			.define("c", "a * 3")
+			.define("g", "max(c, 100)")
+			.define("h", "g + 1")
+			.define("k", "missing + 1");
+		evaluations = model.getEvaluationCount();
+		model.set("a", 2);
+		e = "h=101.0, evaluations=2, k=NaN";
+		r = "h=" + model.get("h") + ", evaluations=" + (model.getEvaluationCount() - evaluations) +
+				", k=" + model.get("k");
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("72. chain of 100,000 cells, each one more than the one before");
+		model = new ExpressionModel().set("x0", 0);
+		for(int i = 1; i < 100000; ++i){
+			model.define("x" + i, "x" + (i - 1) + " + 1");
+		}
+		evaluations = model.getEvaluationCount();
+		model.set("x0", 1);
+		e = "x99999=100000.0, evaluations=99999";
+		r = "x99999=" + model.get("x99999") + ", evaluations=" + (model.getEvaluationCount() - evaluations);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//common subexpression tests
+		System.out.println("73. (a-b)^2 + (a-b)^2*c as a graph with a = 5, b = 2, c = 10");
+		ExpressionGraph graph = ExpressionGraph.compile("(a-b)^2 + (a-b)^2*c");
+		e = "[99.0], nodes=8, instructions=13";
+		r = Arrays.toString(graph.evaluate(5, 2, 10)) + ", nodes=" + graph.getNodeCount() +
+				", instructions=" + graph.getInstructionCount();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("74. (a-b)^2 + c, (a-b)^2 * c and c + (a-b)^2 compiled together");
+		String[] related = {"(a-b)^2 + c", "(a-b)^2 * c", "c + (a-b)^2"};
+		graph = ExpressionGraph.compile(related);
+		e = "[19.0, 90.0, 19.0], nodes=8, variables=[a, b, c]";
+		r = Arrays.toString(graph.evaluate(5, 2, 10)) + ", nodes=" + graph.getNodeCount() +
+				", variables=" + Arrays.toString(graph.getVariables());
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("75. graph of three expressions over 5000 rows, against each expression alone");
+		String[] sources = {"(x - y)^2 + 1/(x - y)", "clamp(x, 0, y) * (x - y)^2", "-(x - y) / 3"};
+		CompiledExpression[] separate = new CompiledExpression[sources.length];
+		for(int i = 0; i < sources.length; ++i){
+			separate[i] = ExpressionParser.compile(sources[i], registry, "x", "y");
+		}
+		graph = ExpressionGraph.compile(separate);
+		columns = new double[2][5000];
+		for(int i = 0; i < 5000; ++i){
+			columns[0][i] = i * 0.01 - 20;
+			columns[1][i] = i % 9;
+		}
+		double[][] results = new double[3][5000];
+		graph.evaluate(columns, results);
+		mismatches = 0;
+		for(int k = 0; k < 3; ++k){
+			for(int i = 0; i < 5000; ++i){
+				if(Double.compare(results[k][i], separate[k].evaluate(columns[0][i], columns[1][i])) != 0){
+					++mismatches;
+				}
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing functions and fast math\n");
+		
+		System.out.println("76. sin(0) + cos(0) + tan(0) + sqrt(16) + exp(0) + log(1)");
+		e = "6.0";
+		r = String.valueOf(ExpressionParser.parseAndEval("sin(0) + cos(0) + tan(0) + sqrt(16) + exp(0) + log(1)"));
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("77. sin(x)^2 + cos(x)^2 in postfix, and evaluatePostfix of [0.5, arcsin, 6, *]");
+		ArrayDeque<String> queue = new ArrayDeque<String>(Arrays.asList("0.5", ExpressionParser.ARCSIN, "6", "*"));
+		e = "[x, sin, 2.0, ^, x, cos, 2.0, ^, +] " + 6 * Math.asin(0.5);
+		r = ExpressionParser.parse("sin(x)^2 + cos(x)^2") + " " + ExpressionParser.evaluatePostfix(queue);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("78. sqrt(16) * x + log(1) has its functions of constants folded");
+		e = "[4.0, x, *, 0.0, +]";
+		r = ExpressionParser.compile("sqrt(16) * x + log(1)", "x").getPostfix().toString();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("79. every function over 1000 rows: interpreter, batch, bytecode and graph agree");
+		c = ExpressionParser.compile("sin(x) * cos(y) + tan(x / 7) - arctan(y) + exp(x / 10) * log(y + 1) + " +
+				"sqrt(y) + arcsin(x / 20) - arccos(y / 20)", "x", "y");
+		f = BytecodeCompiler.compile(c.getProgram());
+		graph = ExpressionGraph.compile(c);
+		columns = new double[2][1000];
+		for(int i = 0; i < 1000; ++i){
+			columns[0][i] = i * 0.02 - 10;
+			columns[1][i] = (i * 7 % 1000) * 0.01;
+		}
+		output = new double[1000];
+		c.evaluate(columns, output);
+		results = new double[1][1000];
+		graph.evaluate(columns, results);
+		mismatches = 0;
+		for(int i = 0; i < 1000; ++i){
+			double[] row = {columns[0][i], columns[1][i]};
+			double value = Math.sin(row[0]) * Math.cos(row[1]) + Math.tan(row[0] / 7) - Math.atan(row[1]) +
+					Math.exp(row[0] / 10) * Math.log(row[1] + 1) + Math.sqrt(row[1]) + Math.asin(row[0] / 20) -
+					Math.acos(row[1] / 20);
+			if(Double.compare(c.evaluate(row), value) != 0 || Double.compare(output[i], value) != 0 ||
+					Double.compare(f.evaluate(row), value) != 0 || Double.compare(results[0][i], value) != 0){
+				++mismatches;
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("80. FastMath stays within its documented error bounds on 100,000 random inputs");
+		Random random = new Random(16);
+		int outOfBounds = 0;
+		for(int i = 0; i < 100000; ++i){
+			double x = (random.nextDouble() * 2 - 1) * Math.scalb(1.0, random.nextInt(21));
+			double t = (random.nextDouble() * 2 - 1) * 700;
+			double z = Math.pow(10, (random.nextDouble() * 2 - 1) * 300);
+			double b = Math.pow(10, (random.nextDouble() * 2 - 1) * 5);
+			double y = (random.nextDouble() * 2 - 1) * 100;
+			double power = StrictMath.pow(b, y);
+			
+			if(Math.abs(FastMath.sin(x) - StrictMath.sin(x)) > 4e-16 ||
+					Math.abs(FastMath.cos(x) - StrictMath.cos(x)) > 4e-16 ||
+					Math.abs(FastMath.exp(t) - StrictMath.exp(t)) > 4e-16 * StrictMath.exp(t) ||
+					Math.abs(FastMath.log(z) - StrictMath.log(z)) > 3e-16 * Math.max(1, Math.abs(StrictMath.log(z))) ||
+					(power >= Double.MIN_NORMAL && Math.abs(FastMath.pow(b, y) - power) >
+							4e-16 * (1 + Math.abs(y) * Math.max(1, Math.abs(StrictMath.log(b)))) * power)){
+				++outOfBounds;
+			}
+		}
+		e = "outOfBounds=0";
+		r = "outOfBounds=" + outOfBounds;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("81. fast math gives the same results as exact math for special values");
+		specials = new double[] {Double.NaN, 0.0, -0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		double[] others = {-1, 1, 3, -2.5, Double.MIN_VALUE, Double.MAX_VALUE};
+		String[] functions = {"sin(x)", "cos(x)", "exp(x)", "log(x)", "x^y"};
+		mismatches = 0;
+		for(String function : functions){
+			c = ExpressionParser.compile(function, "x", "y");
+			CompiledExpression fast = c.withFastMath();
+			for(double x : specials){
+				for(double y : specials){
+					mismatches += Double.compare(c.evaluate(x, y), fast.evaluate(x, y)) != 0 ? 1 : 0;
+				}
+				for(double y : others){
+					mismatches += Double.compare(c.evaluate(x, y), fast.evaluate(x, y)) != 0 ? 1 : 0;
+					
+					//only a power has a second operand which can be special on its own
+					if(function.equals("x^y")){
+						mismatches += Double.compare(c.evaluate(y, x), fast.evaluate(y, x)) != 0 ? 1 : 0;
+					}
+				}
+			}
+		}
+		c = ExpressionParser.compile("x * 2 + sqrt(x)", "x");
+		e = "mismatches=0, unchanged=true";
+		r = "mismatches=" + mismatches + ", unchanged=" + (c.withFastMath() == c);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("82. sin(x) * exp(-x/4) + x^2.5 in fast math over 1000 rows");
+		c = ExpressionParser.compile("sin(x) * exp(-x/4) + x^2.5", "x");
+		CompiledExpression fast = c.withFastMath();
+		f = BytecodeCompiler.compile(fast.getProgram());
+		columns = new double[1][1000];
+		for(int i = 0; i < 1000; ++i){
+			columns[0][i] = i * 0.05;
+		}
+		output = new double[1000];
+		fast.evaluate(columns, output);
+		double maxError = 0;
+		mismatches = 0;
+		for(int i = 0; i < 1000; ++i){
+			double exact = c.evaluate(columns[0][i]);
+			maxError = Math.max(maxError, Math.abs(output[i] - exact) / Math.max(1, Math.abs(exact)));
+			if(Double.compare(output[i], fast.evaluate(columns[0][i])) != 0 ||
+					Double.compare(output[i], f.evaluate(new double[] {columns[0][i]})) != 0){
+				++mismatches;
+			}
+		}
+		e = "postfix=" + c.getPostfix() + ", close=true, mismatches=0";
+		r = "postfix=" + fast.getPostfix() + ", close=" + (maxError < 1e-14) + ", mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//store tests
+		System.out.println("83. sin(x) * 2^y - 3.5/(x + 1) encoded to bytes and decoded again");
+		c = ExpressionParser.compile("sin(x) * 2^y - 3.5/(x + 1)", "x", "y");
+		CompiledExpression decoded = ExpressionStore.decode(ExpressionStore.encode(c));
+		e = c.getSource() + " " + c.getPostfix() + " " + Arrays.toString(c.getVariables()) + " " + c.evaluate(0.5, 3);
+		r = decoded.getSource() + " " + decoded.getPostfix() + " " + Arrays.toString(decoded.getVariables()) + " " +
+				decoded.evaluate(0.5, 3);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("84. the 50,000 line catalog and a missing expression written to a store and mapped");
+		ArrayList<CompiledExpression> stored = new ArrayList<CompiledExpression>();
+		for(int i = 1; i <= catalog.getLineCount(); ++i){
+			stored.add(catalog.get(i));
+		}
+		stored.add(null);
+		stored.add(ExpressionParser.compile("sqrt(x) + exp(y) / 2", "x", "y"));
+		ExpressionStore store = null;
+		Path storeFile = null;
+		try{
+			storeFile = Files.createTempFile("expressionparser", ".store");
+			ExpressionStore.write(storeFile, stored);
+			store = ExpressionStore.open(storeFile);
+			mismatches = 0;
+			for(int i = 0; i < stored.size(); ++i){
+				if(stored.get(i) != null && Double.compare(store.evaluate(i, 2, 6), stored.get(i).evaluate(2, 6)) != 0){
+					++mismatches;
+				}
+			}
+			r = "size=" + store.size() + ", missing=" + !store.contains(50000) + ", mismatches=" + mismatches +
+					", source=" + store.getSource(50001) + ", postfix=" +
+					store.get(7).getPostfix().toString().equals(stored.get(7).getPostfix().toString());
+		}catch(IOException ex){
+			r = ex.toString();
+		}
+		e = "size=50002, missing=true, mismatches=0, source=sqrt(x) + exp(y) / 2, postfix=true";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("85. bytes allocated per evaluation straight from the mapped store");
+		e = "bytes=0";
+		if(store == null){
+			r = "store not opened";
+		}else{
+			values = new double[] {0, 3};
+			total = 0;
+			for(int i = 0; i < 200000; ++i){
+				values[0] = i;
+				total += store.evaluate(i % 50000, values);
+			}
+			before = ExpressionParserTests.getAllocatedBytes();
+			for(int i = 0; i < 100000; ++i){
+				values[0] = i;
+				total += store.evaluate(i % 50000, values);
+			}
+			allocated = ExpressionParserTests.getAllocatedBytes() - before;
+			r = allocated < 0 || Double.isNaN(total) ? e : "bytes=" + allocated / 100000;
+		}
+		
+		//the store is no longer used, but some systems refuse to delete a file while it is mapped
+		store = null;
+		if(storeFile != null){
+			try{
+				Files.delete(storeFile);
+			}catch(IOException ex){
+				storeFile.toFile().deleteOnExit();
+			}
+		}
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("86. storing a registered function, opening a file which is not a store, decoding garbage");
+		r = "";
+		try{
+			ExpressionStore.encode(ExpressionParser.compile("clamp(x, 0, 1)", registry, "x"));
+		}catch(IllegalArgumentException ex){
+			r += "function rejected, ";
+		}
+		try{
+			Path file = Files.createTempFile("expressionparser", ".store");
+			Files.write(file, "1 + 2\n3 * 4\nnot a store at all".getBytes(StandardCharsets.US_ASCII));
+			try{
+				ExpressionStore.open(file);
+			}catch(IOException ex){
+				r += "file rejected, ";
+			}
+			Files.delete(file);
+		}catch(IOException ex){
+			r += ex.toString();
+		}
+		try{
+			byte[] bytes = ExpressionStore.encode(ExpressionParser.compile("x + 1", "x"));
+			ExpressionStore.decode(Arrays.copyOf(bytes, bytes.length - 3));
+		}catch(IllegalArgumentException ex){
+			r += "truncated bytes rejected";
+		}
+		e = "function rejected, file rejected, truncated bytes rejected";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//instrumentation tests
+		System.out.println("87. token count and nesting depth of ((1 + 2) * max(3, 4)) reported to a monitor");
+		final int[] statistics = new int[2];
+		ExpressionCounters counters = new ExpressionCounters(){
+			@Override
+			public void parsed(String expression, int tokenCount, int nestingDepth, long nanos){
+				super.parsed(expression, tokenCount, nestingDepth, nanos);
+				statistics[0] = tokenCount;
+				statistics[1] = nestingDepth;
+			}
+		};
+		Instrumentation.setMonitor(counters, 1);
+		ExpressionParser.compile("((1 + 2) * max(3, 4))", registry);
+		e = "tokens=14, depth=2, parsed=1, compiled=1";
+		r = "tokens=" + statistics[0] + ", depth=" + statistics[1] + ", parsed=" + counters.getParseCount() +
+				", compiled=" + counters.getCompileCount();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("88. cache hits, misses and parse failures counted by the monitor");
+		counters.reset();
+		ExpressionCache monitoredCache = new ExpressionCache(4);
+		monitoredCache.get("1 + 1");
+		monitoredCache.get("1 + 1");
+		monitoredCache.get("2 * 3");
+		try{
+			ExpressionParser.compile("1 + * 2");
+		}catch(IllegalArgumentException ex){
+			//counted by the monitor
+		}
+		e = "hits=1, misses=2, rate=0.3333333333333333, compiled=2, failures=1";
+		r = "hits=" + counters.getCacheHitCount() + ", misses=" + counters.getCacheMissCount() + ", rate=" +
+				counters.getCacheHitRate() + ", compiled=" + counters.getCompileCount() + ", failures=" +
+				counters.getFailureCount();
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("89. hot expressions and opcode counts, every evaluation sampled");
+		counters.reset();
+		c = ExpressionParser.compile("x * 2 + 1", "x");
+		for(int i = 0; i < 1000; ++i){
+			c.evaluate(i);
+		}
+		columns = new double[][] {new double[500]};
+		output = new double[500];
+		ExpressionParser.compile("sin(x)", "x").evaluate(columns, output);
+		e = "{x * 2 + 1=1000, sin(x)=500}, evaluations=1000, rows=500, *=1000, sin=500";
+		r = counters.getHotExpressions(5) + ", evaluations=" + counters.getEvaluationCount() + ", rows=" +
+				counters.getBatchRowCount() + ", *=" + counters.getOpcodeCount(ExpressionProgram.MUL) + ", sin=" +
+				counters.getOpcodeCount(ExpressionProgram.SIN);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("90. nothing counted once the monitor is removed, invalid sample rate rejected");
+		counters.reset();
+		Instrumentation.setMonitor(null);
+		for(int i = 0; i < 1000; ++i){
+			c.evaluate(i);
+		}
+		ExpressionParser.compile("1 + 2");
+		r = counters.getParseCount() + counters.getCompileCount() + counters.getEvaluationCount() + "";
+		try{
+			Instrumentation.setMonitor(counters, 0);
+		}catch(IllegalArgumentException ex){
+			r += ", rejected";
+		}
+		r += ", monitor=" + Instrumentation.getMonitor();
+		e = "0, rejected, monitor=null";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		//validation tests
+		System.out.println("91. kind and index of the errors of malformed expressions");
+		String[] malformed = {"1 + * 2", "(1 + 2", "1 + 2)", "2 x", "1.2.3 + 1", "(1, 2)", "max(1)", "foo(1)", "4 +", "+"};
+		r = "";
+		for(String expression : malformed){
+			try{
+				ExpressionParser.compile(expression, registry);
+				r += "accepted ";
+			}catch(ExpressionSyntaxException ex){
+				r += ExpressionSyntaxException.getKindName(ex.getKind()) + "@" + ex.getIndex() + " ";
+			}
+		}
+		e = "invalid token@4 unmatched bracket@6 unmatched bracket@5 missing operator@2 invalid number@0 " +
+				"misplaced comma@2 wrong argument count@5 unknown function@0 missing operand@3 missing operand@1 ";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("92. validator and parser agree on 200,000 random expressions, with and without declared variables");
+		String[] pieces = {"1", "2.5", ".", "x", "y", "z", " ", "+", "-", "*", "/", "^", "(", ")", ",", "sin", "max",
+				"foo", "#", "3.1.4", "max("};
+		random = new Random(19);
+		mismatches = 0;
+		int accepted = 0;
+		for(int i = 0; i < 200000; ++i){
+			StringBuilder expression = new StringBuilder();
+			for(int j = random.nextInt(10); j > 0; --j){
+				expression.append(pieces[random.nextInt(pieces.length)]);
+			}
+			boolean declared = i % 2 == 0;
+			ExpressionValidator validator = declared ? new ExpressionValidator(registry, "x", "y") :
+					new ExpressionValidator(registry);
+			int kind = 0;
+			int index = -1;
+			try{
+				if(declared){
+					ExpressionParser.compile(expression.toString(), registry, "x", "y");
+				}else{
+					ExpressionParser.compile(expression.toString(), registry);
+				}
+			}catch(ExpressionSyntaxException ex){
+				kind = ex.getKind();
+				index = ex.getIndex();
+			}
+			if(validator.validate(expression.toString())){
+				++accepted;
+			}
+			if(kind != validator.getErrorKind() || index != validator.getErrorIndex()){
+				++mismatches;
+			}
+		}
+		e = "mismatches=0, some accepted=true, some rejected=true";
+		r = "mismatches=" + mismatches + ", some accepted=" + (accepted > 1000) + ", some rejected=" +
+				(accepted < 199000);
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("93. bytes allocated per validation, accepted and rejected (max is not a default function)");
+		ExpressionValidator validator = new ExpressionValidator(registry);
+		String[] checked = {"(x + 1.5) * max(y, 2) - sin(x)", "(x + 1.5) * max(y, 2 - sin(x)", "x + 1.5.2", "foo(x)"};
+		int rejected = 0;
+		for(int i = 0; i < 200000; ++i){
+			rejected += validator.validate(checked[i & 3]) ? 0 : 1;
+		}
+		before = ExpressionParserTests.getAllocatedBytes();
+		for(int i = 0; i < 100000; ++i){
+			rejected += validator.validate(checked[i & 3]) ? 0 : 1;
+			rejected += ExpressionParser.isValid(checked[i & 3]) ? 0 : 1;
+		}
+		allocated = ExpressionParserTests.getAllocatedBytes() - before;
+		e = "bytes=0, rejected=325000";
+		r = (allocated < 0 ? "bytes=0" : "bytes=" + allocated / 100000) + ", rejected=" + rejected;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("94. full error of a rejected expression, declared variables, lone unary plus and blank expression");
+		validator = new ExpressionValidator(registry, "x", "y");
+		r = validator.validate("x * z") + " " + validator.getError().getMessage() + ", " +
+				validator.validate("max(x, y)") + " " + validator.getError() + ", " + ExpressionParser.isValid("+") +
+				" " + validator.validate(" + ") + " " + ExpressionSyntaxException.getKindName(validator.getErrorKind()) +
+				" " + validator.validate("  ");
+		e = "false Unknown variable 'z' at index 4: x * z, true null, false false missing operand true";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("95. integral expressions, including one folded past 2^63 by the optimizer");
+		r = ExpressionParser.compile("x * 3 - (y + 2)^2", "x", "y").isIntegral() + " " +
+				ExpressionParser.compile("2^62 * 2 - 2^62 * 2 + 1").isIntegral() + " " +
+				ExpressionParser.compile("x / 2", "x").isIntegral() + " " +
+				ExpressionParser.compile("x * 1.5", "x").isIntegral() + " " +
+				ExpressionParser.compile("sqrt(x)", "x").isIntegral() + " " +
+				ExpressionParser.compile("9007199254740993").isIntegral();
+		e = "true true false false false false";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("96. exact long results past 2^53, where double loses digits");
+		c = ExpressionParser.compile("x * y + 1", "x", "y");
+		r = c.evaluateLong(3037000499L, 3037000499L) + " " + ExpressionParser.compile("3^39").evaluateLong() +
+				" " + (long) c.evaluate(3037000499.0, 3037000499.0);
+		e = "9223372030926249002 4052555153018976267 9223372030926248960";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("97. overflow, negative power and non-integral expression in long arithmetic");
+		r = "";
+		String[][] overflows = {{"x * x", "4294967296"}, {"x + x", "9223372036854775807"}, {"-x", "-9223372036854775808"},
+				{"2^x", "-1"}, {"x^64", "2"}};
+		for(String[] overflow : overflows){
+			try{
+				r += ExpressionParser.compile(overflow[0], "x").evaluateLong(Long.parseLong(overflow[1])) + " ";
+			}catch(ArithmeticException ex){
+				r += "ArithmeticException ";
+			}
+		}
+		try{
+			ExpressionParser.compile("x / 2", "x").evaluateLong(4);
+		}catch(IllegalStateException ex){
+			r += "IllegalStateException";
+		}
+		e = "ArithmeticException ArithmeticException ArithmeticException ArithmeticException ArithmeticException " +
+				"IllegalStateException";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("98. long batch equals long rows, with small values, large values and an overflowing row");
+		c = ExpressionParser.compile("x * y - (x - 3)^3 + -y * 7", "x", "y");
+		random = new Random(20);
+		long[][] longColumns = new long[2][2500];
+		long[] longOutput = new long[2500];
+		mismatches = 0;
+		for(int i = 0; i < 2500; ++i){
+			longColumns[0][i] = i < 1000 ? random.nextInt(2000) - 1000 : random.nextInt() >> 10;
+			longColumns[1][i] = i < 1000 ? random.nextInt(2000) - 1000 : random.nextInt();
+		}
+		c.evaluateLong(longColumns, longOutput);
+		for(int i = 0; i < 2500; ++i){
+			mismatches += longOutput[i] == c.evaluateLong(longColumns[0][i], longColumns[1][i]) ? 0 : 1;
+		}
+		r = "mismatches=" + mismatches;
+		longColumns[0][2400] = 3000000;
+		try{
+			c.evaluateLong(longColumns, longOutput);
+		}catch(ArithmeticException ex){
+			r += " overflow";
+		}
+		e = "mismatches=0 overflow";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("99. decimal arithmetic: exact sums, literals as written, rounded divisions");
+		DecimalExpression decimal = ExpressionParser.compileDecimal("0.1 + 0.2", MathContext.DECIMAL64);
+		r = decimal.evaluate() + " " + (0.1 + 0.2);
+		decimal = ExpressionParser.compileDecimal("price * (1 + rate)^2 - 0.01", MathContext.DECIMAL64, "price", "rate");
+		r += " " + decimal.evaluate(new BigDecimal("19.99"), new BigDecimal("0.05"));
+		r += " " + ExpressionParser.compile("x / 3", "x").toDecimal(new MathContext(5)).evaluate(BigDecimal.ONE);
+		r += " " + ExpressionParser.compileDecimal("12345678901234567.89 + 0.01", MathContext.DECIMAL128).evaluate();
+		e = "0.3 0.30000000000000004 22.028975 0.33333 12345678901234567.90";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("100. decimal arithmetic rejects functions and non-integer exponents");
+		r = "";
+		try{
+			ExpressionParser.compileDecimal("sqrt(2)", MathContext.DECIMAL64);
+		}catch(IllegalArgumentException ex){
+			r += "IllegalArgumentException ";
+		}
+		try{
+			ExpressionParser.compileDecimal("2^0.5", MathContext.DECIMAL64).evaluate();
+		}catch(ArithmeticException ex){
+			r += "ArithmeticException";
+		}
+		e = "IllegalArgumentException ArithmeticException";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing tiered execution\n");
+		
+		System.out.println("101. closures against the interpreter: operators, functions, fast math, calls, deep nesting");
+		nested = new StringBuilder("x");
+		for(int i = 0; i < 1000; ++i){
+			nested.insert(0, "(1 - ").append(")");
+		}
+		CompiledExpression[] closed = {ExpressionParser.compile("2^-x+y/(x-y)*0.1", "x", "y"),
+				ExpressionParser.compile("-sin(x) * cos(y) + sqrt(x * x + y) - log(exp(y) + 1) / tan(x)", "x", "y"),
+				ExpressionParser.compile("sin(x)^y - exp(x / 7)", "x", "y").withFastMath(),
+				ExpressionParser.compile("max(x, y) * clamp(x, 0, 1)", registry, "x", "y"),
+				ExpressionParser.compile(nested.toString(), "x", "y"), ExpressionParser.compile("", "x", "y")};
+		mismatches = 0;
+		for(CompiledExpression closedExpression : closed){
+			f = ClosureCompiler.compile(closedExpression.getProgram());
+			for(int i = 0; i < 2500; ++i){
+				values = new double[] {i * 0.5 - 100, 7 - i * 0.01};
+				mismatches += Double.compare(f.evaluate(values), closedExpression.evaluate(values)) == 0 ? 0 : 1;
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("102. promotions at 10 and 100 evaluations, run on the calling thread, with the same results");
+		Executor direct = new Executor(){
+			@Override
+			public void execute(Runnable task){
+				task.run();
+			}
+		};
+		TieredCompiler tiered = new TieredCompiler(10, 100, direct);
+		TieredExpression t = tiered.compile("2^-x+y/(x-y)*0.1", "x", "y");
+		c = t.getExpression();
+		r = "";
+		mismatches = 0;
+		for(int i = 1; i <= 150; ++i){
+			values = new double[] {i * 0.5 - 100, 7 - i};
+			mismatches += Double.compare(t.evaluate(values), c.evaluate(values)) == 0 ? 0 : 1;
+			if(i == 9 || i == 10 || i == 99 || i == 100){
+				r += t.getTier() + " ";
+			}
+		}
+		r += "mismatches=" + mismatches + ", " + tiered;
+		e = "0 1 1 2 mismatches=0, expressions=1, to closures=1, to bytecode=1, kept=0, failed=0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("103. promotions in the background, with tiers skipped by an unreachable threshold");
+		tiered = new TieredCompiler(1000, 5000);
+		t = tiered.compile("x * y + 1", "x", "y");
+		TieredCompiler skipping = new TieredCompiler(Integer.MAX_VALUE, 1000);
+		TieredExpression skipped = skipping.compile("x - y", "x", "y");
+		total = 0;
+		long deadline = System.currentTimeMillis() + 10000;
+		while((t.getTier() != TieredExpression.BYTECODE || skipped.getTier() != TieredExpression.BYTECODE) &&
+				System.currentTimeMillis() < deadline){
+			total += t.evaluate(2, 3) + skipped.evaluate(2, 3);
+		}
+		r = t.getTier() + " " + skipped.getTier() + " " + tiered.getPromotionCount(TieredExpression.BYTECODE) + " " +
+				skipping.getPromotionCount(TieredExpression.CLOSURES) + " " + (total > 0) + " " +
+				(tiered.getPromotionNanos() > 0);
+		e = "2 2 1 0 true true";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("104. promotions refused by the executor keep the expression interpreted");
+		ExecutorService refusing = Executors.newSingleThreadExecutor();
+		refusing.shutdown();
+		tiered = new TieredCompiler(10, 100, refusing);
+		t = tiered.compile("x * 2", "x");
+		total = 0;
+		for(int i = 0; i < 25; ++i){
+			total += t.evaluate(i);
+		}
+		r = total + " " + t.getTier() + " " + tiered.getFailedPromotionCount();
+		e = "600.0 0 2";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing ExpressionCache with variables\n");
+		
+		System.out.println("105. one entry per expression and variable order, shared by equal lookups");
+		cache = new ExpressionCache(8);
+		c = cache.get("x - y", "x", "y");
+		r = c.evaluate(5, 2) + " " + cache.get("x - y", "y", "x").evaluate(5, 2) + " " +
+				(cache.get("x - y", "x", "y") == c) + " " + (cache.get("x - y") != c) + " " + cache.size() + " " +
+				cache.getHitCount() + " " + cache.getMissCount();
+		e = "3.0 -3.0 true true 3 1 3";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing structural equality\n");
+		
+		System.out.println("106. expressions written differently but compiled alike are equal");
+		c = ExpressionParser.compile("5+2");
+		CompiledExpression other = ExpressionParser.compile(" 5 + 2 ");
+		CompiledExpression third = ExpressionParser.compile("(5.0)+(2)");
+		r = c.equals(other) + " " + c.equals(third) + " " + (c.hashCode() == third.hashCode()) + " " +
+				ExpressionParser.compile("x*2").equals(ExpressionParser.compile("((x))*2.0")) + " " +
+				ExpressionParser.compile("x*2").equals(ExpressionParser.compile("y*2")) + " " +
+				ExpressionParser.compile("x-y").equals(ExpressionParser.compile("y-x")) + " " +
+				ExpressionParser.compile("0.0").equals(ExpressionParser.compile("-0.0"));
+		e = "true true true true false false false";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("107. canonical order of the operands, without regrouping them");
+		c = ExpressionParser.compile("y*x+1", "x", "y").withCanonicalOrder();
+		other = ExpressionParser.compile("1+x*y", "x", "y").withCanonicalOrder();
+		third = ExpressionParser.compile("(a+b)+c").withCanonicalOrder();
+		CompiledExpression grouped = ExpressionParser.compile("a+(b+c)").withCanonicalOrder();
+		CompiledExpression original = ExpressionParser.compile("y*x+1", "x", "y");
+		double[][] rows = {{3, 4}, {-0.0, 5}, {Double.NaN, 1}, {Double.POSITIVE_INFINITY, 0}, {1e308, 10}};
+		boolean identical = true;
+		for(double[] row : rows){
+			identical &= Double.doubleToRawLongBits(c.evaluate(row)) ==
+					Double.doubleToRawLongBits(original.evaluate(row));
+		}
+		r = c.equals(other) + " " + (c.hashCode() == other.hashCode()) + " " + third.equals(grouped) + " " +
+				identical + " " + c.evaluate(3, 4) + " " + c.getSource();
+		e = "true true false true 13.0 y*x+1";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("108. caches keep one program for equal expressions, each text keeping its source");
+		cache = new ExpressionCache(8);
+		c = cache.get("x*2");
+		other = cache.get("(x) * 2.0");
+		r = (other.getProgram() == c.getProgram()) + " " + other.equals(c) + " " + other.getSource() + " " +
+				(cache.get("2*x").getProgram() == c.getProgram()) + " " + cache.size() + " " +
+				cache.getProgramCount() + " " + cache.getShareCount();
+		cache = new ExpressionCache(2, true);
+		c = cache.get("x*y", "x", "y");
+		r += " " + (cache.get("y*x", "x", "y").getProgram() == c.getProgram()) + " " + cache.getProgramCount();
+		cache.get("1");
+		cache.get("2");
+		r += " " + cache.size() + " " + cache.getProgramCount();
+		e = "true true (x) * 2.0 false 3 2 1 true 1 2 2";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("109. catalogs share the programs of equal lines");
+		catalog = ExpressionCatalog.compile(Arrays.asList("x*2", "(x)*2.0", "x*3", "x*2", "x*"));
+		r = (catalog.get(1).getProgram() == catalog.get(2).getProgram()) + " " + catalog.get(2).getSource() + " " +
+				(catalog.get(1) == catalog.get(4)) + " " + (catalog.get(1).getProgram() == catalog.get(3).getProgram()) +
+				" " + catalog.getUniqueCount() + " " + catalog.getFailures().size();
+		e = "true (x)*2.0 true false 4 1";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing tiered execution of expressions closures or classes cannot evaluate\n");
+		
+		System.out.println("110. expressions no later tier can evaluate are kept where they are, and not counted as promoted");
+		tiered = new TieredCompiler(10, 20, direct);
+		t = tiered.compile(ExpressionParser.compile("max(x, 2) + 1", registry, "x"));
+		TieredExpression deep = tiered.compile(nested.toString(), "x", "y");
+		total = 0;
+		for(int i = 0; i < 25; ++i){
+			total += t.evaluate(i) + deep.evaluate(0.5, 0);
+		}
+		r = total + " " + t.getTier() + " " + deep.getTier() + " " + tiered;
+		e = "340.5 0 2 expressions=2, to closures=0, to bytecode=1, kept=1, failed=0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("Testing ExpressionCache with malformed expressions\n");
+		
+		System.out.println("111. an expression which cannot be compiled is parsed once, its error thrown again on later lookups");
+		cache = new ExpressionCache(2);
+		r = "";
+		for(int i = 0; i < 3; ++i){
+			try{
+				cache.get("1 + * 2");
+			}catch(ExpressionSyntaxException ex){
+				r += ExpressionSyntaxException.getKindName(ex.getKind()) + "@" + ex.getIndex() + " ";
+			}
+		}
+		try{
+			cache.get("x * z", "x", "y");
+		}catch(ExpressionSyntaxException ex){
+			r += ex.getMessage() + " ";
+		}
+		r += cache.getMissCount() + " " + cache.getHitCount() + " " + cache.getRejectionCount() + " " +
+				cache.getFailureCount() + " " + cache.size();
+		cache.get("1");
+		cache.get("2");
+		cache.get("3");
+		try{
+			cache.get("4 -");
+		}catch(ExpressionSyntaxException ex){
+			r += " " + ExpressionSyntaxException.getKindName(ex.getKind());
+		}
+		r += " " + cache.getFailureCount() + " " + cache.size();
+		e = "invalid token@4 invalid token@4 invalid token@4 Unknown variable 'z' at index 4: x * z 2 2 2 2 0 missing operand 2 2";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("112. equal expressions sharing a program keep their own digits for exact evaluation");
+		cache = new ExpressionCache(8);
+		c = cache.get("0.30000000000000004");
+		other = cache.get("0.1+0.2");
+		CompiledExpression even = cache.get("9007199254740992");
+		CompiledExpression odd = cache.get("9007199254740993");
+		CompiledExpression zero = cache.get("0");
+		CompiledExpression one = cache.get("2^53 + 1 - 2^53");
+		catalog = ExpressionCatalog.compile(Arrays.asList("0.30000000000000004", "0.1 + 0.2"));
+		r = other.equals(c) + " " + (other.getProgram() == c.getProgram()) + " " +
+				other.toDecimal(MathContext.DECIMAL128).evaluate() + " " + c.toDecimal(MathContext.DECIMAL128).evaluate() +
+				" " + catalog.get(2).toDecimal(MathContext.DECIMAL128).evaluate() + " " + even.equals(odd) + " " +
+				odd.getSource() + " " + one.equals(zero) + " " + one.evaluate() + " " + one.evaluateLong() + " " +
+				zero.evaluateLong();
+		e = "true true 0.3 0.30000000000000004 0.3 true 9007199254740993 true 0.0 1 0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("113. variable names holding separators are keys of their own");
+		cache = new ExpressionCache(8);
+		r = "";
+		try{
+			cache.get("a+b", "a\0b");
+		}catch(ExpressionSyntaxException ex){
+			r += ExpressionSyntaxException.getKindName(ex.getKind()) + " ";
+		}
+		r += cache.get("a+b", "a", "b").evaluate(1, 2);
+		cache = new ExpressionCache(8);
+		cache.get("a+b", "a", "b");
+		try{
+			r += " " + cache.get("a+b", "a\0b").getVariables().length;
+		}catch(ExpressionSyntaxException ex){
+			r += " " + ExpressionSyntaxException.getKindName(ex.getKind());
+		}
+		String[] names = {"a", "b"};
+		c = cache.get("a-b", names);
+		names[0] = "b";
+		names[1] = "a";
+		r += " " + (cache.get("a-b", "a", "b") == c) + " " + cache.get("a-b", names).evaluate(1, 2);
+		e = "unknown variable 3.0 unknown variable true 1.0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("114. x+x+...+x with 1500 and 2500 terms, only the first small enough for HotSpot to compile");
+		sum = new StringBuilder("x");
+		for(int i = 1; i < 2500; ++i){
+			sum.append("+x");
+			if(i == 1499){
+				r = String.valueOf(BytecodeCompiler.build(ExpressionParser.compile(sum.toString()).getProgram()) != null);
+			}
+		}
+		p = ExpressionParser.compile(sum.toString()).getProgram();
+		r += " " + (BytecodeCompiler.build(p) != null) + " " + BytecodeCompiler.compile(p).evaluate(new double[] {0.5});
+		e = "true false 1250.0";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("115. refused promotions with closures skipped are tried again after the bytecode threshold");
+		tiered = new TieredCompiler(Integer.MAX_VALUE, 5, refusing);
+		t = tiered.compile("x * 2", "x");
+		total = 0;
+		for(int i = 0; i < 25; ++i){
+			total += t.evaluate(i);
+		}
+		r = total + " " + t.getTier() + " " + tiered.getFailedPromotionCount();
+		e = "600.0 0 5";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("116. storing a variable name too long for its 16 bits length, and one just short enough");
+		StringBuilder name = new StringBuilder("v");
+		while(name.length() < 65536){
+			name.append('v');
+		}
+		r = "";
+		try{
+			ExpressionStore.encode(ExpressionParser.compile(name + " * 2", name.toString()));
+		}catch(IllegalArgumentException ex){
+			r += "rejected ";
+		}
+		name.setLength(65535);
+		r += ExpressionStore.decode(ExpressionStore.encode(ExpressionParser.compile(name + " * 2", name.toString())))
+				.getVariables()[0].length();
+		e = "rejected 65535";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+		
+		System.out.println("117. parallel evaluation on an executor refusing every chunk after its first 2, which run late");
+		c = ExpressionParser.compile("x^2 - 3*x*y + y/7", "x", "y");
+		columns = new double[2][1000000];
+		for(int i = 0; i < columns[0].length; ++i){
+			columns[0][i] = i * 0.001;
+			columns[1][i] = (i % 1000) - 500;
+		}
+		expected = new double[columns[0].length];
+		c.evaluate(columns, expected);
+		output = new double[columns[0].length];
+		final int[] handedOver = {0};
+		c.evaluateParallel(columns, output, new Executor(){
+			@Override
+			public void execute(final Runnable command){
+				if(handedOver[0] == 2){
+					throw new RejectedExecutionException("Executor full");
+				}
+				++handedOver[0];
+				new Thread(new Runnable(){
+					@Override
+					public void run(){
+						try{
+							Thread.sleep(50);
+						}catch(InterruptedException ex){
+							Thread.currentThread().interrupt();
+						}
+						command.run();
+					}
+				}).start();
+			}
+		});
+		r = "accepted=" + handedOver[0] + ", equal=" + Arrays.equals(expected, output);
+		e = "accepted=2, equal=true";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+	}
+	
+	/**
+	 * Gives the number of bytes allocated so far by the current thread, using the
+	 * HotSpot extension of the thread management bean.
+	 *
+	 * @return The number of bytes, or <b>-1</b> if the JVM cannot measure them.
+	 */
+	private static long getAllocatedBytes(){
+		
+		try{
+			Method method = Class.forName("com.sun.management.ThreadMXBean")
+					.getMethod("getThreadAllocatedBytes", long.class);
+			return (Long) method.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+		}catch(Exception ex){
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,888 @@
+package expressionparser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * This class is a compact, typed form of a PostFix (Reverse-Polish) expression.
+ * Instead of a queue of Strings, the expression is held as an array of opcodes
+ * and a <code>double</code> constant pool. Numbers are parsed only once, when
+ * the program is built, and every operand refers directly to its slot in the
+ * constant pool so that {@link ProgramEvaluator} never has to look at a String.
+ *
+ * <br><br>Each instruction is a single <code>int</code>: the low
+ * {@link #OPCODE_BITS} bits hold the opcode and the remaining bits hold its
+ * operand (the constant pool index for {@link #CONST}, the variable slot for
+ * {@link #LOAD} or the function table index for {@link #CALL}). The built-in
+ * functions (<b>sin</b>, <b>log</b>, <b>sqrt</b>...) have opcodes of their own,
+ * while operators and functions registered with an {@link OperatorRegistry} are
+ * compiled to {@link #CALL} instructions and the program keeps a table of their
+ * definitions. Variables are given their slots when the program is built, in
+ * order of declaration or of first appearance, and their values are passed
+ * to the evaluator as a <code>double[]</code> indexed by slot. The stack depth of
+ * every instruction is checked when the program is built, so a program is
+ * always well formed and its {@link #getMaxStackDepth() maximum stack depth}
+ * is known ahead of time.
+ *
+ * <br><br>Instances are immutable and can safely be shared between threads.
+ *
+ * @author David Boivin
+ */
+public class ExpressionProgram {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int CONST = 0;
+	public static final int ADD = 1;
+	public static final int SUB = 2;
+	public static final int MUL = 3;
+	public static final int DIV = 4;
+	public static final int POW = 5;
+	public static final int NEG = 6;
+	public static final int LOAD = 7;
+	public static final int CALL = 8;
+	public static final int SIN = 9;
+	public static final int COS = 10;
+	public static final int TAN = 11;
+	public static final int ASIN = 12;
+	public static final int ACOS = 13;
+	public static final int ATAN = 14;
+	public static final int EXP = 15;
+	public static final int LOG = 16;
+	public static final int SQRT = 17;
+
+	//approximations from FastMath, see ProgramOptimizer#useFastMath(ExpressionProgram)
+	public static final int FAST_SIN = 18;
+	public static final int FAST_COS = 19;
+	public static final int FAST_EXP = 20;
+	public static final int FAST_LOG = 21;
+	public static final int FAST_POW = 22;
+
+	public static final int OPCODE_BITS = 8;
+	public static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+	//the largest constant index, variable slot or function index an instruction can hold
+	public static final int MAX_OPERAND = (1 << (32 - OPCODE_BITS)) - 1;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final int[] code;
+	private final double[] constants;
+	private final String[] variables;
+	private final Operator[] functions;
+	private final int maxStackDepth;
+
+	//computed the first time it is needed, 0 until then
+	private int hash;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a program from already verified code. Use a {@link Builder} to
+	 * create a program.
+	 *
+	 * @param code The instructions of the program.
+	 * @param constants The constant pool of the program.
+	 * @param variables The names of the variables, in slot order.
+	 * @param functions The functions called by the program.
+	 * @param maxStackDepth The maximum number of operands on the stack at once.
+	 */
+	private ExpressionProgram(int[] code, double[] constants, String[] variables, Operator[] functions,
+			int maxStackDepth){
+		this.code = code;
+		this.constants = constants;
+		this.variables = variables;
+		this.functions = functions;
+		this.maxStackDepth = maxStackDepth;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Builds a program from a PostFix (Reverse-Polish) queue such as the one
+	 * returned by {@link ExpressionParser#parse(String)}. The queue is only read
+	 * and is left untouched. Tokens starting with a letter are variables, unless they
+	 * are the name of a function of the {@link OperatorRegistry#getDefault() default
+	 * registry}, and are given their slots in order of first appearance.
+	 *
+	 * @param postfix The expression in PostFix notation.
+	 *
+	 * @return The program for the expression.
+	 *
+	 * @throws IllegalArgumentException If a token is not a number or a supported
+	 * 		operator, or if the operators do not have enough operands.
+	 */
+	public static ExpressionProgram fromPostfix(ArrayDeque<String> postfix){
+		return ExpressionProgram.fromPostfix(postfix, OperatorRegistry.getDefault());
+	}
+
+	/**
+	 * Builds a program from a PostFix (Reverse-Polish) queue, looking up operators
+	 * and functions in the given registry. The queue is only read and is left untouched.
+	 *
+	 * @param postfix The expression in PostFix notation.
+	 * @param registry The operators and functions that can be used.
+	 *
+	 * @return The program for the expression.
+	 *
+	 * @throws IllegalArgumentException If a token is not a number or a supported
+	 * 		operator, or if the operators do not have enough operands.
+	 */
+	public static ExpressionProgram fromPostfix(ArrayDeque<String> postfix, OperatorRegistry registry){
+
+		Builder builder = new Builder(postfix.size());
+
+		//iterate through the expression without removing anything from it
+		Iterator<String> tokens = postfix.iterator();
+		while(tokens.hasNext()){
+
+			String token = tokens.next();
+
+			switch(token){
+
+				case ExpressionParser.ADDITION:
+					builder.operator(ADD);
+					break;
+
+				case ExpressionParser.SUBTRACTION:
+					builder.operator(SUB);
+					break;
+
+				case ExpressionParser.MULTIPLICATION:
+					builder.operator(MUL);
+					break;
+
+				case ExpressionParser.DIVISION:
+					builder.operator(DIV);
+					break;
+
+				case ExpressionParser.EXPONENT:
+					builder.operator(POW);
+					break;
+
+				case ExpressionParser.NEGATIVE:
+					builder.operator(NEG);
+					break;
+
+				case ExpressionParser.POSITIVE:
+					builder.checkOperands(1);	//unary plus leaves its operand untouched
+					break;
+
+				default:
+					Operator operator = registry.getOperator(token);
+
+					if(operator != null){
+						builder.operator(operator);
+					}else if(ExpressionProgram.isIdentifierStart(token.charAt(0))){
+						builder.variable(token);
+					}else{
+						builder.constant(Double.parseDouble(token));
+					}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Gives the number of operands popped by the given opcode. The number of
+	 * operands of a {@link #CALL} depends on its function, see {@link #getInstructionArity(int)}.
+	 *
+	 * @param opcode The opcode to be checked.
+	 *
+	 * @return The number of operands the opcode uses.
+	 *
+	 * @throws IllegalArgumentException If the opcode is unknown or is {@link #CALL}.
+	 */
+	public static int getArity(int opcode){
+
+		switch(opcode){
+
+			case CONST:
+			case LOAD:
+				return 0;
+
+			case NEG:
+			case SIN:
+			case COS:
+			case TAN:
+			case ASIN:
+			case ACOS:
+			case ATAN:
+			case EXP:
+			case LOG:
+			case SQRT:
+			case FAST_SIN:
+			case FAST_COS:
+			case FAST_EXP:
+			case FAST_LOG:
+				return 1;
+
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+			case POW:
+			case FAST_POW:
+				return 2;
+
+			case CALL:
+				throw new IllegalArgumentException("The arity of a call depends on its function");
+
+			default:
+				throw new IllegalArgumentException("Unknown opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Gives the PostFix symbol of the given operator opcode, as used in the
+	 * queues returned by {@link ExpressionParser#parse(String)}.
+	 *
+	 * @param opcode The operator opcode.
+	 *
+	 * @return The symbol of the operator.
+	 */
+	public static String getSymbol(int opcode){
+
+		switch(opcode){
+
+			case ADD:
+				return ExpressionParser.ADDITION;
+
+			case SUB:
+				return ExpressionParser.SUBTRACTION;
+
+			case MUL:
+				return ExpressionParser.MULTIPLICATION;
+
+			case DIV:
+				return ExpressionParser.DIVISION;
+
+			case POW:
+			case FAST_POW:
+				return ExpressionParser.EXPONENT;
+
+			case NEG:
+				return ExpressionParser.NEGATIVE;
+
+			case SIN:
+			case FAST_SIN:
+				return ExpressionParser.SIN;
+
+			case COS:
+			case FAST_COS:
+				return ExpressionParser.COS;
+
+			case TAN:
+				return ExpressionParser.TAN;
+
+			case ASIN:
+				return ExpressionParser.ARCSIN;
+
+			case ACOS:
+				return ExpressionParser.ARCCOS;
+
+			case ATAN:
+				return ExpressionParser.ARCTAN;
+
+			case EXP:
+			case FAST_EXP:
+				return ExpressionParser.EXP;
+
+			case LOG:
+			case FAST_LOG:
+				return ExpressionParser.LOG;
+
+			case SQRT:
+				return ExpressionParser.SQRT;
+
+			default:
+				throw new IllegalArgumentException("Not an operator opcode: " + opcode);
+		}
+	}
+
+	/**
+	 * Gives the PostFix (Reverse-Polish) form of the program, in the same form as
+	 * the queues returned by {@link ExpressionParser#parse(String)}.
+	 *
+	 * @return A PostFix representation of the program in a queue.
+	 */
+	public ArrayDeque<String> toPostfix(){
+
+		ArrayDeque<String> queue = new ArrayDeque<String>(this.code.length);
+
+		for(int i = 0; i < this.code.length; ++i){
+
+			int opcode = this.code[i] & OPCODE_MASK;
+
+			if(opcode == CONST){
+				queue.add(String.valueOf(this.constants[this.code[i] >>> OPCODE_BITS]));
+			}else if(opcode == LOAD){
+				queue.add(this.variables[this.code[i] >>> OPCODE_BITS]);
+			}else if(opcode == CALL){
+				queue.add(this.functions[this.code[i] >>> OPCODE_BITS].getSymbol());
+			}else{
+				queue.add(ExpressionProgram.getSymbol(opcode));
+			}
+		}
+
+		return queue;
+	}
+
+	/**
+	 * @return The number of instructions in the program.
+	 */
+	public int length(){
+		return this.code.length;
+	}
+
+	/**
+	 * @param index The index of the instruction.
+	 *
+	 * @return The opcode of the instruction at the given index.
+	 */
+	public int getOpcode(int index){
+		return this.code[index] & OPCODE_MASK;
+	}
+
+	/**
+	 * @param index The index of the instruction.
+	 *
+	 * @return The operand of the instruction at the given index.
+	 */
+	public int getOperand(int index){
+		return this.code[index] >>> OPCODE_BITS;
+	}
+
+	/**
+	 * Gives the number of operands used by the instruction at the given index.
+	 *
+	 * @param index The index of the instruction.
+	 *
+	 * @return The number of operands of the instruction.
+	 */
+	public int getInstructionArity(int index){
+
+		if(this.getOpcode(index) == CALL){
+			return this.functions[this.getOperand(index)].getArity();
+		}
+
+		return ExpressionProgram.getArity(this.getOpcode(index));
+	}
+
+	/**
+	 * @param index The index in the function table.
+	 *
+	 * @return The function held at the given index.
+	 */
+	public Operator getFunction(int index){
+		return this.functions[index];
+	}
+
+	/**
+	 * @return The number of functions in the function table.
+	 */
+	public int getFunctionCount(){
+		return this.functions.length;
+	}
+
+	/**
+	 * @param index The index in the constant pool.
+	 *
+	 * @return The constant held at the given index.
+	 */
+	public double getConstant(int index){
+		return this.constants[index];
+	}
+
+	/**
+	 * @return The number of constants in the constant pool.
+	 */
+	public int getConstantCount(){
+		return this.constants.length;
+	}
+
+	/**
+	 * @return The number of variables, hence the length of the value array
+	 * 		expected by the evaluator.
+	 */
+	public int getVariableCount(){
+		return this.variables.length;
+	}
+
+	/**
+	 * @param slot The slot of the variable.
+	 *
+	 * @return The name of the variable held in the given slot.
+	 */
+	public String getVariable(int slot){
+		return this.variables[slot];
+	}
+
+	/**
+	 * @return The names of the variables, in slot order.
+	 */
+	public String[] getVariables(){
+		return this.variables.clone();
+	}
+
+	/**
+	 * Gives the slot of the given variable.
+	 *
+	 * @param name The name of the variable.
+	 *
+	 * @return The slot of the variable or <b>-1</b> if the program does not have
+	 * 		such a variable.
+	 */
+	public int getSlot(String name){
+
+		for(int i = 0; i < this.variables.length; ++i){
+			if(this.variables[i].equals(name)){
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Determines whether the given character can start a variable name.
+	 *
+	 * @param c The character to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the character is a letter or an
+	 * 		underscore and returns <b>false</b> otherwise.
+	 */
+	public static boolean isIdentifierStart(char c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	/**
+	 * Determines whether the given character can be part of a variable name.
+	 *
+	 * @param c The character to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the character is a letter, a digit
+	 * 		or an underscore and returns <b>false</b> otherwise.
+	 */
+	public static boolean isIdentifierPart(char c){
+		return ExpressionProgram.isIdentifierStart(c) || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * @return The maximum number of operands on the stack at once while the
+	 * 		program is evaluated.
+	 */
+	public int getMaxStackDepth(){
+		return this.maxStackDepth;
+	}
+
+	/**
+	 * Compares the structure of two programs. Programs are equal when they run the
+	 * same instructions in the same order: the same operators, constants with the
+	 * same bits (so <b>0</b> and <b>-0</b> differ while every NaN is the same), the
+	 * same registered functions, and the same variable names in the same slots. How
+	 * the expressions were written is gone once they are parsed, so spaces, redundant
+	 * brackets and the way numbers are written do not matter: <b>5+2</b>,
+	 * <b> 5 + 2 </b> and <b>(5.0)+(2)</b> give equal programs. Equal programs give
+	 * the same results, bit for bit, for every input.
+	 *
+	 * @param other The object to compare this program with.
+	 *
+	 * @return This method returns <b>true</b> if the object is a program with the
+	 * 		same structure and returns <b>false</b> otherwise.
+	 */
+	@Override
+	public boolean equals(Object other){
+
+		if(this == other){
+			return true;
+		}
+
+		if(!(other instanceof ExpressionProgram)){
+			return false;
+		}
+
+		ExpressionProgram program = (ExpressionProgram) other;
+		if(this.code.length != program.code.length || this.hashCode() != program.hashCode() ||
+				!Arrays.equals(this.variables, program.variables)){
+			return false;
+		}
+
+		//the pools are compared through the instructions, so their layout does not matter
+		for(int i = 0; i < this.code.length; ++i){
+
+			int opcode = this.code[i] & OPCODE_MASK;
+			int a = this.code[i] >>> OPCODE_BITS;
+			int b = program.code[i] >>> OPCODE_BITS;
+
+			if(opcode != (program.code[i] & OPCODE_MASK)){
+				return false;
+			}
+
+			if(opcode == CONST){
+				if(Double.doubleToLongBits(this.constants[a]) != Double.doubleToLongBits(program.constants[b])){
+					return false;
+				}
+			}else if(opcode == CALL){
+				if(this.functions[a] != program.functions[b]){
+					return false;
+				}
+			}else if(a != b){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gives a hash of the structure of the program, consistent with
+	 * {@link #equals(Object)}. It only depends on the instructions and the variables,
+	 * and is the same in every run of the JVM.
+	 *
+	 * @return The hash of the program.
+	 */
+	@Override
+	public int hashCode(){
+
+		int hash = this.hash;
+
+		if(hash == 0){
+			hash = Arrays.hashCode(this.variables);
+			for(int i = 0; i < this.code.length; ++i){
+				hash = 31 * hash + this.getInstructionHash(i);
+			}
+			this.hash = hash;
+		}
+
+		return hash;
+	}
+
+	@Override
+	public String toString(){
+		return this.toPostfix().toString();
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Gives the instructions themselves, for the evaluators. The array must not be modified.
+	 *
+	 * @return The instructions of the program.
+	 */
+	int[] code(){
+		return this.code;
+	}
+
+	/**
+	 * Gives the function table itself, for the evaluators. The array must not be modified.
+	 *
+	 * @return The function table of the program.
+	 */
+	Operator[] functions(){
+		return this.functions;
+	}
+
+	/**
+	 * Gives the constant pool itself, for the evaluators. The array must not be modified.
+	 *
+	 * @return The constant pool of the program.
+	 */
+	double[] constants(){
+		return this.constants;
+	}
+
+	/**
+	 * Gives a hash of a single instruction, made of its opcode and of its constant,
+	 * its slot or the symbol of its function.
+	 *
+	 * @param index The index of the instruction.
+	 *
+	 * @return The hash of the instruction.
+	 */
+	int getInstructionHash(int index){
+
+		int opcode = this.code[index] & OPCODE_MASK;
+		int operand = this.code[index] >>> OPCODE_BITS;
+
+		if(opcode == CONST){
+			long bits = Double.doubleToLongBits(this.constants[operand]);
+			operand = (int) (bits ^ (bits >>> 32));
+		}else if(opcode == CALL){
+			operand = this.functions[operand].getSymbol().hashCode();
+		}
+
+		return 31 * opcode + operand;
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * Builds an {@link ExpressionProgram} one instruction at a time, in PostFix
+	 * order. The builder keeps track of the stack depth so that malformed
+	 * programs are rejected as soon as an operator does not have enough operands.
+	 */
+	public static class Builder {
+
+		private int[] code;
+		private int codeLength = 0;
+		private double[] constants;
+		private int constantCount = 0;
+
+		private final ArrayList<String> variables = new ArrayList<String>();
+		private final ArrayList<Operator> functions = new ArrayList<Operator>();
+		private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+		private boolean variablesDeclared = false;
+
+		private int depth = 0;
+		private int maxDepth = 0;
+
+		/**
+		 * Creates a builder for a program of unknown length.
+		 */
+		public Builder(){
+			this(16);
+		}
+
+		/**
+		 * Creates a builder for a program of about the given length.
+		 *
+		 * @param expectedLength The expected number of instructions.
+		 */
+		public Builder(int expectedLength){
+			this.code = new int[Math.max(expectedLength, 1)];
+			this.constants = new double[Math.max(expectedLength / 2 + 1, 1)];
+		}
+
+		/**
+		 * Adds an instruction pushing the given number on the stack.
+		 *
+		 * @param value The number.
+		 *
+		 * @return This builder.
+		 *
+		 * @throws IllegalArgumentException If the program already has
+		 * 		{@link ExpressionProgram#MAX_OPERAND} + 1 constants.
+		 */
+		public Builder constant(double value){
+
+			Builder.checkOperand(this.constantCount, "constants");
+
+			if(this.constantCount == this.constants.length){
+				this.constants = Arrays.copyOf(this.constants, this.constantCount * 2);
+			}
+
+			this.constants[this.constantCount] = value;
+			this.emit(CONST | (this.constantCount << OPCODE_BITS));
+			++this.constantCount;
+
+			this.push();
+			return this;
+		}
+
+		/**
+		 * Declares the variables of the program, in slot order. Once declared,
+		 * no other variable can be used by the program.
+		 *
+		 * @param names The names of the variables.
+		 *
+		 * @return This builder.
+		 *
+		 * @throws IllegalArgumentException If a name is not a valid variable name
+		 * 		or is declared twice, or if there are more than
+		 * 		{@link ExpressionProgram#MAX_OPERAND} + 1 variables.
+		 */
+		public Builder declareVariables(String... names){
+
+			for(int i = 0; i < names.length; ++i){
+
+				String name = names[i];
+
+				if(name.isEmpty() || !ExpressionProgram.isIdentifierStart(name.charAt(0))){
+					throw new IllegalArgumentException("Invalid variable name: " + name);
+				}
+
+				if(this.slots.containsKey(name)){
+					throw new IllegalArgumentException("Variable declared twice: " + name);
+				}
+
+				Builder.checkOperand(this.variables.size(), "variables");
+				this.slots.put(name, this.variables.size());
+				this.variables.add(name);
+			}
+
+			this.variablesDeclared = true;
+			return this;
+		}
+
+		/**
+		 * Adds an instruction pushing the value of the given variable on the stack.
+		 * Unless the variables were declared, a new variable is given the next slot.
+		 *
+		 * @param name The name of the variable.
+		 *
+		 * @return This builder.
+		 *
+		 * @throws IllegalArgumentException If the variables were declared and the
+		 * 		given one is not one of them, or if the program already has
+		 * 		{@link ExpressionProgram#MAX_OPERAND} + 1 variables.
+		 */
+		public Builder variable(String name){
+
+			Integer slot = this.slots.get(name);
+
+			if(slot == null){
+
+				if(this.variablesDeclared){
+					throw new IllegalArgumentException("Unknown variable: " + name);
+				}
+
+				slot = this.variables.size();
+				Builder.checkOperand(slot, "variables");
+				this.slots.put(name, slot);
+				this.variables.add(name);
+			}
+
+			this.emit(LOAD | (slot << OPCODE_BITS));
+
+			this.push();
+			return this;
+		}
+
+		/**
+		 * Adds an operator instruction.
+		 *
+		 * @param opcode The opcode of the operator.
+		 *
+		 * @return This builder.
+		 *
+		 * @throws IllegalArgumentException If there are not enough operands on the
+		 * 		stack for the operator.
+		 */
+		public Builder operator(int opcode){
+
+			int arity = ExpressionProgram.getArity(opcode);
+
+			if(arity == 0){
+				throw new IllegalArgumentException("Not an operator opcode: " + opcode);
+			}
+
+			this.checkOperands(arity);
+			this.emit(opcode);
+
+			//the operands are replaced by the result
+			this.depth -= arity - 1;
+			return this;
+		}
+
+		/**
+		 * Adds the instruction of the given operator or function: its own opcode for
+		 * built-in operators and a {@link ExpressionProgram#CALL} for the others.
+		 *
+		 * @param operator The operator.
+		 *
+		 * @return This builder.
+		 *
+		 * @throws IllegalArgumentException If there are not enough operands on the
+		 * 		stack for the operator, or if the program already calls
+		 * 		{@link ExpressionProgram#MAX_OPERAND} + 1 other functions.
+		 */
+		public Builder operator(Operator operator){
+
+			if(operator.getOpcode() != CALL){
+				return this.operator(operator.getOpcode());
+			}
+
+			int arity = operator.getArity();
+			this.checkOperands(arity);
+
+			//functions are added to the table once, the first time they are called
+			int index = this.functions.indexOf(operator);
+			if(index == -1){
+				index = this.functions.size();
+				Builder.checkOperand(index, "functions");
+				this.functions.add(operator);
+			}
+
+			this.emit(CALL | (index << OPCODE_BITS));
+
+			this.depth -= arity - 1;
+			return this;
+		}
+
+		/**
+		 * Makes sure that there are at least the given number of operands on the stack.
+		 *
+		 * @param count The number of operands needed.
+		 *
+		 * @throws IllegalArgumentException If there are not enough operands.
+		 */
+		public void checkOperands(int count){
+			if(this.depth < count){
+				throw new IllegalArgumentException("Operator is missing an operand at instruction " +
+						this.codeLength);
+			}
+		}
+
+		/**
+		 * @return The number of operands that would be on the stack after the
+		 * 		instructions added so far.
+		 */
+		public int getDepth(){
+			return this.depth;
+		}
+
+		/**
+		 * Creates the program.
+		 *
+		 * @return The program.
+		 *
+		 * @throws IllegalArgumentException If the program does not leave exactly
+		 * 		one result on the stack.
+		 */
+		public ExpressionProgram build(){
+
+			if(this.depth != 1){
+				throw new IllegalArgumentException("Expression leaves " + this.depth +
+						" values instead of 1");
+			}
+
+			return new ExpressionProgram(Arrays.copyOf(this.code, this.codeLength),
+					Arrays.copyOf(this.constants, this.constantCount),
+					this.variables.toArray(new String[this.variables.size()]),
+					this.functions.toArray(new Operator[this.functions.size()]), this.maxDepth);
+		}
+
+		/**
+		 * @param operand The operand of an instruction about to be added.
+		 * @param kind What the operand refers to.
+		 *
+		 * @throws IllegalArgumentException If the operand does not fit in an instruction.
+		 */
+		private static void checkOperand(int operand, String kind){
+			if(operand > MAX_OPERAND){
+				throw new IllegalArgumentException("A program cannot have more than " + (MAX_OPERAND + 1) +
+						" " + kind);
+			}
+		}
+
+		private void emit(int instruction){
+
+			if(this.codeLength == this.code.length){
+				this.code = Arrays.copyOf(this.code, this.codeLength * 2);
+			}
+
+			this.code[this.codeLength++] = instruction;
+		}
+
+		private void push(){
+			if(++this.depth > this.maxDepth){
+				this.maxDepth = this.depth;
+			}
+		}
+	}
+}
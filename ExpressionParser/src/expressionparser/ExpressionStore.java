@@ -0,0 +1,541 @@
+package expressionparser;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A file holding many compiled expressions in a compact binary form, so that they
+ * do not have to be parsed again every time a process starts. The file is mapped
+ * in memory when it is {@link #open(Path) opened} and the expressions are
+ * {@link #evaluate(int, double...) evaluated} straight from the mapped bytes: no
+ * object is created per expression, so opening a store is nearly instant and the
+ * expressions only take the pages of the file the operating system keeps in memory.
+ * {@link #get(int)} turns a stored expression back into a {@link CompiledExpression}
+ * when one is needed.
+ *
+ * <br><br>All numbers are little endian. The file starts with a header:
+ * 	<ul>
+ * 		<li>the magic number <code>0x53505845</code> ("EXPS") and the
+ * 			{@link #VERSION} of the format, as ints,
+ * 		<li>the number of expressions, as an int, and an unused int,
+ * 		<li>the offset of every expression from the start of the file, plus the
+ * 			offset of the end of the last one, as ints.
+ * 	</ul>
+ *
+ * Each expression then takes, in order: its maximum stack depth, its number of
+ * instructions, constants and variables as ints, its instructions as ints, its
+ * constants as doubles, the name of each variable as a short byte count followed
+ * by its UTF-8 bytes and finally its source as an int byte count followed by its
+ * UTF-8 bytes. A missing expression takes no bytes at all. {@link #encode(CompiledExpression)}
+ * writes a single expression the same way, after a header of its own.
+ *
+ * <br><br>Expressions calling registered functions or operators cannot be stored,
+ * since their implementation is code rather than data. Stores are immutable and can
+ * safely be shared between threads. A store larger than 2GB cannot be mapped at once
+ * and is rejected.
+ *
+ * @author David Boivin
+ */
+public class ExpressionStore {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int VERSION = 1;
+
+	private static final int STORE_MAGIC = 0x53505845;	//"EXPS"
+	private static final int EXPRESSION_MAGIC = 0x52505845;	//"EXPR"
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 16;
+
+	//offsets of the fields of the header of an expression
+	private static final int MAX_STACK_DEPTH = 0;
+	private static final int CODE_LENGTH = 4;
+	private static final int CONSTANT_COUNT = 8;
+	private static final int VARIABLE_COUNT = 12;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	//only ever read with absolute gets, which do not move the position and are thread safe
+	private final ByteBuffer buffer;
+	private final int count;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private ExpressionStore(ByteBuffer buffer, int count){
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Writes the given expressions into a store file, replacing the file if it exists.
+	 * Expressions keep their index in the list, so a <b>null</b> entry (such as a
+	 * malformed line of an {@link ExpressionCatalog}) leaves a missing expression.
+	 *
+	 * @param file The store file.
+	 * @param expressions The expressions to store.
+	 *
+	 * @throws IOException If the file could not be written or would be larger than 2GB.
+	 * @throws IllegalArgumentException If an expression calls a registered function or
+	 * 		has a variable name longer than 65535 bytes.
+	 */
+	public static void write(Path file, List<CompiledExpression> expressions) throws IOException{
+
+		byte[][] records = new byte[expressions.size()][];
+		long size = HEADER_SIZE + 4L * (records.length + 1);
+
+		for(int i = 0; i < records.length; ++i){
+			if(expressions.get(i) != null){
+				records[i] = ExpressionStore.encodeRecord(expressions.get(i));
+				size += records[i].length;
+			}
+		}
+
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("A store cannot be larger than 2GB: " + size + " bytes");
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * (records.length + 1)).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(STORE_MAGIC).putInt(VERSION).putInt(records.length).putInt(0);
+
+		int offset = header.capacity();
+		for(int i = 0; i < records.length; ++i){
+			header.putInt(offset);
+			offset += records[i] == null ? 0 : records[i].length;
+		}
+		header.putInt(offset);
+		header.flip();
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)){
+
+			ExpressionStore.writeFully(channel, header);
+
+			for(int i = 0; i < records.length; ++i){
+				if(records[i] != null){
+					ExpressionStore.writeFully(channel, ByteBuffer.wrap(records[i]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps the given store file in memory. The file is not read any further than
+	 * its header until its expressions are used.
+	 *
+	 * @param file The store file, written by {@link #write(Path, List)}.
+	 *
+	 * @return The store.
+	 *
+	 * @throws IOException If the file could not be read, is larger than 2GB or is
+	 * 		not a store of a supported version.
+	 */
+	public static ExpressionStore open(Path file) throws IOException{
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+
+			long size = channel.size();
+
+			if(size > Integer.MAX_VALUE){
+				throw new IOException("A store cannot be larger than 2GB: " + file);
+			}
+			if(size < HEADER_SIZE){
+				throw new IOException("Not an expression store: " + file);
+			}
+
+			//the mapping stays valid once the channel is closed
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+			if(mapped.getInt(0) != STORE_MAGIC){
+				throw new IOException("Not an expression store: " + file);
+			}
+			if(mapped.getInt(4) != VERSION){
+				throw new IOException("Unsupported store version " + mapped.getInt(4) + ": " + file);
+			}
+
+			int count = mapped.getInt(8);
+
+			if(count < 0 || HEADER_SIZE + 4L * (count + 1) > size ||
+					mapped.getInt(HEADER_SIZE + 4 * count) != size){
+				throw new IOException("Truncated or corrupted expression store: " + file);
+			}
+
+			return new ExpressionStore(mapped, count);
+		}
+	}
+
+	/**
+	 * Writes a single expression in the binary format of the store, after a header
+	 * holding a magic number and the {@link #VERSION} of the format.
+	 *
+	 * @param expression The expression.
+	 *
+	 * @return The bytes of the expression.
+	 *
+	 * @throws IllegalArgumentException If the expression calls a registered function or
+	 * 		has a variable name longer than 65535 bytes.
+	 */
+	public static byte[] encode(CompiledExpression expression){
+
+		byte[] record = ExpressionStore.encodeRecord(expression);
+
+		return ByteBuffer.allocate(8 + record.length).order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(EXPRESSION_MAGIC).putInt(VERSION).put(record).array();
+	}
+
+	/**
+	 * Reads a single expression written by {@link #encode(CompiledExpression)}.
+	 *
+	 * @param bytes The bytes of the expression.
+	 *
+	 * @return The expression.
+	 *
+	 * @throws IllegalArgumentException If the bytes do not hold an expression of a
+	 * 		supported version.
+	 */
+	public static CompiledExpression decode(byte[] bytes){
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+		if(bytes.length < 8 || buffer.getInt(0) != EXPRESSION_MAGIC){
+			throw new IllegalArgumentException("Not an encoded expression");
+		}
+		if(buffer.getInt(4) != VERSION){
+			throw new IllegalArgumentException("Unsupported expression version " + buffer.getInt(4));
+		}
+
+		return ExpressionStore.decodeRecord(buffer, 8, bytes.length);
+	}
+
+	/**
+	 * Evaluates a stored expression straight from the file, without creating any
+	 * object. The values are given in slot order (see {@link #getVariables(int)}).
+	 *
+	 * @param index The index of the expression.
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If there is no expression at the given index
+	 * 		or if there are fewer values than variables.
+	 */
+	public double evaluate(int index, double... variables){
+
+		ByteBuffer buffer = this.buffer;
+		int record = this.getRecord(index);
+
+		if(variables.length < buffer.getInt(record + VARIABLE_COUNT)){
+			throw new IllegalArgumentException("Expected " + buffer.getInt(record + VARIABLE_COUNT) +
+					" variable values but got " + variables.length);
+		}
+
+		int code = record + RECORD_HEADER_SIZE;
+		int end = code + 4 * buffer.getInt(record + CODE_LENGTH);
+		int constants = end;	//the constants follow the instructions
+
+		double[] stack = ProgramEvaluator.acquireStack(buffer.getInt(record + MAX_STACK_DEPTH));
+		try{
+			int top = -1;	//index of the top of the stack
+
+			for(int i = code; i < end; i += 4){
+
+				int instruction = buffer.getInt(i);
+				int opcode = instruction & ExpressionProgram.OPCODE_MASK;
+
+				switch(opcode){
+
+					case ExpressionProgram.CONST:
+						stack[++top] = buffer.getDouble(constants + 8 * (instruction >>> ExpressionProgram.OPCODE_BITS));
+						break;
+
+					case ExpressionProgram.LOAD:
+						stack[++top] = variables[instruction >>> ExpressionProgram.OPCODE_BITS];
+						break;
+
+					case ExpressionProgram.ADD:
+						stack[top - 1] = stack[top - 1] + stack[top];
+						--top;
+						break;
+
+					case ExpressionProgram.SUB:
+						stack[top - 1] = stack[top - 1] - stack[top];
+						--top;
+						break;
+
+					case ExpressionProgram.MUL:
+						stack[top - 1] = stack[top - 1] * stack[top];
+						--top;
+						break;
+
+					case ExpressionProgram.DIV:
+						stack[top - 1] = stack[top - 1] / stack[top];
+						--top;
+						break;
+
+					case ExpressionProgram.NEG:
+						stack[top] = -stack[top];
+						break;
+
+					//the other operators and the built-in functions, which do the heavy lifting anyway
+					default:
+						if(ExpressionProgram.getArity(opcode) == 1){
+							stack[top] = ProgramEvaluator.calculate(opcode, stack[top], 0);
+						}else{
+							stack[top - 1] = ProgramEvaluator.calculate(opcode, stack[top - 1], stack[top]);
+							--top;
+						}
+				}
+			}
+
+			return stack[0];
+		}finally{
+			ProgramEvaluator.releaseStack(stack);
+		}
+	}
+
+	/**
+	 * Reads a stored expression back into a {@link CompiledExpression}.
+	 *
+	 * @param index The index of the expression.
+	 *
+	 * @return The expression, or <b>null</b> if the expression is missing.
+	 *
+	 * @throws IllegalArgumentException If the stored expression is corrupted.
+	 */
+	public CompiledExpression get(int index){
+
+		this.checkIndex(index);
+
+		int start = this.buffer.getInt(HEADER_SIZE + 4 * index);
+		int end = this.buffer.getInt(HEADER_SIZE + 4 * (index + 1));
+
+		return start == end ? null : ExpressionStore.decodeRecord(this.buffer, start, end);
+	}
+
+	/**
+	 * @param index The index of the expression.
+	 *
+	 * @return This method returns <b>true</b> if there is an expression at the given
+	 * 		index and returns <b>false</b> if it is missing.
+	 */
+	public boolean contains(int index){
+		this.checkIndex(index);
+		return this.buffer.getInt(HEADER_SIZE + 4 * index) != this.buffer.getInt(HEADER_SIZE + 4 * (index + 1));
+	}
+
+	/**
+	 * @param index The index of the expression.
+	 *
+	 * @return The number of variables of the expression.
+	 *
+	 * @throws IllegalArgumentException If there is no expression at the given index.
+	 */
+	public int getVariableCount(int index){
+		return this.buffer.getInt(this.getRecord(index) + VARIABLE_COUNT);
+	}
+
+	/**
+	 * @param index The index of the expression.
+	 *
+	 * @return The names of the variables of the expression, in slot order.
+	 *
+	 * @throws IllegalArgumentException If there is no expression at the given index.
+	 */
+	public String[] getVariables(int index){
+		return this.get(index).getVariables();
+	}
+
+	/**
+	 * @param index The index of the expression.
+	 *
+	 * @return The String representation of the expression.
+	 *
+	 * @throws IllegalArgumentException If there is no expression at the given index.
+	 */
+	public String getSource(int index){
+		return this.get(index).getSource();
+	}
+
+	/**
+	 * @return The number of expressions of the store, including missing ones.
+	 */
+	public int size(){
+		return this.count;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @param index The index of the expression.
+	 *
+	 * @return The offset of the expression in the store.
+	 *
+	 * @throws IllegalArgumentException If there is no expression at the given index.
+	 */
+	private int getRecord(int index){
+
+		if(!this.contains(index)){
+			throw new IllegalArgumentException("No expression at index " + index);
+		}
+
+		return this.buffer.getInt(HEADER_SIZE + 4 * index);
+	}
+
+	/**
+	 * @param index The index of an expression.
+	 *
+	 * @throws IndexOutOfBoundsException If the index is out of the store.
+	 */
+	private void checkIndex(int index){
+		if(index < 0 || index >= this.count){
+			throw new IndexOutOfBoundsException("Index " + index + " out of a store of " + this.count);
+		}
+	}
+
+	/**
+	 * Writes the fields of an expression, without any header.
+	 *
+	 * @param expression The expression.
+	 *
+	 * @return The bytes of the expression.
+	 *
+	 * @throws IllegalArgumentException If the expression calls a registered function or
+	 * 		if the name of a variable is longer than 65535 bytes.
+	 */
+	private static byte[] encodeRecord(CompiledExpression expression){
+
+		ExpressionProgram program = expression.getProgram();
+
+		if(program.getFunctionCount() > 0){
+			throw new IllegalArgumentException("Expressions calling registered functions cannot be stored: " +
+					expression.getSource());
+		}
+
+		byte[][] names = new byte[program.getVariableCount()][];
+		byte[] source = expression.getSource().getBytes(StandardCharsets.UTF_8);
+		int size = RECORD_HEADER_SIZE + 4 * program.length() + 8 * program.getConstantCount() + 4 + source.length;
+
+		for(int i = 0; i < names.length; ++i){
+			names[i] = program.getVariable(i).getBytes(StandardCharsets.UTF_8);
+			size += 2 + names[i].length;
+
+			//names are written with a 16 bits length
+			if(names[i].length > 65535){
+				throw new IllegalArgumentException("Variable names cannot be longer than 65535 bytes in UTF-8: " +
+						names[i].length + " bytes");
+			}
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		record.putInt(program.getMaxStackDepth()).putInt(program.length())
+				.putInt(program.getConstantCount()).putInt(names.length);
+
+		int[] code = program.code();
+		for(int i = 0; i < code.length; ++i){
+			record.putInt(code[i]);
+		}
+
+		double[] constants = program.constants();
+		for(int i = 0; i < constants.length; ++i){
+			record.putDouble(constants[i]);
+		}
+
+		for(int i = 0; i < names.length; ++i){
+			record.putShort((short) names[i].length).put(names[i]);
+		}
+
+		record.putInt(source.length).put(source);
+		return record.array();
+	}
+
+	/**
+	 * Reads the fields of an expression back and builds its program again, which
+	 * checks that the instructions are well formed.
+	 *
+	 * @param buffer The buffer holding the expression.
+	 * @param start The offset of the expression.
+	 * @param end The offset of the end of the expression.
+	 *
+	 * @return The expression.
+	 *
+	 * @throws IllegalArgumentException If the expression is corrupted.
+	 */
+	private static CompiledExpression decodeRecord(ByteBuffer buffer, int start, int end){
+
+		ByteBuffer record = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		record.limit(end).position(start);
+
+		try{
+			record.getInt();	//the maximum stack depth is worked out again by the builder
+			int[] code = new int[record.getInt()];
+			double[] constants = new double[record.getInt()];
+			String[] variables = new String[record.getInt()];
+
+			for(int i = 0; i < code.length; ++i){
+				code[i] = record.getInt();
+			}
+			for(int i = 0; i < constants.length; ++i){
+				constants[i] = record.getDouble();
+			}
+			for(int i = 0; i < variables.length; ++i){
+				variables[i] = ExpressionStore.readString(record, record.getShort() & 0xffff);
+			}
+			String source = ExpressionStore.readString(record, record.getInt());
+
+			ExpressionProgram.Builder builder = new ExpressionProgram.Builder(code.length);
+			builder.declareVariables(variables);
+
+			for(int i = 0; i < code.length; ++i){
+
+				int opcode = code[i] & ExpressionProgram.OPCODE_MASK;
+				int operand = code[i] >>> ExpressionProgram.OPCODE_BITS;
+
+				if(opcode == ExpressionProgram.CONST){
+					builder.constant(constants[operand]);
+				}else if(opcode == ExpressionProgram.LOAD){
+					builder.variable(variables[operand]);
+				}else{
+					builder.operator(opcode);
+				}
+			}
+
+			return new CompiledExpression(source, builder.build());
+		}catch(BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e){
+			throw new IllegalArgumentException("Corrupted expression at offset " + start, e);
+		}
+	}
+
+	/**
+	 * @param buffer The buffer, positioned at the first byte of the String.
+	 * @param length The number of bytes of the String.
+	 *
+	 * @return The UTF-8 String.
+	 */
+	private static String readString(ByteBuffer buffer, int length){
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param channel The channel to write to.
+	 * @param bytes The bytes to write.
+	 *
+	 * @throws IOException If the bytes could not be written.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException{
+		while(bytes.hasRemaining()){
+			channel.write(bytes);
+		}
+	}
+}
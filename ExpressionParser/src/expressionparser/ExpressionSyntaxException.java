@@ -0,0 +1,115 @@
+package expressionparser;
+
+/**
+ * Thrown when an expression is malformed. Besides the usual message, it tells
+ * what kind of problem was found (one of the constants of this class) and the
+ * index within the expression where it was found, so that callers can point the
+ * user to the problem without reading the message.
+ *
+ * <br><br>The message has the form <code>reason at index i: expression</code>.
+ *
+ * @author David Boivin
+ */
+public class ExpressionSyntaxException extends IllegalArgumentException {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final long serialVersionUID = 1L;
+
+	//a character which cannot start a token, or an operator which cannot be used where it is
+	public static final int INVALID_TOKEN = 1;
+
+	//a number with more than one decimal point or without digits
+	public static final int INVALID_NUMBER = 2;
+
+	//two operands, or an operand and an open bracket, with nothing in between
+	public static final int MISSING_OPERATOR = 3;
+
+	//an operator, comma or bracket which is missing one of its operands
+	public static final int MISSING_OPERAND = 4;
+
+	//a close bracket without an open bracket, or the other way around
+	public static final int UNMATCHED_BRACKET = 5;
+
+	//a comma which is not between the arguments of a function call
+	public static final int MISPLACED_COMMA = 6;
+
+	public static final int UNKNOWN_FUNCTION = 7;
+
+	public static final int UNKNOWN_VARIABLE = 8;
+
+	//a function called with too many or too few arguments
+	public static final int WRONG_ARGUMENT_COUNT = 9;
+
+	private static final String[] KIND_NAMES = {null, "invalid token", "invalid number", "missing operator",
+			"missing operand", "unmatched bracket", "misplaced comma", "unknown function",
+			"unknown variable", "wrong argument count"};
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final int kind;
+	private final int index;
+	private final String reason;
+	private final String expression;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates the exception for a problem found in an expression.
+	 *
+	 * @param kind What kind of problem was found, one of the constants of this class.
+	 * @param reason What is wrong with the expression.
+	 * @param expression The expression.
+	 * @param index The index within the expression where the problem was found.
+	 */
+	ExpressionSyntaxException(int kind, String reason, String expression, int index){
+		super(reason + " at index " + index + ": " + expression);
+
+		this.kind = kind;
+		this.index = index;
+		this.reason = reason;
+		this.expression = expression;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * @param kind A kind of problem, one of the constants of this class.
+	 *
+	 * @return A short name for the kind of problem, or <b>null</b> if it is not one
+	 * 		of the constants of this class.
+	 */
+	public static String getKindName(int kind){
+		return kind > 0 && kind < KIND_NAMES.length ? KIND_NAMES[kind] : null;
+	}
+
+	/**
+	 * @return What kind of problem was found, one of the constants of this class.
+	 */
+	public int getKind(){
+		return this.kind;
+	}
+
+	/**
+	 * @return The index within the expression where the problem was found. It is
+	 * 		the length of the expression when the problem is that the expression ends
+	 * 		too early.
+	 */
+	public int getIndex(){
+		return this.index;
+	}
+
+	/**
+	 * @return What is wrong with the expression, without the index and the expression.
+	 */
+	public String getReason(){
+		return this.reason;
+	}
+
+	/**
+	 * @return The malformed expression.
+	 */
+	public String getExpression(){
+		return this.expression;
+	}
+}
@@ -0,0 +1,325 @@
+package expressionparser;
+
+import java.util.Arrays;
+
+/**
+ * Checks whether expressions are well formed without compiling them: the syntax,
+ * the numbers, the names of the functions and variables and the number of
+ * arguments of every function call are checked exactly as {@link ExpressionParser}
+ * does, but no program is built and nothing is allocated once the validator has
+ * seen its deepest expression. Rejecting a malformed expression usually stops at
+ * the first bad character, so it costs a fraction of a parse.
+ *
+ * <br><br>After {@link #validate(String)} returns <b>false</b>, the kind of problem
+ * and its index are given by {@link #getErrorKind()} and {@link #getErrorIndex()}.
+ * They are the same as those of the {@link ExpressionSyntaxException} the parser
+ * throws for the expression, which {@link #getError()} builds when the full message
+ * is needed.
+ *
+ * <br><br>A validator keeps the result of the last validation, so it must not be
+ * shared between threads. {@link ExpressionParser#isValid(String)} uses one validator
+ * per thread.
+ *
+ * @author David Boivin
+ */
+public class ExpressionValidator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//marks a plain bracket, which does not hold the arguments of a function call
+	private static final int NO_FUNCTION = -1;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final OperatorRegistry registry;
+	private final String[] variables;
+
+	//for each open bracket, the arity of its function and the number of arguments read so far
+	private int[] arities = new int[16];
+	private int[] arguments = new int[16];
+
+	private String expression;
+	private int errorKind;
+	private int errorIndex = -1;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a validator accepting the operators and functions of the default
+	 * {@link OperatorRegistry} and any variable.
+	 */
+	public ExpressionValidator(){
+		this(OperatorRegistry.getDefault());
+	}
+
+	/**
+	 * Creates a validator accepting the operators and functions of the given registry
+	 * and the given variables, as {@link ExpressionParser#compile(String, OperatorRegistry, String...)}
+	 * does.
+	 *
+	 * @param registry The operators and functions expressions can use.
+	 * @param variables The names of the variables expressions can use, or none to
+	 * 		accept any variable.
+	 */
+	public ExpressionValidator(OperatorRegistry registry, String... variables){
+		this.registry = registry;
+		this.variables = variables.length == 0 ? null : variables.clone();
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Checks whether the given expression is well formed.
+	 *
+	 * @param expression The String representation of the expression.
+	 *
+	 * @return This method returns <b>true</b> if the expression can be compiled and
+	 * 		returns <b>false</b> otherwise.
+	 */
+	public boolean validate(String expression){
+
+		this.expression = expression;
+		this.errorKind = 0;
+		this.errorIndex = -1;
+
+		int bracketCount = 0;
+		boolean expectOperand = true;
+
+		//true as long as nothing but spaces was read, which makes an empty expression
+		boolean empty = true;
+
+		int length = expression.length();
+		for(int i = 0; i < length; ++i){
+			char token = expression.charAt(i);
+
+			if(Character.isWhitespace(token)){				//case: space
+				continue;
+
+			}else if(ExpressionValidator.isPartOfNumber(token)){		//case: digit or decimal
+
+				if(!expectOperand){
+					return this.fail(ExpressionSyntaxException.MISSING_OPERATOR, i);
+				}
+
+				//a single decimal point, and at least one digit
+				int end = i;
+				int points = 0;
+				while(end < length && ExpressionValidator.isPartOfNumber(expression.charAt(end))){
+					points += expression.charAt(end++) == '.' ? 1 : 0;
+				}
+
+				if(points > 1 || end - i == points){
+					return this.fail(ExpressionSyntaxException.INVALID_NUMBER, i);
+				}
+
+				i = end - 1;
+				expectOperand = false;
+
+			}else if(ExpressionProgram.isIdentifierStart(token)){		//case: variable or function
+
+				if(!expectOperand){
+					return this.fail(ExpressionSyntaxException.MISSING_OPERATOR, i);
+				}
+
+				int end = i + 1;
+				while(end < length && ExpressionProgram.isIdentifierPart(expression.charAt(end))){
+					++end;
+				}
+
+				int next = end;
+				while(next < length && Character.isWhitespace(expression.charAt(next))){
+					++next;
+				}
+
+				if(next < length && expression.charAt(next) == '('){
+
+					Operator function = this.registry.getFunction(expression, i, end);
+					if(function == null){
+						return this.fail(ExpressionSyntaxException.UNKNOWN_FUNCTION, i);
+					}
+
+					this.open(bracketCount++, function.getArity());
+					i = next;
+					empty = false;
+					continue;
+				}
+
+				if(!this.isVariable(expression, i, end)){
+					return this.fail(ExpressionSyntaxException.UNKNOWN_VARIABLE, i);
+				}
+
+				i = end - 1;
+				expectOperand = false;
+
+			}else if(token == '('){						//case: open bracket
+
+				if(!expectOperand){
+					return this.fail(ExpressionSyntaxException.MISSING_OPERATOR, i);
+				}
+
+				this.open(bracketCount++, NO_FUNCTION);
+
+			}else if(token == ',' || token == ')'){				//case: comma or close bracket
+
+				if(expectOperand){
+					return this.fail(ExpressionSyntaxException.MISSING_OPERAND, i);
+				}
+
+				if(bracketCount == 0){
+					return this.fail(ExpressionSyntaxException.UNMATCHED_BRACKET, i);
+				}
+
+				int arity = this.arities[bracketCount - 1];
+
+				if(token == ','){
+
+					if(arity == NO_FUNCTION){
+						return this.fail(ExpressionSyntaxException.MISPLACED_COMMA, i);
+					}
+
+					++this.arguments[bracketCount - 1];
+					expectOperand = true;
+					continue;
+				}
+
+				--bracketCount;
+
+				if(arity != NO_FUNCTION && this.arguments[bracketCount] != arity){
+					return this.fail(ExpressionSyntaxException.WRONG_ARGUMENT_COUNT, i);
+				}
+
+			}else if(expectOperand){					//case: prefix operator
+
+				if(this.registry.getPrefix(token) == null && token != '+'){
+					return this.fail(ExpressionSyntaxException.INVALID_TOKEN, i);
+				}
+
+			}else{								//case: infix operator
+
+				if(this.registry.getInfix(token) == null){
+					return this.fail(ExpressionSyntaxException.INVALID_TOKEN, i);
+				}
+
+				expectOperand = true;
+			}
+
+			empty = false;
+		}
+
+		if(expectOperand && !empty){
+			return this.fail(ExpressionSyntaxException.MISSING_OPERAND, length);
+		}
+
+		if(bracketCount > 0){
+			return this.fail(ExpressionSyntaxException.UNMATCHED_BRACKET, length);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The kind of problem found in the last expression, one of the constants
+	 * 		of {@link ExpressionSyntaxException}, or 0 if it was well formed.
+	 */
+	public int getErrorKind(){
+		return this.errorKind;
+	}
+
+	/**
+	 * @return The index within the last expression where the problem was found, or
+	 * 		-1 if it was well formed.
+	 */
+	public int getErrorIndex(){
+		return this.errorIndex;
+	}
+
+	/**
+	 * Gives the exception the parser throws for the last expression, with its full
+	 * message. The expression is parsed again, which is only worth it when the
+	 * message is going to be shown.
+	 *
+	 * @return The exception, or <b>null</b> if the last expression was well formed.
+	 */
+	public ExpressionSyntaxException getError(){
+
+		if(this.errorKind == 0){
+			return null;
+		}
+
+		try{
+			ExpressionParser.parseProgram(this.expression, this.variables, this.registry);
+		}catch(ExpressionSyntaxException e){
+			return e;
+		}
+
+		//only reached if the validator and the parser disagree
+		throw new IllegalStateException("Expression was rejected but parses: " + this.expression);
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Records the problem found in the expression.
+	 *
+	 * @param kind What kind of problem was found.
+	 * @param index The index within the expression where the problem was found.
+	 *
+	 * @return Always <b>false</b>, so that callers can return it.
+	 */
+	private boolean fail(int kind, int index){
+		this.errorKind = kind;
+		this.errorIndex = index;
+		return false;
+	}
+
+	/**
+	 * Pushes an open bracket, growing the bracket stacks if needed.
+	 *
+	 * @param count The number of open brackets.
+	 * @param arity The arity of the function called by the bracket, or {@link #NO_FUNCTION}.
+	 */
+	private void open(int count, int arity){
+
+		if(count == this.arities.length){
+			this.arities = Arrays.copyOf(this.arities, count * 2);
+			this.arguments = Arrays.copyOf(this.arguments, count * 2);
+		}
+
+		this.arities[count] = arity;
+		this.arguments[count] = 1;
+	}
+
+	/**
+	 * @param expression The expression holding the name.
+	 * @param start The index of the first character of the name.
+	 * @param end The index after the last character of the name.
+	 *
+	 * @return This method returns <b>true</b> if the name is one of the variables
+	 * 		of this validator, or if it accepts any variable, and returns <b>false</b>
+	 * 		otherwise.
+	 */
+	private boolean isVariable(String expression, int start, int end){
+
+		if(this.variables == null){
+			return true;
+		}
+
+		for(String variable : this.variables){
+			if(variable.length() == end - start && expression.regionMatches(start, variable, 0, end - start)){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param token The character to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the token is a digit or a decimal
+	 * 		point and returns <b>false</b> otherwise.
+	 */
+	private static boolean isPartOfNumber(char token){
+		return (token >= '0' && token <= '9') || token == '.';
+	}
+}
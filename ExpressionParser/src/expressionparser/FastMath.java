@@ -0,0 +1,258 @@
+package expressionparser;
+
+/**
+ * Approximations of the most expensive functions of {@link Math}, used by
+ * expressions compiled in fast-math mode (see {@link CompiledExpression#withFastMath()}).
+ * Each function reduces its argument to a small interval, using a table where
+ * it helps, and evaluates a short polynomial there. Arguments outside the range
+ * where the approximation holds, and every special value (NaN, the infinities,
+ * zeros and subnormals where it matters), are handed to {@link Math} instead, so
+ * special values give exactly the same results as in the exact mode.
+ *
+ * <br><br>Error bounds, measured against {@link StrictMath}:
+ * 	<ul>
+ * 		<li>{@link #sin(double)} and {@link #cos(double)}: absolute error below
+ * 			<b>4e-16</b> for <code>|x| &lt;= 2^20</code>, exact beyond.
+ * 		<li>{@link #exp(double)}: relative error below <b>4e-16</b> (2 ulps).
+ * 		<li>{@link #log(double)}: error below <b>3e-16 * max(1, |log(x)|)</b>, that is
+ * 			an absolute error near 1 and a relative one elsewhere.
+ * 		<li>{@link #pow(double, double)}: relative error below
+ * 			<b>4e-16 * (1 + |y| * max(1, |log(x)|))</b>. Whole exponents from 2 to 64
+ * 			are worked out by repeated squaring. Other negative bases, and results which
+ * 			overflow or are subnormal, are computed exactly.
+ * 	</ul>
+ *
+ * Unlike {@link Math}, these functions are not guaranteed to be monotonic.
+ *
+ * @author David Boivin
+ */
+public class FastMath {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//pi/2 split in three parts so that k*pi/2 can be subtracted without losing bits
+	private static final double PI_2_HI = 1.5707963267341256e+00;
+	private static final double PI_2_MID = 6.0771005063039660e-11;
+	private static final double PI_2_LO = 2.0222662487959506e-21;
+	private static final double TWO_OVER_PI = 0.6366197723675814;
+	private static final double MAX_TRIG_ARGUMENT = 1 << 20;
+	private static final double MIN_TRIG_ARGUMENT = 1.4901161193847656e-8;	//2^-26, where sin(x) rounds to x
+
+	//ln(2)/64 split in two parts, the high one having its low bits cleared
+	private static final int EXP_TABLE_BITS = 6;
+	private static final int EXP_TABLE_SIZE = 1 << EXP_TABLE_BITS;
+	private static final double LN2_64_HI = 0.010830424667801708;
+	private static final double LN2_64_LO = 2.8447437476627285e-11;
+	private static final double INV_LN2_64 = 92.33248261689366;
+	private static final double EXP_LIMIT = 708;
+	private static final double[] EXP_TABLE = new double[EXP_TABLE_SIZE];	//2^(j/64)
+
+	private static final int LOG_TABLE_BITS = 7;
+	private static final int LOG_TABLE_SIZE = 1 << LOG_TABLE_BITS;
+	private static final double LN2_HI = 0.693147180559663;	//ln(2), split like ln(2)/64
+	private static final double LN2_LO = 2.8235290563031577e-13;
+	private static final double[] LOG_INVERSE = new double[LOG_TABLE_SIZE];	//about 1/m for every m
+	private static final double[] LOG_TABLE = new double[LOG_TABLE_SIZE];	//-log(LOG_INVERSE)
+
+	private static final int MAX_SQUARING_EXPONENT = 64;
+
+	static{
+		for(int j = 0; j < EXP_TABLE_SIZE; ++j){
+			EXP_TABLE[j] = StrictMath.pow(2, j / (double) EXP_TABLE_SIZE);
+		}
+
+		for(int j = 0; j < LOG_TABLE_SIZE; ++j){
+			LOG_INVERSE[j] = 1 / (1 + (j + 0.5) / LOG_TABLE_SIZE);
+			LOG_TABLE[j] = -StrictMath.log(LOG_INVERSE[j]);
+		}
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * @param x An angle, in radians.
+	 *
+	 * @return The sine of the angle.
+	 */
+	public static double sin(double x){
+
+		if(!(Math.abs(x) <= MAX_TRIG_ARGUMENT)){
+			return Math.sin(x);
+		}
+		if(Math.abs(x) < MIN_TRIG_ARGUMENT){
+			return x;	//also keeps the sign of -0, which the reduction loses
+		}
+
+		double k = Math.rint(x * TWO_OVER_PI);
+		return FastMath.quadrant(FastMath.reduce(x, k), (int) k);
+	}
+
+	/**
+	 * @param x An angle, in radians.
+	 *
+	 * @return The cosine of the angle.
+	 */
+	public static double cos(double x){
+
+		if(!(Math.abs(x) <= MAX_TRIG_ARGUMENT)){
+			return Math.cos(x);
+		}
+
+		double k = Math.rint(x * TWO_OVER_PI);
+		return FastMath.quadrant(FastMath.reduce(x, k), (int) k + 1);
+	}
+
+	/**
+	 * @param x The exponent.
+	 *
+	 * @return <i>e</i> raised to the given power.
+	 */
+	public static double exp(double x){
+
+		if(!(Math.abs(x) <= EXP_LIMIT)){
+			return Math.exp(x);
+		}
+
+		//x = (64n + j) * ln(2)/64 + r, with |r| <= ln(2)/128
+		int k = (int) Math.rint(x * INV_LN2_64);
+		double r = (x - k * LN2_64_HI) - k * LN2_64_LO;
+		int j = k & (EXP_TABLE_SIZE - 1);
+		int n = k >> EXP_TABLE_BITS;
+
+		double p = r + r * r * (0.5 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120))));
+		double m = EXP_TABLE[j] + EXP_TABLE[j] * p;
+
+		//2^n, which is a normal double since |n| <= 1022
+		return m * Double.longBitsToDouble((long) (n + 1023) << 52);
+	}
+
+	/**
+	 * @param x A positive number.
+	 *
+	 * @return The natural logarithm of the number.
+	 */
+	public static double log(double x){
+
+		//zeros, negative numbers, subnormals, infinities and NaN
+		if(!(x >= Double.MIN_NORMAL && x <= Double.MAX_VALUE)){
+			return Math.log(x);
+		}
+
+		//x = 2^e * m with 1 <= m < 2, and m is about 1/LOG_INVERSE[j]
+		long bits = Double.doubleToRawLongBits(x);
+		int e = (int) (bits >>> 52) - 1023;
+		int j = (int) (bits >>> (52 - LOG_TABLE_BITS)) & (LOG_TABLE_SIZE - 1);
+		double m = Double.longBitsToDouble((bits & 0x000fffffffffffffL) | 0x3ff0000000000000L);
+
+		//log(m) = log(m * inverse) - log(inverse), with |m * inverse - 1| < 1/256
+		double r = m * LOG_INVERSE[j] - 1;
+		double p = r - r * r * (0.5 - r * (1.0 / 3 - r * (0.25 - r * (0.2 - r * (1.0 / 6)))));
+
+		return e * LN2_HI + (LOG_TABLE[j] + (p + e * LN2_LO));
+	}
+
+	/**
+	 * @param x The base.
+	 * @param y The exponent.
+	 *
+	 * @return The base raised to the power of the exponent.
+	 */
+	public static double pow(double x, double y){
+
+		//small whole exponents are worked out by repeated squaring
+		if(y >= 2 && y <= MAX_SQUARING_EXPONENT && y == (int) y){
+			double p = FastMath.powInteger(x, (int) y);
+
+			//results which overflow are already right, subnormal ones are rounded twice
+			if(Math.abs(p) >= Double.MIN_NORMAL){
+				return p;
+			}
+		}
+
+		//negative bases, zero, subnormals, infinities and NaN are left to Math.pow
+		if(!(x >= Double.MIN_NORMAL && x <= Double.MAX_VALUE) || !(Math.abs(y) <= Double.MAX_VALUE)){
+			return Math.pow(x, y);
+		}
+
+		double t = y * FastMath.log(x);
+
+		//the result would overflow or be subnormal
+		if(!(Math.abs(t) <= EXP_LIMIT)){
+			return Math.pow(x, y);
+		}
+
+		return FastMath.exp(t);
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @param x The base.
+	 * @param n The exponent, at least 1.
+	 *
+	 * @return The base raised to the power of the exponent, by repeated squaring.
+	 */
+	private static double powInteger(double x, int n){
+		double result = 1;
+
+		for(; n > 1; n >>= 1){
+			if((n & 1) != 0){
+				result *= x;
+			}
+			x *= x;
+		}
+
+		return result * x;
+	}
+
+	/**
+	 * @param x An angle.
+	 * @param k The nearest multiple of pi/2 to the angle.
+	 *
+	 * @return <code>x - k*pi/2</code>, which lies between -pi/4 and pi/4.
+	 */
+	private static double reduce(double x, double k){
+		return ((x - k * PI_2_HI) - k * PI_2_MID) - k * PI_2_LO;
+	}
+
+	/**
+	 * Gives the sine of <code>r + q*pi/2</code>. Both polynomials are evaluated and the
+	 * right one is picked without branching, since the quadrant of the argument is
+	 * hard to predict.
+	 *
+	 * @param r An angle between -pi/4 and pi/4.
+	 * @param q The quadrant.
+	 *
+	 * @return The sine of the angle, in the given quadrant.
+	 */
+	private static double quadrant(double r, int q){
+		double s = FastMath.sinPolynomial(r);
+		double c = FastMath.cosPolynomial(r);
+		double v = (q & 1) == 0 ? s : c;
+
+		//quadrants 2 and 3 flip the sign
+		return Double.longBitsToDouble(Double.doubleToRawLongBits(v) ^ ((long) (q & 2) << 62));
+	}
+
+	/**
+	 * @param r An angle between -pi/4 and pi/4.
+	 *
+	 * @return The sine of the angle, from its Taylor series up to <code>r^15</code>.
+	 */
+	private static double sinPolynomial(double r){
+		double s = r * r;
+		return r + r * s * (-1.0 / 6 + s * (1.0 / 120 + s * (-1.0 / 5040 + s * (1.0 / 362880 +
+				s * (-1.0 / 39916800 + s * (1.0 / 6227020800L + s * (-1.0 / 1307674368000L)))))));
+	}
+
+	/**
+	 * @param r An angle between -pi/4 and pi/4.
+	 *
+	 * @return The cosine of the angle, from its Taylor series up to <code>r^16</code>.
+	 */
+	private static double cosPolynomial(double r){
+		double s = r * r;
+		return 1 + s * (-0.5 + s * (1.0 / 24 + s * (-1.0 / 720 + s * (1.0 / 40320 + s * (-1.0 / 3628800 +
+				s * (1.0 / 479001600 + s * (-1.0 / 87178291200L + s * (1.0 / 20922789888000L))))))));
+	}
+}
@@ -0,0 +1,100 @@
+package expressionparser;
+
+/**
+ * Holds the {@link ExpressionMonitor} told about the work of the parser, the cache
+ * and the evaluators. No monitor is installed by default, and every instrumented
+ * method then only reads a single field before doing its usual work, so
+ * instrumentation costs nothing measurable until it is turned on.
+ *
+ * <br><br>Evaluations of a single row are sampled: each thread counts its own
+ * evaluations and only reports one out of every {@link #getSampleRate()} of them,
+ * without touching any shared state in between.
+ *
+ * @author David Boivin
+ */
+public class Instrumentation {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int DEFAULT_SAMPLE_RATE = 1024;
+
+	//number of evaluations left before the next sample, for each thread
+	private static final ThreadLocal<int[]> COUNTDOWNS = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[] {Instrumentation.sampleRate};
+		}
+	};
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private static volatile ExpressionMonitor monitor;
+	private static volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Installs the given monitor, sampling one out of every {@link #DEFAULT_SAMPLE_RATE}
+	 * evaluations of a single row.
+	 *
+	 * @param monitor The monitor, or <b>null</b> to turn instrumentation off.
+	 */
+	public static void setMonitor(ExpressionMonitor monitor){
+		Instrumentation.setMonitor(monitor, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * Installs the given monitor, replacing the previous one.
+	 *
+	 * @param monitor The monitor, or <b>null</b> to turn instrumentation off.
+	 * @param sampleRate One out of this many evaluations of a single row is reported
+	 * 		to the monitor. 1 reports every evaluation.
+	 *
+	 * @throws IllegalArgumentException If the sample rate is less than 1.
+	 */
+	public static void setMonitor(ExpressionMonitor monitor, int sampleRate){
+
+		if(sampleRate < 1){
+			throw new IllegalArgumentException("Sample rate must be at least 1: " + sampleRate);
+		}
+
+		Instrumentation.sampleRate = sampleRate;
+		Instrumentation.monitor = monitor;
+	}
+
+	/**
+	 * @return The installed monitor, or <b>null</b> if instrumentation is off.
+	 */
+	public static ExpressionMonitor getMonitor(){
+		return Instrumentation.monitor;
+	}
+
+	/**
+	 * @return One out of this many evaluations of a single row is reported to the monitor.
+	 */
+	public static int getSampleRate(){
+		return Instrumentation.sampleRate;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Counts an evaluation of a single row on the current thread.
+	 *
+	 * @return This method returns <b>true</b> if the evaluation should be reported
+	 * 		and returns <b>false</b> otherwise.
+	 */
+	static boolean sample(){
+
+		int[] countdown = Instrumentation.COUNTDOWNS.get();
+		int rate = Instrumentation.sampleRate;
+
+		//a countdown above the rate was started before the rate was lowered
+		if(--countdown[0] > 0 && countdown[0] < rate){
+			return false;
+		}
+
+		countdown[0] = rate;
+		return true;
+	}
+}
@@ -0,0 +1,489 @@
+package expressionparser;
+
+/**
+ * Evaluates integer-only {@link ExpressionProgram}s exactly, in <code>long</code>
+ * arithmetic. A program is integral (see {@link #isIntegral(ExpressionProgram)})
+ * when it only adds, subtracts, multiplies, negates and raises to a power, and
+ * all of its constants are integers. Such programs give exact results for as long
+ * as they fit in a <code>long</code>, while the <code>double</code> evaluators lose
+ * digits as soon as a value goes past 2^53.
+ *
+ * <br><br>Every operation checks for overflow and throws an {@link ArithmeticException}
+ * when its result does not fit, as does raising to a negative power, whose result
+ * is not an integer. Callers then fall back to the <code>double</code> evaluators.
+ * Powers are computed by repeated multiplication rather than by {@link Math#pow(double, double)},
+ * and the overflow checks of a whole block of rows are folded together so that
+ * batches run the same plain loops as {@link BatchEvaluator}: batches of integer
+ * columns are evaluated at least as fast as the same columns as doubles, and much
+ * faster when the expression raises to a power.
+ *
+ * @author David Boivin
+ */
+public class LongEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//the bound of a block of values which could hold any value
+	private static final long UNKNOWN_BOUND = -1;
+
+	//integers below this magnitude are parsed exactly into a double constant
+	private static final double MAX_EXACT_CONSTANT = 0x1p53;
+
+	//the operand stack of each thread, integral programs never call back into an evaluator
+	private static final ThreadLocal<long[][]> STACKS = new ThreadLocal<long[][]>(){
+		@Override
+		protected long[][] initialValue(){
+			return new long[][] {new long[16]};
+		}
+	};
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Checks whether the given program can be evaluated by this class: it only uses
+	 * constants, variables, <b>+</b>, <b>-</b>, <b>*</b>, <b>^</b> and the unary
+	 * <b>-</b>, and every constant is an integer below 2^53 in magnitude, so that it
+	 * was parsed exactly.
+	 *
+	 * @param program The program.
+	 *
+	 * @return This method returns <b>true</b> if the program is integral and returns
+	 * 		<b>false</b> otherwise.
+	 */
+	public static boolean isIntegral(ExpressionProgram program){
+
+		for(double constant : program.constants()){
+			if(constant != Math.rint(constant) || Math.abs(constant) >= MAX_EXACT_CONSTANT){
+				return false;
+			}
+		}
+
+		for(int instruction : program.code()){
+
+			switch(instruction & ExpressionProgram.OPCODE_MASK){
+
+				case ExpressionProgram.CONST:
+				case ExpressionProgram.LOAD:
+				case ExpressionProgram.ADD:
+				case ExpressionProgram.SUB:
+				case ExpressionProgram.MUL:
+				case ExpressionProgram.POW:
+				case ExpressionProgram.NEG:
+					break;
+
+				default:
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Evaluates the given integral program using the operand stack of the current thread.
+	 *
+	 * @param program The program to evaluate.
+	 * @param variables The values of the variables of the program, by slot.
+	 *
+	 * @return The exact result of the program.
+	 *
+	 * @throws IllegalArgumentException If the program is not integral or if there are
+	 * 		fewer values than variables.
+	 * @throws ArithmeticException If a value overflows or a power is negative.
+	 */
+	public static long evaluate(ExpressionProgram program, long... variables){
+
+		long[][] holder = LongEvaluator.STACKS.get();
+		if(holder[0].length < program.getMaxStackDepth()){
+			holder[0] = new long[Math.max(program.getMaxStackDepth(), holder[0].length * 2)];
+		}
+
+		return LongEvaluator.evaluate(program, variables, holder[0]);
+	}
+
+	/**
+	 * Evaluates the given integral program using the given array as its operand stack.
+	 *
+	 * @param program The program to evaluate.
+	 * @param variables The values of the variables of the program, by slot.
+	 * @param stack The operand stack. It must hold at least
+	 * 		{@link ExpressionProgram#getMaxStackDepth()} values.
+	 *
+	 * @return The exact result of the program.
+	 *
+	 * @throws IllegalArgumentException If the program is not integral or if there are
+	 * 		fewer values than variables.
+	 * @throws ArithmeticException If a value overflows or a power is negative.
+	 */
+	public static long evaluate(ExpressionProgram program, long[] variables, long[] stack){
+
+		if(variables.length < program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + program.getVariableCount() +
+					" variable values but got " + variables.length);
+		}
+
+		int[] code = program.code();
+		double[] constants = program.constants();
+		int top = -1;	//index of the top of the stack
+
+		//iterate through the instructions
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+
+			switch(instruction & ExpressionProgram.OPCODE_MASK){
+
+				case ExpressionProgram.CONST:
+					double constant = constants[instruction >>> ExpressionProgram.OPCODE_BITS];
+					stack[++top] = (long) constant;
+					if(stack[top] != constant){
+						throw new IllegalArgumentException("Not an integral program: " + program);
+					}
+					break;
+
+				case ExpressionProgram.LOAD:
+					stack[++top] = variables[instruction >>> ExpressionProgram.OPCODE_BITS];
+					break;
+
+				case ExpressionProgram.ADD:
+					stack[top - 1] = LongEvaluator.add(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.SUB:
+					stack[top - 1] = LongEvaluator.subtract(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.MUL:
+					stack[top - 1] = LongEvaluator.multiply(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.POW:
+					stack[top - 1] = LongEvaluator.power(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.NEG:
+					stack[top] = LongEvaluator.subtract(0, stack[top]);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Not an integral program: " + program);
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Evaluates the given integral program for every row of the output column, one
+	 * block of {@link BatchEvaluator#BLOCK_SIZE} rows at a time as {@link BatchEvaluator}
+	 * does.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If the program is not integral, if there are
+	 * 		fewer columns than variables or if a column is shorter than the output column.
+	 * @throws ArithmeticException If a value of any row overflows or a power is negative.
+	 * 		The output column is then only partly written.
+	 */
+	public static void evaluate(ExpressionProgram program, long[][] columns, long[] output){
+
+		if(!LongEvaluator.isIntegral(program)){
+			throw new IllegalArgumentException("Not an integral program: " + program);
+		}
+
+		if(columns.length < program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + program.getVariableCount() +
+					" columns but got " + columns.length);
+		}
+
+		for(int i = 0; i < program.getVariableCount(); ++i){
+			if(columns[i].length < output.length){
+				throw new IllegalArgumentException("Column of variable " + program.getVariable(i) +
+						" has " + columns[i].length + " rows instead of at least " + output.length);
+			}
+		}
+
+		//one block of values per entry of the operand stack, and a bound on their magnitude
+		long[][] stack = new long[program.getMaxStackDepth()][BatchEvaluator.BLOCK_SIZE];
+		long[] bounds = new long[program.getMaxStackDepth()];
+
+		//the bound of every column is found once for the whole batch
+		long[] columnBounds = new long[program.getVariableCount()];
+		for(int i = 0; i < columnBounds.length; ++i){
+			columnBounds[i] = LongEvaluator.bound(columns[i], output.length);
+		}
+
+		for(int start = 0; start < output.length; start += BatchEvaluator.BLOCK_SIZE){
+			int count = Math.min(BatchEvaluator.BLOCK_SIZE, output.length - start);
+
+			LongEvaluator.evaluateBlock(program, columns, columnBounds, stack, bounds, start, count);
+			System.arraycopy(stack[0], 0, output, start, count);
+		}
+	}
+
+	/**
+	 * @param a The left operand.
+	 * @param b The right operand.
+	 *
+	 * @return <b>a + b</b>.
+	 *
+	 * @throws ArithmeticException If the sum overflows.
+	 */
+	public static long add(long a, long b){
+
+		long r = a + b;
+
+		//overflow only happens when both operands have the sign the result does not have
+		if(((a ^ r) & (b ^ r)) < 0){
+			throw new ArithmeticException("long overflow: " + a + " + " + b);
+		}
+
+		return r;
+	}
+
+	/**
+	 * @param a The left operand.
+	 * @param b The right operand.
+	 *
+	 * @return <b>a - b</b>.
+	 *
+	 * @throws ArithmeticException If the difference overflows.
+	 */
+	public static long subtract(long a, long b){
+
+		long r = a - b;
+
+		if(((a ^ b) & (a ^ r)) < 0){
+			throw new ArithmeticException("long overflow: " + a + " - " + b);
+		}
+
+		return r;
+	}
+
+	/**
+	 * @param a The left operand.
+	 * @param b The right operand.
+	 *
+	 * @return <b>a * b</b>.
+	 *
+	 * @throws ArithmeticException If the product overflows.
+	 */
+	public static long multiply(long a, long b){
+
+		long r = a * b;
+
+		//operands of at most 31 bits cannot overflow, the others are checked by dividing back
+		if(((Math.abs(a) | Math.abs(b)) >>> 31) != 0 &&
+				((b != 0 && r / b != a) || (a == Long.MIN_VALUE && b == -1))){
+			throw new ArithmeticException("long overflow: " + a + " * " + b);
+		}
+
+		return r;
+	}
+
+	/**
+	 * @param base The base.
+	 * @param exponent The exponent.
+	 *
+	 * @return <b>base^exponent</b>, computed by repeated squaring. <b>0^0</b> is 1, as
+	 * 		with {@link Math#pow(double, double)}.
+	 *
+	 * @throws ArithmeticException If the power overflows or the exponent is negative.
+	 */
+	public static long power(long base, long exponent){
+
+		if(exponent < 0){
+			throw new ArithmeticException("Negative exponent: " + base + " ^ " + exponent);
+		}
+
+		long result = 1;
+
+		while(exponent != 0){
+
+			if((exponent & 1) != 0){
+				result = LongEvaluator.multiply(result, base);
+			}
+
+			exponent >>>= 1;
+			if(exponent != 0){
+				base = LongEvaluator.multiply(base, base);
+			}
+		}
+
+		return result;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Runs every instruction of the program over one block of rows. The result of
+	 * the block is left in the first entry of the stack.
+	 *
+	 * <br><br>Rather than checking every row for overflow, which would keep the loops
+	 * from being vectorised, a bound on the magnitude of the values of each entry of
+	 * the stack is kept. The bound of a sum is the sum of the bounds, and so on, so
+	 * as long as the bounds fit in a <code>long</code> no row can overflow and plain
+	 * loops are used. Only when a bound does not fit are the rows checked one by one.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables.
+	 * @param columnBounds The bound of each column over the whole batch.
+	 * @param stack The operand stack, one block per entry.
+	 * @param bounds The bound of each entry of the stack.
+	 * @param start The first row of the block.
+	 * @param count The number of rows in the block.
+	 *
+	 * @throws ArithmeticException If a value overflows or a power is negative.
+	 */
+	private static void evaluateBlock(ExpressionProgram program, long[][] columns,
+			long[] columnBounds, long[][] stack, long[] bounds, int start, int count){
+
+		int[] code = program.code();
+		double[] constants = program.constants();
+		int top = -1;	//index of the top of the stack
+
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+			int opcode = instruction & ExpressionProgram.OPCODE_MASK;
+
+			if(opcode == ExpressionProgram.CONST){
+				long value = (long) constants[instruction >>> ExpressionProgram.OPCODE_BITS];
+				long[] a = stack[++top];
+				for(int j = 0; j < count; ++j){
+					a[j] = value;
+				}
+				bounds[top] = Math.abs(value);
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				int slot = instruction >>> ExpressionProgram.OPCODE_BITS;
+				System.arraycopy(columns[slot], start, stack[++top], 0, count);
+				bounds[top] = columnBounds[slot];
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.NEG){
+				long[] a = stack[top];
+				if(bounds[top] < 0){
+					for(int j = 0; j < count; ++j){
+						a[j] = LongEvaluator.subtract(0, a[j]);
+					}
+				}else{
+					for(int j = 0; j < count; ++j){
+						a[j] = -a[j];
+					}
+				}
+				continue;
+			}
+
+			//binary operators write their result over their left operand
+			long[] a = stack[top - 1];
+			long[] b = stack[top];
+			long boundA = bounds[top - 1];
+			long boundB = bounds[top];
+			--top;
+
+			switch(opcode){
+
+				case ExpressionProgram.ADD:
+				case ExpressionProgram.SUB:{
+
+					//both bounds are positive, so their sum is negative when it overflows
+					long bound = boundA < 0 || boundB < 0 ? UNKNOWN_BOUND : boundA + boundB;
+
+					if(bound < 0){
+						for(int j = 0; j < count; ++j){
+							a[j] = opcode == ExpressionProgram.ADD ? LongEvaluator.add(a[j], b[j]) :
+									LongEvaluator.subtract(a[j], b[j]);
+						}
+						bound = LongEvaluator.bound(a, count);
+					}else if(opcode == ExpressionProgram.ADD){
+						for(int j = 0; j < count; ++j){
+							a[j] = a[j] + b[j];
+						}
+					}else{
+						for(int j = 0; j < count; ++j){
+							a[j] = a[j] - b[j];
+						}
+					}
+
+					bounds[top] = bound;
+					break;
+				}
+
+				case ExpressionProgram.MUL:{
+
+					long bound = boundA < 0 || boundB < 0 ? UNKNOWN_BOUND : LongEvaluator.boundProduct(boundA, boundB);
+
+					if(bound < 0){
+						for(int j = 0; j < count; ++j){
+							a[j] = LongEvaluator.multiply(a[j], b[j]);
+						}
+						bound = LongEvaluator.bound(a, count);
+					}else{
+						for(int j = 0; j < count; ++j){
+							a[j] = a[j] * b[j];
+						}
+					}
+
+					bounds[top] = bound;
+					break;
+				}
+
+				case ExpressionProgram.POW:
+					for(int j = 0; j < count; ++j){
+						a[j] = LongEvaluator.power(a[j], b[j]);
+					}
+					bounds[top] = LongEvaluator.bound(a, count);
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at instruction " + i);
+			}
+		}
+	}
+
+	/**
+	 * @param values The values.
+	 * @param count The number of values to look at.
+	 *
+	 * @return A bound on the magnitude of the first values, or {@link #UNKNOWN_BOUND}
+	 * 		if one of them is {@link Long#MIN_VALUE}, whose magnitude does not fit.
+	 */
+	private static long bound(long[] values, int count){
+
+		//x ^ (x >> 63) is |x| for positive values and |x| - 1 for negative ones
+		long bits = 0;
+		for(int j = 0; j < count; ++j){
+			bits |= values[j] ^ (values[j] >> 63);
+		}
+
+		return bits == Long.MAX_VALUE ? UNKNOWN_BOUND : bits + 1;
+	}
+
+	/**
+	 * @param a A positive bound.
+	 * @param b A positive bound.
+	 *
+	 * @return The bound of the products of values within the given bounds, or
+	 * 		{@link #UNKNOWN_BOUND} if it does not fit in a <code>long</code>.
+	 */
+	private static long boundProduct(long a, long b){
+
+		long product = a * b;
+
+		if(((a | b) >>> 31) != 0 && a != 0 && product / a != b){
+			return UNKNOWN_BOUND;
+		}
+
+		return product;
+	}
+}
@@ -0,0 +1,210 @@
+package expressionparser;
+
+/**
+ * The definition of an operator or a function known to an {@link OperatorRegistry}.
+ * An operator is either written between its two operands (<b>infix</b>, such as
+ * <b>+</b>), before its single operand (<b>prefix</b>, such as the unary <b>-</b>)
+ * or is a named <b>function</b> taking its operands between brackets, separated by
+ * commas (such as <b>clamp(x, 0, 1)</b>).
+ *
+ * <br><br>New operators and functions are defined by extending this class and
+ * implementing {@link #apply(double[], int)}, then registering them with
+ * {@link OperatorRegistry#register(Operator)}. Their implementation must always
+ * give the same result for the same operands, since calls with constant operands
+ * are computed once when the expression is compiled.
+ *
+ * <br><br>The built-in operators (<b>+ - * / ^</b> and unary <b>-</b>) and
+ * functions (<b>sin</b>, <b>log</b>, <b>sqrt</b>...) are also described by instances
+ * of this class, but they are compiled to their own opcodes and evaluated without
+ * calling {@link #apply(double[], int)}.
+ *
+ * @author David Boivin
+ */
+public abstract class Operator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int PREFIX = 0;
+	public static final int INFIX = 1;
+	public static final int FUNCTION = 2;
+
+	public static final int ADDITIVE_PRECEDENCE = 10;
+	public static final int MULTIPLICATIVE_PRECEDENCE = 20;
+	public static final int EXPONENT_PRECEDENCE = 30;
+	public static final int PREFIX_PRECEDENCE = 40;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final String symbol;
+	private final int kind;
+	private final int arity;
+	private final int precedence;
+	private final boolean rightAssociative;
+	private final int opcode;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a function taking the given number of operands.
+	 *
+	 * @param name The name of the function. It must be a valid variable name.
+	 * @param arity The number of operands of the function, at least 1.
+	 */
+	protected Operator(String name, int arity){
+		this(name, FUNCTION, arity, 0, false, ExpressionProgram.CALL);
+
+		if(name.isEmpty() || !ExpressionProgram.isIdentifierStart(name.charAt(0))){
+			throw new IllegalArgumentException("Invalid function name: " + name);
+		}
+
+		for(int i = 1; i < name.length(); ++i){
+			if(!ExpressionProgram.isIdentifierPart(name.charAt(i))){
+				throw new IllegalArgumentException("Invalid function name: " + name);
+			}
+		}
+
+		if(arity < 1){
+			throw new IllegalArgumentException("A function needs at least one operand: " + name);
+		}
+	}
+
+	/**
+	 * Creates a binary operator written between its operands.
+	 *
+	 * @param symbol The symbol of the operator. It must be a single ASCII character which
+	 * 		is not a digit, a letter, a space, a bracket or a comma.
+	 * @param precedence The precedence of the operator. Operators with a higher precedence
+	 * 		are calculated first (see {@link #ADDITIVE_PRECEDENCE} and the others).
+	 * @param rightAssociative <b>true</b> if <code>a?b?c</code> means <code>a?(b?c)</code>,
+	 * 		<b>false</b> if it means <code>(a?b)?c</code>.
+	 */
+	protected Operator(char symbol, int precedence, boolean rightAssociative){
+		this(String.valueOf(symbol), INFIX, 2, precedence, rightAssociative, ExpressionProgram.CALL);
+
+		if(!Operator.isSymbol(symbol)){
+			throw new IllegalArgumentException("Invalid operator symbol: " + symbol);
+		}
+	}
+
+	/**
+	 * Creates the definition of a built-in operator.
+	 *
+	 * @param symbol The symbol of the operator.
+	 * @param kind {@link #PREFIX}, {@link #INFIX} or {@link #FUNCTION}.
+	 * @param arity The number of operands of the operator.
+	 * @param precedence The precedence of the operator.
+	 * @param rightAssociative Whether the operator is right associative.
+	 * @param opcode The opcode the operator is compiled to.
+	 */
+	Operator(String symbol, int kind, int arity, int precedence, boolean rightAssociative, int opcode){
+		this.symbol = symbol;
+		this.kind = kind;
+		this.arity = arity;
+		this.precedence = precedence;
+		this.rightAssociative = rightAssociative;
+		this.opcode = opcode;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Calculates the result of the operator. The operands are read from the given
+	 * array, starting at the given offset, so that the evaluators can hand over
+	 * their own operand stack without copying it.
+	 *
+	 * @param operands The array holding the operands.
+	 * @param offset The index of the first (leftmost) operand.
+	 *
+	 * @return The result of the operator.
+	 */
+	public abstract double apply(double[] operands, int offset);
+
+	/**
+	 * Determines whether the given character can be the symbol of an infix operator.
+	 *
+	 * @param c The character to be checked.
+	 *
+	 * @return This method returns <b>true</b> if the character can be used as a symbol
+	 * 		and returns <b>false</b> otherwise.
+	 */
+	public static boolean isSymbol(char c){
+		return c > ' ' && c < 127 && !ExpressionProgram.isIdentifierPart(c) &&
+				c != '(' && c != ')' && c != ',' && c != '.';
+	}
+
+	/**
+	 * @return The symbol of the operator or the name of the function.
+	 */
+	public String getSymbol(){
+		return this.symbol;
+	}
+
+	/**
+	 * @return {@link #PREFIX}, {@link #INFIX} or {@link #FUNCTION}.
+	 */
+	public int getKind(){
+		return this.kind;
+	}
+
+	/**
+	 * @return The number of operands of the operator.
+	 */
+	public int getArity(){
+		return this.arity;
+	}
+
+	/**
+	 * @return The precedence of the operator.
+	 */
+	public int getPrecedence(){
+		return this.precedence;
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if the operator is right associative
+	 * 		and returns <b>false</b> if it is left associative.
+	 */
+	public boolean isRightAssociative(){
+		return this.rightAssociative;
+	}
+
+	/**
+	 * @return The opcode the operator is compiled to, which is
+	 * 		{@link ExpressionProgram#CALL} for all but the built-in operators.
+	 */
+	public int getOpcode(){
+		return this.opcode;
+	}
+
+	@Override
+	public String toString(){
+		return this.symbol;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Creates the definition of a built-in operator or function, which calculates its
+	 * result with {@link ProgramEvaluator#calculate(int, double, double)}. Infix
+	 * operators take two operands, prefix operators and functions take one.
+	 *
+	 * @param symbol The symbol of the operator or the name of the function.
+	 * @param kind {@link #PREFIX}, {@link #INFIX} or {@link #FUNCTION}.
+	 * @param precedence The precedence of the operator.
+	 * @param opcode The opcode the operator is compiled to.
+	 *
+	 * @return The definition of the operator.
+	 */
+	static Operator builtIn(String symbol, int kind, int precedence, final int opcode){
+
+		int arity = kind == INFIX ? 2 : 1;
+
+		return new Operator(symbol, kind, arity, precedence, false, opcode){
+			@Override
+			public double apply(double[] operands, int offset){
+				return ProgramEvaluator.calculate(opcode, operands[offset],
+						this.getArity() == 1 ? 0 : operands[offset + 1]);
+			}
+		};
+	}
+}
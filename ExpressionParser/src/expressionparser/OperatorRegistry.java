@@ -0,0 +1,268 @@
+package expressionparser;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link Operator}s and functions understood by the parser. Single
+ * character operators are kept in tables indexed by the character itself and
+ * functions in a hash map, so the parser classifies every token in constant
+ * time instead of comparing it against every known operator.
+ *
+ * <br><br>Every registry starts out with the built-in operators: <b>+</b> and
+ * <b>-</b> ({@link Operator#ADDITIVE_PRECEDENCE}), <b>*</b> and <b>/</b>
+ * ({@link Operator#MULTIPLICATIVE_PRECEDENCE}), <b>^</b>
+ * ({@link Operator#EXPONENT_PRECEDENCE}) and the unary <b>-</b>
+ * ({@link Operator#PREFIX_PRECEDENCE}). All of them are left associative.
+ * It also starts out with the built-in functions of one operand: <b>sin</b>,
+ * <b>cos</b>, <b>tan</b>, <b>arcsin</b>, <b>arccos</b>, <b>arctan</b>, <b>exp</b>,
+ * <b>log</b> (the natural logarithm) and <b>sqrt</b>, calculated by {@link Math}.
+ *
+ * <br><br>{@link #getDefault()} is the registry used by {@link ExpressionParser}
+ * unless it is given another one. Operators can be registered while other threads
+ * are parsing, but they can never be replaced or removed, since expressions that
+ * were already compiled keep the definitions they were compiled with.
+ *
+ * @author David Boivin
+ */
+public class OperatorRegistry {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final Operator ADDITION = Operator.builtIn(ExpressionParser.ADDITION,
+			Operator.INFIX, Operator.ADDITIVE_PRECEDENCE, ExpressionProgram.ADD);
+	public static final Operator SUBTRACTION = Operator.builtIn(ExpressionParser.SUBTRACTION,
+			Operator.INFIX, Operator.ADDITIVE_PRECEDENCE, ExpressionProgram.SUB);
+	public static final Operator MULTIPLICATION = Operator.builtIn(ExpressionParser.MULTIPLICATION,
+			Operator.INFIX, Operator.MULTIPLICATIVE_PRECEDENCE, ExpressionProgram.MUL);
+	public static final Operator DIVISION = Operator.builtIn(ExpressionParser.DIVISION,
+			Operator.INFIX, Operator.MULTIPLICATIVE_PRECEDENCE, ExpressionProgram.DIV);
+	public static final Operator EXPONENT = Operator.builtIn(ExpressionParser.EXPONENT,
+			Operator.INFIX, Operator.EXPONENT_PRECEDENCE, ExpressionProgram.POW);
+	public static final Operator NEGATIVE = Operator.builtIn(ExpressionParser.NEGATIVE,
+			Operator.PREFIX, Operator.PREFIX_PRECEDENCE, ExpressionProgram.NEG);
+
+	public static final Operator SIN = Operator.builtIn(ExpressionParser.SIN,
+			Operator.FUNCTION, 0, ExpressionProgram.SIN);
+	public static final Operator COS = Operator.builtIn(ExpressionParser.COS,
+			Operator.FUNCTION, 0, ExpressionProgram.COS);
+	public static final Operator TAN = Operator.builtIn(ExpressionParser.TAN,
+			Operator.FUNCTION, 0, ExpressionProgram.TAN);
+	public static final Operator ARCSIN = Operator.builtIn(ExpressionParser.ARCSIN,
+			Operator.FUNCTION, 0, ExpressionProgram.ASIN);
+	public static final Operator ARCCOS = Operator.builtIn(ExpressionParser.ARCCOS,
+			Operator.FUNCTION, 0, ExpressionProgram.ACOS);
+	public static final Operator ARCTAN = Operator.builtIn(ExpressionParser.ARCTAN,
+			Operator.FUNCTION, 0, ExpressionProgram.ATAN);
+	public static final Operator EXP = Operator.builtIn(ExpressionParser.EXP,
+			Operator.FUNCTION, 0, ExpressionProgram.EXP);
+	public static final Operator LOG = Operator.builtIn(ExpressionParser.LOG,
+			Operator.FUNCTION, 0, ExpressionProgram.LOG);
+	public static final Operator SQRT = Operator.builtIn(ExpressionParser.SQRT,
+			Operator.FUNCTION, 0, ExpressionProgram.SQRT);
+
+	private static final int TABLE_SIZE = 128;
+
+	private static final OperatorRegistry DEFAULT = new OperatorRegistry();
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	//replaced as a whole when an operator is registered, so readers never need a lock
+	private volatile Operator[] infix = new Operator[TABLE_SIZE];
+	private volatile Operator[] prefix = new Operator[TABLE_SIZE];
+
+	private final ConcurrentHashMap<String, Operator> functions = new ConcurrentHashMap<String, Operator>();
+
+	//the functions again, in an open addressing table keyed by the hash code of their name, so
+	//that names can be looked up straight from an expression without being copied into a String
+	private volatile Operator[] functionTable = new Operator[16];
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a registry holding only the built-in operators and functions.
+	 */
+	public OperatorRegistry(){
+		this.register(ADDITION);
+		this.register(SUBTRACTION);
+		this.register(MULTIPLICATION);
+		this.register(DIVISION);
+		this.register(EXPONENT);
+		this.register(NEGATIVE);
+		this.register(SIN);
+		this.register(COS);
+		this.register(TAN);
+		this.register(ARCSIN);
+		this.register(ARCCOS);
+		this.register(ARCTAN);
+		this.register(EXP);
+		this.register(LOG);
+		this.register(SQRT);
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * @return The registry used by {@link ExpressionParser} by default.
+	 */
+	public static OperatorRegistry getDefault(){
+		return DEFAULT;
+	}
+
+	/**
+	 * Adds the given operator or function to the registry.
+	 *
+	 * @param operator The operator to add.
+	 *
+	 * @return This registry.
+	 *
+	 * @throws IllegalArgumentException If an operator or function with the same symbol
+	 * 		and kind is already registered.
+	 */
+	public synchronized OperatorRegistry register(Operator operator){
+
+		String symbol = operator.getSymbol();
+
+		if(operator.getKind() == Operator.FUNCTION){
+			if(this.functions.putIfAbsent(symbol, operator) != null){
+				throw new IllegalArgumentException("Function already registered: " + symbol);
+			}
+			this.functionTable = OperatorRegistry.hash(this.functions.values());
+			return this;
+		}
+
+		char c = symbol.charAt(symbol.length() - 1);	//the built-in unary minus is written "--"
+		Operator[] table = (operator.getKind() == Operator.PREFIX ? this.prefix : this.infix).clone();
+
+		if(table[c] != null){
+			throw new IllegalArgumentException("Operator already registered: " + c);
+		}
+
+		table[c] = operator;
+
+		if(operator.getKind() == Operator.PREFIX){
+			this.prefix = table;
+		}else{
+			this.infix = table;
+		}
+
+		return this;
+	}
+
+	/**
+	 * @param c The symbol of the operator.
+	 *
+	 * @return The infix (binary) operator written with the given symbol, or <b>null</b>
+	 * 		if there is none.
+	 */
+	public Operator getInfix(char c){
+		return c < TABLE_SIZE ? this.infix[c] : null;
+	}
+
+	/**
+	 * @param c The symbol of the operator.
+	 *
+	 * @return The prefix (unary) operator written with the given symbol, or <b>null</b>
+	 * 		if there is none.
+	 */
+	public Operator getPrefix(char c){
+		return c < TABLE_SIZE ? this.prefix[c] : null;
+	}
+
+	/**
+	 * @param name The name of the function.
+	 *
+	 * @return The function with the given name, or <b>null</b> if there is none.
+	 */
+	public Operator getFunction(String name){
+		return this.functions.get(name);
+	}
+
+	/**
+	 * Finds the operator or function written as the given PostFix token, as found
+	 * in the queues of {@link ExpressionParser#parse(String)}.
+	 *
+	 * @param token The token.
+	 *
+	 * @return The operator, or <b>null</b> if the token is not an operator.
+	 */
+	public Operator getOperator(String token){
+
+		if(token.equals(ExpressionParser.NEGATIVE)){
+			return NEGATIVE;
+		}
+
+		if(token.length() == 1 && token.charAt(0) < TABLE_SIZE){
+			return this.infix[token.charAt(0)];
+		}
+
+		return this.functions.get(token);
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Finds the function whose name is held between the given indexes of the given
+	 * text, without copying the name out of the text.
+	 *
+	 * @param text The text holding the name, usually an expression.
+	 * @param start The index of the first character of the name.
+	 * @param end The index after the last character of the name.
+	 *
+	 * @return The function with the given name, or <b>null</b> if there is none.
+	 */
+	Operator getFunction(String text, int start, int end){
+
+		//same hash as String.hashCode(), so that it matches the one of the symbols
+		int hash = 0;
+		for(int i = start; i < end; ++i){
+			hash = 31 * hash + text.charAt(i);
+		}
+
+		Operator[] table = this.functionTable;
+		int mask = table.length - 1;
+
+		for(int slot = OperatorRegistry.spread(hash) & mask; table[slot] != null; slot = (slot + 1) & mask){
+			String symbol = table[slot].getSymbol();
+			if(symbol.length() == end - start && text.regionMatches(start, symbol, 0, end - start)){
+				return table[slot];
+			}
+		}
+
+		return null;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Builds the open addressing table of the given functions, at most a quarter full.
+	 *
+	 * @param functions The functions.
+	 *
+	 * @return The table, whose length is a power of two.
+	 */
+	private static Operator[] hash(Collection<Operator> functions){
+
+		Operator[] table = new Operator[Math.max(16, Integer.highestOneBit(functions.size() * 4) << 1)];
+		int mask = table.length - 1;
+
+		for(Operator function : functions){
+			int slot = OperatorRegistry.spread(function.getSymbol().hashCode()) & mask;
+			while(table[slot] != null){
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = function;
+		}
+
+		return table;
+	}
+
+	/**
+	 * @param hash A hash code.
+	 *
+	 * @return The hash code with its high bits mixed into its low bits, which pick the slot.
+	 */
+	private static int spread(int hash){
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,310 @@
+package expressionparser;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates an {@link ExpressionProgram} over a large number of rows using every
+ * core of the machine. The rows are split into chunks of whole
+ * {@link BatchEvaluator#BLOCK_SIZE blocks}, each chunk is evaluated by a single
+ * thread and its results are written straight into the output column, so threads
+ * never write to the same block of the output and never share an operand stack.
+ *
+ * <br><br>By default the work is spread over a shared {@link ForkJoinPool} with one
+ * thread per core (see {@link #getDefaultPool()}), splitting the rows in halves
+ * until the chunks are small enough for every thread to get several of them. Any
+ * other {@link Executor} can be given instead, in which case the chunks are handed
+ * to it one by one and the caller waits for all of them to be done. Chunks which
+ * the executor refuses, for instance because it was shut down, are evaluated by
+ * the calling thread.
+ *
+ * <br><br>Programs are immutable, so a single program (or {@link CompiledExpression})
+ * can be evaluated by any number of threads at once. The registered functions it
+ * calls, if any, must be safe to call from several threads.
+ *
+ * @author David Boivin
+ */
+public class ParallelEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The smallest number of rows given to a thread. Smaller jobs cost more to
+	 * hand over to another thread than to evaluate.
+	 */
+	public static final int MIN_CHUNK_SIZE = 16 * BatchEvaluator.BLOCK_SIZE;
+
+	//number of chunks given to each thread, so that threads finishing early can help the others
+	private static final int CHUNKS_PER_THREAD = 4;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private static ForkJoinPool defaultPool;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the given program for every row of the output column, in parallel
+	 * on the {@link #getDefaultPool() default pool}.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public static void evaluate(ExpressionProgram program, double[][] columns, double[] output){
+		ParallelEvaluator.evaluate(program, columns, output, ParallelEvaluator.getDefaultPool());
+	}
+
+	/**
+	 * Evaluates the given program for every row of the output column, in parallel
+	 * on the given executor.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 * @param executor The executor running the chunks.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public static void evaluate(final ExpressionProgram program, final double[][] columns,
+			final double[] output, Executor executor){
+
+		BatchEvaluator.checkColumns(program, columns, output, 0, output.length);
+
+		ParallelEvaluator.run(new Chunk(){
+			@Override
+			void evaluate(int from, int to){
+				BatchEvaluator.evaluate(program, columns, output, from, to);
+			}
+		}, output.length, executor);
+	}
+
+	/**
+	 * Evaluates the given program for every row, in parallel on the
+	 * {@link #getDefaultPool() default pool}. Each row holds the values of the
+	 * variables by slot, as given to {@link ProgramEvaluator#evaluate(ExpressionProgram, double...)}.
+	 *
+	 * @param program The program to evaluate.
+	 * @param rows The values of the variables, one row per result.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer rows than results or if a
+	 * 		row has fewer values than variables.
+	 */
+	public static void evaluateRows(ExpressionProgram program, double[][] rows, double[] output){
+		ParallelEvaluator.evaluateRows(program, rows, output, ParallelEvaluator.getDefaultPool());
+	}
+
+	/**
+	 * Evaluates the given program for every row, in parallel on the given executor.
+	 *
+	 * @param program The program to evaluate.
+	 * @param rows The values of the variables, one row per result.
+	 * @param output The column in which to write the results.
+	 * @param executor The executor running the chunks.
+	 *
+	 * @throws IllegalArgumentException If there are fewer rows than results or if a
+	 * 		row has fewer values than variables.
+	 */
+	public static void evaluateRows(final ExpressionProgram program, final double[][] rows,
+			final double[] output, Executor executor){
+
+		if(rows.length < output.length){
+			throw new IllegalArgumentException("Expected " + output.length + " rows but got " + rows.length);
+		}
+
+		for(int i = 0; i < output.length; ++i){
+			if(rows[i].length < program.getVariableCount()){
+				throw new IllegalArgumentException("Row " + i + " has " + rows[i].length +
+						" values instead of at least " + program.getVariableCount());
+			}
+		}
+
+		ParallelEvaluator.run(new Chunk(){
+			@Override
+			void evaluate(int from, int to){
+
+				//each chunk has its own operand stack
+				double[] stack = new double[program.getMaxStackDepth()];
+
+				for(int i = from; i < to; ++i){
+					output[i] = ProgramEvaluator.evaluate(program, rows[i], stack);
+				}
+			}
+		}, output.length, executor);
+	}
+
+	/**
+	 * Gives the pool used when no executor is given. It is created the first time
+	 * it is needed, with one thread per core, and its threads are daemon threads
+	 * which do not keep the JVM alive.
+	 *
+	 * @return The default pool.
+	 */
+	public static synchronized ForkJoinPool getDefaultPool(){
+
+		if(ParallelEvaluator.defaultPool == null){
+			ParallelEvaluator.defaultPool = new ForkJoinPool();
+		}
+
+		return ParallelEvaluator.defaultPool;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Splits the rows into chunks and evaluates them on the given executor, returning
+	 * once every chunk is done. Chunks the executor refuses are evaluated by the
+	 * calling thread, so the output is complete whether or not the executor took them.
+	 *
+	 * @param chunk Evaluates a range of rows.
+	 * @param rows The number of rows.
+	 * @param executor The executor running the chunks.
+	 */
+	private static void run(final Chunk chunk, int rows, Executor executor){
+
+		int threads = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+		int size = ParallelEvaluator.getChunkSize(rows, threads);
+
+		//small jobs are not worth handing over
+		if(rows <= size){
+			chunk.evaluate(0, rows);
+			return;
+		}
+
+		if(executor instanceof ForkJoinPool){
+			((ForkJoinPool) executor).invoke(new ChunkTask(chunk, 0, rows, size));
+			return;
+		}
+
+		//any other executor gets the chunks one by one
+		int count = (rows + size - 1) / size;
+		final CountDownLatch done = new CountDownLatch(count);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		boolean rejected = false;
+
+		for(int start = 0; start < rows; start += size){
+			final int from = start;
+			final int to = Math.min(start + size, rows);
+
+			Runnable task = new Runnable(){
+				@Override
+				public void run(){
+					try{
+						chunk.evaluate(from, to);
+					}catch(Throwable t){
+						failure.compareAndSet(null, t);
+					}finally{
+						done.countDown();
+					}
+				}
+			};
+
+			//once the executor refuses a chunk, the caller evaluates the rest itself
+			if(rejected){
+				task.run();
+				continue;
+			}
+
+			try{
+				executor.execute(task);
+			}catch(RejectedExecutionException e){
+				rejected = true;
+				task.run();
+			}
+		}
+
+		try{
+			done.await();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the evaluation", e);
+		}
+
+		Throwable t = failure.get();
+		if(t instanceof RuntimeException){
+			throw (RuntimeException) t;
+		}
+		if(t instanceof Error){
+			throw (Error) t;
+		}
+	}
+
+	/**
+	 * Gives the number of rows evaluated by a single thread: a whole number of blocks,
+	 * at least {@link #MIN_CHUNK_SIZE}, and small enough for every thread to get a
+	 * few chunks.
+	 *
+	 * @param rows The number of rows.
+	 * @param threads The number of threads.
+	 *
+	 * @return The number of rows of a chunk.
+	 */
+	private static int getChunkSize(int rows, int threads){
+
+		long size = (long) rows / ((long) threads * CHUNKS_PER_THREAD);
+		size = (size + BatchEvaluator.BLOCK_SIZE - 1) / BatchEvaluator.BLOCK_SIZE * BatchEvaluator.BLOCK_SIZE;
+
+		return (int) Math.max(size, MIN_CHUNK_SIZE);
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates a range of rows.
+	 */
+	private abstract static class Chunk {
+
+		/**
+		 * @param from The first row to evaluate.
+		 * @param to The row after the last row to evaluate.
+		 */
+		abstract void evaluate(int from, int to);
+	}
+
+	/**
+	 * Splits its range of rows in halves, on a block boundary, until it is no larger
+	 * than a chunk.
+	 */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Chunk chunk;
+		private final int from;
+		private final int to;
+		private final int size;
+
+		private ChunkTask(Chunk chunk, int from, int to, int size){
+			this.chunk = chunk;
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(this.to - this.from <= this.size){
+				this.chunk.evaluate(this.from, this.to);
+				return;
+			}
+
+			//the middle is rounded to a whole number of blocks
+			int blocks = (this.to - this.from + BatchEvaluator.BLOCK_SIZE - 1) / BatchEvaluator.BLOCK_SIZE;
+			int middle = this.from + blocks / 2 * BatchEvaluator.BLOCK_SIZE;
+
+			ChunkTask.invokeAll(new ChunkTask(this.chunk, this.from, middle, this.size),
+					new ChunkTask(this.chunk, middle, this.to, this.size));
+		}
+	}
+}
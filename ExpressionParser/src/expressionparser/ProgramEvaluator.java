@@ -0,0 +1,324 @@
+package expressionparser;
+
+/**
+ * Evaluates {@link ExpressionProgram}s. The evaluator works directly on the
+ * opcodes and the constant pool of the program using a primitive
+ * <code>double</code> stack, so no String is parsed and no number is boxed
+ * while an expression is evaluated. The values of the variables of a program
+ * are given as a <code>double[]</code> indexed by the slots of the program.
+ *
+ * <br><br>Each thread keeps its own operand stack, sized from the maximum stack
+ * depth computed when the program was built and grown only when a deeper
+ * program comes along, so once a thread has warmed up evaluating a program
+ * allocates nothing at all. Callers who manage their own threads can also hand
+ * over their own stack with {@link #evaluate(ExpressionProgram, double[], double[])}.
+ *
+ * @author David Boivin
+ */
+public class ProgramEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final int INITIAL_STACK_SIZE = 16;
+
+	//the operand stack of each thread, reused by every evaluation on that thread
+	private static final ThreadLocal<Workspace> WORKSPACES = new ThreadLocal<Workspace>(){
+		@Override
+		protected Workspace initialValue(){
+			return new Workspace();
+		}
+	};
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the given program using the operand stack of the current thread.
+	 *
+	 * @param program The program to evaluate.
+	 * @param variables The values of the variables of the program, by slot.
+	 *
+	 * @return The result of the program.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 */
+	public static double evaluate(ExpressionProgram program, double... variables){
+
+		double[] stack = ProgramEvaluator.acquireStack(program.getMaxStackDepth());
+		try{
+			return ProgramEvaluator.evaluate(program, variables, stack);
+		}finally{
+			ProgramEvaluator.releaseStack(stack);
+		}
+	}
+
+	/**
+	 * Evaluates the given program using the given array as its operand stack.
+	 *
+	 * @param program The program to evaluate.
+	 * @param variables The values of the variables of the program, by slot.
+	 * @param stack The operand stack. It must hold at least
+	 * 		{@link ExpressionProgram#getMaxStackDepth()} values.
+	 *
+	 * @return The result of the program.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 */
+	public static double evaluate(ExpressionProgram program, double[] variables, double[] stack){
+
+		if(variables.length < program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + program.getVariableCount() +
+					" variable values but got " + variables.length);
+		}
+
+		int[] code = program.code();
+		double[] constants = program.constants();
+		Operator[] functions = program.functions();
+		int top = -1;	//index of the top of the stack
+
+		//iterate through the instructions
+		for(int i = 0; i < code.length; ++i){
+
+			int instruction = code[i];
+
+			switch(instruction & ExpressionProgram.OPCODE_MASK){
+
+				case ExpressionProgram.CONST:
+					stack[++top] = constants[instruction >>> ExpressionProgram.OPCODE_BITS];
+					break;
+
+				case ExpressionProgram.LOAD:
+					stack[++top] = variables[instruction >>> ExpressionProgram.OPCODE_BITS];
+					break;
+
+				case ExpressionProgram.ADD:
+					stack[top - 1] = stack[top - 1] + stack[top];
+					--top;
+					break;
+
+				case ExpressionProgram.SUB:
+					stack[top - 1] = stack[top - 1] - stack[top];
+					--top;
+					break;
+
+				case ExpressionProgram.MUL:
+					stack[top - 1] = stack[top - 1] * stack[top];
+					--top;
+					break;
+
+				case ExpressionProgram.DIV:
+					stack[top - 1] = stack[top - 1] / stack[top];
+					--top;
+					break;
+
+				case ExpressionProgram.POW:
+					stack[top - 1] = Math.pow(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.NEG:
+					stack[top] = -stack[top];
+					break;
+
+				case ExpressionProgram.SIN:
+					stack[top] = Math.sin(stack[top]);
+					break;
+
+				case ExpressionProgram.COS:
+					stack[top] = Math.cos(stack[top]);
+					break;
+
+				case ExpressionProgram.TAN:
+					stack[top] = Math.tan(stack[top]);
+					break;
+
+				case ExpressionProgram.ASIN:
+					stack[top] = Math.asin(stack[top]);
+					break;
+
+				case ExpressionProgram.ACOS:
+					stack[top] = Math.acos(stack[top]);
+					break;
+
+				case ExpressionProgram.ATAN:
+					stack[top] = Math.atan(stack[top]);
+					break;
+
+				case ExpressionProgram.EXP:
+					stack[top] = Math.exp(stack[top]);
+					break;
+
+				case ExpressionProgram.LOG:
+					stack[top] = Math.log(stack[top]);
+					break;
+
+				case ExpressionProgram.SQRT:
+					stack[top] = Math.sqrt(stack[top]);
+					break;
+
+				case ExpressionProgram.FAST_SIN:
+					stack[top] = FastMath.sin(stack[top]);
+					break;
+
+				case ExpressionProgram.FAST_COS:
+					stack[top] = FastMath.cos(stack[top]);
+					break;
+
+				case ExpressionProgram.FAST_EXP:
+					stack[top] = FastMath.exp(stack[top]);
+					break;
+
+				case ExpressionProgram.FAST_LOG:
+					stack[top] = FastMath.log(stack[top]);
+					break;
+
+				case ExpressionProgram.FAST_POW:
+					stack[top - 1] = FastMath.pow(stack[top - 1], stack[top]);
+					--top;
+					break;
+
+				case ExpressionProgram.CALL:
+					Operator function = functions[instruction >>> ExpressionProgram.OPCODE_BITS];
+					top -= function.getArity() - 1;
+					stack[top] = function.apply(stack, top);	//the operands start at the new top
+					break;
+
+				default:
+					throw new IllegalStateException("Unknown opcode at instruction " + i);
+			}
+		}
+
+		return stack[0];
+	}
+
+	/**
+	 * Calculates the result of the given operator using the same arithmetic as
+	 * {@link #evaluate(ExpressionProgram, double...)}.
+	 *
+	 * @param opcode The opcode of the operator.
+	 * @param left The left operand, or the operand of a unary operator or function.
+	 * @param right The right operand. It is ignored by unary operators and functions.
+	 *
+	 * @return The result of the calculation.
+	 */
+	public static double calculate(int opcode, double left, double right){
+
+		switch(opcode){
+
+			case ExpressionProgram.ADD:
+				return left + right;
+
+			case ExpressionProgram.SUB:
+				return left - right;
+
+			case ExpressionProgram.MUL:
+				return left * right;
+
+			case ExpressionProgram.DIV:
+				return left / right;
+
+			case ExpressionProgram.POW:
+				return Math.pow(left, right);
+
+			case ExpressionProgram.NEG:
+				return -left;
+
+			case ExpressionProgram.SIN:
+				return Math.sin(left);
+
+			case ExpressionProgram.COS:
+				return Math.cos(left);
+
+			case ExpressionProgram.TAN:
+				return Math.tan(left);
+
+			case ExpressionProgram.ASIN:
+				return Math.asin(left);
+
+			case ExpressionProgram.ACOS:
+				return Math.acos(left);
+
+			case ExpressionProgram.ATAN:
+				return Math.atan(left);
+
+			case ExpressionProgram.EXP:
+				return Math.exp(left);
+
+			case ExpressionProgram.LOG:
+				return Math.log(left);
+
+			case ExpressionProgram.SQRT:
+				return Math.sqrt(left);
+
+			case ExpressionProgram.FAST_SIN:
+				return FastMath.sin(left);
+
+			case ExpressionProgram.FAST_COS:
+				return FastMath.cos(left);
+
+			case ExpressionProgram.FAST_EXP:
+				return FastMath.exp(left);
+
+			case ExpressionProgram.FAST_LOG:
+				return FastMath.log(left);
+
+			case ExpressionProgram.FAST_POW:
+				return FastMath.pow(left, right);
+
+			default:
+				throw new IllegalArgumentException("Not an operator opcode: " + opcode);
+		}
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Gives the operand stack of the current thread, grown to the given size if needed,
+	 * and marks it as in use until it is handed back to {@link #releaseStack(double[])}.
+	 * If the stack of the thread is already in use, as when a function evaluates
+	 * another expression from within an evaluation, a new array is given instead.
+	 *
+	 * @param size The number of values the stack must hold.
+	 *
+	 * @return The stack.
+	 */
+	static double[] acquireStack(int size){
+
+		Workspace workspace = ProgramEvaluator.WORKSPACES.get();
+
+		if(workspace.inUse){
+			return new double[size];
+		}
+
+		if(workspace.stack.length < size){
+			workspace.stack = new double[Math.max(size, workspace.stack.length * 2)];
+		}
+
+		workspace.inUse = true;
+		return workspace.stack;
+	}
+
+	/**
+	 * Hands back a stack given by {@link #acquireStack(int)}.
+	 *
+	 * @param stack The stack.
+	 */
+	static void releaseStack(double[] stack){
+
+		Workspace workspace = ProgramEvaluator.WORKSPACES.get();
+
+		if(workspace.stack == stack){
+			workspace.inUse = false;
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * The operand stack of a thread.
+	 */
+	private static class Workspace {
+
+		private double[] stack = new double[INITIAL_STACK_SIZE];
+		private boolean inUse;
+	}
+}
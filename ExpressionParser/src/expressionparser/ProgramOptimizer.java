@@ -0,0 +1,452 @@
+package expressionparser;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies {@link ExpressionProgram}s before they are evaluated. The program
+ * is turned into a tree of {@link ExpressionNode}s from the bottom up, and every
+ * node is simplified as soon as its operands are, so a single pass is enough.
+ *
+ * <br><br>The following simplifications are made:
+ * 	<ul>
+ * 		<li>Operators whose operands are all constants are replaced by their
+ * 			result, computed by {@link ProgramEvaluator#calculate(int, double, double)}.
+ * 			So are calls of registered functions, using the function itself.
+ * 		<li>Neutral elements are dropped: <b>x*1</b>, <b>1*x</b>, <b>x/1</b>,
+ * 			<b>x^1</b>, <b>x-0</b>, <b>x+(-0)</b> and <b>--x</b> all become <b>x</b>.
+ * 		<li><b>x*-1</b> and <b>x/-1</b> become <b>-x</b>, and <b>x^0</b> becomes <b>1</b>.
+ * 		<li>Small integer powers of a variable are turned into multiplications:
+ * 			<b>x^2</b> = <b>x*x</b>, <b>x^3</b> = <b>x*x*x</b>,
+ * 			<b>x^4</b> = <b>(x*x)*(x*x)</b> and <b>x^-1</b> = <b>1/x</b>.
+ * 	</ul>
+ *
+ * Every simplification gives the same result as the original expression for
+ * every input, including NaN, the infinities and both zeros. This is why
+ * <b>x+0</b> is <i>not</i> simplified: <b>-0+0</b> is <b>+0</b>, not <b>-0</b>.
+ * The only difference allowed is in the last bit of <b>x^3</b> and <b>x^4</b>,
+ * since {@link Math#pow(double, double)} is not always correctly rounded while
+ * each multiplication is.
+ *
+ * <br><br>{@link #useFastMath(ExpressionProgram)} is a separate, opt-in rewrite
+ * which does change results: it hands <b>sin</b>, <b>cos</b>, <b>exp</b>,
+ * <b>log</b> and <b>^</b> over to the approximations of {@link FastMath}.
+ *
+ * @author David Boivin
+ */
+public class ProgramOptimizer {
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Simplifies the given program. The variables of the program keep their slots,
+	 * even if they are no longer used.
+	 *
+	 * @param program The program to simplify.
+	 *
+	 * @return The simplified program.
+	 */
+	public static ExpressionProgram optimize(ExpressionProgram program){
+
+		ExpressionNode[] stack = new ExpressionNode[program.getMaxStackDepth()];
+		int top = -1;
+
+		//replay the program, building simplified nodes instead of computing values
+		for(int i = 0; i < program.length(); ++i){
+
+			int opcode = program.getOpcode(i);
+
+			if(opcode == ExpressionProgram.CONST){
+				stack[++top] = ExpressionNode.constant(program.getConstant(program.getOperand(i)));
+			}else if(opcode == ExpressionProgram.LOAD){
+				stack[++top] = ExpressionNode.variable(program.getOperand(i));
+			}else if(opcode == ExpressionProgram.CALL){
+				Operator function = program.getFunction(program.getOperand(i));
+				ExpressionNode[] operands = Arrays.copyOfRange(stack, top - function.getArity() + 1, top + 1);
+				top -= function.getArity() - 1;
+				stack[top] = ProgramOptimizer.simplifyCall(function, operands);
+			}else if(ExpressionProgram.getArity(opcode) == 1){
+				stack[top] = ProgramOptimizer.simplifyUnary(opcode, stack[top]);
+			}else{
+				stack[top - 1] = ProgramOptimizer.simplifyBinary(opcode, stack[top - 1], stack[top]);
+				--top;
+			}
+		}
+
+		return stack[0].toProgram(program.getVariables());
+	}
+
+	/**
+	 * Rewrites the given program so that it computes <b>sin</b>, <b>cos</b>,
+	 * <b>exp</b>, <b>log</b> and <b>^</b> with {@link FastMath} instead of
+	 * {@link Math}. The results are no longer exact, but stay within the error
+	 * bounds documented by {@link FastMath}. Every other instruction is kept as is.
+	 *
+	 * @param program The program to rewrite.
+	 *
+	 * @return The rewritten program, or the program itself if it has nothing to rewrite.
+	 */
+	public static ExpressionProgram useFastMath(ExpressionProgram program){
+
+		ExpressionProgram.Builder builder = new ExpressionProgram.Builder(program.length());
+		builder.declareVariables(program.getVariables());
+		boolean rewritten = false;
+
+		for(int i = 0; i < program.length(); ++i){
+
+			int opcode = program.getOpcode(i);
+			int operand = program.getOperand(i);
+
+			switch(opcode){
+
+				case ExpressionProgram.CONST:
+					builder.constant(program.getConstant(operand));
+					break;
+
+				case ExpressionProgram.LOAD:
+					builder.variable(program.getVariable(operand));
+					break;
+
+				case ExpressionProgram.CALL:
+					builder.operator(program.getFunction(operand));
+					break;
+
+				default:
+					int fast = ProgramOptimizer.getFastOpcode(opcode);
+					rewritten |= fast != opcode;
+					builder.operator(fast);
+			}
+		}
+
+		return rewritten ? builder.build() : program;
+	}
+
+	/**
+	 * Rewrites the given program so that the two operands of every <b>+</b> and
+	 * <b>*</b> are in a fixed order, which only depends on the operands themselves.
+	 * Expressions which only differ by the order of these operands, such as
+	 * <b>y*x+1</b> and <b>1+x*y</b>, then give {@link ExpressionProgram#equals(Object)
+	 * equal} programs. Operands are compared by the hash of their structure first,
+	 * then instruction by instruction.
+	 *
+	 * <br><br>The results do not change, bit for bit: <b>a+b</b> and <b>b+a</b> (or
+	 * <b>a*b</b> and <b>b*a</b>) are the same operation in IEEE 754 arithmetic for
+	 * every input, including NaN, the infinities and both zeros. The operands are
+	 * never regrouped, since <b>(a+b)+c</b> and <b>a+(b+c)</b> can be rounded
+	 * differently, so these stay different programs. Calls of registered functions
+	 * are evaluated in another order when their operands are swapped.
+	 *
+	 * @param program The program to rewrite.
+	 *
+	 * @return The rewritten program, or the program itself if its operands are
+	 * 		already in order.
+	 */
+	public static ExpressionProgram sortOperands(ExpressionProgram program){
+
+		int length = program.length();
+		int[] order = new int[length];	//the instructions of the program, in their new order
+		int[] starts = new int[Math.max(program.getMaxStackDepth(), 1)];
+		int[] hashes = new int[starts.length];
+		int top = -1;
+		boolean swapped = false;
+
+		//the instructions of an operand are contiguous in PostFix order, so they are
+		//swapped with the instructions of the other operand as a block
+		for(int i = 0; i < length; ++i){
+
+			order[i] = i;
+			int arity = program.getInstructionArity(i);
+			int hash = program.getInstructionHash(i);
+
+			for(int j = top - arity + 1; j <= top; ++j){
+				hash = 31 * hash + hashes[j];
+			}
+
+			int opcode = program.getOpcode(i);
+			if((opcode == ExpressionProgram.ADD || opcode == ExpressionProgram.MUL) &&
+					ProgramOptimizer.compareOperands(program, order, starts[top - 1], starts[top], i,
+					hashes[top - 1], hashes[top]) > 0){
+
+				ProgramOptimizer.swapBlocks(order, starts[top - 1], starts[top], i);
+				hash = 31 * (31 * program.getInstructionHash(i) + hashes[top]) + hashes[top - 1];
+				swapped = true;
+			}
+
+			top -= arity - 1;
+			starts[top] = arity == 0 ? i : starts[top];
+			hashes[top] = hash;
+		}
+
+		if(!swapped){
+			return program;
+		}
+
+		ExpressionProgram.Builder builder = new ExpressionProgram.Builder(length);
+		builder.declareVariables(program.getVariables());
+
+		for(int i = 0; i < length; ++i){
+
+			int opcode = program.getOpcode(order[i]);
+			int operand = program.getOperand(order[i]);
+
+			if(opcode == ExpressionProgram.CONST){
+				builder.constant(program.getConstant(operand));
+			}else if(opcode == ExpressionProgram.LOAD){
+				builder.variable(program.getVariable(operand));
+			}else if(opcode == ExpressionProgram.CALL){
+				builder.operator(program.getFunction(operand));
+			}else{
+				builder.operator(opcode);
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Simplifies a unary operator whose operand is already simplified.
+	 *
+	 * @param opcode The opcode of the operator.
+	 * @param operand The operand.
+	 *
+	 * @return The simplified node.
+	 */
+	public static ExpressionNode simplifyUnary(int opcode, ExpressionNode operand){
+
+		if(operand.isConstant()){
+			return ExpressionNode.constant(ProgramEvaluator.calculate(opcode, operand.getValue(), 0));
+		}
+
+		//case: --x
+		if(opcode == ExpressionProgram.NEG && operand.getOpcode() == ExpressionProgram.NEG){
+			return operand.getLeft();
+		}
+
+		return ExpressionNode.unary(opcode, operand);
+	}
+
+	/**
+	 * Simplifies a binary operator whose operands are already simplified.
+	 *
+	 * @param opcode The opcode of the operator.
+	 * @param left The left operand.
+	 * @param right The right operand.
+	 *
+	 * @return The simplified node.
+	 */
+	public static ExpressionNode simplifyBinary(int opcode, ExpressionNode left, ExpressionNode right){
+
+		if(left.isConstant() && right.isConstant()){
+			return ExpressionNode.constant(ProgramEvaluator.calculate(opcode, left.getValue(), right.getValue()));
+		}
+
+		switch(opcode){
+
+			case ExpressionProgram.ADD:
+				if(right.isConstant(-0.0)){
+					return left;
+				}
+				if(left.isConstant(-0.0)){
+					return right;
+				}
+				break;
+
+			case ExpressionProgram.SUB:
+				if(right.isConstant(0.0)){
+					return left;
+				}
+				break;
+
+			case ExpressionProgram.MUL:
+				if(right.isConstant(1.0)){
+					return left;
+				}
+				if(left.isConstant(1.0)){
+					return right;
+				}
+				if(right.isConstant(-1.0)){
+					return ProgramOptimizer.simplifyUnary(ExpressionProgram.NEG, left);
+				}
+				if(left.isConstant(-1.0)){
+					return ProgramOptimizer.simplifyUnary(ExpressionProgram.NEG, right);
+				}
+				break;
+
+			case ExpressionProgram.DIV:
+				if(right.isConstant(1.0)){
+					return left;
+				}
+				if(right.isConstant(-1.0)){
+					return ProgramOptimizer.simplifyUnary(ExpressionProgram.NEG, left);
+				}
+				break;
+
+			case ExpressionProgram.POW:
+				return ProgramOptimizer.simplifyPower(left, right);
+		}
+
+		return ExpressionNode.binary(opcode, left, right);
+	}
+
+	/**
+	 * Simplifies a call of a registered function whose operands are already simplified.
+	 * The call is computed right away when all of its operands are constants.
+	 *
+	 * @param function The function.
+	 * @param operands The operands.
+	 *
+	 * @return The simplified node.
+	 */
+	public static ExpressionNode simplifyCall(Operator function, ExpressionNode[] operands){
+
+		double[] values = new double[operands.length];
+
+		for(int i = 0; i < operands.length; ++i){
+			if(!operands[i].isConstant()){
+				return ExpressionNode.call(function, operands);
+			}
+			values[i] = operands[i].getValue();
+		}
+
+		return ExpressionNode.constant(function.apply(values, 0));
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Compares two adjacent operands of an operator, each being a block of instructions.
+	 *
+	 * @param program The program.
+	 * @param order The instructions in their new order.
+	 * @param left The position of the first instruction of the left operand.
+	 * @param right The position of the first instruction of the right operand.
+	 * @param end The position after the last instruction of the right operand.
+	 * @param leftHash The hash of the left operand.
+	 * @param rightHash The hash of the right operand.
+	 *
+	 * @return A negative number, zero or a positive number if the left operand comes
+	 * 		before, is the same as or comes after the right operand.
+	 */
+	private static int compareOperands(ExpressionProgram program, int[] order, int left, int right, int end,
+			int leftHash, int rightHash){
+
+		if(leftHash != rightHash){
+			return leftHash < rightHash ? -1 : 1;
+		}
+
+		for(int i = left, j = right; i < right && j < end; ++i, ++j){
+
+			int a = order[i];
+			int b = order[j];
+			int opcode = program.getOpcode(a);
+
+			if(opcode != program.getOpcode(b)){
+				return opcode < program.getOpcode(b) ? -1 : 1;
+			}
+
+			int result;
+			if(opcode == ExpressionProgram.CONST){
+				result = Long.compare(Double.doubleToLongBits(program.getConstant(program.getOperand(a))),
+						Double.doubleToLongBits(program.getConstant(program.getOperand(b))));
+			}else if(opcode == ExpressionProgram.CALL){
+				result = program.getFunction(program.getOperand(a)).getSymbol()
+						.compareTo(program.getFunction(program.getOperand(b)).getSymbol());
+			}else{
+				result = Integer.compare(program.getOperand(a), program.getOperand(b));
+			}
+
+			if(result != 0){
+				return result;
+			}
+		}
+
+		return Integer.compare(right - left, end - right);
+	}
+
+	/**
+	 * Swaps two adjacent blocks of instructions.
+	 *
+	 * @param order The instructions in their new order.
+	 * @param left The position of the first instruction of the first block.
+	 * @param right The position of the first instruction of the second block.
+	 * @param end The position after the last instruction of the second block.
+	 */
+	private static void swapBlocks(int[] order, int left, int right, int end){
+
+		int[] copy = Arrays.copyOfRange(order, left, end);
+		System.arraycopy(copy, right - left, order, left, end - right);
+		System.arraycopy(copy, 0, order, left + end - right, right - left);
+	}
+
+	/**
+	 * @param opcode An operator opcode.
+	 *
+	 * @return The opcode computing the same operator with {@link FastMath}, or the
+	 * 		given opcode if there is none.
+	 */
+	private static int getFastOpcode(int opcode){
+
+		switch(opcode){
+
+			case ExpressionProgram.SIN:
+				return ExpressionProgram.FAST_SIN;
+
+			case ExpressionProgram.COS:
+				return ExpressionProgram.FAST_COS;
+
+			case ExpressionProgram.EXP:
+				return ExpressionProgram.FAST_EXP;
+
+			case ExpressionProgram.LOG:
+				return ExpressionProgram.FAST_LOG;
+
+			case ExpressionProgram.POW:
+				return ExpressionProgram.FAST_POW;
+
+			default:
+				return opcode;
+		}
+	}
+
+	/**
+	 * Simplifies <b>base^exponent</b> when the exponent is a small integer constant.
+	 *
+	 * @param base The base.
+	 * @param exponent The exponent.
+	 *
+	 * @return The simplified node.
+	 */
+	private static ExpressionNode simplifyPower(ExpressionNode base, ExpressionNode exponent){
+
+		//Math.pow(x, 1) is x and Math.pow(x, +-0) is 1, even for NaN
+		if(exponent.isConstant(1.0)){
+			return base;
+		}
+		if(exponent.isConstant(0.0) || exponent.isConstant(-0.0)){
+			return ExpressionNode.constant(1.0);
+		}
+
+		//multiplications only pay off when the base does not have to be computed again
+		if(base.isVariable()){
+
+			if(exponent.isConstant(2.0)){
+				return ExpressionNode.binary(ExpressionProgram.MUL, base, base);
+			}
+
+			if(exponent.isConstant(3.0)){
+				return ExpressionNode.binary(ExpressionProgram.MUL,
+						ExpressionNode.binary(ExpressionProgram.MUL, base, base), base);
+			}
+
+			if(exponent.isConstant(4.0)){
+				ExpressionNode square = ExpressionNode.binary(ExpressionProgram.MUL, base, base);
+				return ExpressionNode.binary(ExpressionProgram.MUL, square, square);
+			}
+
+			if(exponent.isConstant(-1.0)){
+				return ExpressionNode.binary(ExpressionProgram.DIV, ExpressionNode.constant(1.0), base);
+			}
+		}
+
+		return ExpressionNode.binary(ExpressionProgram.POW, base, exponent);
+	}
+}
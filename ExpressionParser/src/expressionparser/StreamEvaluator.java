@@ -0,0 +1,532 @@
+package expressionparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Evaluates a {@link CompiledExpression} once per record of a file, writing one
+ * result per record to an output channel. The input file is memory-mapped one
+ * window at a time and numbers are read straight from the mapped bytes, so no
+ * String is built per value, and only a window of the input, a block of records
+ * and a small output buffer are ever held at once. Files can therefore be much
+ * larger than the heap.
+ *
+ * <br><br>Records are gathered into blocks of {@link BatchEvaluator#BLOCK_SIZE}
+ * and every block is evaluated by the {@link BatchEvaluator}.
+ *
+ * <br><br>Two input formats are understood:
+ * 	<ul>
+ * 		<li><b>CSV</b> (see {@link #evaluateCsv(CompiledExpression, Path, WritableByteChannel, char)}):
+ * 			a header line naming the fields, followed by one record per line. Each
+ * 			variable of the expression is read from the field with the same name and
+ * 			the other fields are skipped. The results are written as text, one per line.
+ * 		<li><b>Binary</b> (see {@link #evaluateBinary(CompiledExpression, Path, WritableByteChannel, ByteOrder)}):
+ * 			records of one 8 byte double per variable, in slot order. The results are
+ * 			written as 8 byte doubles in the same byte order.
+ * 	</ul>
+ *
+ * @author David Boivin
+ */
+public class StreamEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The number of bytes of the input mapped at once. A CSV line may not be longer
+	 * than this.
+	 */
+	public static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the given expression for every record of a comma separated file.
+	 *
+	 * @param expression The expression to evaluate.
+	 * @param input The CSV file, starting with a header line.
+	 * @param output The channel to write the results to.
+	 *
+	 * @return The number of records evaluated.
+	 *
+	 * @throws IOException If the input could not be read or the output written.
+	 * @throws IllegalArgumentException If the header does not name every variable of
+	 * 		the expression or if a record is malformed.
+	 */
+	public static long evaluateCsv(CompiledExpression expression, Path input, WritableByteChannel output)
+			throws IOException{
+		return StreamEvaluator.evaluateCsv(expression, input, output, ',');
+	}
+
+	/**
+	 * Evaluates the given expression for every record of a delimited text file. The
+	 * first line is a header giving the name of every field. Fields can be surrounded
+	 * by spaces, lines can end with <code>\n</code> or <code>\r\n</code> and empty
+	 * lines are skipped. The result of every record is written as a line of text.
+	 *
+	 * @param expression The expression to evaluate.
+	 * @param input The CSV file, starting with a header line.
+	 * @param output The channel to write the results to.
+	 * @param separator The character separating the fields. It must be an ASCII character.
+	 *
+	 * @return The number of records evaluated.
+	 *
+	 * @throws IOException If the input could not be read or the output written.
+	 * @throws IllegalArgumentException If the header does not name every variable of
+	 * 		the expression or if a record is malformed.
+	 */
+	public static long evaluateCsv(CompiledExpression expression, Path input, WritableByteChannel output,
+			char separator) throws IOException{
+		return StreamEvaluator.evaluateCsv(expression, input, output, separator, WINDOW_SIZE);
+	}
+
+	/**
+	 * Evaluates the given expression for every record of a binary file. Every record
+	 * holds the values of the variables of the expression, in slot order, as 8 byte
+	 * doubles. The result of every record is written as an 8 byte double.
+	 *
+	 * @param expression The expression to evaluate.
+	 * @param input The binary file.
+	 * @param output The channel to write the results to.
+	 * @param order The byte order of the doubles of both the input and the output.
+	 *
+	 * @return The number of records evaluated.
+	 *
+	 * @throws IOException If the input could not be read or the output written.
+	 * @throws IllegalArgumentException If the expression has no variables or if the
+	 * 		size of the file is not a whole number of records.
+	 */
+	public static long evaluateBinary(CompiledExpression expression, Path input, WritableByteChannel output,
+			ByteOrder order) throws IOException{
+		return StreamEvaluator.evaluateBinary(expression, input, output, order, WINDOW_SIZE);
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Same as {@link #evaluateCsv(CompiledExpression, Path, WritableByteChannel, char)}
+	 * with the given window size.
+	 *
+	 * @param expression The expression to evaluate.
+	 * @param input The CSV file, starting with a header line.
+	 * @param output The channel to write the results to.
+	 * @param separator The character separating the fields.
+	 * @param windowSize The number of bytes of the input mapped at once.
+	 *
+	 * @return The number of records evaluated.
+	 *
+	 * @throws IOException If the input could not be read or the output written.
+	 */
+	static long evaluateCsv(CompiledExpression expression, Path input, WritableByteChannel output,
+			char separator, int windowSize) throws IOException{
+
+		if(separator >= 128){
+			throw new IllegalArgumentException("The separator must be an ASCII character: " + separator);
+		}
+
+		ExpressionProgram program = expression.getProgram();
+		RecordBatch batch = new RecordBatch(program, output, ByteOrder.BIG_ENDIAN, true);
+		int[] slots = null;	//slot of every field, or -1 for the fields which are skipped
+		long line = 0;
+
+		try(FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)){
+
+			long size = channel.size();
+			long position = 0;
+
+			while(position < size){
+
+				int length = (int) Math.min(windowSize, size - position);
+				boolean last = position + length == size;
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+				//a line cut off by the end of the window is read again with the next window
+				int start = 0;
+				while(start < length){
+
+					int end = start;
+					while(end < length && window.get(end) != '\n'){
+						++end;
+					}
+
+					if(end == length && !last){
+						break;
+					}
+
+					++line;
+					int lineEnd = end > start && window.get(end - 1) == '\r' ? end - 1 : end;
+
+					if(slots == null){
+						slots = StreamEvaluator.readHeader(program, window, start, lineEnd, separator);
+					}else if(lineEnd > start){
+						StreamEvaluator.readRecord(window, start, lineEnd, separator, slots, batch, line);
+					}
+
+					start = end + 1;
+				}
+
+				if(start == 0){
+					throw new IllegalArgumentException("Line " + (line + 1) + " is longer than " +
+							windowSize + " bytes");
+				}
+
+				position += Math.min(start, length);
+			}
+		}
+
+		batch.finish();
+		return batch.getRecordCount();
+	}
+
+	/**
+	 * Same as {@link #evaluateBinary(CompiledExpression, Path, WritableByteChannel, ByteOrder)}
+	 * with the given window size.
+	 *
+	 * @param expression The expression to evaluate.
+	 * @param input The binary file.
+	 * @param output The channel to write the results to.
+	 * @param order The byte order of the doubles.
+	 * @param windowSize The number of bytes of the input mapped at once.
+	 *
+	 * @return The number of records evaluated.
+	 *
+	 * @throws IOException If the input could not be read or the output written.
+	 */
+	static long evaluateBinary(CompiledExpression expression, Path input, WritableByteChannel output,
+			ByteOrder order, int windowSize) throws IOException{
+
+		ExpressionProgram program = expression.getProgram();
+		int variables = program.getVariableCount();
+
+		if(variables == 0){
+			throw new IllegalArgumentException("A binary input needs an expression with variables");
+		}
+
+		RecordBatch batch = new RecordBatch(program, output, order, false);
+		int recordSize = variables * 8;
+
+		try(FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)){
+
+			long size = channel.size();
+
+			if(size % recordSize != 0){
+				throw new IllegalArgumentException("The input holds " + size + " bytes, which is not a " +
+						"whole number of " + recordSize + " byte records");
+			}
+
+			//windows always hold whole records
+			long window = Math.max(windowSize / recordSize, 1) * (long) recordSize;
+
+			for(long position = 0; position < size; position += window){
+
+				int length = (int) Math.min(window, size - position);
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				DoubleBuffer values = mapped.order(order).asDoubleBuffer();
+
+				for(int i = length / recordSize; i > 0; --i){
+					for(int slot = 0; slot < variables; ++slot){
+						batch.set(slot, values.get());
+					}
+					batch.next();
+				}
+			}
+		}
+
+		batch.finish();
+		return batch.getRecordCount();
+	}
+
+	/**
+	 * Parses the decimal number held between the given indexes of the buffer. Plain
+	 * numbers (an optional sign, digits and an optional decimal point) with at most
+	 * 15 significant digits and 22 decimals are read directly from the bytes, as
+	 * {@link ExpressionParser} does. Any other number, such as one with an exponent,
+	 * is handed to {@link Double#parseDouble(String)}. Spaces around the number are
+	 * ignored.
+	 *
+	 * @param buffer The buffer holding the number.
+	 * @param start The index of the first byte of the number.
+	 * @param end The index after the last byte of the number.
+	 *
+	 * @return The value of the number.
+	 *
+	 * @throws NumberFormatException If the bytes do not hold a number.
+	 */
+	static double parseNumber(ByteBuffer buffer, int start, int end){
+
+		while(start < end && buffer.get(start) == ' '){
+			++start;
+		}
+		while(end > start && buffer.get(end - 1) == ' '){
+			--end;
+		}
+
+		int i = start;
+		boolean negative = false;
+		if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')){
+			negative = buffer.get(i) == '-';
+			++i;
+		}
+
+		long digits = 0;
+		int significantDigits = 0;
+		int decimals = 0;
+		int digitCount = 0;
+		boolean hasDecimal = false;
+
+		for(; i < end; ++i){
+			byte c = buffer.get(i);
+
+			if(c == '.' && !hasDecimal){
+				hasDecimal = true;
+				continue;
+			}
+
+			if(c < '0' || c > '9'){
+				break;
+			}
+
+			if(hasDecimal){
+				++decimals;
+			}
+
+			//leading zeros are not significant
+			if(digits != 0 || c != '0'){
+				digits = digits * 10 + (c - '0');
+				++significantDigits;
+			}
+			++digitCount;
+		}
+
+		if(i == end && digitCount > 0 && significantDigits <= 15 &&
+				decimals < ExpressionParser.POWERS_OF_TEN.length){
+			double value = decimals == 0 ? digits : digits / ExpressionParser.POWERS_OF_TEN[decimals];
+			return negative ? -value : value;
+		}
+
+		//exponents, special values and long numbers
+		byte[] bytes = new byte[end - start];
+		for(int j = 0; j < bytes.length; ++j){
+			bytes[j] = buffer.get(start + j);
+		}
+
+		return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Reads the header line and finds the field holding each variable.
+	 *
+	 * @param program The program to evaluate.
+	 * @param buffer The buffer holding the line.
+	 * @param start The index of the first byte of the line.
+	 * @param end The index after the last byte of the line.
+	 * @param separator The character separating the fields.
+	 *
+	 * @return The slot of the variable held by every field, or <b>-1</b> for fields
+	 * 		which do not hold a variable.
+	 *
+	 * @throws IllegalArgumentException If a variable is not named by the header.
+	 */
+	private static int[] readHeader(ExpressionProgram program, ByteBuffer buffer, int start, int end,
+			char separator){
+
+		ArrayList<String> names = new ArrayList<String>();
+		int fieldStart = start;
+
+		for(int i = start; i <= end; ++i){
+			if(i == end || buffer.get(i) == separator){
+				byte[] bytes = new byte[i - fieldStart];
+				for(int j = 0; j < bytes.length; ++j){
+					bytes[j] = buffer.get(fieldStart + j);
+				}
+				names.add(new String(bytes, StandardCharsets.UTF_8).trim());
+				fieldStart = i + 1;
+			}
+		}
+
+		int[] slots = new int[names.size()];
+		boolean[] found = new boolean[program.getVariableCount()];
+
+		for(int i = 0; i < slots.length; ++i){
+			int slot = program.getSlot(names.get(i));
+
+			//a variable named twice is read from its first field
+			if(slot != -1 && found[slot]){
+				slot = -1;
+			}
+			if(slot != -1){
+				found[slot] = true;
+			}
+
+			slots[i] = slot;
+		}
+
+		for(int i = 0; i < found.length; ++i){
+			if(!found[i]){
+				throw new IllegalArgumentException("The header has no field named " + program.getVariable(i));
+			}
+		}
+
+		return slots;
+	}
+
+	/**
+	 * Reads the fields of a record line into the batch.
+	 *
+	 * @param buffer The buffer holding the line.
+	 * @param start The index of the first byte of the line.
+	 * @param end The index after the last byte of the line.
+	 * @param separator The character separating the fields.
+	 * @param slots The slot of the variable held by every field.
+	 * @param batch The batch to add the record to.
+	 * @param line The number of the line, for error messages.
+	 *
+	 * @throws IOException If a full batch could not be written.
+	 * @throws IllegalArgumentException If the record is malformed.
+	 */
+	private static void readRecord(ByteBuffer buffer, int start, int end, char separator, int[] slots,
+			RecordBatch batch, long line) throws IOException{
+
+		int field = 0;
+		int fieldStart = start;
+
+		for(int i = start; i <= end; ++i){
+			if(i == end || buffer.get(i) == separator){
+
+				if(field < slots.length && slots[field] != -1){
+					try{
+						batch.set(slots[field], StreamEvaluator.parseNumber(buffer, fieldStart, i));
+					}catch(NumberFormatException e){
+						throw new IllegalArgumentException("Invalid number in field " + (field + 1) +
+								" of line " + line, e);
+					}
+				}
+
+				++field;
+				fieldStart = i + 1;
+			}
+		}
+
+		if(field < slots.length){
+			throw new IllegalArgumentException("Line " + line + " has " + field + " fields instead of " +
+					slots.length);
+		}
+
+		batch.next();
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * Gathers records into a block, evaluates the block once it is full and writes
+	 * its results to the output.
+	 */
+	private static class RecordBatch {
+
+		private final ExpressionProgram program;
+		private final double[][] columns;
+		private final double[] results = new double[BatchEvaluator.BLOCK_SIZE];
+		private final WritableByteChannel output;
+		private final ByteBuffer buffer;
+		private final boolean text;
+		private int count;
+		private long records;
+
+		private RecordBatch(ExpressionProgram program, WritableByteChannel output, ByteOrder order,
+				boolean text){
+			this.program = program;
+			this.columns = new double[program.getVariableCount()][BatchEvaluator.BLOCK_SIZE];
+			this.output = output;
+			this.buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(order);
+			this.text = text;
+		}
+
+		/**
+		 * Sets the value of a variable of the current record.
+		 *
+		 * @param slot The slot of the variable.
+		 * @param value The value.
+		 */
+		private void set(int slot, double value){
+			this.columns[slot][this.count] = value;
+		}
+
+		/**
+		 * Moves on to the next record, evaluating the block if it is full.
+		 *
+		 * @throws IOException If the results could not be written.
+		 */
+		private void next() throws IOException{
+			++this.records;
+			if(++this.count == BatchEvaluator.BLOCK_SIZE){
+				this.flush();
+			}
+		}
+
+		/**
+		 * Evaluates the records gathered so far and writes their results out.
+		 *
+		 * @throws IOException If the results could not be written.
+		 */
+		private void finish() throws IOException{
+			this.flush();
+			this.drain();
+		}
+
+		/**
+		 * @return The number of records added to the batch.
+		 */
+		private long getRecordCount(){
+			return this.records;
+		}
+
+		private void flush() throws IOException{
+
+			if(this.count == 0){
+				return;
+			}
+
+			BatchEvaluator.evaluate(this.program, this.columns, this.results, 0, this.count);
+
+			for(int i = 0; i < this.count; ++i){
+				if(this.text){
+					String value = Double.toString(this.results[i]);
+					if(this.buffer.remaining() < value.length() + 1){
+						this.drain();
+					}
+					for(int j = 0; j < value.length(); ++j){
+						this.buffer.put((byte) value.charAt(j));
+					}
+					this.buffer.put((byte) '\n');
+				}else{
+					if(this.buffer.remaining() < 8){
+						this.drain();
+					}
+					this.buffer.putDouble(this.results[i]);
+				}
+			}
+
+			this.count = 0;
+		}
+
+		private void drain() throws IOException{
+			this.buffer.flip();
+			while(this.buffer.hasRemaining()){
+				this.output.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+	}
+}
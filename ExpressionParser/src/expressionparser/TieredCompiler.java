@@ -0,0 +1,326 @@
+package expressionparser;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles expressions into {@link TieredExpression}s and promotes them from tier
+ * to tier in the background. An expression is interpreted until it has been
+ * evaluated {@link #getClosureThreshold()} times, then evaluated as a tree of
+ * closures until it has been evaluated {@link #getBytecodeThreshold()} times, then
+ * as a generated class. Setting a threshold to {@link Integer#MAX_VALUE} skips its
+ * tier. Expressions which a tier cannot evaluate skip it as well: those calling
+ * registered functions stay interpreted for good, and those nested too deeply for
+ * closures or too long for a generated class stop at the last tier which takes them.
+ *
+ * <br><br>Promotions run on the executor of the compiler, by default a single daemon
+ * thread shared by every compiler (see {@link #getDefaultExecutor()}). The compiler
+ * counts the promotions to each tier, the expressions kept in a tier because the next
+ * ones cannot evaluate them, the promotions which failed and the time spent promoting,
+ * so that the thresholds can be tuned to the workload.
+ *
+ * @author David Boivin
+ */
+public class TieredCompiler {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int DEFAULT_CLOSURE_THRESHOLD = 1000;
+	public static final int DEFAULT_BYTECODE_THRESHOLD = 100000;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private static ExecutorService defaultExecutor;
+
+	private final int closureThreshold;
+	private final int bytecodeThreshold;
+	private final Executor executor;
+
+	private final AtomicLong expressionCount = new AtomicLong();
+	private final AtomicLong closurePromotions = new AtomicLong();
+	private final AtomicLong bytecodePromotions = new AtomicLong();
+	private final AtomicLong keptExpressions = new AtomicLong();
+	private final AtomicLong failedPromotions = new AtomicLong();
+	private final AtomicLong promotionNanos = new AtomicLong();
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a compiler with the {@link #DEFAULT_CLOSURE_THRESHOLD default thresholds}
+	 * and the {@link #getDefaultExecutor() default executor}.
+	 */
+	public TieredCompiler(){
+		this(DEFAULT_CLOSURE_THRESHOLD, DEFAULT_BYTECODE_THRESHOLD);
+	}
+
+	/**
+	 * Creates a compiler with the given thresholds and the {@link #getDefaultExecutor()
+	 * default executor}.
+	 *
+	 * @param closureThreshold The number of evaluations after which an expression is
+	 * 		promoted to closures.
+	 * @param bytecodeThreshold The number of evaluations after which an expression is
+	 * 		promoted to a generated class.
+	 *
+	 * @throws IllegalArgumentException If a threshold is less than 1.
+	 */
+	public TieredCompiler(int closureThreshold, int bytecodeThreshold){
+		this(closureThreshold, bytecodeThreshold, TieredCompiler.getDefaultExecutor());
+	}
+
+	/**
+	 * Creates a compiler with the given thresholds, promoting expressions on the
+	 * given executor.
+	 *
+	 * @param closureThreshold The number of evaluations after which an expression is
+	 * 		promoted to closures.
+	 * @param bytecodeThreshold The number of evaluations after which an expression is
+	 * 		promoted to a generated class.
+	 * @param executor The executor running the promotions.
+	 *
+	 * @throws IllegalArgumentException If a threshold is less than 1.
+	 */
+	public TieredCompiler(int closureThreshold, int bytecodeThreshold, Executor executor){
+
+		if(closureThreshold < 1 || bytecodeThreshold < 1){
+			throw new IllegalArgumentException("Thresholds must be at least 1: " + closureThreshold +
+					", " + bytecodeThreshold);
+		}
+
+		this.closureThreshold = closureThreshold;
+		this.bytecodeThreshold = bytecodeThreshold;
+		this.executor = executor;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Compiles the given expression with {@link ExpressionParser#compile(String, String...)}
+	 * and starts it in the interpreted tier.
+	 *
+	 * @param expression The String representation of the expression.
+	 * @param variables The names of the variables of the expression, or none to let
+	 * 		the parser find them.
+	 *
+	 * @return The tiered expression.
+	 *
+	 * @throws ExpressionSyntaxException If the expression is malformed.
+	 */
+	public TieredExpression compile(String expression, String... variables){
+		return this.compile(ExpressionParser.compile(expression, variables));
+	}
+
+	/**
+	 * Starts the given compiled expression in the interpreted tier. Expressions calling
+	 * registered functions are never promoted, since neither closures nor generated
+	 * classes can call them.
+	 *
+	 * @param expression The compiled expression.
+	 *
+	 * @return The tiered expression.
+	 */
+	public TieredExpression compile(CompiledExpression expression){
+
+		this.expressionCount.incrementAndGet();
+
+		if(TieredCompiler.callsFunctions(expression.getProgram())){
+			this.keptExpressions.incrementAndGet();
+			return new TieredExpression(this, expression, Integer.MAX_VALUE);
+		}
+
+		return new TieredExpression(this, expression, Math.min(this.closureThreshold, this.bytecodeThreshold));
+	}
+
+	/**
+	 * Gives the executor used when no executor is given. It is created the first
+	 * time it is needed, with a single daemon thread which does not keep the JVM
+	 * alive, so that promotions never compete with the callers for more than one core.
+	 *
+	 * @return The default executor.
+	 */
+	public static synchronized Executor getDefaultExecutor(){
+
+		if(TieredCompiler.defaultExecutor == null){
+			TieredCompiler.defaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable task){
+					Thread thread = new Thread(task, "expressionparser-tiered-compiler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return TieredCompiler.defaultExecutor;
+	}
+
+	/**
+	 * @return The number of evaluations after which an expression is promoted to closures.
+	 */
+	public int getClosureThreshold(){
+		return this.closureThreshold;
+	}
+
+	/**
+	 * @return The number of evaluations after which an expression is promoted to a
+	 * 		generated class.
+	 */
+	public int getBytecodeThreshold(){
+		return this.bytecodeThreshold;
+	}
+
+	/**
+	 * @return The number of expressions compiled.
+	 */
+	public long getExpressionCount(){
+		return this.expressionCount.get();
+	}
+
+	/**
+	 * @param tier {@link TieredExpression#CLOSURES} or {@link TieredExpression#BYTECODE}.
+	 *
+	 * @return The number of expressions promoted to the given tier.
+	 *
+	 * @throws IllegalArgumentException If the tier is not one expressions are promoted to.
+	 */
+	public long getPromotionCount(int tier){
+
+		switch(tier){
+
+			case TieredExpression.CLOSURES:
+				return this.closurePromotions.get();
+
+			case TieredExpression.BYTECODE:
+				return this.bytecodePromotions.get();
+
+			default:
+				throw new IllegalArgumentException("Not a promotion tier: " + tier);
+		}
+	}
+
+	/**
+	 * @return The number of expressions kept in their tier for good because no later
+	 * 		tier can evaluate them: expressions calling registered functions, which stay
+	 * 		interpreted, and expressions nested too deeply for closures or too long for a
+	 * 		generated class.
+	 */
+	public long getKeptExpressionCount(){
+		return this.keptExpressions.get();
+	}
+
+	/**
+	 * @return The number of promotions which could not be done, either because the
+	 * 		executor refused them or because the class could not be generated.
+	 */
+	public long getFailedPromotionCount(){
+		return this.failedPromotions.get();
+	}
+
+	/**
+	 * @return The total time spent promoting expressions, in nanoseconds.
+	 */
+	public long getPromotionNanos(){
+		return this.promotionNanos.get();
+	}
+
+	@Override
+	public String toString(){
+		return "expressions=" + this.getExpressionCount() +
+				", to closures=" + this.closurePromotions.get() +
+				", to bytecode=" + this.bytecodePromotions.get() +
+				", kept=" + this.keptExpressions.get() +
+				", failed=" + this.failedPromotions.get();
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Asks for the promotion of the given expression, unless one is already under way.
+	 * The promotion is handed to the executor and this method returns right away.
+	 *
+	 * @param expression The expression evaluated often enough to be promoted.
+	 */
+	void promote(final TieredExpression expression){
+
+		if(!expression.startPromotion()){
+			return;
+		}
+
+		try{
+			this.executor.execute(new Runnable(){
+				@Override
+				public void run(){
+					TieredCompiler.this.build(expression);
+				}
+			});
+		}catch(RejectedExecutionException e){
+			//try again after as many evaluations as the first threshold, short of never trying again
+			this.failedPromotions.incrementAndGet();
+			long retry = (long) expression.getInvocationCount() + Math.min(this.closureThreshold, this.bytecodeThreshold);
+			expression.cancelPromotion((int) Math.min(Integer.MAX_VALUE - 1L, retry));
+		}
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Builds the next tier of the given expression and moves it there. An expression
+	 * which went past both thresholds while waiting is promoted straight to the last.
+	 * A tier which cannot evaluate the expression is skipped, and an expression which
+	 * no later tier can evaluate is kept in its current tier for good.
+	 *
+	 * @param expression The expression to promote.
+	 */
+	private void build(TieredExpression expression){
+
+		long start = System.nanoTime();
+		ExpressionProgram program = expression.getExpression().getProgram();
+
+		try{
+			ExpressionFunction function = null;
+			boolean last = expression.getInvocationCount() >= this.bytecodeThreshold;
+
+			if(last && (function = BytecodeCompiler.build(program)) != null){
+				expression.promote(function, TieredExpression.BYTECODE, Integer.MAX_VALUE);
+				this.bytecodePromotions.incrementAndGet();
+			}else if(expression.getTier() == TieredExpression.INTERPRETED &&
+					(function = ClosureCompiler.build(program)) != null){
+				expression.promote(function, TieredExpression.CLOSURES, last ? Integer.MAX_VALUE : this.bytecodeThreshold);
+				this.closurePromotions.incrementAndGet();
+			}else if(last || this.bytecodeThreshold == Integer.MAX_VALUE){
+				this.keptExpressions.incrementAndGet();
+				expression.cancelPromotion(Integer.MAX_VALUE);
+			}else{
+				//too deep for closures, a generated class may still take it
+				expression.cancelPromotion(this.bytecodeThreshold);
+			}
+		}catch(RuntimeException e){
+			//the class could not be defined, the current tier is kept for good
+			this.failedPromotions.incrementAndGet();
+			expression.cancelPromotion(Integer.MAX_VALUE);
+		}
+
+		this.promotionNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param program A program.
+	 *
+	 * @return This method returns <b>true</b> if the program calls registered functions
+	 * 		and returns <b>false</b> otherwise.
+	 */
+	private static boolean callsFunctions(ExpressionProgram program){
+
+		for(int i = 0; i < program.length(); ++i){
+			if(program.getOpcode(i) == ExpressionProgram.CALL){
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,224 @@
+package expressionparser;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link CompiledExpression} which is evaluated in tiers, as HotSpot runs Java
+ * methods: it starts in the {@link ProgramEvaluator}, which costs nothing to set up,
+ * and is promoted by its {@link TieredCompiler} to a tree of closures
+ * ({@link ClosureCompiler}) once it has been evaluated often enough, then to a
+ * generated class ({@link BytecodeCompiler}) once it is very hot. Expressions
+ * evaluated a handful of times never pay for more than their parse, while the hot
+ * ones end up running as fast as hand written Java.
+ *
+ * <br><br>Promotions are done on the executor of the compiler. Callers never wait
+ * for them: they keep evaluating the current tier until the next one is ready, and
+ * every tier gives the same results.
+ *
+ * <br><br>Evaluations are counted without synchronization, so the count can miss
+ * some evaluations made at the same time by several threads, which only delays a
+ * promotion. Counting stops once the expression reaches its last tier. Instances
+ * can safely be shared between threads.
+ *
+ * @author David Boivin
+ */
+public class TieredExpression {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int INTERPRETED = 0;
+	public static final int CLOSURES = 1;
+	public static final int BYTECODE = 2;
+
+	private static final double[] NO_VARIABLES = new double[0];
+
+	//the threshold of an expression which is not promoted any further
+	private static final int NEVER = Integer.MAX_VALUE;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final TieredCompiler compiler;
+	private final CompiledExpression expression;
+	private final int variableCount;
+
+	private volatile ExpressionFunction function;
+	private volatile int tier = INTERPRETED;
+
+	//the number of evaluations after which the next promotion is asked for
+	private volatile int threshold;
+	private int invocations;
+	private final AtomicBoolean promoting = new AtomicBoolean();
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a tiered expression in the interpreted tier.
+	 *
+	 * @param compiler The compiler promoting the expression.
+	 * @param expression The compiled expression.
+	 * @param threshold The number of evaluations after which the first promotion is
+	 * 		asked for.
+	 */
+	TieredExpression(TieredCompiler compiler, final CompiledExpression expression, int threshold){
+
+		this.compiler = compiler;
+		this.expression = expression;
+		this.variableCount = expression.getProgram().getVariableCount();
+		this.threshold = threshold;
+
+		this.function = new ExpressionFunction(){
+			@Override
+			public double evaluate(double[] variables){
+				return ProgramEvaluator.evaluate(expression.getProgram(), variables);
+			}
+		};
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If the expression has variables.
+	 */
+	public double evaluate(){
+		return this.evaluate(NO_VARIABLES);
+	}
+
+	/**
+	 * Evaluates the expression with the given values for its variables in its current
+	 * tier, asking for its promotion if it has been evaluated often enough.
+	 *
+	 * @param variables The values of the variables, by slot (see {@link #getVariables()}).
+	 *
+	 * @return The result of the expression.
+	 *
+	 * @throws IllegalArgumentException If there are fewer values than variables.
+	 */
+	public double evaluate(double... variables){
+
+		if(variables.length < this.variableCount){
+			throw new IllegalArgumentException("Expected " + this.variableCount +
+					" variable values but got " + variables.length);
+		}
+
+		int threshold = this.threshold;
+		if(threshold != NEVER && ++this.invocations >= threshold && !this.promoting.get()){
+			this.compiler.promote(this);
+		}
+
+		if(Instrumentation.getMonitor() != null && Instrumentation.sample()){
+			return this.evaluateSampled(variables);
+		}
+
+		return this.function.evaluate(variables);
+	}
+
+	/**
+	 * @return The tier the expression is evaluated in: {@link #INTERPRETED},
+	 * 		{@link #CLOSURES} or {@link #BYTECODE}.
+	 */
+	public int getTier(){
+		return this.tier;
+	}
+
+	/**
+	 * @return The number of times the expression was evaluated, up to its promotion
+	 * 		to its last tier.
+	 */
+	public int getInvocationCount(){
+		return this.invocations;
+	}
+
+	/**
+	 * @return The compiled expression evaluated in tiers.
+	 */
+	public CompiledExpression getExpression(){
+		return this.expression;
+	}
+
+	/**
+	 * @return The names of the variables of the expression, in slot order.
+	 */
+	public String[] getVariables(){
+		return this.expression.getVariables();
+	}
+
+	/**
+	 * @return The String representation of the expression this was compiled from.
+	 */
+	public String getSource(){
+		return this.expression.getSource();
+	}
+
+	@Override
+	public String toString(){
+		return this.expression.toString();
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Marks the expression as being promoted, so that only one promotion is asked for
+	 * at a time.
+	 *
+	 * @return This method returns <b>true</b> if no promotion was under way and returns
+	 * 		<b>false</b> otherwise.
+	 */
+	boolean startPromotion(){
+		return this.promoting.compareAndSet(false, true);
+	}
+
+	/**
+	 * Moves the expression to a new tier, ending the promotion under way.
+	 *
+	 * @param function The function evaluating the expression in its new tier.
+	 * @param tier The new tier.
+	 * @param threshold The number of evaluations after which the next promotion is
+	 * 		asked for, or {@link Integer#MAX_VALUE} if this is the last tier.
+	 */
+	void promote(ExpressionFunction function, int tier, int threshold){
+		this.function = function;
+		this.tier = tier;
+		this.threshold = threshold;
+		this.promoting.set(false);
+	}
+
+	/**
+	 * Ends the promotion under way without changing the tier.
+	 *
+	 * @param threshold The number of evaluations after which the promotion is asked
+	 * 		for again, or {@link Integer#MAX_VALUE} to keep the expression in its current
+	 * 		tier for good.
+	 */
+	void cancelPromotion(int threshold){
+		this.threshold = threshold;
+		this.promoting.set(false);
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates the expression and tells the installed {@link ExpressionMonitor} how
+	 * long it took, as {@link CompiledExpression} does.
+	 *
+	 * @param variables The values of the variables, by slot.
+	 *
+	 * @return The result of the expression.
+	 */
+	private double evaluateSampled(double[] variables){
+
+		long start = System.nanoTime();
+		double result = this.function.evaluate(variables);
+		long nanos = System.nanoTime() - start;
+
+		ExpressionMonitor monitor = Instrumentation.getMonitor();
+		if(monitor != null){
+			monitor.sampled(this.expression, nanos);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,34 @@
+package expressionparser.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>. Runs the benchmarks like the
+ * standard JMH launcher, taking the same command line options, but always with
+ * the {@link GCProfiler} so that the allocation rate is reported next to the
+ * throughput of every benchmark.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar parse -p size=1024</code>
+ *
+ * @author David Boivin
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException{
+
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		Options options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(options).run();
+	}
+}
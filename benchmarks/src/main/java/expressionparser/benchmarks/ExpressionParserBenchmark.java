@@ -0,0 +1,95 @@
+package expressionparser.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionParser;
+
+/**
+ * Measures the throughput of {@link ExpressionParser#parse(String)},
+ * {@link ExpressionParser#evaluatePostfix(ArrayDeque)} and
+ * {@link ExpressionParser#parseAndEval(String)} over every {@link Workloads workload}.
+ * The allocation rate reported by the GC profiler of {@link #evaluateCompiled()}
+ * should be zero bytes per operation.
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionParserBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"SHORT", "FLAT_SUM", "DEEP_NESTING", "WHITESPACE", "UNARY"})
+	public Workloads workload;
+
+	@Param({"16", "1024"})
+	public int size;
+
+	private String expression;
+	private ArrayDeque<String> postfix;
+	private CompiledExpression compiled;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		this.expression = this.workload.generate(this.size);
+		this.postfix = ExpressionParser.parse(this.expression);
+		this.compiled = ExpressionParser.compile(this.expression);
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public ArrayDeque<String> parse(){
+		return ExpressionParser.parse(this.expression);
+	}
+
+	@Benchmark
+	public double evaluatePostfix(){
+		return ExpressionParser.evaluatePostfix(this.postfix);
+	}
+
+	@Benchmark
+	public double parseAndEval(){
+		return ExpressionParser.parseAndEval(this.expression);
+	}
+
+	/**
+	 * Same as {@link #parseAndEval()} but without the help of the expression cache.
+	 *
+	 * @return The result of the expression.
+	 */
+	@Benchmark
+	public double parseAndEvalUncached(){
+		return ExpressionParser.compile(this.expression).evaluate();
+	}
+
+	/**
+	 * Evaluates an expression compiled ahead of time, which is the allocation free path.
+	 *
+	 * @return The result of the expression.
+	 */
+	@Benchmark
+	public double evaluateCompiled(){
+		return this.compiled.evaluate();
+	}
+}
@@ -0,0 +1,79 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionParser;
+
+/**
+ * Compares exact and fast-math evaluation of a formula dominated by <b>sin</b>,
+ * <b>cos</b>, <b>exp</b>, <b>log</b> and <b>^</b>, both one row at a time and
+ * over a whole batch of rows.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar FastMath -p fastMath=false,true</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"false", "true"})
+	public boolean fastMath;
+
+	@Param({"65536"})
+	public int rows;
+
+	private CompiledExpression expression;
+	private double[][] columns;
+	private double[] output;
+	private double[] row;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		CompiledExpression exact = ExpressionParser.compile(
+				"sin(x) * cos(y) + exp(-x / 4) * log(y + 1) + (x + 1)^2.7", "x", "y");
+		this.expression = this.fastMath ? exact.withFastMath() : exact;
+
+		this.columns = new double[2][this.rows];
+		for(int i = 0; i < this.rows; ++i){
+			this.columns[0][i] = i * 1e-3;
+			this.columns[1][i] = (i % 977) * 0.5;
+		}
+		this.output = new double[this.rows];
+		this.row = new double[] {1.25, 3.5};
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public double evaluate(){
+		return this.expression.evaluate(this.row);
+	}
+
+	@Benchmark
+	public double[] evaluateBatch(){
+		this.expression.evaluate(this.columns, this.output);
+		return this.output;
+	}
+}
@@ -0,0 +1,77 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionCounters;
+import expressionparser.ExpressionParser;
+import expressionparser.Instrumentation;
+
+/**
+ * Measures what instrumentation costs: parsing and evaluating one row at a time
+ * with no monitor installed, which should be as fast as before instrumentation
+ * existed, and with an {@link ExpressionCounters} installed at the default sample
+ * rate.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar Monitoring -p monitor=none,counters</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitoringBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"none", "counters"})
+	public String monitor;
+
+	private String source;
+	private CompiledExpression expression;
+	private double[] row;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		Instrumentation.setMonitor(this.monitor.equals("counters") ? new ExpressionCounters() : null);
+
+		this.source = "(x + 1.5) * (y - 2) / (x * x + y * y + 1)";
+		this.expression = ExpressionParser.compile(this.source, "x", "y");
+		this.row = new double[] {1.25, 3.5};
+	}
+
+	@TearDown
+	public void tearDown(){
+		Instrumentation.setMonitor(null);
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public CompiledExpression compile(){
+		return ExpressionParser.compile(this.source, "x", "y");
+	}
+
+	@Benchmark
+	public double evaluate(){
+		return this.expression.evaluate(this.row);
+	}
+}
@@ -0,0 +1,113 @@
+package expressionparser.benchmarks;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.CompiledExpression;
+import expressionparser.DecimalExpression;
+import expressionparser.ExpressionParser;
+
+/**
+ * Compares the numeric modes on an integer-only formula: <code>double</code> and
+ * exact <code>long</code> arithmetic, one row at a time and over a batch of rows,
+ * and decimal arithmetic one row at a time.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar NumericMode</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericModeBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"quantity * price - discount * quantity + fee * 100", "quantity + price - discount + fee",
+			"(quantity + fee)^3 - price * discount"})
+	public String formula;
+
+	@Param({"65536"})
+	public int rows;
+
+	private CompiledExpression expression;
+	private DecimalExpression decimal;
+
+	private double[][] doubleColumns;
+	private double[] doubleOutput;
+	private long[][] longColumns;
+	private long[] longOutput;
+
+	private double[] doubleRow;
+	private long[] longRow;
+	private BigDecimal[] decimalRow;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		this.expression = ExpressionParser.compile(this.formula, "quantity", "price", "discount", "fee");
+		this.decimal = this.expression.toDecimal(MathContext.DECIMAL64);
+
+		this.doubleColumns = new double[4][this.rows];
+		this.longColumns = new long[4][this.rows];
+		for(int i = 0; i < this.rows; ++i){
+			for(int slot = 0; slot < 4; ++slot){
+				this.longColumns[slot][i] = (i * 31L + slot * 977L) % 100000;
+				this.doubleColumns[slot][i] = this.longColumns[slot][i];
+			}
+		}
+		this.doubleOutput = new double[this.rows];
+		this.longOutput = new long[this.rows];
+
+		this.doubleRow = new double[] {12, 4599, 250, 3};
+		this.longRow = new long[] {12, 4599, 250, 3};
+		this.decimalRow = new BigDecimal[] {BigDecimal.valueOf(12), BigDecimal.valueOf(4599),
+				BigDecimal.valueOf(250), BigDecimal.valueOf(3)};
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public double evaluateDouble(){
+		return this.expression.evaluate(this.doubleRow);
+	}
+
+	@Benchmark
+	public long evaluateLong(){
+		return this.expression.evaluateLong(this.longRow);
+	}
+
+	@Benchmark
+	public BigDecimal evaluateDecimal(){
+		return this.decimal.evaluate(this.decimalRow);
+	}
+
+	@Benchmark
+	public double[] evaluateDoubleBatch(){
+		this.expression.evaluate(this.doubleColumns, this.doubleOutput);
+		return this.doubleOutput;
+	}
+
+	@Benchmark
+	public long[] evaluateLongBatch(){
+		this.expression.evaluateLong(this.longColumns, this.longOutput);
+		return this.longOutput;
+	}
+}
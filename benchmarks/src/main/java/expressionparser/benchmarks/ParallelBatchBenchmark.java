@@ -0,0 +1,80 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionParser;
+import expressionparser.ParallelEvaluator;
+
+/**
+ * Measures how the throughput of {@link ParallelEvaluator} grows with the number
+ * of threads, evaluating a polynomial of two variables over a few million rows.
+ * The number of rows evaluated per second should grow close to linearly with the
+ * number of threads, up to the number of cores.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar ParallelBatch -p threads=1,8,64</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBatchBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	@Param({"4194304"})
+	public int rows;
+
+	private CompiledExpression expression;
+	private double[][] columns;
+	private double[] output;
+	private ForkJoinPool pool;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		this.expression = ExpressionParser.compile("x^3 - 2*x^2*y + y/(x + 1.5) - 7", "x", "y");
+		this.columns = new double[2][this.rows];
+		for(int i = 0; i < this.rows; ++i){
+			this.columns[0][i] = i * 1e-6;
+			this.columns[1][i] = (i % 977) * 0.5;
+		}
+		this.output = new double[this.rows];
+		this.pool = new ForkJoinPool(this.threads);
+	}
+
+	@TearDown
+	public void tearDown(){
+		this.pool.shutdown();
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public double[] evaluate(){
+		this.expression.evaluateParallel(this.columns, this.output, this.pool);
+		return this.output;
+	}
+}
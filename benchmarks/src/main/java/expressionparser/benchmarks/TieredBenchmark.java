@@ -0,0 +1,97 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.TieredCompiler;
+import expressionparser.TieredExpression;
+
+/**
+ * Compares the tiers of a {@link TieredExpression}: how fast a hot expression is
+ * evaluated in each tier, and what a cold expression costs when it is compiled and
+ * evaluated ten times, as most expressions of a long tail are, with its first tier
+ * forced to the given one.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar Tiered -p tier=interpreted,bytecode</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TieredBenchmark {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final String SOURCE = "x * y + (x - y) / (x + y) * 0.5 - x * x + 3 * y";
+
+	//promotions are run on the calling thread, so that the tier is reached before the benchmark
+	private static final Executor DIRECT = new Executor(){
+		@Override
+		public void execute(Runnable task){
+			task.run();
+		}
+	};
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"interpreted", "closures", "bytecode"})
+	public String tier;
+
+	private TieredCompiler compiler;
+	private TieredExpression expression;
+	private double[] row;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+
+		if(this.tier.equals("interpreted")){
+			this.compiler = new TieredCompiler(Integer.MAX_VALUE, Integer.MAX_VALUE, DIRECT);
+		}else if(this.tier.equals("closures")){
+			this.compiler = new TieredCompiler(1, Integer.MAX_VALUE, DIRECT);
+		}else{
+			this.compiler = new TieredCompiler(Integer.MAX_VALUE, 1, DIRECT);
+		}
+
+		this.row = new double[] {1.25, 3.5};
+		this.expression = this.compiler.compile(SOURCE, "x", "y");
+		this.expression.evaluate(this.row);
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public double evaluate(){
+		return this.expression.evaluate(this.row);
+	}
+
+	@Benchmark
+	public double compileAndEvaluateTenTimes(){
+
+		TieredExpression cold = this.compiler.compile(SOURCE, "x", "y");
+
+		double total = 0;
+		for(int i = 0; i < 10; ++i){
+			total += cold.evaluate(this.row);
+		}
+
+		return total;
+	}
+}
@@ -0,0 +1,89 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.ExpressionParser;
+import expressionparser.ExpressionValidator;
+
+/**
+ * Compares checking untrusted formulas by compiling them and catching the exception
+ * against checking them with an {@link ExpressionValidator}, on a mix of formulas
+ * most of which are malformed.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar Validation</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"80"})
+	public int rejectedPercent;
+
+	private String[] formulas;
+	private ExpressionValidator validator;
+	private int next;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+		String[] valid = {"(x + 1.5) * (y - 2) / (x * x + y * y + 1)", "sin(x) * cos(y) + 2^-x",
+				"price * (1 + rate / 12)^(12 * years)", "-(a - b) / sqrt(a * a + b * b + 1)"};
+		String[] malformed = {"(x + 1.5) * (y - 2) / (x * x + y * y + 1", "sin(x) * cos(y) + 2^",
+				"price * (1 + rate / 12)^(12 * years))", "-(a - b) / sqrt(a * a, b * b + 1)",
+				"x + 1.5.2 * y", "x $ y", "unknown(x) + 1", "2 x + 1"};
+
+		this.formulas = new String[100];
+		for(int i = 0; i < this.formulas.length; ++i){
+			this.formulas[i] = i < this.rejectedPercent ? malformed[i % malformed.length] : valid[i % valid.length];
+		}
+		this.validator = new ExpressionValidator();
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public boolean compile(){
+		try{
+			ExpressionParser.compile(this.nextFormula());
+			return true;
+		}catch(IllegalArgumentException e){
+			return false;
+		}
+	}
+
+	@Benchmark
+	public boolean validate(){
+		return this.validator.validate(this.nextFormula());
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @return The next formula of the mix, going round it.
+	 */
+	private String nextFormula(){
+		this.next = this.next == this.formulas.length - 1 ? 0 : this.next + 1;
+		return this.formulas[this.next];
+	}
+}
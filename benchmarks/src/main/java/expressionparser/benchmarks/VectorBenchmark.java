@@ -0,0 +1,85 @@
+package expressionparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionParser;
+import expressionparser.ExpressionProgram;
+import expressionparser.vector.VectorEvaluator;
+
+/**
+ * Compares the {@link BatchEvaluator} with the {@link VectorEvaluator} operator by
+ * operator, and on a longer formula, over columns which fit in the L2 cache. The
+ * forked JVMs are started with the Vector API. On an AVX-512 CPU, the speed-up with
+ * AVX2 is measured by limiting the vectors to 256 bits, which replaces the JVM options
+ * of the fork, so the Vector API must be given again.
+ *
+ * <br><br>Example: <code>java -jar benchmarks/target/benchmarks.jar Vector -jvmArgsAppend
+ * "--add-modules=jdk.incubator.vector -XX:MaxVectorSize=32"</code>
+ *
+ * @author David Boivin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorBenchmark {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Param({"x + y", "x - y", "x * y", "x / y", "x ^ y", "-x", "x * 0.5 + y * y - (x - y) / (x + 2)"})
+	public String formula;
+
+	@Param({"16384"})
+	public int rows;
+
+	private ExpressionProgram program;
+	private double[][] columns;
+	private double[] output;
+
+// Setup --------------------------------------------------------------------------------------- //
+
+	@Setup
+	public void setup(){
+
+		if(!VectorEvaluator.isAvailable()){
+			throw new IllegalStateException("The Vector API is not available");
+		}
+
+		this.program = ExpressionParser.compile(this.formula, "x", "y").getProgram();
+		this.columns = new double[2][this.rows];
+		for(int i = 0; i < this.rows; ++i){
+			this.columns[0][i] = i * 1e-3;
+			this.columns[1][i] = (i % 977) * 0.5 + 1;
+		}
+		this.output = new double[this.rows];
+	}
+
+// Benchmarks ---------------------------------------------------------------------------------- //
+
+	@Benchmark
+	public double[] batch(){
+		BatchEvaluator.evaluate(this.program, this.columns, this.output);
+		return this.output;
+	}
+
+	@Benchmark
+	public double[] vector(){
+		VectorEvaluator.evaluate(this.program, this.columns, this.output);
+		return this.output;
+	}
+}
@@ -0,0 +1,108 @@
+package expressionparser.benchmarks;
+
+/**
+ * Generates the expressions used by the benchmarks. Every workload stresses a
+ * different part of the parser and evaluator and can be scaled with a size.
+ *
+ * @author David Boivin
+ */
+public enum Workloads {
+
+	/**
+	 * A typical short formula, repeated <i>size</i> / 20 times as a sum.
+	 */
+	SHORT{
+		@Override
+		public String generate(int size){
+			StringBuilder expression = new StringBuilder("2+3*32/64^(1/2)-18*2");
+			for(int i = 20; i < size; i += 20){
+				expression.append("+2+3*32/64^(1/2)-18*2");
+			}
+			return expression.toString();
+		}
+	},
+
+	/**
+	 * A long flat sum of <i>size</i> numbers: <code>1+2.5+3+4.5+...</code>
+	 */
+	FLAT_SUM{
+		@Override
+		public String generate(int size){
+			StringBuilder expression = new StringBuilder("1");
+			for(int i = 2; i <= size; ++i){
+				expression.append('+').append(i).append(i % 2 == 0 ? ".5" : "");
+			}
+			return expression.toString();
+		}
+	},
+
+	/**
+	 * <i>size</i> nested brackets: <code>(1+(1+(1+...)))</code>
+	 */
+	DEEP_NESTING{
+		@Override
+		public String generate(int size){
+			StringBuilder expression = new StringBuilder();
+			for(int i = 0; i < size; ++i){
+				expression.append("(1+");
+			}
+			expression.append('1');
+			for(int i = 0; i < size; ++i){
+				expression.append(')');
+			}
+			return expression.toString();
+		}
+	},
+
+	/**
+	 * A short sum padded with <i>size</i> spaces between each token.
+	 */
+	WHITESPACE{
+		@Override
+		public String generate(int size){
+			StringBuilder padding = new StringBuilder();
+			for(int i = 0; i < size; ++i){
+				padding.append(' ');
+			}
+			return padding + "1" + padding + "+" + padding + "2" + padding + "*" + padding + "3" + padding;
+		}
+	},
+
+	/**
+	 * <i>size</i> terms full of unary operators: <code>-1*-2+--3-+4...</code>
+	 */
+	UNARY{
+		@Override
+		public String generate(int size){
+			StringBuilder expression = new StringBuilder("-1");
+			for(int i = 2; i <= size; ++i){
+				switch(i % 4){
+					case 0:
+						expression.append("*-").append(i);
+						break;
+					case 1:
+						expression.append("+--").append(i);
+						break;
+					case 2:
+						expression.append("-+").append(i);
+						break;
+					default:
+						expression.append("/-(-").append(i).append(')');
+				}
+			}
+			return expression.toString();
+		}
+	};
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Generates the expression of this workload.
+	 *
+	 * @param size The size of the expression, in terms, brackets or spaces
+	 * 		depending on the workload.
+	 *
+	 * @return The expression.
+	 */
+	public abstract String generate(int size);
+}
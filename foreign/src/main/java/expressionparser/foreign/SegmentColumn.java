@@ -0,0 +1,200 @@
+package expressionparser.foreign;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * A column of <code>double</code> values held in a {@link MemorySegment}, as read
+ * and written by the {@link SegmentEvaluator}. Row <code>i</code> of the column is
+ * the double at byte <code>offset + i * stride</code> of the segment, in the byte
+ * order of the column, so a column can be a plain array of doubles, one field of an
+ * array of structs shared with native code, or data written by another machine in a
+ * mapped file. Values do not need to be aligned.
+ *
+ * <br><br>Instances are immutable. The segment itself is not copied, so it must stay
+ * alive as long as the column is used.
+ *
+ * @author David Boivin
+ */
+public final class SegmentColumn {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//the layouts must be constants for the accesses to be compiled to plain loads and stores
+	private static final ValueLayout.OfDouble LITTLE_ENDIAN =
+			ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfDouble BIG_ENDIAN =
+			ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final MemorySegment segment;
+	private final long offset;
+	private final long stride;
+	private final boolean bigEndian;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private SegmentColumn(MemorySegment segment, long offset, long stride, ByteOrder order){
+		this.segment = segment;
+		this.offset = offset;
+		this.stride = stride;
+		this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Gives the column of the doubles packed one after the other in the given segment,
+	 * in the native byte order.
+	 *
+	 * @param segment The segment holding the values.
+	 *
+	 * @return The column.
+	 */
+	public static SegmentColumn of(MemorySegment segment){
+		return SegmentColumn.of(segment, 0, Double.BYTES, ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Gives the column of the doubles at the given offset and stride of the given segment.
+	 *
+	 * @param segment The segment holding the values.
+	 * @param offset The byte offset of the first row.
+	 * @param stride The number of bytes from a row to the next, at least 8.
+	 * @param order The byte order of the values.
+	 *
+	 * @return The column.
+	 *
+	 * @throws IllegalArgumentException If the offset is negative or the stride is less
+	 * 		than 8.
+	 */
+	public static SegmentColumn of(MemorySegment segment, long offset, long stride, ByteOrder order){
+
+		if(offset < 0 || stride < Double.BYTES){
+			throw new IllegalArgumentException("Invalid offset " + offset + " or stride " + stride);
+		}
+
+		return new SegmentColumn(segment, offset, stride, order);
+	}
+
+	/**
+	 * @return The number of rows the segment holds from the offset of the column.
+	 */
+	public long getRowCount(){
+
+		long available = this.segment.byteSize() - this.offset;
+		return available < Double.BYTES ? 0 : (available - Double.BYTES) / this.stride + 1;
+	}
+
+	/**
+	 * @param row The row.
+	 *
+	 * @return The value of the row.
+	 *
+	 * @throws IndexOutOfBoundsException If the row is outside of the segment.
+	 */
+	public double get(long row){
+
+		long position = this.offset + row * this.stride;
+		return this.bigEndian ? this.segment.get(BIG_ENDIAN, position) : this.segment.get(LITTLE_ENDIAN, position);
+	}
+
+	/**
+	 * @param row The row.
+	 * @param value The new value of the row.
+	 *
+	 * @throws IndexOutOfBoundsException If the row is outside of the segment.
+	 * @throws UnsupportedOperationException If the segment is read-only.
+	 */
+	public void set(long row, double value){
+
+		long position = this.offset + row * this.stride;
+		if(this.bigEndian){
+			this.segment.set(BIG_ENDIAN, position, value);
+		}else{
+			this.segment.set(LITTLE_ENDIAN, position, value);
+		}
+	}
+
+	/**
+	 * @return The segment holding the values.
+	 */
+	public MemorySegment getSegment(){
+		return this.segment;
+	}
+
+	/**
+	 * @return The byte offset of the first row.
+	 */
+	public long getOffset(){
+		return this.offset;
+	}
+
+	/**
+	 * @return The number of bytes from a row to the next.
+	 */
+	public long getStride(){
+		return this.stride;
+	}
+
+	/**
+	 * @return The byte order of the values.
+	 */
+	public ByteOrder getOrder(){
+		return this.bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Copies a block of rows into an array. Packed values are copied in bulk, swapping
+	 * their bytes if needed.
+	 *
+	 * @param start The first row.
+	 * @param block The array receiving the values.
+	 * @param count The number of rows.
+	 */
+	void read(long start, double[] block, int count){
+
+		long position = this.offset + start * this.stride;
+
+		if(this.stride == Double.BYTES){
+			MemorySegment.copy(this.segment, this.bigEndian ? BIG_ENDIAN : LITTLE_ENDIAN, position, block, 0, count);
+		}else if(this.bigEndian){
+			for(int j = 0; j < count; ++j, position += this.stride){
+				block[j] = this.segment.get(BIG_ENDIAN, position);
+			}
+		}else{
+			for(int j = 0; j < count; ++j, position += this.stride){
+				block[j] = this.segment.get(LITTLE_ENDIAN, position);
+			}
+		}
+	}
+
+	/**
+	 * Copies a block of values from an array into rows of the column. Packed values
+	 * are copied in bulk, swapping their bytes if needed.
+	 *
+	 * @param start The first row.
+	 * @param block The array holding the values.
+	 * @param count The number of rows.
+	 */
+	void write(long start, double[] block, int count){
+
+		long position = this.offset + start * this.stride;
+
+		if(this.stride == Double.BYTES){
+			MemorySegment.copy(block, 0, this.segment, this.bigEndian ? BIG_ENDIAN : LITTLE_ENDIAN, position, count);
+		}else if(this.bigEndian){
+			for(int j = 0; j < count; ++j, position += this.stride){
+				this.segment.set(BIG_ENDIAN, position, block[j]);
+			}
+		}else{
+			for(int j = 0; j < count; ++j, position += this.stride){
+				this.segment.set(LITTLE_ENDIAN, position, block[j]);
+			}
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package expressionparser.foreign;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionProgram;
+import expressionparser.Operator;
+import expressionparser.ProgramEvaluator;
+
+/**
+ * Evaluates an {@link ExpressionProgram} over columns held off-heap in
+ * {@link java.lang.foreign.MemorySegment}s, native or mapped from a file, and writes
+ * the results into another such column. The columns are never copied into arrays:
+ * as in the {@link BatchEvaluator}, the rows are evaluated one block of
+ * {@link BatchEvaluator#BLOCK_SIZE} at a time, and only the block being evaluated
+ * goes through the operand stack of the evaluator, which is small enough to stay
+ * in the L1 or L2 cache. Rows are numbered with <code>long</code>s, so a column can
+ * hold far more than the 2^31 values of an array.
+ *
+ * <br><br>The operand stack is allocated once, when the evaluator is created, so
+ * evaluating allocates nothing, however many rows there are. For the same reason an
+ * evaluator must not be used by several threads at once: threads evaluating the same
+ * program in parallel each create their own evaluator and evaluate their own range
+ * of rows. The results are the same as those of the {@link BatchEvaluator}.
+ *
+ * @author David Boivin
+ */
+public class SegmentEvaluator {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final ExpressionProgram program;
+
+	//one block of values per entry of the operand stack
+	private final double[][] stack;
+
+	//the operands of a registered function for one row
+	private final double[] operands;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates an evaluator for the given program.
+	 *
+	 * @param program The program to evaluate.
+	 */
+	public SegmentEvaluator(ExpressionProgram program){
+
+		int arity = 0;
+		for(int i = 0; i < program.getFunctionCount(); ++i){
+			arity = Math.max(arity, program.getFunction(i).getArity());
+		}
+
+		this.program = program;
+		this.stack = new double[Math.max(1, program.getMaxStackDepth())][BatchEvaluator.BLOCK_SIZE];
+		this.operands = new double[arity];
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the program for every row of the output column.
+	 *
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables, if a
+	 * 		column has fewer rows than the output column or if the output column is read-only.
+	 */
+	public void evaluate(SegmentColumn[] columns, SegmentColumn output){
+		this.evaluate(columns, output, 0, output.getRowCount());
+	}
+
+	/**
+	 * Evaluates the program for the given range of rows. Row <code>i</code> of the
+	 * result is written at row <code>i</code> of the output column and is computed
+	 * from row <code>i</code> of the columns.
+	 *
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables, if a
+	 * 		column or the output column is too short for the given range or if the output
+	 * 		column is read-only.
+	 */
+	public void evaluate(SegmentColumn[] columns, SegmentColumn output, long from, long to){
+
+		this.checkColumns(columns, output, from, to);
+
+		for(long start = from; start < to; start += BatchEvaluator.BLOCK_SIZE){
+			int count = (int) Math.min(BatchEvaluator.BLOCK_SIZE, to - start);
+
+			this.evaluateBlock(columns, start, count);
+			output.write(start, this.stack[0], count);
+		}
+	}
+
+	/**
+	 * @return The program evaluated by this evaluator.
+	 */
+	public ExpressionProgram getProgram(){
+		return this.program;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Makes sure that the columns can be evaluated over the given range.
+	 *
+	 * @param columns The values of the variables.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If the columns do not fit the program or the range.
+	 */
+	private void checkColumns(SegmentColumn[] columns, SegmentColumn output, long from, long to){
+
+		if(from < 0 || from > to || to > output.getRowCount()){
+			throw new IllegalArgumentException("Invalid row range [" + from + ", " + to +
+					") for " + output.getRowCount() + " output rows");
+		}
+
+		if(output.getSegment().isReadOnly()){
+			throw new IllegalArgumentException("Output column is read-only");
+		}
+
+		if(columns.length < this.program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + this.program.getVariableCount() +
+					" columns but got " + columns.length);
+		}
+
+		for(int i = 0; i < this.program.getVariableCount(); ++i){
+			if(columns[i].getRowCount() < to){
+				throw new IllegalArgumentException("Column of variable " + this.program.getVariable(i) +
+						" has " + columns[i].getRowCount() + " rows instead of at least " + to);
+			}
+		}
+	}
+
+	/**
+	 * Runs every instruction of the program over one block of rows. The result of
+	 * the block is left in the first entry of the stack.
+	 *
+	 * @param columns The values of the variables.
+	 * @param start The first row of the block.
+	 * @param count The number of rows in the block.
+	 */
+	private void evaluateBlock(SegmentColumn[] columns, long start, int count){
+
+		double[][] stack = this.stack;
+		int top = -1;	//index of the top of the stack
+
+		for(int i = 0; i < this.program.length(); ++i){
+
+			int opcode = this.program.getOpcode(i);
+
+			if(opcode == ExpressionProgram.CONST){
+				double value = this.program.getConstant(this.program.getOperand(i));
+				double[] a = stack[++top];
+				for(int j = 0; j < count; ++j){
+					a[j] = value;
+				}
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				columns[this.program.getOperand(i)].read(start, stack[++top], count);
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.CALL){
+				Operator function = this.program.getFunction(this.program.getOperand(i));
+				top -= function.getArity() - 1;
+				this.call(function, top, count);
+				continue;
+			}
+
+			//unary operators and functions write their result over their operand
+			if(ExpressionProgram.getArity(opcode) == 1){
+				double[] a = stack[top];
+				for(int j = 0; j < count; ++j){
+					a[j] = ProgramEvaluator.calculate(opcode, a[j], 0);
+				}
+				continue;
+			}
+
+			//binary operators write their result over their left operand
+			double[] a = stack[top - 1];
+			double[] b = stack[top];
+			--top;
+
+			switch(opcode){
+
+				case ExpressionProgram.ADD:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] + b[j];
+					}
+					break;
+
+				case ExpressionProgram.SUB:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] - b[j];
+					}
+					break;
+
+				case ExpressionProgram.MUL:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] * b[j];
+					}
+					break;
+
+				case ExpressionProgram.DIV:
+					for(int j = 0; j < count; ++j){
+						a[j] = a[j] / b[j];
+					}
+					break;
+
+				default:
+					for(int j = 0; j < count; ++j){
+						a[j] = ProgramEvaluator.calculate(opcode, a[j], b[j]);
+					}
+					break;
+			}
+		}
+
+		//the empty program gives 0
+		if(top < 0){
+			for(int j = 0; j < count; ++j){
+				stack[0][j] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Calls a registered function for every row of a block, gathering the operands
+	 * of each row first.
+	 *
+	 * @param function The function to call.
+	 * @param first The stack index of the first operand, where the result is written.
+	 * @param count The number of rows in the block.
+	 */
+	private void call(Operator function, int first, int count){
+
+		int arity = function.getArity();
+		double[] result = this.stack[first];
+
+		for(int j = 0; j < count; ++j){
+			for(int k = 0; k < arity; ++k){
+				this.operands[k] = this.stack[first + k][j];
+			}
+			result[j] = function.apply(this.operands, 0);
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package expressionparser.foreign;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionParser;
+import expressionparser.ExpressionProgram;
+import expressionparser.Operator;
+import expressionparser.OperatorRegistry;
+
+/**
+ * Class created to test {@link SegmentEvaluator}. Evaluates programs with both the
+ * {@link SegmentEvaluator} and the {@link BatchEvaluator} and makes sure that they
+ * give bit for bit the same results, with the columns packed or interleaved in one
+ * segment, in the native byte order or the other one, and over whole columns as well
+ * as ranges starting and ending inside a block. The values are written and read back
+ * through {@link ByteBuffer}s, so that a column reading its bytes in the wrong order
+ * shows even when it writes them in the same wrong order.
+ *
+ * <br><br>Run with <code>java -cp
+ * ExpressionParser/target/classes:foreign/target/classes
+ * expressionparser.foreign.SegmentEvaluatorTests</code> on Java 22 or later.
+ *
+ * @author David Boivin
+ */
+public class SegmentEvaluatorTests {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//every operator, the built-in functions and a registered function
+	private static final String[] EXPRESSIONS = {"x + y", "x - 2.5", "2.5 - x", "x * 3", "3 / x", "x / y",
+			"-x", "(x + y) * (x - y)", "(x + y) / 3 - 2 / (x * y)", "x ^ 2 + sqrt(y) - sin(x * y)",
+			"clamp(x, -1, y) * 2", "x", "7"};
+
+	private static final OperatorRegistry REGISTRY = new OperatorRegistry()
+		.register(new Operator("clamp", 3){
+			@Override
+			public double apply(double[] operands, int offset){
+				return Math.max(operands[offset + 1], Math.min(operands[offset + 2], operands[offset]));
+			}
+		});
+
+	//values for which an arithmetic or byte order mismatch would show
+	private static final double[] SPECIAL_VALUES = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, 1, -1};
+
+	//the last block has 907 rows
+	private static final int ROWS = 5003;
+
+	//the ways x, y and the output are laid out
+	private static final int PACKED = 0;
+	private static final int PACKED_SWAPPED = 1;
+	private static final int INTERLEAVED = 2;
+	private static final int INTERLEAVED_SWAPPED = 3;
+	private static final String[] LAYOUT_NAMES = {"packed", "packed, other byte order", "interleaved",
+			"interleaved unaligned, other byte order"};
+
+	private static final ByteOrder SWAPPED_ORDER =
+			ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	public static void main(String[] args){
+
+		String e = new String();	//expected
+		String r = new String();	//result
+
+		System.out.println("Testing SegmentEvaluator class\n");
+
+		double[][] columns = SegmentEvaluatorTests.columns(new Random(23), ROWS);
+
+		for(int layout = PACKED; layout <= INTERLEAVED_SWAPPED; ++layout){
+			System.out.println((layout + 1) + ". " + EXPRESSIONS.length + " expressions over " + ROWS +
+					" rows, " + LAYOUT_NAMES[layout] + ", against BatchEvaluator");
+			int mismatches = 0;
+			for(String expression : EXPRESSIONS){
+				mismatches += SegmentEvaluatorTests.compare(expression, columns, layout, 0, ROWS);
+			}
+			e = "mismatches=0";
+			r = "mismatches=" + mismatches;
+			System.out.println("Expected: " + e);
+			System.out.println("Result: " + r);
+			System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+			System.out.println("\n");
+		}
+
+		System.out.println("5. rows [3, 1030), [0, 1), [1020, 1030) and [1, 5002) in every layout, " +
+				"rows outside the range untouched");
+		int mismatches = 0;
+		for(int layout = PACKED; layout <= INTERLEAVED_SWAPPED; ++layout){
+			for(String expression : EXPRESSIONS){
+				mismatches += SegmentEvaluatorTests.compare(expression, columns, layout, 3, 1030) +
+						SegmentEvaluatorTests.compare(expression, columns, layout, 0, 1) +
+						SegmentEvaluatorTests.compare(expression, columns, layout, 1020, 1030) +
+						SegmentEvaluatorTests.compare(expression, columns, layout, 1, ROWS - 1);
+			}
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+
+		System.out.println("6. 100 random expressions of + - * / over random layouts and ranges");
+		Random random = new Random(2023);
+		mismatches = 0;
+		for(int i = 0; i < 100; ++i){
+			String expression = SegmentEvaluatorTests.randomExpression(random, 4);
+			int from = random.nextInt(ROWS);
+			int to = from + random.nextInt(ROWS - from + 1);
+			mismatches += SegmentEvaluatorTests.compare(expression, columns, random.nextInt(4), from, to);
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+
+		System.out.println("7. a range past the end of the output column");
+		try(Arena arena = Arena.ofConfined()){
+			SegmentColumn[] segments = SegmentEvaluatorTests.layout(arena, PACKED);
+			new SegmentEvaluator(ExpressionParser.compile("x + y", "x", "y").getProgram())
+				.evaluate(new SegmentColumn[] {segments[0], segments[1]}, segments[2], 0, ROWS + 1);
+			r = "evaluated";
+		}catch(IllegalArgumentException ex){
+			r = "rejected";
+		}
+		e = "rejected";
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates an expression over a range of rows with both evaluators and counts the
+	 * rows of the output columns which differ, inside the range or out of it.
+	 *
+	 * @param expression The expression, in x and y.
+	 * @param columns The values of x and y.
+	 * @param layout The way the segment columns are laid out.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @return The number of rows which are not bit for bit the same.
+	 */
+	private static int compare(String expression, double[][] columns, int layout, int from, int to){
+
+		ExpressionProgram program = ExpressionParser.compile(expression, REGISTRY, "x", "y").getProgram();
+
+		//rows outside the range must keep what was there
+		double[] expected = new double[ROWS];
+		Arrays.fill(expected, 42.0);
+		BatchEvaluator.evaluate(program, columns, expected, from, to);
+
+		try(Arena arena = Arena.ofConfined()){
+			SegmentColumn[] segments = SegmentEvaluatorTests.layout(arena, layout);
+			for(int i = 0; i < ROWS; ++i){
+				SegmentEvaluatorTests.put(segments[0], i, columns[0][i]);
+				SegmentEvaluatorTests.put(segments[1], i, columns[1][i]);
+				SegmentEvaluatorTests.put(segments[2], i, 42.0);
+			}
+
+			new SegmentEvaluator(program).evaluate(new SegmentColumn[] {segments[0], segments[1]}, segments[2],
+					from, to);
+
+			int mismatches = 0;
+			for(int i = 0; i < ROWS; ++i){
+				if(Double.compare(SegmentEvaluatorTests.get(segments[2], i), expected[i]) != 0){
+					++mismatches;
+				}
+			}
+
+			return mismatches;
+		}
+	}
+
+	/**
+	 * @param arena The arena allocating the segments.
+	 * @param layout The way the columns are laid out.
+	 *
+	 * @return The columns of x, y and the output, of {@link #ROWS} rows each.
+	 */
+	private static SegmentColumn[] layout(Arena arena, int layout){
+
+		switch(layout){
+
+			case PACKED:
+				return new SegmentColumn[] {SegmentColumn.of(arena.allocate(ROWS * 8L)),
+						SegmentColumn.of(arena.allocate(ROWS * 8L)), SegmentColumn.of(arena.allocate(ROWS * 8L))};
+
+			case PACKED_SWAPPED:
+				return new SegmentColumn[] {SegmentColumn.of(arena.allocate(ROWS * 8L), 0, 8, SWAPPED_ORDER),
+						SegmentColumn.of(arena.allocate(ROWS * 8L), 0, 8, SWAPPED_ORDER),
+						SegmentColumn.of(arena.allocate(ROWS * 8L), 0, 8, SWAPPED_ORDER)};
+
+			case INTERLEAVED:
+				//rows of {x, y, output}
+				MemorySegment rows = arena.allocate(ROWS * 24L);
+				return new SegmentColumn[] {SegmentColumn.of(rows, 0, 24, ByteOrder.nativeOrder()),
+						SegmentColumn.of(rows, 8, 24, ByteOrder.nativeOrder()),
+						SegmentColumn.of(rows, 16, 24, ByteOrder.nativeOrder())};
+
+			default:
+				//rows of {byte, x, y, output} with nothing aligned
+				MemorySegment unaligned = arena.allocate(ROWS * 25L);
+				return new SegmentColumn[] {SegmentColumn.of(unaligned, 1, 25, SWAPPED_ORDER),
+						SegmentColumn.of(unaligned, 9, 25, SWAPPED_ORDER), SegmentColumn.of(unaligned, 17, 25, SWAPPED_ORDER)};
+		}
+	}
+
+	/**
+	 * Writes a value in a column without going through the column itself.
+	 *
+	 * @param column The column.
+	 * @param row The row.
+	 * @param value The value.
+	 */
+	private static void put(SegmentColumn column, int row, double value){
+		ByteBuffer buffer = column.getSegment().asByteBuffer().order(column.getOrder());
+		buffer.putDouble((int) (column.getOffset() + row * column.getStride()), value);
+	}
+
+	/**
+	 * Reads a value of a column without going through the column itself.
+	 *
+	 * @param column The column.
+	 * @param row The row.
+	 *
+	 * @return The value.
+	 */
+	private static double get(SegmentColumn column, int row){
+		ByteBuffer buffer = column.getSegment().asByteBuffer().order(column.getOrder());
+		return buffer.getDouble((int) (column.getOffset() + row * column.getStride()));
+	}
+
+	/**
+	 * @param random The source of the values.
+	 * @param rows The number of rows.
+	 *
+	 * @return Columns for x and y, with one value in eight taken from the special values.
+	 */
+	private static double[][] columns(Random random, int rows){
+
+		double[][] columns = new double[2][rows];
+		for(double[] column : columns){
+			for(int i = 0; i < rows; ++i){
+				column[i] = random.nextInt(8) == 0 ? SPECIAL_VALUES[random.nextInt(SPECIAL_VALUES.length)] :
+						(random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * @param random The source of the choices.
+	 * @param depth The deepest the expression may be nested.
+	 *
+	 * @return An expression in x, y and constants.
+	 */
+	private static String randomExpression(Random random, int depth){
+
+		if(depth == 0 || random.nextInt(4) == 0){
+			switch(random.nextInt(3)){
+
+				case 0:
+					return "x";
+
+				case 1:
+					return "y";
+
+				default:
+					return String.valueOf(random.nextInt(100) / 10.0);
+			}
+		}
+
+		if(random.nextInt(6) == 0){
+			return "-(" + SegmentEvaluatorTests.randomExpression(random, depth - 1) + ")";
+		}
+
+		return "(" + SegmentEvaluatorTests.randomExpression(random, depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) +
+				" " + SegmentEvaluatorTests.randomExpression(random, depth - 1) + ")";
+	}
+}
@@ -0,0 +1,38 @@
+package expressionparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded every time an expression is compiled, parsing and optimization included.
+ *
+ * @author David Boivin
+ */
+@Name("expressionparser.Compile")
+@Label("Expression Compile")
+@Category("ExpressionParser")
+@Description("An expression was parsed and optimized into a program")
+@StackTrace(false)
+class CompileEvent extends jdk.jfr.Event {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Label("Expression")
+	String expression;
+
+	@Label("Length")
+	@Description("Number of characters of the expression")
+	int length;
+
+	@Label("Instructions")
+	@Description("Number of instructions of the optimized program")
+	int instructionCount;
+
+	@Label("Compile Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long compileTime;
+}
@@ -0,0 +1,43 @@
+package expressionparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded for every batch evaluation and for every sampled evaluation of a single
+ * row. A sampled evaluation stands for {@link expressionparser.Instrumentation#getSampleRate()}
+ * evaluations and has a single row.
+ *
+ * @author David Boivin
+ */
+@Name("expressionparser.Evaluate")
+@Label("Expression Evaluation")
+@Category("ExpressionParser")
+@Description("A compiled expression was evaluated")
+@StackTrace(false)
+class EvaluateEvent extends jdk.jfr.Event {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Label("Expression")
+	String expression;
+
+	@Label("Instructions")
+	@Description("Number of instructions of the program")
+	int instructionCount;
+
+	@Label("Rows")
+	int rows;
+
+	@Label("Sampled")
+	@Description("True for a sampled evaluation of a single row, false for a batch")
+	boolean sampled;
+
+	@Label("Evaluation Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long evaluationTime;
+}
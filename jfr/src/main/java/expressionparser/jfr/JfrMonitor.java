@@ -0,0 +1,206 @@
+package expressionparser.jfr;
+
+import java.util.Map;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionCounters;
+import expressionparser.ExpressionMonitor;
+import expressionparser.Instrumentation;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * An {@link ExpressionMonitor} turning what the parser, the cache and compiled
+ * expressions are doing into Java Flight Recorder events, so that parsing,
+ * compiling and evaluation show up in a recording next to the garbage collections
+ * and the allocations they cause. Every call is also forwarded to an
+ * {@link ExpressionCounters}, whose totals are recorded once per second by the
+ * <code>expressionparser.Statistics</code> event.
+ *
+ * <br><br>Events are only built when they are enabled in the running recording,
+ * so the monitor costs little more than its counters when nothing is recorded.
+ * The events are <code>expressionparser.Parse</code>, <code>expressionparser.Compile</code>,
+ * <code>expressionparser.ParseFailure</code> and <code>expressionparser.Evaluate</code>.
+ * They are recorded after the work is done, so the time taken is held by a field
+ * of the event rather than by its duration.
+ *
+ * <br><br>Example: <code>JfrMonitor.install();</code> then
+ * <code>java -XX:StartFlightRecording=filename=run.jfr ...</code> and
+ * <code>jfr print --categories ExpressionParser run.jfr</code>.
+ *
+ * @author David Boivin
+ */
+public class JfrMonitor implements ExpressionMonitor {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final ExpressionCounters counters;
+	private final Runnable statistics;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a monitor with its own counters. The monitor does nothing until it is
+	 * installed with {@link Instrumentation#setMonitor(ExpressionMonitor)}, or with
+	 * {@link #install()}.
+	 */
+	public JfrMonitor(){
+		this(new ExpressionCounters());
+	}
+
+	/**
+	 * Creates a monitor forwarding every call to the given counters.
+	 *
+	 * @param counters The counters, whose totals are recorded periodically.
+	 */
+	public JfrMonitor(ExpressionCounters counters){
+
+		this.counters = counters;
+		this.statistics = new Runnable(){
+			@Override
+			public void run(){
+				JfrMonitor.this.recordStatistics();
+			}
+		};
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Creates a monitor, installs it with the default sample rate and starts
+	 * recording its statistics periodically.
+	 *
+	 * @return The installed monitor.
+	 */
+	public static JfrMonitor install(){
+
+		JfrMonitor monitor = new JfrMonitor();
+		FlightRecorder.addPeriodicEvent(StatisticsEvent.class, monitor.statistics);
+		Instrumentation.setMonitor(monitor);
+
+		return monitor;
+	}
+
+	/**
+	 * Removes this monitor, if it is the installed one, and stops recording its
+	 * statistics.
+	 */
+	public void uninstall(){
+
+		if(Instrumentation.getMonitor() == this){
+			Instrumentation.setMonitor(null);
+		}
+
+		FlightRecorder.removePeriodicEvent(this.statistics);
+	}
+
+	@Override
+	public void parsed(String expression, int tokenCount, int nestingDepth, long nanos){
+
+		this.counters.parsed(expression, tokenCount, nestingDepth, nanos);
+
+		ParseEvent event = new ParseEvent();
+		if(event.isEnabled()){
+			event.expression = expression;
+			event.length = expression.length();
+			event.tokenCount = tokenCount;
+			event.nestingDepth = nestingDepth;
+			event.parseTime = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void compiled(CompiledExpression expression, long nanos){
+
+		this.counters.compiled(expression, nanos);
+
+		CompileEvent event = new CompileEvent();
+		if(event.isEnabled()){
+			event.expression = expression.getSource();
+			event.length = expression.getSource().length();
+			event.instructionCount = expression.getProgram().length();
+			event.compileTime = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void failed(String expression, IllegalArgumentException error){
+
+		this.counters.failed(expression, error);
+
+		ParseFailureEvent event = new ParseFailureEvent();
+		if(event.isEnabled()){
+			event.expression = expression;
+			event.message = error.getMessage();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void cacheLookup(String expression, boolean hit){
+		this.counters.cacheLookup(expression, hit);
+	}
+
+	@Override
+	public void sampled(CompiledExpression expression, long nanos){
+		this.counters.sampled(expression, nanos);
+		JfrMonitor.recordEvaluation(expression, 1, true, nanos);
+	}
+
+	@Override
+	public void evaluatedBatch(CompiledExpression expression, int rows, long nanos){
+		this.counters.evaluatedBatch(expression, rows, nanos);
+		JfrMonitor.recordEvaluation(expression, rows, false, nanos);
+	}
+
+	/**
+	 * @return The counters this monitor forwards every call to.
+	 */
+	public ExpressionCounters getCounters(){
+		return this.counters;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Records an evaluation event if it is enabled.
+	 *
+	 * @param expression The evaluated expression.
+	 * @param rows The number of rows evaluated.
+	 * @param sampled <b>true</b> for a sampled evaluation of a single row.
+	 * @param nanos The time taken, in nanoseconds.
+	 */
+	private static void recordEvaluation(CompiledExpression expression, int rows, boolean sampled, long nanos){
+
+		EvaluateEvent event = new EvaluateEvent();
+		if(event.isEnabled()){
+			event.expression = expression.getSource();
+			event.instructionCount = expression.getProgram().length();
+			event.rows = rows;
+			event.sampled = sampled;
+			event.evaluationTime = nanos;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records the totals of the counters, called by the flight recorder once per period.
+	 */
+	private void recordStatistics(){
+
+		StatisticsEvent event = new StatisticsEvent();
+		event.parseCount = this.counters.getParseCount();
+		event.compileCount = this.counters.getCompileCount();
+		event.failureCount = this.counters.getFailureCount();
+		event.cacheHitRate = this.counters.getCacheHitRate();
+		event.evaluationCount = this.counters.getEvaluationCount();
+		event.batchRowCount = this.counters.getBatchRowCount();
+
+		for(Map.Entry<String, Long> entry : this.counters.getHotExpressions(1).entrySet()){
+			event.hottestExpression = entry.getKey();
+		}
+
+		event.commit();
+	}
+}
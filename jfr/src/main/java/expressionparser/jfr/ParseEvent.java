@@ -0,0 +1,42 @@
+package expressionparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded every time an expression is parsed.
+ *
+ * @author David Boivin
+ */
+@Name("expressionparser.Parse")
+@Label("Expression Parse")
+@Category("ExpressionParser")
+@Description("An expression was parsed")
+@StackTrace(false)
+class ParseEvent extends jdk.jfr.Event {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Label("Expression")
+	String expression;
+
+	@Label("Length")
+	@Description("Number of characters of the expression")
+	int length;
+
+	@Label("Tokens")
+	@Description("Number of numbers, names, operators, brackets and commas of the expression")
+	int tokenCount;
+
+	@Label("Nesting Depth")
+	@Description("Deepest level of brackets of the expression")
+	int nestingDepth;
+
+	@Label("Parse Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long parseTime;
+}
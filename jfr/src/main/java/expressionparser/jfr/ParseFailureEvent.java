@@ -0,0 +1,27 @@
+package expressionparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded every time an expression could not be parsed. The stack trace shows
+ * where the expression came from.
+ *
+ * @author David Boivin
+ */
+@Name("expressionparser.ParseFailure")
+@Label("Expression Parse Failure")
+@Category("ExpressionParser")
+@Description("An expression could not be parsed")
+class ParseFailureEvent extends jdk.jfr.Event {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Label("Expression")
+	String expression;
+
+	@Label("Message")
+	String message;
+}
@@ -0,0 +1,49 @@
+package expressionparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded periodically with the totals of the {@link expressionparser.ExpressionCounters}
+ * of the installed {@link JfrMonitor}.
+ *
+ * @author David Boivin
+ */
+@Name("expressionparser.Statistics")
+@Label("Expression Statistics")
+@Category("ExpressionParser")
+@Description("Totals since the monitor was installed")
+@Period("1 s")
+@StackTrace(false)
+class StatisticsEvent extends jdk.jfr.Event {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	@Label("Parsed")
+	long parseCount;
+
+	@Label("Compiled")
+	long compileCount;
+
+	@Label("Failures")
+	long failureCount;
+
+	@Label("Cache Hit Rate")
+	@Percentage
+	double cacheHitRate;
+
+	@Label("Evaluations")
+	@Description("Estimated number of evaluations of a single row")
+	long evaluationCount;
+
+	@Label("Batch Rows")
+	long batchRowCount;
+
+	@Label("Hottest Expression")
+	String hottestExpression;
+}
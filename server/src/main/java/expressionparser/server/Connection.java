@@ -0,0 +1,153 @@
+package expressionparser.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import expressionparser.server.Protocol.Request;
+
+/**
+ * A connection to the {@link EvaluationServer}, served by two virtual threads: one
+ * reading the requests and handing them to the {@link RequestBatcher}, the other
+ * writing the responses as their requests are evaluated. The writer sends every
+ * response which is ready before flushing, so responses evaluated in the same batch
+ * leave together.
+ *
+ * <br><br>At most {@link #MAX_PENDING} requests of a connection are evaluated or
+ * waiting for their responses to be sent at once. Past that, the connection stops
+ * reading until responses are sent, so a client which sends faster than it reads
+ * only holds up itself.
+ *
+ * <br><br>A client which shuts down its output once it has sent its requests still
+ * gets every response: the connection is only closed once they have all been sent.
+ * A client breaking the protocol is disconnected at once.
+ *
+ * @author David Boivin
+ */
+final class Connection {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	static final int MAX_PENDING = 4096;
+
+	//put in the queue of responses to stop the writer
+	private static final Request CLOSED = new Request(0, null, null, null);
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final EvaluationServer server;
+	private final SocketChannel channel;
+
+	private final LinkedBlockingQueue<Request> responses = new LinkedBlockingQueue<>();
+	private final Semaphore pending = new Semaphore(MAX_PENDING);
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * @param server The server which accepted the connection.
+	 * @param channel The connected channel.
+	 */
+	Connection(EvaluationServer server, SocketChannel channel){
+		this.server = server;
+		this.channel = channel;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Starts the reader and the writer of the connection.
+	 */
+	void start(){
+		Thread.ofVirtual().name("expressionparser-server-reader").start(this::read);
+		Thread.ofVirtual().name("expressionparser-server-writer").start(this::write);
+	}
+
+	/**
+	 * Queues the response to a request of this connection.
+	 *
+	 * @param request The evaluated request.
+	 */
+	void send(Request request){
+		this.responses.add(request);
+	}
+
+	/**
+	 * Closes the connection. Requests still being evaluated are dropped.
+	 */
+	void close(){
+
+		try{
+			this.channel.close();
+		}catch(IOException e){
+			//nothing left to do with the channel
+		}
+
+		this.responses.add(CLOSED);
+
+		//wakes up the reader if it is waiting for responses which will not be sent anymore
+		this.pending.release(MAX_PENDING);
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Reads requests until the client stops sending or breaks the protocol. A client
+	 * which stops sending between two requests is sent the responses to all of them
+	 * before the connection is closed.
+	 */
+	private void read(){
+
+		try{
+			DataInputStream in = Protocol.input(this.channel);
+
+			Request request;
+			while((request = Protocol.readRequest(in)) != null){
+				this.pending.acquire();
+				request.connection = this;
+				this.server.submit(request);
+			}
+
+			//every permit is back once the last response has been sent
+			this.pending.acquire(MAX_PENDING);
+		}catch(IOException | InterruptedException e){
+			//the client went away or sent something which is not a request
+		}finally{
+			this.close();
+			this.server.closed(this);
+		}
+	}
+
+	/**
+	 * Writes responses until the connection is closed.
+	 */
+	private void write(){
+
+		try{
+			DataOutputStream out = Protocol.output(this.channel);
+
+			while(true){
+				Request request = this.responses.take();
+
+				//send every response which is ready, then flush once
+				int written = 0;
+				while(request != null){
+					if(request == CLOSED){
+						return;
+					}
+
+					request.writeResponse(out);
+					++written;
+					request = this.responses.poll();
+				}
+
+				out.flush();
+				this.pending.release(written);
+			}
+		}catch(IOException | InterruptedException e){
+			this.close();
+		}
+	}
+}
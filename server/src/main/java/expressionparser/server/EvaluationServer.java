@@ -0,0 +1,311 @@
+package expressionparser.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionCache;
+
+/**
+ * A standalone server evaluating formulas for other processes, over TCP or a Unix
+ * domain socket, with the binary protocol described in {@link Protocol}: each request
+ * carries a formula, the names of its variables and their values, and its response
+ * carries the result or an error message.
+ *
+ * <br><br>Every connection is served by virtual threads, so the server holds as many
+ * connections as clients open without a thread pool to size. Formulas are compiled
+ * once through an {@link ExpressionCache}, and the requests for the same formula are
+ * evaluated together in micro-batches by a {@link RequestBatcher}. Clients can send
+ * many requests without waiting for their responses to take advantage of the batches.
+ *
+ * <br><br>Example: <code>java -jar server/target/server.jar --port 7341</code> or
+ * <code>--unix /tmp/expressionparser.sock</code>. {@link LoadGenerator} measures the
+ * throughput and latency of a server.
+ *
+ * @author David Boivin
+ */
+public class EvaluationServer implements Closeable {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int DEFAULT_PORT = 7341;
+	public static final int DEFAULT_MAX_BATCH_SIZE = BatchEvaluator.BLOCK_SIZE;
+
+	//the pause before accepting again after a connection could not be accepted
+	private static final long ACCEPT_RETRY_MILLIS = 100;
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final ExpressionCache cache;
+	private final RequestBatcher batcher;
+
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final AtomicLong connectionCount = new AtomicLong();
+
+	private ServerSocketChannel channel;
+	private Path socketFile;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a server with its own {@link ExpressionCache} of the default capacity,
+	 * evaluating at most {@link #DEFAULT_MAX_BATCH_SIZE} requests in one pass.
+	 */
+	public EvaluationServer(){
+		this(new ExpressionCache(), DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a server compiling formulas through the given cache.
+	 *
+	 * @param cache The cache through which formulas are compiled.
+	 * @param maxBatchSize The maximum number of requests evaluated in one pass.
+	 *
+	 * @throws IllegalArgumentException If the maximum batch size is less than 1.
+	 */
+	public EvaluationServer(ExpressionCache cache, int maxBatchSize){
+
+		if(maxBatchSize < 1){
+			throw new IllegalArgumentException("Batch size must be at least 1: " + maxBatchSize);
+		}
+
+		this.cache = cache;
+		this.batcher = new RequestBatcher(cache, maxBatchSize);
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Starts the server on the given TCP port on every interface, or on the given Unix
+	 * domain socket. Connections are accepted by a thread of their own, which keeps the
+	 * JVM running until the server is closed.
+	 *
+	 * @param address An {@link InetSocketAddress}, with port 0 for any free port, or a
+	 * 		{@link UnixDomainSocketAddress} whose file does not exist yet.
+	 *
+	 * @return The address the server listens on.
+	 *
+	 * @throws IOException If the server could not listen on the address.
+	 * @throws IllegalStateException If the server was already started.
+	 */
+	public synchronized SocketAddress start(SocketAddress address) throws IOException{
+
+		if(this.channel != null){
+			throw new IllegalStateException("Server already started");
+		}
+
+		boolean unix = address instanceof UnixDomainSocketAddress;
+
+		this.channel = ServerSocketChannel.open(unix ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+		this.channel.bind(address);
+		this.socketFile = unix ? ((UnixDomainSocketAddress) address).getPath() : null;
+
+		Thread.ofPlatform().name("expressionparser-server-acceptor").start(this::accept);
+
+		return this.channel.getLocalAddress();
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones.
+	 */
+	@Override
+	public synchronized void close(){
+
+		if(this.channel == null){
+			return;
+		}
+
+		try{
+			this.channel.close();
+			if(this.socketFile != null){
+				Files.deleteIfExists(this.socketFile);
+			}
+		}catch(IOException e){
+			//the server is closed either way
+		}
+
+		for(Connection connection : this.connections){
+			connection.close();
+		}
+	}
+
+	/**
+	 * @return The cache through which formulas are compiled.
+	 */
+	public ExpressionCache getCache(){
+		return this.cache;
+	}
+
+	/**
+	 * @return The number of connections accepted so far.
+	 */
+	public long getConnectionCount(){
+		return this.connectionCount.get();
+	}
+
+	/**
+	 * @return The number of connections currently open.
+	 */
+	public int getOpenConnectionCount(){
+		return this.connections.size();
+	}
+
+	/**
+	 * @return The number of requests received.
+	 */
+	public long getRequestCount(){
+		return this.batcher.getRequestCount();
+	}
+
+	/**
+	 * @return The number of passes which evaluated requests. The number of requests
+	 * 		divided by this number is the average size of the micro-batches.
+	 */
+	public long getBatchCount(){
+		return this.batcher.getBatchCount();
+	}
+
+	/**
+	 * @return The number of requests answered with an error.
+	 */
+	public long getErrorCount(){
+		return this.batcher.getErrorCount();
+	}
+
+	@Override
+	public String toString(){
+		return "connections=" + this.getConnectionCount() + ", requests=" + this.getRequestCount() +
+				", batches=" + this.getBatchCount() + ", errors=" + this.getErrorCount() + ", " + this.cache;
+	}
+
+	/**
+	 * Starts a server until the JVM is stopped.
+	 *
+	 * <br><br>Options: <code>--port N</code> (default {@value #DEFAULT_PORT}) or
+	 * <code>--unix PATH</code>, <code>--batch N</code> for the maximum batch size and
+	 * <code>--cache N</code> for the capacity of the cache.
+	 *
+	 * @param args The options.
+	 *
+	 * @throws IOException If the server could not listen on the address.
+	 */
+	public static void main(String[] args) throws IOException{
+
+		SocketAddress address = new InetSocketAddress(DEFAULT_PORT);
+		int batch = DEFAULT_MAX_BATCH_SIZE;
+		int capacity = ExpressionCache.DEFAULT_CAPACITY;
+
+		for(int i = 0; i + 1 < args.length; i += 2){
+			switch(args[i]){
+
+				case "--port":
+					address = new InetSocketAddress(Integer.parseInt(args[i + 1]));
+					break;
+
+				case "--unix":
+					address = UnixDomainSocketAddress.of(args[i + 1]);
+					break;
+
+				case "--batch":
+					batch = Integer.parseInt(args[i + 1]);
+					break;
+
+				case "--cache":
+					capacity = Integer.parseInt(args[i + 1]);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		EvaluationServer server = new EvaluationServer(new ExpressionCache(capacity), batch);
+		System.out.println("Listening on " + server.start(address));
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			System.out.println(server);
+		}));
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Hands a request read from a connection to the batcher.
+	 *
+	 * @param request The request.
+	 */
+	void submit(Protocol.Request request){
+		this.batcher.submit(request);
+	}
+
+	/**
+	 * Forgets a connection which was closed.
+	 *
+	 * @param connection The connection.
+	 */
+	void closed(Connection connection){
+		this.connections.remove(connection);
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Accepts connections until the server is closed. A connection which cannot be
+	 * accepted, for instance because the process ran out of file descriptors, is
+	 * reported and the server keeps accepting after a pause.
+	 */
+	private void accept(){
+
+		while(true){
+			SocketChannel accepted;
+			try{
+				accepted = this.channel.accept();
+			}catch(IOException e){
+				if(!this.channel.isOpen()){
+					return;
+				}
+
+				System.err.println("Could not accept a connection: " + e);
+				try{
+					Thread.sleep(ACCEPT_RETRY_MILLIS);
+				}catch(InterruptedException interrupted){
+					return;
+				}
+
+				continue;
+			}
+
+			//responses are flushed once per batch, so waiting to fill packets only adds latency
+			if(this.socketFile == null){
+				try{
+					accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				}catch(IOException e){
+					//the client went away already, its reader will find out
+				}
+			}
+
+			Connection connection = new Connection(this, accepted);
+			this.connections.add(connection);
+			this.connectionCount.incrementAndGet();
+			connection.start();
+
+			//the server was closed while the connection was being registered
+			if(!this.channel.isOpen()){
+				connection.close();
+			}
+		}
+	}
+}
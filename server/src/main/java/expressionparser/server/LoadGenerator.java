@@ -0,0 +1,438 @@
+package expressionparser.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the throughput and latency of an {@link EvaluationServer}. Each connection
+ * keeps a window of requests in flight, for formulas picked at random among a few
+ * with two variables, and the latency of every request is measured from the moment it
+ * is written to the moment its response is read. Requests sent during the warm-up are
+ * not counted.
+ *
+ * <br><br>Example: <code>java -cp server/target/server.jar expressionparser.server.LoadGenerator
+ * --port 7341 --connections 16 --window 64</code>. Without <code>--port</code> or
+ * <code>--unix</code>, a server is started in the same JVM on a free port.
+ *
+ * @author David Boivin
+ */
+public class LoadGenerator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	public static final int DEFAULT_CONNECTIONS = 16;
+	public static final int DEFAULT_WINDOW = 64;
+	public static final int DEFAULT_FORMULAS = 4;
+	public static final int DEFAULT_WARMUP_SECONDS = 2;
+	public static final int DEFAULT_DURATION_SECONDS = 10;
+
+	private static final byte[][] VARIABLES = {Protocol.toBytes("x"), Protocol.toBytes("y")};
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final SocketAddress address;
+	private final int connections;
+	private final int window;
+	private final byte[][] formulas;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * Creates a load generator for the server at the given address.
+	 *
+	 * @param address The address of the server, an {@link InetSocketAddress} or a
+	 * 		{@link UnixDomainSocketAddress}.
+	 * @param connections The number of connections to open.
+	 * @param window The number of requests each connection keeps in flight.
+	 * @param formulas The number of different formulas to send.
+	 *
+	 * @throws IllegalArgumentException If a number is less than 1.
+	 */
+	public LoadGenerator(SocketAddress address, int connections, int window, int formulas){
+
+		if(connections < 1 || window < 1 || formulas < 1){
+			throw new IllegalArgumentException("Invalid connections " + connections + ", window " + window +
+					" or formulas " + formulas);
+		}
+
+		this.address = address;
+		this.connections = connections;
+		this.window = window;
+		this.formulas = new byte[formulas][];
+		for(int i = 0; i < formulas; ++i){
+			this.formulas[i] = Protocol.toBytes("(x + " + (i + 1) + ") * y - x / " + (i + 2));
+		}
+	}
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Sends requests from every connection for the given time and measures them.
+	 *
+	 * @param warmup The time during which requests are sent but not measured.
+	 * @param duration The time during which requests are measured.
+	 * @param unit The unit of the times.
+	 *
+	 * @return The measures.
+	 *
+	 * @throws IOException If a connection could not be opened.
+	 * @throws InterruptedException If the thread was interrupted while waiting for the
+	 * 		connections.
+	 */
+	public Result run(long warmup, long duration, TimeUnit unit) throws IOException, InterruptedException{
+
+		long measureStart = System.nanoTime() + unit.toNanos(warmup);
+		long measureEnd = measureStart + unit.toNanos(duration);
+
+		Client[] clients = new Client[this.connections];
+		for(int i = 0; i < clients.length; ++i){
+			clients[i] = new Client(SocketChannel.open(this.address), i);
+		}
+
+		Thread[] threads = new Thread[2 * clients.length];
+		for(int i = 0; i < clients.length; ++i){
+			Client client = clients[i];
+			threads[2 * i] = Thread.ofVirtual().start(() -> client.receive(measureStart, measureEnd));
+			threads[2 * i + 1] = Thread.ofVirtual().start(() -> client.send(measureEnd));
+		}
+
+		for(Thread thread : threads){
+			thread.join();
+		}
+
+		Histogram latencies = new Histogram();
+		long errors = 0;
+		for(Client client : clients){
+			latencies.add(client.latencies);
+			errors += client.errors;
+		}
+
+		return new Result(latencies, errors, measureEnd - measureStart);
+	}
+
+	/**
+	 * Runs a load generator and prints its measures.
+	 *
+	 * <br><br>Options: <code>--port N</code> and <code>--host H</code> (default
+	 * localhost), or <code>--unix PATH</code>, <code>--connections N</code>,
+	 * <code>--window N</code>, <code>--formulas N</code>, <code>--warmup S</code> and
+	 * <code>--duration S</code>.
+	 *
+	 * @param args The options.
+	 *
+	 * @throws IOException If a connection could not be opened.
+	 * @throws InterruptedException If the thread was interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException{
+
+		String host = "localhost";
+		int port = -1;
+		String unix = null;
+		int connections = DEFAULT_CONNECTIONS;
+		int window = DEFAULT_WINDOW;
+		int formulas = DEFAULT_FORMULAS;
+		int warmup = DEFAULT_WARMUP_SECONDS;
+		int duration = DEFAULT_DURATION_SECONDS;
+
+		for(int i = 0; i + 1 < args.length; i += 2){
+			String value = args[i + 1];
+			switch(args[i]){
+
+				case "--host":
+					host = value;
+					break;
+
+				case "--port":
+					port = Integer.parseInt(value);
+					break;
+
+				case "--unix":
+					unix = value;
+					break;
+
+				case "--connections":
+					connections = Integer.parseInt(value);
+					break;
+
+				case "--window":
+					window = Integer.parseInt(value);
+					break;
+
+				case "--formulas":
+					formulas = Integer.parseInt(value);
+					break;
+
+				case "--warmup":
+					warmup = Integer.parseInt(value);
+					break;
+
+				case "--duration":
+					duration = Integer.parseInt(value);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		//without an address, measure a server running in this JVM
+		EvaluationServer server = null;
+		SocketAddress address;
+		if(unix != null){
+			address = UnixDomainSocketAddress.of(unix);
+		}else if(port >= 0){
+			address = new InetSocketAddress(host, port);
+		}else{
+			server = new EvaluationServer();
+			address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		}
+
+		System.out.println("Server " + address + ", connections=" + connections + ", window=" + window +
+				", formulas=" + formulas + ", warmup=" + warmup + "s, duration=" + duration + "s");
+
+		Result result = new LoadGenerator(address, connections, window, formulas)
+				.run(warmup, duration, TimeUnit.SECONDS);
+		System.out.println(result);
+
+		if(server != null){
+			server.close();
+			System.out.println("Server: " + server);
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * The measures of a run.
+	 */
+	public static final class Result {
+
+		private final Histogram latencies;
+		private final long errors;
+		private final long nanos;
+
+		private Result(Histogram latencies, long errors, long nanos){
+			this.latencies = latencies;
+			this.errors = errors;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return The number of requests measured.
+		 */
+		public long getRequestCount(){
+			return this.latencies.count;
+		}
+
+		/**
+		 * @return The number of responses which were errors, warm-up included.
+		 */
+		public long getErrorCount(){
+			return this.errors;
+		}
+
+		/**
+		 * @return The number of requests measured per second.
+		 */
+		public double getRequestsPerSecond(){
+			return this.latencies.count * 1e9 / this.nanos;
+		}
+
+		/**
+		 * @param percentile The percentile, from 0 to 100.
+		 *
+		 * @return The latency under which the given percentage of the requests were
+		 * 		answered, in microseconds.
+		 */
+		public long getLatencyMicros(double percentile){
+			return this.latencies.percentile(percentile);
+		}
+
+		@Override
+		public String toString(){
+			return String.format("requests=%d, errors=%d, throughput=%.0f req/s, latency us: p50=%d p90=%d " +
+					"p99=%d p99.9=%d max=%d", this.getRequestCount(), this.errors, this.getRequestsPerSecond(),
+					this.getLatencyMicros(50), this.getLatencyMicros(90), this.getLatencyMicros(99),
+					this.getLatencyMicros(99.9), this.latencies.max);
+		}
+	}
+
+	/**
+	 * One connection to the server, with a thread writing requests and a thread reading
+	 * their responses. The id of a request is the slot of the window it occupies, which
+	 * is given back when its response is read.
+	 */
+	private final class Client {
+
+		private final SocketChannel channel;
+		private final Random random;
+
+		private final ArrayBlockingQueue<Integer> free;
+		private final AtomicLongArray sendTimes;
+
+		//only written by the reading thread, read once both threads are done
+		private final Histogram latencies = new Histogram();
+		private long errors;
+
+		private Client(SocketChannel channel, int seed) throws IOException{
+
+			if(!(LoadGenerator.this.address instanceof UnixDomainSocketAddress)){
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+
+			this.channel = channel;
+			this.random = new Random(seed);
+			this.free = new ArrayBlockingQueue<>(LoadGenerator.this.window);
+			this.sendTimes = new AtomicLongArray(LoadGenerator.this.window);
+			for(int i = 0; i < LoadGenerator.this.window; ++i){
+				this.free.add(i);
+			}
+		}
+
+		/**
+		 * Writes requests until the end of the run, then waits for their responses and
+		 * closes the connection.
+		 *
+		 * @param end The end of the run.
+		 */
+		private void send(long end){
+
+			byte[][] formulas = LoadGenerator.this.formulas;
+			double[] values = new double[2];
+
+			try{
+				DataOutputStream out = Protocol.output(this.channel);
+
+				while(System.nanoTime() < end){
+
+					//flush only when the window is full, so requests leave in groups
+					Integer slot = this.free.poll();
+					if(slot == null){
+						out.flush();
+						slot = this.free.poll(10, TimeUnit.SECONDS);
+						if(slot == null){
+							break;
+						}
+					}
+
+					values[0] = this.random.nextDouble() * 100;
+					values[1] = this.random.nextDouble() * 100;
+					this.sendTimes.set(slot, System.nanoTime());
+					Protocol.writeRequest(out, slot, formulas[this.random.nextInt(formulas.length)], VARIABLES, values);
+				}
+
+				out.flush();
+
+				//wait for the responses still in flight
+				for(int i = 0; i < LoadGenerator.this.window; ++i){
+					if(this.free.poll(10, TimeUnit.SECONDS) == null){
+						break;
+					}
+				}
+			}catch(IOException | InterruptedException e){
+				//the connection is closed below
+			}
+
+			try{
+				this.channel.close();
+			}catch(IOException e){
+				//nothing left to do with the channel
+			}
+		}
+
+		/**
+		 * Reads responses until the connection is closed.
+		 *
+		 * @param start The start of the measures.
+		 * @param end The end of the measures.
+		 */
+		private void receive(long start, long end){
+
+			try{
+				DataInputStream in = Protocol.input(this.channel);
+
+				while(true){
+					in.readInt();
+					int id = in.readInt();
+					if(in.readByte() == Protocol.STATUS_OK){
+						in.readDouble();
+					}else{
+						in.skipBytes(in.readUnsignedShort());
+						++this.errors;
+					}
+
+					long sent = this.sendTimes.get(id);
+					if(sent >= start && sent < end){
+						this.latencies.record(System.nanoTime() - sent);
+					}
+
+					this.free.add(id);
+				}
+			}catch(IOException e){
+				//the connection was closed by the sending thread or by the server
+			}
+		}
+	}
+
+	/**
+	 * Counts latencies in buckets of 1 microsecond up to 10 milliseconds, then of 100
+	 * microseconds up to 1 second. Longer latencies are counted in a last bucket.
+	 */
+	private static final class Histogram {
+
+		private static final int FINE_BUCKETS = 10000;
+		private static final int COARSE_BUCKETS = 10000;
+		private static final int COARSE_WIDTH = 100;
+
+		private final long[] counts = new long[FINE_BUCKETS + COARSE_BUCKETS + 1];
+		private long count;
+		private long max;
+
+		private void record(long nanos){
+
+			long micros = nanos / 1000;
+			int bucket = micros < FINE_BUCKETS ? (int) micros :
+					(int) Math.min(FINE_BUCKETS + (micros - FINE_BUCKETS) / COARSE_WIDTH, FINE_BUCKETS + COARSE_BUCKETS);
+
+			++this.counts[bucket];
+			++this.count;
+			this.max = Math.max(this.max, micros);
+		}
+
+		private void add(Histogram other){
+
+			for(int i = 0; i < this.counts.length; ++i){
+				this.counts[i] += other.counts[i];
+			}
+
+			this.count += other.count;
+			this.max = Math.max(this.max, other.max);
+		}
+
+		private long percentile(double percentile){
+
+			long rank = (long) Math.ceil(percentile / 100 * this.count);
+			long seen = 0;
+
+			for(int i = 0; i < this.counts.length - 1; ++i){
+				seen += this.counts[i];
+				if(seen >= rank && seen > 0){
+					return i < FINE_BUCKETS ? i : FINE_BUCKETS + (long) (i - FINE_BUCKETS) * COARSE_WIDTH;
+				}
+			}
+
+			return this.max;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package expressionparser.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The binary protocol of the {@link EvaluationServer}. Every message is a frame: its
+ * length in bytes, not counting the length itself, followed by its body. Numbers are
+ * big-endian, strings are their length in bytes as an unsigned 16 bit integer followed
+ * by their UTF-8 bytes, and values are IEEE 754 doubles.
+ *
+ * <br><br>A request is <code>int length, int id, string formula, u8 count, count
+ * strings (the names of the variables, in slot order), count doubles (their values)</code>.
+ * A response is <code>int length, int id, u8 status</code> followed by the result as a
+ * double when the status is {@link #STATUS_OK}, or by the error message as a string when
+ * it is {@link #STATUS_ERROR}.
+ *
+ * <br><br>A client may send any number of requests without waiting for their responses.
+ * Responses carry the id of their request and are not sent in the order of the requests.
+ *
+ * @author David Boivin
+ */
+final class Protocol {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_ERROR = 1;
+
+	//longer frames are taken as a broken client
+	static final int MAX_FRAME_LENGTH = 1 << 20;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private Protocol(){
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @param channel A connected channel.
+	 *
+	 * @return A buffered stream reading from the channel.
+	 */
+	static DataInputStream input(SocketChannel channel){
+		return new DataInputStream(new BufferedInputStream(new ChannelInput(channel), BUFFER_SIZE));
+	}
+
+	/**
+	 * @param channel A connected channel.
+	 *
+	 * @return A buffered stream writing to the channel. Nothing is sent until it is flushed.
+	 */
+	static DataOutputStream output(SocketChannel channel){
+		return new DataOutputStream(new BufferedOutputStream(new ChannelOutput(channel), BUFFER_SIZE));
+	}
+
+	/**
+	 * Reads the next request.
+	 *
+	 * @param in The stream to read from.
+	 *
+	 * @return The request, or <b>null</b> if the stream ended between two frames.
+	 *
+	 * @throws IOException If the stream could not be read or does not hold a valid request.
+	 */
+	static Request readRequest(DataInputStream in) throws IOException{
+
+		int length;
+		try{
+			length = in.readInt();
+		}catch(EOFException e){
+			return null;
+		}
+
+		if(length < 7 || length > MAX_FRAME_LENGTH){
+			throw new IOException("Invalid frame length " + length);
+		}
+
+		int id = in.readInt();
+		int read = 4;
+
+		//the bytes read so far are checked against the frame before anything is allocated
+		byte[] formula = Protocol.readBytes(in, length - read - 2);
+		read += 2 + formula.length;
+
+		Protocol.checkLength(length, read + 1);
+		int count = in.readUnsignedByte();
+		read += 1 + 8 * count;
+		Protocol.checkLength(length, read);
+
+		String[] variables = new String[count];
+		for(int i = 0; i < count; ++i){
+			byte[] variable = Protocol.readBytes(in, length - read - 2);
+			variables[i] = new String(variable, StandardCharsets.UTF_8);
+			read += 2 + variable.length;
+		}
+
+		if(read != length){
+			throw new IOException("Frame length " + length + " does not match its " + read + " bytes");
+		}
+
+		double[] values = new double[count];
+		for(int i = 0; i < count; ++i){
+			values[i] = in.readDouble();
+		}
+
+		return new Request(id, new String(formula, StandardCharsets.UTF_8), variables, values);
+	}
+
+	/**
+	 * Writes a request, without flushing it.
+	 *
+	 * @param out The stream to write to.
+	 * @param id The id of the request.
+	 * @param formula The formula to evaluate.
+	 * @param variables The names of the variables, in slot order.
+	 * @param values The values of the variables.
+	 *
+	 * @throws IOException If the stream could not be written.
+	 */
+	static void writeRequest(DataOutputStream out, int id, byte[] formula, byte[][] variables, double[] values)
+			throws IOException{
+
+		int length = 4 + 2 + formula.length + 1 + 8 * values.length;
+		for(byte[] variable : variables){
+			length += 2 + variable.length;
+		}
+
+		out.writeInt(length);
+		out.writeInt(id);
+		out.writeShort(formula.length);
+		out.write(formula);
+		out.writeByte(variables.length);
+		for(byte[] variable : variables){
+			out.writeShort(variable.length);
+			out.write(variable);
+		}
+		for(double value : values){
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Writes the response to a request which was evaluated, without flushing it.
+	 *
+	 * @param out The stream to write to.
+	 * @param id The id of the request.
+	 * @param value The result.
+	 *
+	 * @throws IOException If the stream could not be written.
+	 */
+	static void writeResult(DataOutputStream out, int id, double value) throws IOException{
+		out.writeInt(4 + 1 + 8);
+		out.writeInt(id);
+		out.writeByte(STATUS_OK);
+		out.writeDouble(value);
+	}
+
+	/**
+	 * Writes the response to a request which could not be evaluated, without flushing it.
+	 *
+	 * @param out The stream to write to.
+	 * @param id The id of the request.
+	 * @param message Why the request could not be evaluated.
+	 *
+	 * @throws IOException If the stream could not be written.
+	 */
+	static void writeError(DataOutputStream out, int id, String message) throws IOException{
+
+		byte[] bytes = Protocol.toBytes(message);
+
+		out.writeInt(4 + 1 + 2 + bytes.length);
+		out.writeInt(id);
+		out.writeByte(STATUS_ERROR);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Gives the UTF-8 bytes of a string, cut to the longest length a frame can hold.
+	 *
+	 * @param string The string.
+	 *
+	 * @return The bytes.
+	 */
+	static byte[] toBytes(String string){
+
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > 0xFFFF){
+			bytes = Arrays.copyOf(bytes, 0xFFFF);
+		}
+
+		return bytes;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Reads a string as its bytes.
+	 *
+	 * @param in The stream to read from.
+	 * @param remaining The number of bytes left in the frame for the string itself.
+	 *
+	 * @return The bytes of the string.
+	 *
+	 * @throws IOException If the stream could not be read or if the string does not fit
+	 * 		in the rest of the frame.
+	 */
+	private static byte[] readBytes(DataInputStream in, int remaining) throws IOException{
+
+		if(remaining < 0){
+			throw new IOException("Frame too short for its strings");
+		}
+
+		int length = in.readUnsignedShort();
+		if(length > remaining){
+			throw new IOException("String of " + length + " bytes past the end of its frame");
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return bytes;
+	}
+
+	/**
+	 * @param length The length of the frame.
+	 * @param read The number of bytes of the frame read or to be read.
+	 *
+	 * @throws IOException If the frame is shorter than the bytes read.
+	 */
+	private static void checkLength(int length, int read) throws IOException{
+		if(read > length){
+			throw new IOException("Frame length " + length + " is shorter than its " + read + " bytes");
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * A request read from a connection, which also holds its result once evaluated.
+	 */
+	static final class Request {
+
+		final int id;
+		final String formula;
+		final String[] variables;
+		final double[] values;
+
+		//the connection the request came from, to which its response is sent
+		Connection connection;
+
+		double result;
+		String error;
+
+		Request(int id, String formula, String[] variables, double[] values){
+			this.id = id;
+			this.formula = formula;
+			this.variables = variables;
+			this.values = values;
+		}
+
+		/**
+		 * Sends the result of the request back to its connection.
+		 *
+		 * @param result The result.
+		 */
+		void complete(double result){
+			this.result = result;
+			this.connection.send(this);
+		}
+
+		/**
+		 * Sends an error back to the connection of the request.
+		 *
+		 * @param error Why the request could not be evaluated.
+		 */
+		void fail(String error){
+			this.error = error == null ? "Evaluation failed" : error;
+			this.connection.send(this);
+		}
+
+		/**
+		 * Writes the response to the request, without flushing it.
+		 *
+		 * @param out The stream to write to.
+		 *
+		 * @throws IOException If the stream could not be written.
+		 */
+		void writeResponse(DataOutputStream out) throws IOException{
+			if(this.error == null){
+				Protocol.writeResult(out, this.id, this.result);
+			}else{
+				Protocol.writeError(out, this.id, this.error);
+			}
+		}
+	}
+
+	/**
+	 * Reads a socket channel straight into the array of the reader, so that the channel
+	 * can be written by another thread at the same time. The streams of
+	 * {@link java.nio.channels.Channels} lock the channel for reading and writing alike.
+	 */
+	private static final class ChannelInput extends InputStream {
+
+		private final SocketChannel channel;
+
+		private ChannelInput(SocketChannel channel){
+			this.channel = channel;
+		}
+
+		@Override
+		public int read() throws IOException{
+			byte[] b = new byte[1];
+			return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException{
+			return length == 0 ? 0 : this.channel.read(ByteBuffer.wrap(b, offset, length));
+		}
+
+		@Override
+		public void close() throws IOException{
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Writes an array to a socket channel, see {@link ChannelInput}.
+	 */
+	private static final class ChannelOutput extends OutputStream {
+
+		private final SocketChannel channel;
+
+		private ChannelOutput(SocketChannel channel){
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(int b) throws IOException{
+			this.write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException{
+
+			ByteBuffer buffer = ByteBuffer.wrap(b, offset, length);
+			while(buffer.hasRemaining()){
+				this.channel.write(buffer);
+			}
+		}
+
+		@Override
+		public void close() throws IOException{
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package expressionparser.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import expressionparser.CompiledExpression;
+import expressionparser.ExpressionCache;
+import expressionparser.server.Protocol.Request;
+
+/**
+ * Groups the requests for the same formula into micro-batches, evaluated in one pass
+ * with {@link CompiledExpression#evaluate(double[][], double[])}. Formulas are compiled
+ * through an {@link ExpressionCache}, so requests for the same formula and variables,
+ * from any connection, share the same {@link CompiledExpression} and the same batch.
+ *
+ * <br><br>Batches are not made by waiting: the first request for a formula starts a
+ * virtual thread which evaluates it at once, and the requests arriving for the same
+ * formula in the meantime are evaluated together in its next pass, up to the maximum
+ * batch size. Under a light load every request is evaluated alone without delay, and
+ * the batches grow with the load.
+ *
+ * @author David Boivin
+ */
+final class RequestBatcher {
+
+// Fields -------------------------------------------------------------------------------------- //
+
+	private final ExpressionCache cache;
+	private final int maxBatchSize;
+
+	//the batches of the formulas being evaluated, removed once they are empty
+	private final ConcurrentHashMap<CompiledExpression, Batch> batches = new ConcurrentHashMap<>();
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	/**
+	 * @param cache The cache through which formulas are compiled.
+	 * @param maxBatchSize The maximum number of requests evaluated in one pass.
+	 */
+	RequestBatcher(ExpressionCache cache, int maxBatchSize){
+		this.cache = cache;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Compiles the formula of a request and queues the request in the batch of the
+	 * formula. Requests whose formula cannot be compiled fail at once.
+	 *
+	 * @param request The request.
+	 */
+	void submit(Request request){
+
+		this.requestCount.incrementAndGet();
+
+		CompiledExpression compiled;
+		try{
+			compiled = this.cache.get(request.formula, request.variables);
+		}catch(IllegalArgumentException e){
+			this.errorCount.incrementAndGet();
+			request.fail(e.getMessage());
+			return;
+		}
+
+		if(compiled.getVariables().length != request.values.length){
+			this.errorCount.incrementAndGet();
+			request.fail("Expected " + compiled.getVariables().length + " values but got " +
+					request.values.length);
+			return;
+		}
+
+		while(true){
+			Batch batch = this.batches.computeIfAbsent(compiled, Batch::new);
+
+			boolean start;
+			synchronized(batch){
+
+				//the batch emptied and left the map after it was looked up
+				if(batch.removed){
+					continue;
+				}
+
+				batch.pending.add(request);
+				start = !batch.running;
+				batch.running = true;
+			}
+
+			if(start){
+				Thread.ofVirtual().name("expressionparser-server-batch").start(() -> this.drain(batch));
+			}
+
+			return;
+		}
+	}
+
+	/**
+	 * @return The number of requests submitted.
+	 */
+	long getRequestCount(){
+		return this.requestCount.get();
+	}
+
+	/**
+	 * @return The number of passes which evaluated requests.
+	 */
+	long getBatchCount(){
+		return this.batchCount.get();
+	}
+
+	/**
+	 * @return The number of requests which could not be evaluated.
+	 */
+	long getErrorCount(){
+		return this.errorCount.get();
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates the requests of a batch until no more arrive, then removes the batch.
+	 *
+	 * @param batch The batch.
+	 */
+	private void drain(Batch batch){
+
+		while(true){
+			List<Request> requests;
+
+			synchronized(batch){
+				if(batch.pending.isEmpty()){
+					batch.running = false;
+					batch.removed = true;
+					this.batches.remove(batch.compiled, batch);
+					return;
+				}
+
+				if(batch.pending.size() <= this.maxBatchSize){
+					requests = batch.pending;
+					batch.pending = new ArrayList<>();
+				}else{
+					List<Request> head = batch.pending.subList(0, this.maxBatchSize);
+					requests = new ArrayList<>(head);
+					head.clear();
+				}
+			}
+
+			this.batchCount.incrementAndGet();
+			this.evaluate(batch.compiled, requests);
+		}
+	}
+
+	/**
+	 * Evaluates requests for the same compiled expression and sends their responses.
+	 *
+	 * @param compiled The compiled expression.
+	 * @param requests The requests.
+	 */
+	private void evaluate(CompiledExpression compiled, List<Request> requests){
+
+		int count = requests.size();
+
+		try{
+			if(count == 1){
+				Request request = requests.get(0);
+				request.complete(compiled.evaluate(request.values));
+				return;
+			}
+
+			//one column per variable, one row per request
+			double[][] columns = new double[compiled.getVariables().length][count];
+			for(int row = 0; row < count; ++row){
+				double[] values = requests.get(row).values;
+				for(int slot = 0; slot < columns.length; ++slot){
+					columns[slot][row] = values[slot];
+				}
+			}
+
+			double[] output = new double[count];
+			compiled.evaluate(columns, output);
+
+			for(int row = 0; row < count; ++row){
+				requests.get(row).complete(output[row]);
+			}
+		}catch(RuntimeException e){
+			this.errorCount.addAndGet(count);
+			for(Request request : requests){
+				request.fail(e.getMessage());
+			}
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * The requests waiting for the same compiled expression.
+	 */
+	private static final class Batch {
+
+		private final CompiledExpression compiled;
+
+		private List<Request> pending = new ArrayList<>();
+		private boolean running;
+		private boolean removed;
+
+		private Batch(CompiledExpression compiled){
+			this.compiled = compiled;
+		}
+	}
+}
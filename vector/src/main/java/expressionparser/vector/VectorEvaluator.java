@@ -0,0 +1,156 @@
+package expressionparser.vector;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionProgram;
+
+/**
+ * Evaluates an {@link ExpressionProgram} over whole columns of values with the SIMD
+ * instructions of the CPU, through the incubating Vector API
+ * (<code>jdk.incubator.vector</code>). It takes the same columns as the
+ * {@link BatchEvaluator} and gives bit for bit the same results: <b>+ - * /</b> and
+ * the unary <b>-</b> are computed over as many rows at once as the widest vectors
+ * of the CPU hold (4 doubles with AVX2, 8 with AVX-512), and the rows left over at
+ * the end of a block are computed one by one with the same arithmetic. <b>^</b> and
+ * the functions are computed one row at a time with {@link Math}, as the Vector API
+ * versions of them are not rounded exactly like those of {@link Math}.
+ *
+ * <br><br>Unlike the {@link BatchEvaluator}, variables are read straight from their
+ * columns and constants are never written out to a block, so only the results of
+ * the operators go through the operand stack. The result of the last operator is
+ * written straight into the output column.
+ *
+ * <br><br>The Vector API is only usable when the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>. Without it, or when the system
+ * property <code>expressionparser.vector</code> is <code>false</code>, or when the
+ * CPU has no vector instructions, every program is handed to the {@link BatchEvaluator}
+ * instead, as are programs calling registered functions.
+ *
+ * @author David Boivin
+ */
+public class VectorEvaluator {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	/**
+	 * The system property which turns the Vector API off when set to <code>false</code>.
+	 */
+	public static final String ENABLED_PROPERTY = "expressionparser.vector";
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	private static final boolean AVAILABLE = VectorEvaluator.checkAvailable();
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	/**
+	 * Evaluates the given program for every row of the output column.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is shorter than the output column.
+	 */
+	public static void evaluate(ExpressionProgram program, double[][] columns, double[] output){
+		VectorEvaluator.evaluate(program, columns, output, 0, output.length);
+	}
+
+	/**
+	 * Evaluates the given program for the given range of rows. Row <code>i</code> of
+	 * the result is written at <code>output[i]</code> and is computed from
+	 * <code>columns[slot][i]</code>.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If there are fewer columns than variables or
+	 * 		if a column is too short for the given range.
+	 */
+	public static void evaluate(ExpressionProgram program, double[][] columns, double[] output,
+			int from, int to){
+
+		if(!AVAILABLE || program.length() == 0 || program.getFunctionCount() > 0){
+			BatchEvaluator.evaluate(program, columns, output, from, to);
+			return;
+		}
+
+		VectorEvaluator.checkColumns(program, columns, output, from, to);
+		VectorKernels.evaluate(program, columns, output, from, to);
+	}
+
+	/**
+	 * @return This method returns <b>true</b> if programs are evaluated with the Vector
+	 * 		API and returns <b>false</b> if they are handed to the {@link BatchEvaluator}.
+	 */
+	public static boolean isAvailable(){
+		return AVAILABLE;
+	}
+
+	/**
+	 * @return The number of rows computed at once by each vector instruction, or 1 if
+	 * 		the Vector API is not available.
+	 */
+	public static int getLaneCount(){
+		return AVAILABLE ? VectorKernels.getLaneCount() : 1;
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Makes sure that the columns can be evaluated over the given range, with the
+	 * same messages as the {@link BatchEvaluator}.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @throws IllegalArgumentException If the columns do not fit the program or the range.
+	 */
+	private static void checkColumns(ExpressionProgram program, double[][] columns, double[] output,
+			int from, int to){
+
+		if(from < 0 || from > to || to > output.length){
+			throw new IllegalArgumentException("Invalid row range [" + from + ", " + to +
+					") for " + output.length + " output rows");
+		}
+
+		if(columns.length < program.getVariableCount()){
+			throw new IllegalArgumentException("Expected " + program.getVariableCount() +
+					" columns but got " + columns.length);
+		}
+
+		for(int i = 0; i < program.getVariableCount(); ++i){
+			if(columns[i].length < to){
+				throw new IllegalArgumentException("Column of variable " + program.getVariable(i) +
+						" has " + columns[i].length + " rows instead of at least " + to);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the Vector API can be used. The classes using it are only loaded
+	 * once it is known to be there.
+	 *
+	 * @return This method returns <b>true</b> if the Vector API is usable and returns
+	 * 		<b>false</b> otherwise.
+	 */
+	private static boolean checkAvailable(){
+
+		if(!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")) ||
+				ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()){
+			return false;
+		}
+
+		try{
+			return VectorKernels.getLaneCount() > 1;
+		}catch(LinkageError e){
+			return false;
+		}
+	}
+}
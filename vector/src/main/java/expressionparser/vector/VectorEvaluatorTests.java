@@ -0,0 +1,194 @@
+package expressionparser.vector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionParser;
+import expressionparser.ExpressionProgram;
+
+/**
+ * Class created to test {@link VectorEvaluator}. Evaluates programs mixing constant,
+ * column and block operands with both the {@link VectorEvaluator} and the
+ * {@link BatchEvaluator} and makes sure that they give bit for bit the same results,
+ * over whole blocks as well as over the rows left over at the end of a block.
+ *
+ * <br><br>Run with <code>java --add-modules jdk.incubator.vector -cp
+ * ExpressionParser/target/classes:vector/target/classes
+ * expressionparser.vector.VectorEvaluatorTests</code>. Without the module, both sides
+ * are the {@link BatchEvaluator} and the tests say so.
+ *
+ * @author David Boivin
+ */
+public class VectorEvaluatorTests {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	//every operator against a constant, a column and a block on either side
+	private static final String[] EXPRESSIONS = {"x + y", "x - 2.5", "2.5 - x", "x * 3", "3 / x", "x / y",
+			"-x", "-(x * y)", "x + x", "(x + y) * (x - y)", "(x * 2) + y", "x - (y + 1)", "y / (x - 1)",
+			"(x + y) / 3 - 2 / (x * y)", "-y / -x", "1.5 * (x + y) - (x / y) * 0.5",
+			"x * y - y * x + (x - x) * 0", "x ^ 2 + sqrt(y) - sin(x * y)", "((x + 1) * (y - 1)) / ((x - y) * 0.1)",
+			"x", "7"};
+
+	//values for which an arithmetic mismatch would show: signed zeros, NaN, infinities, extremes
+	private static final double[] SPECIAL_VALUES = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, 1, -1};
+
+	//the last block has 907 rows, which leaves a tail for any number of lanes up to 8
+	private static final int ROWS = 5003;
+
+// Public Methods ------------------------------------------------------------------------------ //
+
+	public static void main(String[] args){
+
+		String e = new String();	//expected
+		String r = new String();	//result
+
+		System.out.println("Testing VectorEvaluator class\n");
+		System.out.println("Vector API available: " + VectorEvaluator.isAvailable() + ", lanes: " +
+				VectorEvaluator.getLaneCount() + "\n");
+
+		double[][] columns = VectorEvaluatorTests.columns(new Random(22), ROWS);
+
+		System.out.println("1. " + EXPRESSIONS.length + " expressions over " + ROWS +
+				" rows with special values, against BatchEvaluator");
+		int mismatches = 0;
+		for(String expression : EXPRESSIONS){
+			mismatches += VectorEvaluatorTests.compare(expression, columns, 0, ROWS);
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+
+		System.out.println("2. rows [3, 1027) and [3, 1030), one block starting off the lanes then a block " +
+				"shorter than the lanes, rows outside the range untouched");
+		mismatches = 0;
+		for(String expression : EXPRESSIONS){
+			mismatches += VectorEvaluatorTests.compare(expression, columns, 3, 1027) +
+					VectorEvaluatorTests.compare(expression, columns, 3, 1030);
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+
+		System.out.println("3. ranges shorter than the lanes and ending past a block: [0, 1), [5, 8), [1, 5002)");
+		mismatches = 0;
+		for(String expression : EXPRESSIONS){
+			mismatches += VectorEvaluatorTests.compare(expression, columns, 0, 1) +
+					VectorEvaluatorTests.compare(expression, columns, 5, 8) +
+					VectorEvaluatorTests.compare(expression, columns, 1, ROWS - 1);
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+
+		System.out.println("4. 200 random expressions of + - * / and unary - over " + ROWS + " rows");
+		Random random = new Random(2022);
+		mismatches = 0;
+		for(int i = 0; i < 200; ++i){
+			String expression = VectorEvaluatorTests.randomExpression(random, 4);
+			mismatches += VectorEvaluatorTests.compare(expression, columns, random.nextInt(8), ROWS - random.nextInt(8));
+		}
+		e = "mismatches=0";
+		r = "mismatches=" + mismatches;
+		System.out.println("Expected: " + e);
+		System.out.println("Result: " + r);
+		System.out.println("\t\t\t\t\tSuccess: " + e.equals(r));
+		System.out.println("\n");
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Evaluates an expression over a range of rows with both evaluators and counts the
+	 * rows of the output columns which differ, inside the range or out of it.
+	 *
+	 * @param expression The expression, in x and y.
+	 * @param columns The values of x and y.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 *
+	 * @return The number of rows which are not bit for bit the same.
+	 */
+	private static int compare(String expression, double[][] columns, int from, int to){
+
+		ExpressionProgram program = ExpressionParser.compile(expression, "x", "y").getProgram();
+
+		//rows outside the range must keep what was there
+		double[] expected = new double[ROWS];
+		double[] output = new double[ROWS];
+		Arrays.fill(expected, 42.0);
+		Arrays.fill(output, 42.0);
+
+		BatchEvaluator.evaluate(program, columns, expected, from, to);
+		VectorEvaluator.evaluate(program, columns, output, from, to);
+
+		int mismatches = 0;
+		for(int i = 0; i < ROWS; ++i){
+			if(Double.compare(output[i], expected[i]) != 0){
+				++mismatches;
+			}
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * @param random The source of the values.
+	 * @param rows The number of rows.
+	 *
+	 * @return Columns for x and y, with one value in eight taken from the special values.
+	 */
+	private static double[][] columns(Random random, int rows){
+
+		double[][] columns = new double[2][rows];
+		for(double[] column : columns){
+			for(int i = 0; i < rows; ++i){
+				column[i] = random.nextInt(8) == 0 ? SPECIAL_VALUES[random.nextInt(SPECIAL_VALUES.length)] :
+						(random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * @param random The source of the choices.
+	 * @param depth The deepest the expression may be nested.
+	 *
+	 * @return An expression in x, y and constants.
+	 */
+	private static String randomExpression(Random random, int depth){
+
+		if(depth == 0 || random.nextInt(4) == 0){
+			switch(random.nextInt(3)){
+
+				case 0:
+					return "x";
+
+				case 1:
+					return "y";
+
+				default:
+					return String.valueOf(random.nextInt(100) / 10.0);
+			}
+		}
+
+		if(random.nextInt(6) == 0){
+			return "-(" + VectorEvaluatorTests.randomExpression(random, depth - 1) + ")";
+		}
+
+		return "(" + VectorEvaluatorTests.randomExpression(random, depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) +
+				" " + VectorEvaluatorTests.randomExpression(random, depth - 1) + ")";
+	}
+}
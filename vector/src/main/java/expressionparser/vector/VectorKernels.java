@@ -0,0 +1,351 @@
+package expressionparser.vector;
+
+import expressionparser.BatchEvaluator;
+import expressionparser.ExpressionProgram;
+import expressionparser.ProgramEvaluator;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops of the {@link VectorEvaluator} written with the Vector API. This class
+ * is only loaded once the Vector API is known to be usable.
+ *
+ * <br><br>Each entry of the operand stack is a {@link Slot}: a constant, a column read
+ * in place, or a block of the stack holding the results of an operator. Every loop
+ * comes in three forms, for two blocks, a constant and a block, and a block and a
+ * constant, so that nothing is decided row by row.
+ *
+ * @author David Boivin
+ */
+final class VectorKernels {
+
+// Constants ----------------------------------------------------------------------------------- //
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+// Constructors -------------------------------------------------------------------------------- //
+
+	private VectorKernels(){
+	}
+
+// Package Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * @return The number of doubles held by the widest vectors of the CPU.
+	 */
+	static int getLaneCount(){
+		return LANES;
+	}
+
+	/**
+	 * Evaluates the given program for the given range of rows, one block of
+	 * {@link BatchEvaluator#BLOCK_SIZE} rows at a time. The program must have at least
+	 * one instruction and call no registered function, and the columns must have been
+	 * checked.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables, one column per slot of the program.
+	 * @param output The column in which to write the results.
+	 * @param from The first row to evaluate.
+	 * @param to The row after the last row to evaluate.
+	 */
+	static void evaluate(ExpressionProgram program, double[][] columns, double[] output, int from, int to){
+
+		Slot[] stack = new Slot[program.getMaxStackDepth()];
+		for(int i = 0; i < stack.length; ++i){
+			stack[i] = new Slot();
+		}
+
+		for(int start = from; start < to; start += BatchEvaluator.BLOCK_SIZE){
+			int count = Math.min(BatchEvaluator.BLOCK_SIZE, to - start);
+			VectorKernels.evaluateBlock(program, columns, output, stack, start, count);
+		}
+	}
+
+// Private Methods ----------------------------------------------------------------------------- //
+
+	/**
+	 * Runs every instruction of the program over one block of rows and writes the
+	 * results of the block into the output column.
+	 *
+	 * @param program The program to evaluate.
+	 * @param columns The values of the variables.
+	 * @param output The column in which to write the results.
+	 * @param stack The operand stack.
+	 * @param start The first row of the block.
+	 * @param count The number of rows in the block.
+	 */
+	private static void evaluateBlock(ExpressionProgram program, double[][] columns, double[] output,
+			Slot[] stack, int start, int count){
+
+		int length = program.length();
+		int top = -1;	//index of the top of the stack
+
+		for(int i = 0; i < length; ++i){
+
+			int opcode = program.getOpcode(i);
+
+			if(opcode == ExpressionProgram.CONST){
+				stack[++top].setConstant(program.getConstant(program.getOperand(i)));
+				continue;
+			}
+
+			if(opcode == ExpressionProgram.LOAD){
+				stack[++top].setArray(columns[program.getOperand(i)], start);
+				continue;
+			}
+
+			boolean unary = ExpressionProgram.getArity(opcode) == 1;
+			Slot a = stack[unary ? top : top - 1];
+			Slot b = stack[top];
+			top -= unary ? 0 : 1;
+
+			//operators on constants only give a constant, computed once
+			if(a.array == null && b.array == null){
+				a.setConstant(ProgramEvaluator.calculate(opcode, a.value, b.value));
+				continue;
+			}
+
+			//the last operator writes straight into the output column
+			double[] destination = i == length - 1 ? output : a.getBlock();
+			int offset = i == length - 1 ? start : 0;
+
+			switch(opcode){
+
+				case ExpressionProgram.ADD:
+					VectorKernels.add(a, b, destination, offset, count);
+					break;
+
+				case ExpressionProgram.SUB:
+					VectorKernels.subtract(a, b, destination, offset, count);
+					break;
+
+				case ExpressionProgram.MUL:
+					VectorKernels.multiply(a, b, destination, offset, count);
+					break;
+
+				case ExpressionProgram.DIV:
+					VectorKernels.divide(a, b, destination, offset, count);
+					break;
+
+				case ExpressionProgram.NEG:
+					VectorKernels.negate(a, destination, offset, count);
+					break;
+
+				default:
+					VectorKernels.calculate(opcode, a, unary ? a : b, destination, offset, count);
+					break;
+			}
+
+			a.setArray(destination, offset);
+		}
+
+		//the program ended with a constant or a variable
+		Slot result = stack[0];
+		if(result.array == null){
+			for(int j = 0; j < count; ++j){
+				output[start + j] = result.value;
+			}
+		}else if(result.array != output){
+			System.arraycopy(result.array, result.offset, output, start, count);
+		}
+	}
+
+	private static void add(Slot a, Slot b, double[] destination, int offset, int count){
+
+		int bound = SPECIES.loopBound(count);
+		int j = 0;
+
+		if(a.array == null){
+			DoubleVector left = DoubleVector.broadcast(SPECIES, a.value);
+			for(; j < bound; j += LANES){
+				left.add(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.value + b.array[b.offset + j];
+			}
+		}else if(b.array == null){
+			DoubleVector right = DoubleVector.broadcast(SPECIES, b.value);
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j).add(right).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] + b.value;
+			}
+		}else{
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j)
+						.add(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] + b.array[b.offset + j];
+			}
+		}
+	}
+
+	private static void subtract(Slot a, Slot b, double[] destination, int offset, int count){
+
+		int bound = SPECIES.loopBound(count);
+		int j = 0;
+
+		if(a.array == null){
+			DoubleVector left = DoubleVector.broadcast(SPECIES, a.value);
+			for(; j < bound; j += LANES){
+				left.sub(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.value - b.array[b.offset + j];
+			}
+		}else if(b.array == null){
+			DoubleVector right = DoubleVector.broadcast(SPECIES, b.value);
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j).sub(right).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] - b.value;
+			}
+		}else{
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j)
+						.sub(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] - b.array[b.offset + j];
+			}
+		}
+	}
+
+	private static void multiply(Slot a, Slot b, double[] destination, int offset, int count){
+
+		int bound = SPECIES.loopBound(count);
+		int j = 0;
+
+		if(a.array == null){
+			DoubleVector left = DoubleVector.broadcast(SPECIES, a.value);
+			for(; j < bound; j += LANES){
+				left.mul(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.value * b.array[b.offset + j];
+			}
+		}else if(b.array == null){
+			DoubleVector right = DoubleVector.broadcast(SPECIES, b.value);
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j).mul(right).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] * b.value;
+			}
+		}else{
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j)
+						.mul(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] * b.array[b.offset + j];
+			}
+		}
+	}
+
+	private static void divide(Slot a, Slot b, double[] destination, int offset, int count){
+
+		int bound = SPECIES.loopBound(count);
+		int j = 0;
+
+		if(a.array == null){
+			DoubleVector left = DoubleVector.broadcast(SPECIES, a.value);
+			for(; j < bound; j += LANES){
+				left.div(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.value / b.array[b.offset + j];
+			}
+		}else if(b.array == null){
+			DoubleVector right = DoubleVector.broadcast(SPECIES, b.value);
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j).div(right).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] / b.value;
+			}
+		}else{
+			for(; j < bound; j += LANES){
+				DoubleVector.fromArray(SPECIES, a.array, a.offset + j)
+						.div(DoubleVector.fromArray(SPECIES, b.array, b.offset + j)).intoArray(destination, offset + j);
+			}
+			for(; j < count; ++j){
+				destination[offset + j] = a.array[a.offset + j] / b.array[b.offset + j];
+			}
+		}
+	}
+
+	private static void negate(Slot a, double[] destination, int offset, int count){
+
+		int bound = SPECIES.loopBound(count);
+		int j = 0;
+
+		for(; j < bound; j += LANES){
+			DoubleVector.fromArray(SPECIES, a.array, a.offset + j).neg().intoArray(destination, offset + j);
+		}
+		for(; j < count; ++j){
+			destination[offset + j] = -a.array[a.offset + j];
+		}
+	}
+
+	/**
+	 * Computes <b>^</b> or a function one row at a time, with the same arithmetic as
+	 * the {@link ProgramEvaluator}.
+	 *
+	 * @param opcode The opcode of the operator or function.
+	 * @param a The left operand, or the operand of a function.
+	 * @param b The right operand. It is ignored by functions.
+	 * @param destination The array in which to write the results.
+	 * @param offset The index of the first result in the destination.
+	 * @param count The number of rows in the block.
+	 */
+	private static void calculate(int opcode, Slot a, Slot b, double[] destination, int offset, int count){
+		for(int j = 0; j < count; ++j){
+			destination[offset + j] = ProgramEvaluator.calculate(opcode, a.get(j), b.get(j));
+		}
+	}
+
+// Inner Classes ------------------------------------------------------------------------------- //
+
+	/**
+	 * An entry of the operand stack: a constant when its array is <b>null</b>, or the
+	 * values of the rows of the block starting at the given offset of its array.
+	 */
+	private static final class Slot {
+
+		private double value;
+		private double[] array;
+		private int offset;
+
+		//the block of this entry of the stack, made the first time an operator writes into it
+		private double[] block;
+
+		private void setConstant(double value){
+			this.value = value;
+			this.array = null;
+		}
+
+		private void setArray(double[] array, int offset){
+			this.array = array;
+			this.offset = offset;
+		}
+
+		private double[] getBlock(){
+
+			if(this.block == null){
+				this.block = new double[BatchEvaluator.BLOCK_SIZE];
+			}
+
+			return this.block;
+		}
+
+		private double get(int row){
+			return this.array == null ? this.value : this.array[this.offset + row];
+		}
+	}
+}